@@ -0,0 +1,57 @@
+package com.example.desktopapp.controller;
+
+import com.example.desktopapp.service.APDUConstants;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shrinking a picked photo until it fits the card (CardRegistrationController.resizeImage)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ResizeImageBenchmark {
+
+    @Param({"1280x960", "4000x3000"})
+    public String photoSize;
+
+    private byte[] photo;
+
+    @Setup
+    public void setUp() throws Exception {
+        String[] size = photoSize.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+
+        // Gradient plus noise, so the JPEG does not shrink below the limit at the first step
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        Random random = new Random(7);
+        for (int i = 0; i < width * height / 8; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        photo = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] resizeImage() {
+        return CardRegistrationController.resizeImage(photo, APDUConstants.MAX_IMAGE_SIZE);
+    }
+}
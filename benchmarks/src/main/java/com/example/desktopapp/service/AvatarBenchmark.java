@@ -0,0 +1,50 @@
+package com.example.desktopapp.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.smartcardio.CardException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avatar transfer at several image sizes, with and without extended APDU support
+ * (short APDUs mean IMAGE_CHUNK_SIZE chunks and many more round trips)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AvatarBenchmark {
+
+    @Param({"2048", "8192", "32000"})
+    public int imageSize;
+
+    @Param({"true", "false"})
+    public boolean extendedLength;
+
+    @Param({"0", "500"})
+    public long apduLatencyMicros;
+
+    private CardService cardService;
+    private byte[] image;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimulatedCard card = new SimulatedCard(apduLatencyMicros, 0);
+        card.setExtendedLength(extendedLength);
+        cardService = CardFixtures.personalize(card);
+        image = CardFixtures.image(imageSize);
+        cardService.writeAvatar(image, APDUConstants.IMAGE_TYPE_JPG);
+    }
+
+    @Benchmark
+    public void writeAvatar() throws CardException {
+        cardService.writeAvatar(image, APDUConstants.IMAGE_TYPE_JPG);
+    }
+
+    @Benchmark
+    public byte[] readAvatar() throws CardException {
+        return cardService.readAvatar();
+    }
+}
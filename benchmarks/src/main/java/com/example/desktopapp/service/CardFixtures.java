@@ -0,0 +1,57 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.UserRegistration;
+
+import javax.smartcardio.CardException;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+/**
+ * Personalised in-memory cards for the benchmarks
+ */
+final class CardFixtures {
+
+    static final String PIN = "123456";
+    static final byte GAME_ID = 1;
+
+    private CardFixtures() {
+    }
+
+    /**
+     * Install the applet state of a registered user and leave the PIN verified.
+     * The card public key is put into PublicKeyCache, so connect() authenticates without a backend.
+     */
+    static CardService personalize(SimulatedCard card) throws CardException, GeneralSecurityException {
+        CardService cardService = new CardService();
+        cardService.setDebugMode(false);
+        cardService.connect(card);
+
+        byte[] userId = new byte[APDUConstants.USER_ID_LENGTH];
+        new Random(42).nextBytes(userId);
+
+        UserRegistration user = new UserRegistration();
+        user.setName("Nguyễn Văn Benchmark");
+        user.setAge("25");
+        user.setGender((byte) 1);
+        user.setPin(PIN);
+        user.setUserId(userId);
+
+        cardService.installCard(user);
+        cardService.verifyPin(PIN);
+        cardService.writeUserData(user);
+        cardService.topupCoins(1000);
+
+        String userIdHex = CardService.bytesToHex(userId).replace(" ", "");
+        PublicKeyCache.getInstance().put(userIdHex, card.getPublicKeyEncoded());
+        return cardService;
+    }
+
+    /**
+     * Random bytes standing in for a JPEG avatar
+     */
+    static byte[] image(int size) {
+        byte[] image = new byte[size];
+        new Random(size).nextBytes(image);
+        return image;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.CardProfile;
+import org.openjdk.jmh.annotations.*;
+
+import javax.smartcardio.CardException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tap CardService operations against the in-memory card.
+ * With apduLatencyMicros = 0 only host overhead is measured (APDU building, parsing,
+ * RSA verification); other values add a reader round trip to every APDU.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardServiceBenchmark {
+
+    @Param({"0", "500"})
+    public long apduLatencyMicros;
+
+    private SimulatedCard card;
+    private CardService cardService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        card = new SimulatedCard(apduLatencyMicros, 0);
+        cardService = CardFixtures.personalize(card);
+    }
+
+    /**
+     * SELECT, READ USER ID, public key lookup and RSA challenge-response
+     */
+    @Benchmark
+    public boolean connectAndAuthenticate() throws CardException {
+        return cardService.connect(card);
+    }
+
+    @Benchmark
+    public void verifyPin() throws CardException {
+        cardService.verifyPin(CardFixtures.PIN);
+    }
+
+    /**
+     * Pay-per-play at price 0, so the balance never runs out
+     */
+    @Benchmark
+    public boolean tryPlayGame() throws CardException {
+        return cardService.tryPlayGame(CardFixtures.GAME_ID, 0);
+    }
+
+    @Benchmark
+    public CardProfile readProfile() throws CardException {
+        return cardService.readProfile();
+    }
+}
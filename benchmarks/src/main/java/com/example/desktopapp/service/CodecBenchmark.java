@@ -0,0 +1,144 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.CardProfile;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import javax.smartcardio.CardException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host-side encoding and parsing done on every tap or payment:
+ * hex formatting, raw RSA key conversion, user data TLV, backend and MoMo JSON
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    private static final String QR_RESPONSE = "{\"success\":true,\"qrCodeUrl\":\"https://test-payment.momo.vn/v2/gateway/pay?t=TU9NT3xNT01PMTczMjAwMDAwMDAwMA\","
+        + "\"orderId\":\"MOMO1732000000000\",\"qrData\":\"2|99|0901234567|||0|0|50000|Nap tien|transfer_myqr\","
+        + "\"resultCode\":0,\"message\":\"Thành công.\"}";
+    private static final String STATUS_RESPONSE = "{\"success\":true,\"orderId\":\"MOMO1732000000000\",\"status\":\"success\","
+        + "\"amount\":\"50000\",\"description\":\"a1b2c3d4e5f60718293a4b5c6d7e8f90\",\"transId\":\"4123456789\","
+        + "\"message\":\"Thanh toán thành công\",\"longPoll\":true}";
+
+    private CardService cardService;
+    private byte[] userId;
+    private byte[] signature;
+    private byte[] rawPublicKey;
+    private byte[] nameBytes;
+    private byte[] profileTlv;
+    private JSONArray batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        cardService = new CardService();
+        cardService.setDebugMode(false);
+
+        userId = CardFixtures.image(APDUConstants.USER_ID_LENGTH);
+        signature = CardFixtures.image(128);
+
+        // Raw key as returned by INS_INSTALL: [MODULUS(128)] [EXPONENT]
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        RSAPublicKey publicKey = (RSAPublicKey) generator.generateKeyPair().getPublic();
+        byte[] modulus = publicKey.getModulus().toByteArray();
+        modulus = Arrays.copyOfRange(modulus, modulus.length - 128, modulus.length);
+        byte[] exponent = BigInteger.valueOf(65537).toByteArray();
+        rawPublicKey = Arrays.copyOf(modulus, 128 + exponent.length);
+        System.arraycopy(exponent, 0, rawPublicKey, 128, exponent.length);
+
+        nameBytes = "Nguyễn Văn Benchmark".getBytes(StandardCharsets.UTF_8);
+
+        // Full profile: name, gender, coins, all 44 game slots, age
+        byte[] games = new byte[88];
+        for (int i = 0; i < 44; i++) {
+            games[i * 2] = (byte) (i + 1);
+            games[i * 2 + 1] = (byte) 3;
+        }
+        byte[] userData = CardService.encodeUserData(nameBytes, (byte) 1, (byte) 25);
+        profileTlv = new byte[userData.length + 4 + 2 + games.length];
+        System.arraycopy(userData, 0, profileTlv, 0, userData.length);
+        int offset = userData.length;
+        profileTlv[offset++] = APDUConstants.TAG_COINS;
+        profileTlv[offset++] = 2;
+        profileTlv[offset++] = 0x03;
+        profileTlv[offset++] = (byte) 0xE8;
+        profileTlv[offset++] = APDUConstants.TAG_BOUGHT_GAMES;
+        profileTlv[offset++] = (byte) games.length;
+        System.arraycopy(games, 0, profileTlv, offset, games.length);
+
+        batch = new JSONArray();
+        for (int i = 0; i < 50; i++) {
+            JSONObject tx = TransactionService.newTransaction("a1b2c3d4e5f60718293a4b5c6d7e8f90", 25, 10000);
+            tx.put("game_id", i % 10);
+            batch.put(tx);
+        }
+    }
+
+    @Benchmark
+    public String bytesToHexUserId() {
+        return CardService.bytesToHex(userId);
+    }
+
+    @Benchmark
+    public String bytesToHexSignature() {
+        return CardService.bytesToHex(signature);
+    }
+
+    @Benchmark
+    public byte[] convertRawRSAKeyToX509() throws CardException {
+        return cardService.convertRawRSAKeyToX509(rawPublicKey);
+    }
+
+    @Benchmark
+    public byte[] encodeUserDataTlv() {
+        return CardService.encodeUserData(nameBytes, (byte) 1, (byte) 25);
+    }
+
+    @Benchmark
+    public CardProfile parseProfileTlv() {
+        return CardService.parseProfile(profileTlv);
+    }
+
+    @Benchmark
+    public MomoService.QrPaymentResponse parseMomoQrResponse() {
+        return MomoService.parseQrPaymentResponse(QR_RESPONSE);
+    }
+
+    @Benchmark
+    public MomoService.PaymentStatusResponse parseMomoStatusResponse() {
+        return MomoService.parsePaymentStatusResponse(STATUS_RESPONSE);
+    }
+
+    @Benchmark
+    public JSONObject buildTransaction() {
+        return TransactionService.newTransaction("a1b2c3d4e5f60718293a4b5c6d7e8f90", 25, 10000);
+    }
+
+    /**
+     * Serialising a full outbox batch (OUTBOX_BATCH_SIZE records)
+     */
+    @Benchmark
+    public String serializeTransactionBatch() {
+        return TransactionService.batchBody(batch);
+    }
+
+    /**
+     * Reading a batch back, as the outbox does when replaying its log
+     */
+    @Benchmark
+    public JSONObject parseTransactionBatch() {
+        return new JSONObject(TransactionService.batchBody(batch));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.desktopapp.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.smartcardio.CardException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One kiosk tap (connect + authenticate, VERIFY PIN, profile, play, avatar) replayed from an
+ * APDU trace. Without -p trace=... the trace is recorded from the in-memory card at setup;
+ * a trace captured at a kiosk (-Dsmartcard.trace) of the same flow can be given instead.
+ * originalTiming = true replays the recorded card time, false measures the host code only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraceReplayBenchmark {
+
+    @Param({""})
+    public String trace;
+
+    @Param({"false", "true"})
+    public boolean originalTiming;
+
+    private ApduTraceReplay replay;
+    private CardService cardService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path file;
+        if (trace.isEmpty()) {
+            file = Files.createTempFile("kiosk-tap", ".trace");
+            file.toFile().deleteOnExit();
+            record(file);
+        } else {
+            file = Paths.get(trace);
+        }
+        replay = ApduTraceReplay.open(file, originalTiming);
+        cardService = new CardService();
+        cardService.setDebugMode(false);
+    }
+
+    @Benchmark
+    public byte[] kioskTap() throws CardException {
+        replay.rewind();
+        byte[] avatar = tap(cardService, replay);
+        if (!replay.isFinished()) {
+            throw new IllegalStateException("Trace còn " + (replay.getLength() - replay.getPosition()) + " APDU chưa dùng");
+        }
+        return avatar;
+    }
+
+    private static byte[] tap(CardService cardService, ApduChannel channel) throws CardException {
+        cardService.connect(channel);
+        cardService.verifyPin(CardFixtures.PIN);
+        cardService.readProfile();
+        cardService.tryPlayGame(CardFixtures.GAME_ID, 0);
+        return cardService.readAvatar();
+    }
+
+    private static void record(Path file) throws Exception {
+        // Reader round trip of 500 µs, so originalTiming has card time to replay
+        SimulatedCard card = new SimulatedCard(500, 0);
+        CardService cardService = CardFixtures.personalize(card);
+        cardService.writeAvatar(CardFixtures.image(8 * 1024), APDUConstants.IMAGE_TYPE_JPG);
+
+        CardService tapService = new CardService();
+        tapService.setDebugMode(false);
+        ApduTraceRecorder recorder = ApduTraceRecorder.open(card, file);
+        tap(tapService, recorder);
+        recorder.disconnect();
+    }
+}
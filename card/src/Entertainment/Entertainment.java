@@ -3,8 +3,9 @@ package Entertainment;
 import javacard.framework.*;
 import javacard.security.*;
 import javacardx.crypto.*;
+import javacardx.apdu.ExtendedLength;
 
-public class Entertainment extends Applet {
+public class Entertainment extends Applet implements ExtendedLength {
     // INS codes
     private static final byte INS_INSTALL = (byte) 0x10;
     private static final byte INS_VERIFY_PIN = (byte) 0x20;
@@ -21,6 +22,10 @@ public class Entertainment extends Applet {
     private static final byte INS_WRITE_IMAGE_CONTINUE = (byte) 0x53;
     private static final byte INS_READ_IMAGE = (byte) 0x54;
     private static final byte INS_READ_USER_ID = (byte) 0x55;
+    private static final byte INS_READ_USER_PROFILE = (byte) 0x56;
+    private static final byte INS_READ_JOURNAL = (byte) 0x57;
+    private static final byte INS_GET_MEMORY_INFO = (byte) 0x60;
+    private static final byte INS_GET_WRITE_STATS = (byte) 0x61;
     private static final byte INS_RESET_CARD = (byte) 0x99;
 
     // Status words
@@ -39,18 +44,62 @@ public class Entertainment extends Applet {
     private static final short HASH_SIZE = (short) 20; // SHA-1 for compatibility
     private static final short RSA_KEY_SIZE = (short) 1024; // 1024 bits (more compatible)
     private static final byte MAX_NAME_LENGTH = (byte) 64;
-    private static final byte MAX_GAMES = (byte) 50;
+    private static final byte MAX_GAMES = (byte) 50; // Max game IDs per combo purchase
+    private static final short MAX_GAME_SLOTS = (short) 44; // Distinct games with remaining plays
+    private static final short MAX_PLAYS_PER_GAME = (short) 255;
     private static final short MAX_IMAGE_SIZE = (short) 32767; // ~32KB for image (max short value, close to 64KB with two buffers if needed)
+    private static final short MAX_IMAGE_DATA_SIZE = (short) (MAX_IMAGE_SIZE - 16); // Plaintext limit, PKCS#7 adds up to one block
     private static final short PBKDF2_ITERATIONS = (short) 500;
     private static final short MAX_ENCRYPTED_DATA_SIZE = (short) 256;
 
-    // TLV tags for user data
+    // Scratch layout - per-command working memory, no new byte[] while processing APDUs
+    private static final short SCRATCH_KEK = (short) 0;      // 16: KEK / old KEK
+    private static final short SCRATCH_KEK2 = (short) 16;    // 16: new KEK / admin KEK
+    private static final short SCRATCH_KEY = (short) 32;     // 16: temporary master key
+    private static final short SCRATCH_HASH = (short) 48;    // 20: master key hash check
+    private static final short SCRATCH_PIN = (short) 68;     // 16: default admin PIN
+    private static final short SCRATCH_KDF = (short) 84;     // 32: PIN + salt for simple KDF
+    private static final short SCRATCH_IV = (short) 84;      // 16: user record IV while storing (overlaps KDF)
+    private static final short SCRATCH_BALANCE = (short) 100; // 16: balance block while reading/storing (overlaps KDF)
+    private static final short SCRATCH_SIZE = (short) 116;
+
+    // TLV tags for user data (field selectors on the wire, legacy record format)
     private static final byte TAG_NAME = (byte) 0x01;
     private static final byte TAG_GENDER = (byte) 0x02;
     private static final byte TAG_COINS = (byte) 0x03;
     private static final byte TAG_BOUGHT_GAMES = (byte) 0x04;
     private static final byte TAG_AGE = (byte) 0x05;
 
+    // Fixed-offset user record layout (160 bytes plaintext)
+    // A legacy TLV record starts with a tag (0x01-0x05), so the version byte tells them apart
+    private static final byte RECORD_VERSION = (byte) 0x84;
+    private static final short USER_RECORD_SIZE = (short) 160;
+    private static final short REC_VERSION = (short) 0;      // 1
+    private static final short REC_GENDER = (short) 1;       // 1
+    private static final short REC_AGE = (short) 2;          // 1
+    private static final short REC_COINS = (short) 3;        // 2: reserved, coins live in encryptedBalance
+    private static final short REC_NAME_LEN = (short) 5;     // 1
+    private static final short REC_NAME = (short) 6;         // 64
+    private static final short REC_GAMES_COUNT = (short) 70; // 1: used game slots
+    private static final short REC_GAMES = (short) 71;       // 88: MAX_GAME_SLOTS x [GAME_ID(1)][REMAINING_PLAYS(1)]
+    private static final short MIGRATE_GAMES = USER_RECORD_SIZE; // 50: legacy game list in tempBuffer while migrating
+
+    // Balance block, encrypted on its own so a coin change rewrites 16 bytes instead of the 176-byte record
+    private static final short BALANCE_SIZE = (short) 16;
+    private static final short BAL_COINS = (short) 0;        // 2
+    private static final short BAL_NONCE = (short) 2;        // 4: random, fresh ciphertext on every write
+    private static final short BAL_CHECK = (short) 6;        // 10: first bytes of userID, detects tampering
+    private static final short BAL_CHECK_SIZE = (short) 10;
+
+    // Transaction journal: ring buffer of [SEQ(2)][TYPE(1)][GAME_ID(1)][AMOUNT(2)][BALANCE_AFTER(2)]
+    // SEQ holds the low 16 bits of the 32-bit sequence number, the high half is journalSeqHigh
+    // 31 entries so a full drain (7-byte header + entries) fits one short APDU response
+    private static final short JOURNAL_ENTRIES = (short) 31;
+    private static final short JOURNAL_ENTRY_SIZE = (short) 8;
+    private static final byte JOURNAL_TOPUP = (byte) 0x01;
+    private static final byte JOURNAL_PLAY_COINS = (byte) 0x02;
+    private static final byte JOURNAL_PLAY_PREPAID = (byte) 0x03;
+
     // Persistent data
     private byte[] userID;
     private byte[] salt;
@@ -58,6 +107,12 @@ public class Entertainment extends Applet {
     private byte[] adminWrappedMasterKey;
     private byte[] masterKeyHash;
     private byte[] encryptedUserData;
+    private byte[] encryptedBalance;
+    private byte[] journal;
+    private short journalSeq; // Sequence number of the newest entry, low 16 bits (0 and high 0 = none yet)
+    private short journalSeqHigh; // High 16 bits, incremented each time journalSeq wraps
+    private short journalAckedSeq; // Entries up to this sequence number were uploaded by the host
+    private short journalHead; // Slot of the next entry
     private byte pinTryCounter;
     private byte adminPinTryCounter;
     private boolean lockedFlag;
@@ -84,8 +139,12 @@ public class Entertainment extends Applet {
     private boolean adminSessionAuth;
     private byte[] masterKey; // Transient
     private byte[] tempBuffer; // Transient
+    private byte[] scratch; // Transient, see SCRATCH_* offsets
+    private short[] writeStats; // Transient: [user data bytes written by last command, total since select]
 
     // Crypto objects
+    private AESKey sessionKey; // Master key, loaded at PIN verify, transient (cleared on deselect)
+    private AESKey kekKey; // KEK for wrap/unwrap, transient
     private Cipher aesCipher;
     private MessageDigest sha1;
     private Signature rsaSignature;
@@ -96,12 +155,17 @@ public class Entertainment extends Applet {
         if (selectingApplet()) {
             sessionAuth = false;
             adminSessionAuth = false;
+            clearSessionKey();
             return;
         }
 
         byte[] buf = apdu.getBuffer();
         byte ins = buf[ISO7816.OFFSET_INS];
 
+        if (ins != INS_GET_WRITE_STATS) {
+            writeStats[0] = 0;
+        }
+
         switch (ins) {
             case INS_INSTALL:
                 processInstall(apdu);
@@ -148,6 +212,18 @@ public class Entertainment extends Applet {
             case INS_READ_USER_ID:
                 processReadUserId(apdu);
                 break;
+            case INS_READ_USER_PROFILE:
+                processReadUserProfile(apdu);
+                break;
+            case INS_READ_JOURNAL:
+                processReadJournal(apdu);
+                break;
+            case INS_GET_MEMORY_INFO:
+                processGetMemoryInfo(apdu);
+                break;
+            case INS_GET_WRITE_STATS:
+                processGetWriteStats(apdu);
+                break;
             case INS_RESET_CARD:
                 processResetCard(apdu);
                 break;
@@ -164,6 +240,8 @@ public class Entertainment extends Applet {
         adminWrappedMasterKey = new byte[32]; // IV (16 bytes) + encrypted key (16 bytes)
         masterKeyHash = new byte[HASH_SIZE];
         encryptedUserData = new byte[MAX_ENCRYPTED_DATA_SIZE];
+        encryptedBalance = new byte[BALANCE_SIZE];
+        journal = new byte[(short) (JOURNAL_ENTRIES * JOURNAL_ENTRY_SIZE)];
         imageBuffer = new byte[MAX_IMAGE_SIZE];
         imageIV = new byte[16];
         tempImageChunk = new byte[16];
@@ -180,10 +258,16 @@ public class Entertainment extends Applet {
         tempChunkLen = 0;
         currentWriteOffset = 0;
         totalImageSize = 0;
+        journalSeq = 0;
+        journalSeqHigh = 0;
+        journalAckedSeq = 0;
+        journalHead = 0;
 
         // Initialize transient arrays
         masterKey = JCSystem.makeTransientByteArray(AES_KEY_SIZE, JCSystem.CLEAR_ON_RESET);
         tempBuffer = JCSystem.makeTransientByteArray((short) 256, JCSystem.CLEAR_ON_DESELECT);
+        scratch = JCSystem.makeTransientByteArray(SCRATCH_SIZE, JCSystem.CLEAR_ON_DESELECT);
+        writeStats = JCSystem.makeTransientShortArray((short) 2, JCSystem.CLEAR_ON_DESELECT);
 
         // Initialize crypto objects with fallback options
         try {
@@ -208,6 +292,16 @@ public class Entertainment extends Applet {
             
             randomGen = RandomData.getInstance(RandomData.ALG_SECURE_RANDOM);
             
+            // Key objects are built once; transient keys are wiped by the card on deselect
+            try {
+                sessionKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES_TRANSIENT_DESELECT, KeyBuilder.LENGTH_AES_128, false);
+                kekKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES_TRANSIENT_DESELECT, KeyBuilder.LENGTH_AES_128, false);
+            } catch (CryptoException e) {
+                // Fallback to persistent keys, cleared explicitly (see clearSessionKey)
+                sessionKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, KeyBuilder.LENGTH_AES_128, false);
+                kekKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, KeyBuilder.LENGTH_AES_128, false);
+            }
+            
             // PBKDF2 may not be available on all cards
             try {
                 pbkdf2 = PBKDF2.getInstance(PBKDF2.ALG_SHA_256);
@@ -255,9 +349,8 @@ public class Entertainment extends Applet {
             ISOException.throwIt(SW_WRONG_DATA);
         }
 
-        // Store PIN temporarily for KEK derivation
-        byte[] pin = new byte[pinLength];
-        Util.arrayCopy(buffer, offset, pin, (short) 0, pinLength);
+        // PIN is used straight from the APDU buffer for KEK derivation
+        short pinOffset = offset;
         offset += pinLength;
 
         // Copy userID
@@ -276,40 +369,28 @@ public class Entertainment extends Applet {
         }
 
         // Derive KEK from PIN + salt
-        byte[] kek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(pin, (short) 0, pinLength, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, kek, (short) 0);
-        } else {
-            // Fallback: simple hash-based KDF
-            deriveKeySimple(pin, pinLength, salt, kek);
-        }
+        deriveKek(buffer, pinOffset, pinLength, SCRATCH_KEK);
 
         // Wrap master key with KEK
-        wrapKey(masterKey, AES_KEY_SIZE, kek, wrappedMasterKey);
+        wrapKey(masterKey, SCRATCH_KEK, wrappedMasterKey);
 
         // Initialize admin PIN (default: "1234567890123456")
-        byte[] adminPin = new byte[16];
-        adminPin[0] = '1'; adminPin[1] = '2'; adminPin[2] = '3'; adminPin[3] = '4';
-        adminPin[4] = '5'; adminPin[5] = '6'; adminPin[6] = '7'; adminPin[7] = '8';
-        adminPin[8] = '9'; adminPin[9] = '0'; adminPin[10] = '1'; adminPin[11] = '2';
-        adminPin[12] = '3'; adminPin[13] = '4'; adminPin[14] = '5'; adminPin[15] = '6';
+        byte[] adminPin = scratch;
+        short pos = SCRATCH_PIN;
+        adminPin[pos++] = '1'; adminPin[pos++] = '2'; adminPin[pos++] = '3'; adminPin[pos++] = '4';
+        adminPin[pos++] = '5'; adminPin[pos++] = '6'; adminPin[pos++] = '7'; adminPin[pos++] = '8';
+        adminPin[pos++] = '9'; adminPin[pos++] = '0'; adminPin[pos++] = '1'; adminPin[pos++] = '2';
+        adminPin[pos++] = '3'; adminPin[pos++] = '4'; adminPin[pos++] = '5'; adminPin[pos++] = '6';
         
         // Derive admin KEK from admin PIN + salt
-        byte[] adminKek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(adminPin, (short) 0, (short) 16, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, adminKek, (short) 0);
-        } else {
-            deriveKeySimple(adminPin, (short) 16, salt, adminKek);
-        }
+        deriveKek(scratch, SCRATCH_PIN, (short) 16, SCRATCH_KEK2);
         
         // Wrap master key with admin KEK
-        wrapKey(masterKey, AES_KEY_SIZE, adminKek, adminWrappedMasterKey);
+        wrapKey(masterKey, SCRATCH_KEK2, adminWrappedMasterKey);
 
         // Clear KEK and PIN
-        Util.arrayFillNonAtomic(kek, (short) 0, AES_KEY_SIZE, (byte) 0);
-        Util.arrayFillNonAtomic(adminKek, (short) 0, AES_KEY_SIZE, (byte) 0);
-        Util.arrayFillNonAtomic(adminPin, (short) 0, (short) 16, (byte) 0);
-        Util.arrayFillNonAtomic(pin, (short) 0, pinLength, (byte) 0);
+        clearScratch();
+        Util.arrayFillNonAtomic(buffer, pinOffset, pinLength, (byte) 0);
 
         // Generate RSA key pair if supported
         if (rsaKeyPair != null) {
@@ -317,6 +398,7 @@ public class Entertainment extends Applet {
         }
 
         // Initialize encrypted user data with empty values
+        sessionKey.setKey(masterKey, (short) 0);
         initializeUserData();
 
         initialized = true;
@@ -353,25 +435,17 @@ public class Entertainment extends Applet {
             ISOException.throwIt(SW_WRONG_DATA);
         }
 
-        byte[] pin = new byte[lc];
-        Util.arrayCopy(buffer, ISO7816.OFFSET_CDATA, pin, (short) 0, lc);
-
         // Derive KEK from PIN + salt
-        byte[] kek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(pin, (short) 0, (short) lc, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, kek, (short) 0);
-        } else {
-            deriveKeySimple(pin, (short) lc, salt, kek);
-        }
+        deriveKek(buffer, ISO7816.OFFSET_CDATA, lc, SCRATCH_KEK);
 
         // Clear PIN
-        Util.arrayFillNonAtomic(pin, (short) 0, lc, (byte) 0);
+        Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
 
         // Unwrap master key
-        boolean unwrapSuccess = unwrapKey(wrappedMasterKey, kek, masterKey);
+        boolean unwrapSuccess = unwrapKey(wrappedMasterKey, SCRATCH_KEK, masterKey, (short) 0);
 
         // Clear KEK
-        Util.arrayFillNonAtomic(kek, (short) 0, AES_KEY_SIZE, (byte) 0);
+        Util.arrayFillNonAtomic(scratch, SCRATCH_KEK, AES_KEY_SIZE, (byte) 0);
 
         if (!unwrapSuccess) {
             handleWrongPin();
@@ -379,23 +453,14 @@ public class Entertainment extends Applet {
         }
 
         // Verify master key hash
-        byte[] computedHash = new byte[HASH_SIZE];
-        if (sha1 != null) {
-            sha1.reset();
-            sha1.doFinal(masterKey, (short) 0, AES_KEY_SIZE, computedHash, (short) 0);
-        }
-
-        boolean hashMatch = true;
-        for (short i = 0; i < HASH_SIZE; i++) {
-            if (computedHash[i] != masterKeyHash[i]) {
-                hashMatch = false;
-                break;
-            }
-        }
-
-        if (hashMatch) {
+        if (checkMasterKeyHash(masterKey, (short) 0)) {
             sessionAuth = true;
             pinTryCounter = PIN_TRY_LIMIT;
+            // Load master key once for all encrypt/decrypt in this session
+            sessionKey.setKey(masterKey, (short) 0);
+            clearScratch();
+            // Cards personalised with the TLV record are upgraded on first use
+            migrateUserRecord();
         } else {
             Util.arrayFillNonAtomic(masterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
             handleWrongPin();
@@ -406,6 +471,8 @@ public class Entertainment extends Applet {
         pinTryCounter--;
         if (pinTryCounter == 0) {
             lockedFlag = true;
+            sessionAuth = false;
+            clearSessionKey();
             ISOException.throwIt(SW_AUTHENTICATION_BLOCKED);
         } else {
             ISOException.throwIt((short) (0x63C0 | pinTryCounter));
@@ -430,7 +497,7 @@ public class Entertainment extends Applet {
         short lc = (short) (buffer[ISO7816.OFFSET_LC] & 0xFF);
         apdu.setIncomingAndReceive();
 
-        // Parse: oldPinLen | oldPin | newPinLen | newPin
+        // Parse: oldPinLen | oldPin | newPinLen | newPin (both PINs stay in the APDU buffer)
         short offset = ISO7816.OFFSET_CDATA;
         byte oldPinLen = buffer[offset++];
         
@@ -438,80 +505,45 @@ public class Entertainment extends Applet {
             ISOException.throwIt(SW_WRONG_DATA);
         }
         
-        byte[] oldPin = new byte[oldPinLen];
-        Util.arrayCopy(buffer, offset, oldPin, (short) 0, oldPinLen);
+        short oldPinOffset = offset;
         offset += oldPinLen;
         
         byte newPinLen = buffer[offset++];
         
         if (newPinLen < 4 || newPinLen > MAX_PIN_SIZE) {
-            Util.arrayFillNonAtomic(oldPin, (short) 0, oldPinLen, (byte) 0);
+            Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
             ISOException.throwIt(SW_WRONG_DATA);
         }
         
-        byte[] newPin = new byte[newPinLen];
-        Util.arrayCopy(buffer, offset, newPin, (short) 0, newPinLen);
+        short newPinOffset = offset;
         
         // Step 1: Re-verify old PIN for security
-        byte[] oldKek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(oldPin, (short) 0, oldPinLen, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, oldKek, (short) 0);
-        } else {
-            deriveKeySimple(oldPin, oldPinLen, salt, oldKek);
-        }
+        deriveKek(buffer, oldPinOffset, oldPinLen, SCRATCH_KEK);
         
         // Verify old PIN by trying to unwrap
-        byte[] tempMasterKey = new byte[AES_KEY_SIZE];
-        boolean unwrapSuccess = unwrapKey(wrappedMasterKey, oldKek, tempMasterKey);
-        
-        Util.arrayFillNonAtomic(oldKek, (short) 0, AES_KEY_SIZE, (byte) 0);
-        Util.arrayFillNonAtomic(oldPin, (short) 0, oldPinLen, (byte) 0);
+        boolean unwrapSuccess = unwrapKey(wrappedMasterKey, SCRATCH_KEK, scratch, SCRATCH_KEY);
         
-        if (!unwrapSuccess) {
-            Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
-            Util.arrayFillNonAtomic(newPin, (short) 0, newPinLen, (byte) 0);
-            ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
-        }
+        Util.arrayFillNonAtomic(scratch, SCRATCH_KEK, AES_KEY_SIZE, (byte) 0);
         
         // Step 2: Verify master key hash to ensure unwrap was correct
-        byte[] computedHash = new byte[HASH_SIZE];
-        if (sha1 != null) {
-            sha1.reset();
-            sha1.doFinal(tempMasterKey, (short) 0, AES_KEY_SIZE, computedHash, (short) 0);
-        }
-        
-        boolean hashMatch = true;
-        for (short i = 0; i < HASH_SIZE; i++) {
-            if (computedHash[i] != masterKeyHash[i]) {
-                hashMatch = false;
-                break;
-            }
-        }
-        
-        if (!hashMatch) {
-            Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
-            Util.arrayFillNonAtomic(newPin, (short) 0, newPinLen, (byte) 0);
+        if (!unwrapSuccess || !checkMasterKeyHash(scratch, SCRATCH_KEY)) {
+            clearScratch();
+            Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
             ISOException.throwIt(ISO7816.SW_SECURITY_STATUS_NOT_SATISFIED);
         }
         
         // Step 3: Derive new KEK from new PIN
-        byte[] newKek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(newPin, (short) 0, newPinLen, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, newKek, (short) 0);
-        } else {
-            deriveKeySimple(newPin, newPinLen, salt, newKek);
-        }
+        deriveKek(buffer, newPinOffset, newPinLen, SCRATCH_KEK2);
         
         // Step 4: Re-wrap master key with new KEK
-        wrapKey(tempMasterKey, AES_KEY_SIZE, newKek, wrappedMasterKey);
+        wrapKey(scratch, SCRATCH_KEY, SCRATCH_KEK2, wrappedMasterKey);
         
         // Step 5: Update session master key to continue using
-        Util.arrayCopy(tempMasterKey, (short) 0, masterKey, (short) 0, AES_KEY_SIZE);
+        Util.arrayCopy(scratch, SCRATCH_KEY, masterKey, (short) 0, AES_KEY_SIZE);
         
         // Step 6: Clean up sensitive data
-        Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
-        Util.arrayFillNonAtomic(newKek, (short) 0, AES_KEY_SIZE, (byte) 0);
-        Util.arrayFillNonAtomic(newPin, (short) 0, newPinLen, (byte) 0);
+        clearScratch();
+        Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
         
         // PIN changed successfully, session remains authenticated
     }
@@ -533,56 +565,34 @@ public class Entertainment extends Applet {
             ISOException.throwIt(SW_WRONG_DATA);
         }
 
-        byte[] adminPin = new byte[lc];
-        Util.arrayCopy(buffer, ISO7816.OFFSET_CDATA, adminPin, (short) 0, lc);
-
         // Derive admin KEK from admin PIN + salt
-        byte[] adminKek = new byte[AES_KEY_SIZE];
-        if (pbkdf2 != null) {
-            pbkdf2.doFinal(adminPin, (short) 0, (short) lc, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, adminKek, (short) 0);
-        } else {
-            deriveKeySimple(adminPin, (short) lc, salt, adminKek);
-        }
+        deriveKek(buffer, ISO7816.OFFSET_CDATA, lc, SCRATCH_KEK);
 
         // Clear admin PIN
-        Util.arrayFillNonAtomic(adminPin, (short) 0, lc, (byte) 0);
+        Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
 
         // Unwrap master key with admin KEK
-        byte[] tempMasterKey = new byte[AES_KEY_SIZE];
-        boolean unwrapSuccess = unwrapKey(adminWrappedMasterKey, adminKek, tempMasterKey);
+        boolean unwrapSuccess = unwrapKey(adminWrappedMasterKey, SCRATCH_KEK, scratch, SCRATCH_KEY);
 
         // Clear admin KEK
-        Util.arrayFillNonAtomic(adminKek, (short) 0, AES_KEY_SIZE, (byte) 0);
+        Util.arrayFillNonAtomic(scratch, SCRATCH_KEK, AES_KEY_SIZE, (byte) 0);
 
         if (!unwrapSuccess) {
-            Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
+            clearScratch();
             handleWrongAdminPin();
             return;
         }
 
         // Verify master key hash
-        byte[] computedHash = new byte[HASH_SIZE];
-        if (sha1 != null) {
-            sha1.reset();
-            sha1.doFinal(tempMasterKey, (short) 0, AES_KEY_SIZE, computedHash, (short) 0);
-        }
-
-        boolean hashMatch = true;
-        for (short i = 0; i < HASH_SIZE; i++) {
-            if (computedHash[i] != masterKeyHash[i]) {
-                hashMatch = false;
-                break;
-            }
-        }
-
-        if (hashMatch) {
+        if (checkMasterKeyHash(scratch, SCRATCH_KEY)) {
             adminSessionAuth = true;
             adminPinTryCounter = ADMIN_PIN_TRY_LIMIT;
             // Copy master key for use in unlockByAdmin
-            Util.arrayCopy(tempMasterKey, (short) 0, masterKey, (short) 0, AES_KEY_SIZE);
-            Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
+            Util.arrayCopy(scratch, SCRATCH_KEY, masterKey, (short) 0, AES_KEY_SIZE);
+            sessionKey.setKey(masterKey, (short) 0);
+            clearScratch();
         } else {
-            Util.arrayFillNonAtomic(tempMasterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
+            clearScratch();
             handleWrongAdminPin();
         }
     }
@@ -617,20 +627,12 @@ public class Entertainment extends Applet {
 
         // Optionally change PIN if new PIN provided
         if (lc >= 4 && lc <= MAX_PIN_SIZE) {
-            byte[] newPin = new byte[lc];
-            Util.arrayCopy(buffer, ISO7816.OFFSET_CDATA, newPin, (short) 0, lc);
-
             // Re-wrap master key with new PIN
-            byte[] kek = new byte[AES_KEY_SIZE];
-            if (pbkdf2 != null) {
-                pbkdf2.doFinal(newPin, (short) 0, (short) lc, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, kek, (short) 0);
-            } else {
-                deriveKeySimple(newPin, (short) lc, salt, kek);
-            }
-            wrapKey(masterKey, AES_KEY_SIZE, kek, wrappedMasterKey);
+            deriveKek(buffer, ISO7816.OFFSET_CDATA, lc, SCRATCH_KEK);
+            wrapKey(masterKey, SCRATCH_KEK, wrappedMasterKey);
 
-            Util.arrayFillNonAtomic(kek, (short) 0, AES_KEY_SIZE, (byte) 0);
-            Util.arrayFillNonAtomic(newPin, (short) 0, lc, (byte) 0);
+            Util.arrayFillNonAtomic(scratch, SCRATCH_KEK, AES_KEY_SIZE, (byte) 0);
+            Util.arrayFillNonAtomic(buffer, ISO7816.OFFSET_CDATA, lc, (byte) 0);
         }
     }
 
@@ -648,55 +650,42 @@ public class Entertainment extends Applet {
         // Decrypt user data
         decryptUserData(tempBuffer);
 
-        // Check if game is already bought (one-time use after purchase)
-        short gamesOffset = findTag(tempBuffer, TAG_BOUGHT_GAMES);
-        if (gamesOffset >= 0) {
-            byte gameCount = tempBuffer[(short) (gamesOffset + 1)];
-            for (byte i = 0; i < gameCount; i++) {
-                if (tempBuffer[(short) (gamesOffset + 2 + i)] == gameID) {
-                    // Game already purchased - allow one free play and remove from bought list
-                    byte[] newGameList = new byte[MAX_GAMES];
-                    byte newGameCount = 0;
-                    
-                    // Copy all games except the one being played
-                    for (byte j = 0; j < gameCount; j++) {
-                        if (j != i) {
-                            newGameList[newGameCount++] = tempBuffer[(short) (gamesOffset + 2 + j)];
-                        }
-                    }
-                    
-                    // Update bought games list with the game removed
-                    rebuildTLVWithUpdatedField(tempBuffer, TAG_BOUGHT_GAMES, newGameList, (short) 0, newGameCount);
-                    
-                    // Encrypt and save updated data
-                    encryptUserData(tempBuffer);
-                    
-                    // Return success (game used up)
-                    buffer[0] = (byte) 0x01;
-                    apdu.setOutgoingAndSend((short) 0, (short) 1);
-                    return;
-                }
+        // Use one prepaid play if the game was bought
+        short slot = findGameSlot(gameID);
+        if (slot >= 0) {
+            byte remaining = (byte) (tempBuffer[(short) (slot + 1)] - 1);
+            if (remaining == 0) {
+                removeGameSlot(slot);
+            } else {
+                tempBuffer[(short) (slot + 1)] = remaining;
             }
-        }
+            short coins = readBalance();
 
-        // Game not purchased - pay per play
-        short coinsOffset = findTag(tempBuffer, TAG_COINS);
-        if (coinsOffset < 0) {
-            ISOException.throwIt(SW_WRONG_DATA);
+            // Encrypt and save updated data, journaled in the same transaction
+            JCSystem.beginTransaction();
+            encryptUserData(tempBuffer);
+            appendJournal(JOURNAL_PLAY_PREPAID, gameID, requiredCoins, coins);
+            JCSystem.commitTransaction();
+
+            // Return success (one play used)
+            buffer[0] = (byte) 0x01;
+            apdu.setOutgoingAndSend((short) 0, (short) 1);
+            return;
         }
 
-        short currentCoins = Util.getShort(tempBuffer, (short) (coinsOffset + 2));
+        // Game not purchased - pay per play
+        short currentCoins = readBalance();
         if (currentCoins < requiredCoins) {
             // Not enough coins
             ISOException.throwIt(SW_INSUFFICIENT_FUNDS);
         }
 
-        // Deduct coins for pay-per-play
+        // Deduct coins for pay-per-play (only the balance block is rewritten)
         short newCoins = (short)(currentCoins - requiredCoins);
-        Util.setShort(tempBuffer, (short) (coinsOffset + 2), newCoins);
-
-        // Encrypt and save
-        encryptUserData(tempBuffer);
+        JCSystem.beginTransaction();
+        writeBalance(newCoins);
+        appendJournal(JOURNAL_PLAY_COINS, gameID, requiredCoins, newCoins);
+        JCSystem.commitTransaction();
 
         // Return success
         buffer[0] = (byte) 0x01;
@@ -713,21 +702,13 @@ public class Entertainment extends Applet {
 
         short amount = Util.getShort(buffer, ISO7816.OFFSET_CDATA);
 
-        // Decrypt user data
-        decryptUserData(tempBuffer);
-
-        // Update coins
-        short coinsOffset = findTag(tempBuffer, TAG_COINS);
-        if (coinsOffset < 0) {
-            ISOException.throwIt(SW_WRONG_DATA);
-        }
-
-        short currentCoins = Util.getShort(tempBuffer, (short) (coinsOffset + 2));
+        // Update coins (only the balance block is rewritten)
+        short currentCoins = readBalance();
         short newCoins = (short)(currentCoins + amount);
-        Util.setShort(tempBuffer, (short) (coinsOffset + 2), newCoins);
-
-        // Encrypt and save
-        encryptUserData(tempBuffer);
+        JCSystem.beginTransaction();
+        writeBalance(newCoins);
+        appendJournal(JOURNAL_TOPUP, (byte) 0, amount, newCoins);
+        JCSystem.commitTransaction();
     }
 
     private void processPurchaseCombo(APDU apdu) {
@@ -745,8 +726,8 @@ public class Entertainment extends Applet {
             ISOException.throwIt(SW_WRONG_DATA);
         }
 
-        byte[] gamesToAdd = new byte[numGames];
-        Util.arrayCopy(buffer, offset, gamesToAdd, (short) 0, numGames);
+        // Games to add are read straight from the APDU buffer
+        short gamesToAddOffset = offset;
         offset += numGames;
 
         short totalPrice = Util.getShort(buffer, offset);
@@ -754,40 +735,14 @@ public class Entertainment extends Applet {
         // Decrypt user data
         decryptUserData(tempBuffer);
 
-        // Check coins first
-        short coinsOffset = findTag(tempBuffer, TAG_COINS);
-        if (coinsOffset < 0) {
-            ISOException.throwIt(SW_WRONG_DATA);
-        }
-
-        // Get current bought games
-        short gamesOffset = findTag(tempBuffer, TAG_BOUGHT_GAMES);
-        if (gamesOffset < 0) {
-            ISOException.throwIt(SW_WRONG_DATA);
-        }
-
-        byte currentGameCount = tempBuffer[(short) (gamesOffset + 1)];
-        
-        // Build new game list (allow duplicates for multiple play times)
-        byte[] newGameList = new byte[MAX_GAMES];
-        byte newGameCount = 0;
-        
-        // Copy existing games
-        short gamesDataOffset = (short) (gamesOffset + 2);
-        for (byte i = 0; i < currentGameCount; i++) {
-            newGameList[newGameCount++] = tempBuffer[(short) (gamesDataOffset + i)];
-        }
-        
-        // Add new games - allow duplicates for multiple play times
+        // Add one play per listed game (a game listed twice gets two plays)
+        // Nothing is persisted if a counter does not fit, the record is only saved below
         for (byte i = 0; i < numGames; i++) {
-            if (newGameCount < MAX_GAMES) {
-                newGameList[newGameCount++] = gamesToAdd[i];
+            if (!addGamePlays(buffer[(short) (gamesToAddOffset + i)], (short) 1)) {
+                ISOException.throwIt(SW_NOT_ENOUGH_MEMORY);
             }
         }
 
-        // Rebuild TLV with updated games (this prevents overwriting other tags)
-        rebuildTLVWithUpdatedField(tempBuffer, TAG_BOUGHT_GAMES, newGameList, (short) 0, newGameCount);
-
         // Encrypt and save
         encryptUserData(tempBuffer);
     }
@@ -821,20 +776,91 @@ public class Entertainment extends Applet {
         // Decrypt user data
         decryptUserData(tempBuffer);
 
-        // Find and return requested field
-        short offset = 0;
-        short fieldOffset = findTag(tempBuffer, fieldSelector);
-
-        if (fieldOffset < 0) {
+        // Return requested field (selector is the field's TLV tag)
+        short fieldLen = readField(fieldSelector, buffer, (short) 0);
+        if (fieldLen < 0) {
             ISOException.throwIt(SW_WRONG_DATA);
         }
 
-        byte fieldLen = tempBuffer[(short) (fieldOffset + 1)];
-        Util.arrayCopy(tempBuffer, (short) (fieldOffset + 2), buffer, (short) 0, fieldLen);
-
         apdu.setOutgoingAndSend((short) 0, fieldLen);
     }
 
+    /**
+     * Return the whole profile as TLV in one response (one decrypt instead of one per field)
+     */
+    private void processReadUserProfile(APDU apdu) {
+        if (!sessionAuth) {
+            ISOException.throwIt(SW_PIN_VERIFICATION_REQUIRED);
+        }
+
+        byte[] buffer = apdu.getBuffer();
+
+        // Decrypt user data
+        decryptUserData(tempBuffer);
+
+        // Serialize the fixed record as TLV, the format the host already parses
+        short len = appendFieldTLV(TAG_NAME, buffer, (short) 0);
+        len = appendFieldTLV(TAG_GENDER, buffer, len);
+        len = appendFieldTLV(TAG_COINS, buffer, len);
+        len = appendFieldTLV(TAG_BOUGHT_GAMES, buffer, len);
+        len = appendFieldTLV(TAG_AGE, buffer, len);
+
+        apdu.setOutgoingAndSend((short) 0, len);
+    }
+
+    /**
+     * Return unacknowledged journal entries, oldest first:
+     * [LAST_SEQ(4)] [ACKED_SEQ(2)] [COUNT(1)] [ENTRY(8)]...
+     * LAST_SEQ is the full 32-bit sequence number; ACKED_SEQ and the entry SEQ fields are its low
+     * 16 bits, unambiguous because at most 31 entries are outstanding.
+     * With P1 = 0x01 the data field [ACK_SEQ(2)] first acknowledges entries up to ACK_SEQ,
+     * so the host can confirm its previous upload and read new entries in one command.
+     */
+    private void processReadJournal(APDU apdu) {
+        if (!sessionAuth && !adminSessionAuth) {
+            ISOException.throwIt(SW_PIN_VERIFICATION_REQUIRED);
+        }
+
+        byte[] buffer = apdu.getBuffer();
+
+        if (buffer[ISO7816.OFFSET_P1] == (byte) 0x01) {
+            apdu.setIncomingAndReceive();
+            short ackSeq = Util.getShort(buffer, ISO7816.OFFSET_CDATA);
+            short ackCount = (short) (ackSeq - journalAckedSeq);
+            if (ackCount < 0 || ackCount > (short) (journalSeq - journalAckedSeq)) {
+                ISOException.throwIt(SW_WRONG_DATA);
+            }
+            journalAckedSeq = ackSeq;
+        }
+
+        // Entries older than the ring were overwritten, the host sees them as a sequence gap
+        short count = (short) (journalSeq - journalAckedSeq);
+        if (count < 0 || count > JOURNAL_ENTRIES) {
+            count = JOURNAL_ENTRIES;
+        }
+
+        Util.setShort(buffer, (short) 0, journalSeqHigh);
+        Util.setShort(buffer, (short) 2, journalSeq);
+        Util.setShort(buffer, (short) 4, journalAckedSeq);
+        buffer[6] = (byte) count;
+
+        short slot = (short) (journalHead - count);
+        if (slot < 0) {
+            slot += JOURNAL_ENTRIES;
+        }
+        short outOffset = 7;
+        for (short i = 0; i < count; i++) {
+            Util.arrayCopyNonAtomic(journal, (short) (slot * JOURNAL_ENTRY_SIZE), buffer, outOffset, JOURNAL_ENTRY_SIZE);
+            outOffset += JOURNAL_ENTRY_SIZE;
+            slot++;
+            if (slot == JOURNAL_ENTRIES) {
+                slot = 0;
+            }
+        }
+
+        apdu.setOutgoingAndSend((short) 0, outOffset);
+    }
+
     private void processWriteUserDataBasic(APDU apdu) {
         if (!sessionAuth) {
             ISOException.throwIt(SW_PIN_VERIFICATION_REQUIRED);
@@ -847,68 +873,225 @@ public class Entertainment extends Applet {
         // Decrypt current user data
         decryptUserData(tempBuffer);
 
-        // Parse input data and update fields
-        // We need to rebuild TLV structure because field sizes can change
+        // Parse input TLV and write each field at its fixed offset
+        // Balance and record are committed together
+        JCSystem.beginTransaction();
         short inOffset = ISO7816.OFFSET_CDATA;
         while (inOffset < (short) (ISO7816.OFFSET_CDATA + lc)) {
             byte tag = buffer[inOffset++];
-            byte len = buffer[inOffset++];
+            short len = (short) (buffer[inOffset++] & 0xFF);
+            writeField(tag, buffer, inOffset, len);
+            inOffset += len;
+        }
 
-            // Find and update the field value in tempBuffer
-            short fieldOffset = findTag(tempBuffer, tag);
-            if (fieldOffset >= 0) {
-                byte oldLen = tempBuffer[(short) (fieldOffset + 1)];
-                
-                // If length changed, we need to rebuild the TLV structure
-                if (oldLen != len) {
-                    rebuildTLVWithUpdatedField(tempBuffer, tag, buffer, inOffset, len);
-                    inOffset += len;
-                    continue;
+        // Encrypt and save
+        encryptUserData(tempBuffer);
+        JCSystem.commitTransaction();
+    }
+
+    /**
+     * Copy a field value of the decrypted record (tempBuffer) to out
+     * @return value length, or -1 for an unknown tag
+     */
+    private short readField(byte tag, byte[] out, short outOffset) {
+        switch (tag) {
+            case TAG_NAME:
+                short nameLen = (short) (tempBuffer[REC_NAME_LEN] & 0xFF);
+                Util.arrayCopyNonAtomic(tempBuffer, REC_NAME, out, outOffset, nameLen);
+                return nameLen;
+            case TAG_GENDER:
+                out[outOffset] = tempBuffer[REC_GENDER];
+                return 1;
+            case TAG_COINS:
+                Util.setShort(out, outOffset, readBalance());
+                return 2;
+            case TAG_BOUGHT_GAMES:
+                // [GAME_ID(1)][REMAINING_PLAYS(1)] per game
+                short gamesLen = (short) ((tempBuffer[REC_GAMES_COUNT] & 0xFF) * 2);
+                Util.arrayCopyNonAtomic(tempBuffer, REC_GAMES, out, outOffset, gamesLen);
+                return gamesLen;
+            case TAG_AGE:
+                out[outOffset] = tempBuffer[REC_AGE];
+                return 1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Append [tag][len][value] of a record field to out
+     * @return offset after the appended TLV
+     */
+    private short appendFieldTLV(byte tag, byte[] out, short outOffset) {
+        short len = readField(tag, out, (short) (outOffset + 2));
+        out[outOffset] = tag;
+        out[(short) (outOffset + 1)] = (byte) len;
+        return (short) (outOffset + 2 + len);
+    }
+
+    /**
+     * Write a field value into the decrypted record (tempBuffer), unknown tags are ignored
+     */
+    private void writeField(byte tag, byte[] src, short srcOffset, short len) {
+        switch (tag) {
+            case TAG_NAME:
+                if (len > MAX_NAME_LENGTH) {
+                    ISOException.throwIt(SW_WRONG_DATA);
                 }
-                
-                // Same length - can update in place
-                Util.arrayCopy(buffer, inOffset, tempBuffer, (short) (fieldOffset + 2), len);
+                Util.arrayFillNonAtomic(tempBuffer, REC_NAME, MAX_NAME_LENGTH, (byte) 0);
+                Util.arrayCopyNonAtomic(src, srcOffset, tempBuffer, REC_NAME, len);
+                tempBuffer[REC_NAME_LEN] = (byte) len;
+                break;
+            case TAG_GENDER:
+            case TAG_AGE:
+                if (len != 1) {
+                    ISOException.throwIt(SW_WRONG_DATA);
+                }
+                tempBuffer[tag == TAG_GENDER ? REC_GENDER : REC_AGE] = src[srcOffset];
+                break;
+            case TAG_COINS:
+                if (len != 2) {
+                    ISOException.throwIt(SW_WRONG_DATA);
+                }
+                writeBalance(Util.getShort(src, srcOffset));
+                break;
+            case TAG_BOUGHT_GAMES:
+                if ((len & 1) != 0 || len > (short) (MAX_GAME_SLOTS * 2)) {
+                    ISOException.throwIt(SW_WRONG_DATA);
+                }
+                Util.arrayFillNonAtomic(tempBuffer, REC_GAMES, (short) (MAX_GAME_SLOTS * 2), (byte) 0);
+                Util.arrayCopyNonAtomic(src, srcOffset, tempBuffer, REC_GAMES, len);
+                tempBuffer[REC_GAMES_COUNT] = (byte) (len / 2);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Find the counter slot of a game in the decrypted record (tempBuffer)
+     * @return record offset of the [GAME_ID][REMAINING_PLAYS] pair, or -1
+     */
+    private short findGameSlot(byte gameID) {
+        short end = (short) (REC_GAMES + (short) ((tempBuffer[REC_GAMES_COUNT] & 0xFF) * 2));
+        for (short slot = REC_GAMES; slot < end; slot += 2) {
+            if (tempBuffer[slot] == gameID) {
+                return slot;
             }
+        }
+        return -1;
+    }
 
-            inOffset += len;
+    /**
+     * Add plays to a game counter, taking a new slot if needed
+     * @return false if the slot table is full or the counter would overflow
+     */
+    private boolean addGamePlays(byte gameID, short plays) {
+        short slot = findGameSlot(gameID);
+        if (slot < 0) {
+            short slotCount = (short) (tempBuffer[REC_GAMES_COUNT] & 0xFF);
+            if (slotCount >= MAX_GAME_SLOTS) {
+                return false;
+            }
+            slot = (short) (REC_GAMES + (short) (slotCount * 2));
+            tempBuffer[slot] = gameID;
+            tempBuffer[(short) (slot + 1)] = 0;
+            tempBuffer[REC_GAMES_COUNT] = (byte) (slotCount + 1);
         }
 
-        // Encrypt and save
-        encryptUserData(tempBuffer);
+        short remaining = (short) ((tempBuffer[(short) (slot + 1)] & 0xFF) + plays);
+        if (remaining > MAX_PLAYS_PER_GAME) {
+            return false;
+        }
+        tempBuffer[(short) (slot + 1)] = (byte) remaining;
+        return true;
     }
-    
-    private void rebuildTLVWithUpdatedField(byte[] tlvData, byte targetTag, byte[] newValue, short valueOffset, byte valueLen) {
-        // Create a temporary buffer to rebuild TLV
-        byte[] newTLV = new byte[160];
-        short readOffset = 0;
-        short writeOffset = 0;
-        
-        // Copy all fields, replacing the target field with new value
-        while (readOffset < 160 && tlvData[readOffset] != 0) {
-            byte tag = tlvData[readOffset];
-            byte len = tlvData[(short) (readOffset + 1)];
-            
-            if (tag == targetTag) {
-                // Write updated field
-                newTLV[writeOffset++] = tag;
-                newTLV[writeOffset++] = valueLen;
-                Util.arrayCopy(newValue, valueOffset, newTLV, writeOffset, valueLen);
-                writeOffset += valueLen;
-                
-                // Skip old field
-                readOffset += 2 + len;
-            } else {
-                // Copy existing field as-is
-                newTLV[writeOffset++] = tag;
-                newTLV[writeOffset++] = len;
-                Util.arrayCopy(tlvData, (short) (readOffset + 2), newTLV, writeOffset, len);
-                writeOffset += len;
-                readOffset += 2 + len;
+
+    /**
+     * Free a counter slot by moving the last slot into it
+     */
+    private void removeGameSlot(short slot) {
+        short slotCount = (short) (tempBuffer[REC_GAMES_COUNT] & 0xFF);
+        short last = (short) (REC_GAMES + (short) ((short) (slotCount - 1) * 2));
+        if (slot != last) {
+            Util.arrayCopyNonAtomic(tempBuffer, last, tempBuffer, slot, (short) 2);
+        }
+        tempBuffer[last] = 0;
+        tempBuffer[(short) (last + 1)] = 0;
+        tempBuffer[REC_GAMES_COUNT] = (byte) (slotCount - 1);
+    }
+
+    /**
+     * Upgrade an older user record to the current layout (no-op if already current):
+     * legacy TLV records get per-game counters. Requires the session key; works in tempBuffer only.
+     */
+    private void migrateUserRecord() {
+        decryptUserData(tempBuffer);
+        if (tempBuffer[REC_VERSION] == RECORD_VERSION) {
+            return;
+        }
+
+        // Legacy TLV record, converted in tempBuffer: fixed fields go to locals, the game list
+        // past the record (MIGRATE_GAMES) and the name straight to REC_NAME
+        byte gender = 0;
+        byte age = 0;
+        short coins = 0;
+        short nameLen = 0;
+        short nameOffset = 0;
+        short gameCount = 0;
+
+        short fieldOffset = findTag(tempBuffer, TAG_GENDER);
+        if (fieldOffset >= 0) {
+            gender = tempBuffer[(short) (fieldOffset + 2)];
+        }
+        fieldOffset = findTag(tempBuffer, TAG_AGE);
+        if (fieldOffset >= 0) {
+            age = tempBuffer[(short) (fieldOffset + 2)];
+        }
+        fieldOffset = findTag(tempBuffer, TAG_COINS);
+        if (fieldOffset >= 0) {
+            coins = Util.getShort(tempBuffer, (short) (fieldOffset + 2));
+        }
+        fieldOffset = findTag(tempBuffer, TAG_BOUGHT_GAMES);
+        if (fieldOffset >= 0) {
+            gameCount = (short) (tempBuffer[(short) (fieldOffset + 1)] & 0xFF);
+            if (gameCount > MAX_GAMES) {
+                gameCount = MAX_GAMES;
             }
+            Util.arrayCopyNonAtomic(tempBuffer, (short) (fieldOffset + 2), tempBuffer, MIGRATE_GAMES, gameCount);
         }
-        
-        // Copy rebuilt TLV back to original buffer
-        Util.arrayCopy(newTLV, (short) 0, tlvData, (short) 0, (short) 160);
+        fieldOffset = findTag(tempBuffer, TAG_NAME);
+        if (fieldOffset >= 0) {
+            nameLen = (short) (tempBuffer[(short) (fieldOffset + 1)] & 0xFF);
+            if (nameLen > MAX_NAME_LENGTH) {
+                nameLen = MAX_NAME_LENGTH;
+            }
+            nameOffset = (short) (fieldOffset + 2);
+        }
+
+        // Write current layout; arrayCopy handles the overlapping name move
+        if (nameLen > 0) {
+            Util.arrayCopyNonAtomic(tempBuffer, nameOffset, tempBuffer, REC_NAME, nameLen);
+        }
+        Util.arrayFillNonAtomic(tempBuffer, (short) 0, REC_NAME, (byte) 0);
+        Util.arrayFillNonAtomic(tempBuffer, (short) (REC_NAME + nameLen),
+            (short) (USER_RECORD_SIZE - REC_NAME - nameLen), (byte) 0);
+        tempBuffer[REC_VERSION] = RECORD_VERSION;
+        tempBuffer[REC_GENDER] = gender;
+        tempBuffer[REC_AGE] = age;
+        tempBuffer[REC_NAME_LEN] = (byte) nameLen;
+
+        // Duplicate game IDs become play counts; a list holds at most MAX_GAMES entries,
+        // only IDs past MAX_GAME_SLOTS distinct games would be dropped
+        for (short i = 0; i < gameCount; i++) {
+            addGamePlays(tempBuffer[(short) (MIGRATE_GAMES + i)], (short) 1);
+        }
+        Util.arrayFillNonAtomic(tempBuffer, MIGRATE_GAMES, MAX_GAMES, (byte) 0);
+
+        JCSystem.beginTransaction();
+        writeBalance(coins);
+        encryptUserData(tempBuffer);
+        JCSystem.commitTransaction();
     }
 
     /**
@@ -966,16 +1149,27 @@ public class Entertainment extends Applet {
         }
 
         byte[] buffer = apdu.getBuffer();
-        apdu.setIncomingAndReceive();
+        // Data field may be extended (up to 32767 bytes), only the first part is in the buffer
+        short received = apdu.setIncomingAndReceive();
+        short incomingLength = apdu.getIncomingLength();
+        short offset = apdu.getOffsetCdata();
+
+        if (received < 3) {
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        }
 
-        short offset = ISO7816.OFFSET_CDATA;
         short totalImageSize = Util.getShort(buffer, offset);
         offset += 2;
 
-        if (totalImageSize > MAX_IMAGE_SIZE) {
+        if (totalImageSize > MAX_IMAGE_DATA_SIZE) {
             ISOException.throwIt(SW_NOT_ENOUGH_MEMORY);
         }
 
+        short chunkLen = (short) (incomingLength - 3);
+        if (chunkLen > totalImageSize) {
+            ISOException.throwIt(SW_WRONG_DATA);
+        }
+
         imageType = buffer[offset++];
         actualImageSize = totalImageSize;
         this.totalImageSize = totalImageSize;
@@ -986,14 +1180,14 @@ public class Entertainment extends Applet {
         randomGen.generateData(imageIV, (short) 0, (short) 16);
 
         // Initialize cipher ONCE for entire image encryption session
-        AESKey aesKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (AES_KEY_SIZE * 8), false);
-        aesKey.setKey(masterKey, (short) 0);
-        aesCipher.init(aesKey, Cipher.MODE_ENCRYPT, imageIV, (short) 0, (short) 16);
-        aesKey.clearKey();
-
-        // Get first chunk and encrypt it
-        short chunkLen = (short) ((buffer[ISO7816.OFFSET_LC] & 0xFF) - 3);
-        encryptImageChunk(buffer, offset, chunkLen);
+        aesCipher.init(sessionKey, Cipher.MODE_ENCRYPT, imageIV, (short) 0, (short) 16);
+
+        // Encrypt first chunk (header already consumed), then the rest of the data field
+        encryptImageChunk(buffer, offset, (short) (received - 3));
+        receiveImageData(apdu, (short) (chunkLen - (short) (received - 3)));
+
+        // Whole image may fit in a single extended APDU
+        finishImageIfComplete(chunkLen);
     }
 
     private void processWriteImageContinue(APDU apdu) {
@@ -1002,81 +1196,76 @@ public class Entertainment extends Applet {
         }
 
         byte[] buffer = apdu.getBuffer();
-        apdu.setIncomingAndReceive();
+        short received = apdu.setIncomingAndReceive();
+        short incomingLength = apdu.getIncomingLength();
+        short offset = apdu.getOffsetCdata();
+
+        if (received < 2) {
+            ISOException.throwIt(ISO7816.SW_WRONG_LENGTH);
+        }
 
-        short offset = ISO7816.OFFSET_CDATA;
         short imageOffset = Util.getShort(buffer, offset);
         offset += 2;
 
-        short chunkLen = (short) ((buffer[ISO7816.OFFSET_LC] & 0xFF) - 2);
+        short chunkLen = (short) (incomingLength - 2);
 
-        if ((short) (currentWriteOffset + chunkLen + tempChunkLen) > MAX_IMAGE_SIZE) {
+        // Compare against the plaintext space left (the padding block still has to fit):
+        // with extended APDUs the sum can overflow a short
+        if (chunkLen > (short) (MAX_IMAGE_DATA_SIZE - currentWriteOffset - tempChunkLen)) {
             ISOException.throwIt(SW_NOT_ENOUGH_MEMORY);
         }
 
         // Encrypt the chunk using helper method
-        encryptImageChunk(buffer, offset, chunkLen);
+        encryptImageChunk(buffer, offset, (short) (received - 2));
+        receiveImageData(apdu, (short) (chunkLen - (short) (received - 2)));
 
         // Auto-finalize khi đã nhận đủ data
-        short totalReceived = (short)(imageOffset + chunkLen);
-        if (totalReceived >= totalImageSize) {
-            // Apply PKCS#7 padding to the last block
-            byte paddingLen = (byte)(16 - tempChunkLen);
-            
-            // Fill padding bytes (each byte = padding length)
-            for (byte i = tempChunkLen; i < 16; i++) {
-                tempImageChunk[i] = paddingLen;
-            }
-
-            // DO NOT re-init cipher - use existing cipher state to maintain CBC chain
-            // Encrypt final padded block using doFinal to complete the encryption
-            aesCipher.doFinal(tempImageChunk, (short) 0, (short) 16, 
-                             imageBuffer, currentWriteOffset);
-            currentWriteOffset += 16;
+        finishImageIfComplete((short) (imageOffset + chunkLen));
+    }
 
-            // Set final sizes
-            encryptedImageSize = currentWriteOffset;
-            imageSize = encryptedImageSize;
+    /**
+     * Receive the remaining bytes of an extended APDU data field and encrypt them
+     */
+    private void receiveImageData(APDU apdu, short remaining) {
+        byte[] buffer = apdu.getBuffer();
+        short dataOffset = apdu.getOffsetCdata();
 
-            // Clear temp data
-            tempChunkLen = 0;
-            Util.arrayFillNonAtomic(tempImageChunk, (short) 0, (short) 16, (byte) 0);
+        while (remaining > 0) {
+            short len = apdu.receiveBytes(dataOffset);
+            encryptImageChunk(buffer, dataOffset, len);
+            remaining -= len;
         }
     }
 
     /**
-     * Helper method to decrypt image blocks from encrypted storage
-     * Returns the actual length of decrypted data (with padding removed if needed)
+     * Apply PKCS#7 padding and close the image once all bytes were received
      */
-    private short decryptImageBlocks(short startBlock, short endBlock, short requestedOffset, short requestedLength) {
-        // Decrypt needed blocks into tempBuffer
-        AESKey aesKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (AES_KEY_SIZE * 8), false);
-        aesKey.setKey(masterKey, (short) 0);
-        aesCipher.init(aesKey, Cipher.MODE_DECRYPT, imageIV, (short) 0, (short) 16);
-
-        short tempOffset = 0;
-        for (short blockIdx = startBlock; blockIdx <= endBlock; blockIdx++) {
-            short encryptedBlockOffset = (short)(blockIdx * 16);
-            aesCipher.update(imageBuffer, encryptedBlockOffset, (short) 16, 
-                           tempBuffer, tempOffset);
-            tempOffset += 16;
-        }
-
-        // Calculate the last block index of the entire image
-        short lastBlock = (short)((actualImageSize - 1) / 16);
+    private void finishImageIfComplete(short totalReceived) {
+        if (totalReceived < totalImageSize) {
+            return;
+        }
+
+        // Apply PKCS#7 padding to the last block
+        byte paddingLen = (byte)(16 - tempChunkLen);
         
-        // Only remove PKCS#7 padding if we decrypted the last block of the image
-        if (endBlock == lastBlock) {
-            // Get padding length from last byte of last decrypted block
-            byte paddingLen = tempBuffer[(short)(tempOffset - 1)];
-            // Adjust length to exclude padding
-            if (paddingLen > 0 && paddingLen <= 16) {
-                tempOffset -= paddingLen;
-            }
+        // Fill padding bytes (each byte = padding length)
+        for (byte i = tempChunkLen; i < 16; i++) {
+            tempImageChunk[i] = paddingLen;
         }
 
-        aesKey.clearKey();
-        return tempOffset;
+        // DO NOT re-init cipher - use existing cipher state to maintain CBC chain
+        // Encrypt final padded block using doFinal to complete the encryption
+        aesCipher.doFinal(tempImageChunk, (short) 0, (short) 16, 
+                         imageBuffer, currentWriteOffset);
+        currentWriteOffset += 16;
+
+        // Set final sizes
+        encryptedImageSize = currentWriteOffset;
+        imageSize = encryptedImageSize;
+
+        // Clear temp data
+        tempChunkLen = 0;
+        Util.arrayFillNonAtomic(tempImageChunk, (short) 0, (short) 16, (byte) 0);
     }
 
     private void processReadImage(APDU apdu) {
@@ -1087,34 +1276,60 @@ public class Entertainment extends Applet {
         byte[] buffer = apdu.getBuffer();
         apdu.setIncomingAndReceive();
 
-        short offset = ISO7816.OFFSET_CDATA;
+        short offset = apdu.getOffsetCdata();
         short requestedOffset = Util.getShort(buffer, offset);
         offset += 2;
         short requestedLength = Util.getShort(buffer, offset);
 
         // Validate request against actual (unencrypted) size
+        if (requestedOffset < 0 || requestedLength < 0 || requestedOffset > actualImageSize) {
+            ISOException.throwIt(SW_WRONG_DATA);
+        }
         if ((short) (requestedOffset + requestedLength) > actualImageSize) {
             requestedLength = (short) (actualImageSize - requestedOffset);
         }
 
-        // Determine which encrypted blocks we need to decrypt
-        short startBlock = (short)(requestedOffset / 16);
-        short endBlock = (short)((requestedOffset + requestedLength - 1) / 16);
-        
-        // Decrypt blocks using helper method
-        short decryptedDataLen = decryptImageBlocks(startBlock, endBlock, requestedOffset, requestedLength);
+        // Le may be extended, response is streamed from tempBuffer in 256-byte pieces
+        short le = apdu.setOutgoing();
+        if (requestedLength > le) {
+            requestedLength = le;
+        }
+        apdu.setOutgoingLength(requestedLength);
+        if (requestedLength == 0) {
+            return;
+        }
 
-        // Calculate offset within decrypted data
-        short offsetInDecrypted = (short)(requestedOffset % 16);
-        
-        // Copy requested portion to output
-        short actualLength = requestedLength;
-        if ((short)(offsetInDecrypted + actualLength) > decryptedDataLen) {
-            actualLength = (short)(decryptedDataLen - offsetInDecrypted);
+        short block = (short)(requestedOffset / 16);
+        short lastBlock = (short)((short)(requestedOffset + requestedLength - 1) / 16);
+        short skip = (short)(requestedOffset % 16);
+        short maxBlocks = (short)(tempBuffer.length / 16);
+
+        // CBC: IV of a block is the previous ciphertext block
+        if (block == 0) {
+            aesCipher.init(sessionKey, Cipher.MODE_DECRYPT, imageIV, (short) 0, (short) 16);
+        } else {
+            aesCipher.init(sessionKey, Cipher.MODE_DECRYPT, imageBuffer, (short)((short)(block - 1) * 16), (short) 16);
+        }
+
+        short sent = 0;
+        while (sent < requestedLength) {
+            short blocks = (short)(lastBlock - block + 1);
+            if (blocks > maxBlocks) {
+                blocks = maxBlocks;
+            }
+            short decryptedLen = aesCipher.update(imageBuffer, (short)(block * 16), (short)(blocks * 16),
+                                                  tempBuffer, (short) 0);
+
+            short len = (short)(decryptedLen - skip);
+            if (len > (short)(requestedLength - sent)) {
+                len = (short)(requestedLength - sent);
+            }
+            apdu.sendBytesLong(tempBuffer, skip, len);
+
+            sent += len;
+            block += blocks;
+            skip = 0;
         }
-        
-        Util.arrayCopy(tempBuffer, offsetInDecrypted, buffer, (short) 0, actualLength);
-        apdu.setOutgoingAndSend((short) 0, actualLength);
     }
 
     private void processReadUserId(APDU apdu) {
@@ -1128,6 +1343,29 @@ public class Entertainment extends Applet {
         apdu.setOutgoingAndSend((short) 0, (short) 16);
     }
 
+    /**
+     * Report free memory: [PERSISTENT(2)] [TRANSIENT_RESET(2)] [TRANSIENT_DESELECT(2)]
+     * Values are capped at 32767 by JCSystem.getAvailableMemory
+     */
+    private void processGetMemoryInfo(APDU apdu) {
+        byte[] buffer = apdu.getBuffer();
+        Util.setShort(buffer, (short) 0, JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_PERSISTENT));
+        Util.setShort(buffer, (short) 2, JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_TRANSIENT_RESET));
+        Util.setShort(buffer, (short) 4, JCSystem.getAvailableMemory(JCSystem.MEMORY_TYPE_TRANSIENT_DESELECT));
+        apdu.setOutgoingAndSend((short) 0, (short) 6);
+    }
+
+    /**
+     * Report user data EEPROM writes: [LAST_COMMAND(2)] [TOTAL_SINCE_SELECT(2)] in bytes
+     * Counts user record and balance stores, used to benchmark update paths
+     */
+    private void processGetWriteStats(APDU apdu) {
+        byte[] buffer = apdu.getBuffer();
+        Util.setShort(buffer, (short) 0, writeStats[0]);
+        Util.setShort(buffer, (short) 2, writeStats[1]);
+        apdu.setOutgoingAndSend((short) 0, (short) 4);
+    }
+
     private void processResetCard(APDU apdu) {
         // Require admin authentication
         if (!adminSessionAuth) {
@@ -1141,10 +1379,13 @@ public class Entertainment extends Applet {
         Util.arrayFillNonAtomic(adminWrappedMasterKey, (short) 0, (short) adminWrappedMasterKey.length, (byte) 0);
         Util.arrayFillNonAtomic(masterKeyHash, (short) 0, HASH_SIZE, (byte) 0);
         Util.arrayFillNonAtomic(encryptedUserData, (short) 0, MAX_ENCRYPTED_DATA_SIZE, (byte) 0);
+        Util.arrayFillNonAtomic(encryptedBalance, (short) 0, BALANCE_SIZE, (byte) 0);
+        Util.arrayFillNonAtomic(journal, (short) 0, (short) journal.length, (byte) 0);
         Util.arrayFillNonAtomic(imageBuffer, (short) 0, MAX_IMAGE_SIZE, (byte) 0);
         Util.arrayFillNonAtomic(imageIV, (short) 0, (short) 16, (byte) 0);
         Util.arrayFillNonAtomic(tempImageChunk, (short) 0, (short) 16, (byte) 0);
-        Util.arrayFillNonAtomic(masterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
+        clearScratch();
+        clearSessionKey();
 
         // Clear RSA keys
         if (rsaPrivateKey != null) {
@@ -1168,121 +1409,209 @@ public class Entertainment extends Applet {
         tempChunkLen = 0;
         currentWriteOffset = 0;
         totalImageSize = 0;
+        journalSeq = 0;
+        journalSeqHigh = 0;
+        journalAckedSeq = 0;
+        journalHead = 0;
     }
 
     // Helper methods
 
     private void initializeUserData() {
-        // Initialize TLV structure: TAG | LENGTH | VALUE
-        // TLV must be compact - no reserved space, length must match actual value size
-        short offset = 0;
+        // Fixed-offset record: empty name, no games, gender/age = 0
+        Util.arrayFillNonAtomic(tempBuffer, (short) 0, USER_RECORD_SIZE, (byte) 0);
+        tempBuffer[REC_VERSION] = RECORD_VERSION;
 
-        // TAG_NAME - empty initially
-        tempBuffer[offset++] = TAG_NAME;
-        tempBuffer[offset++] = 0; // Empty name, no value bytes
+        // Encrypt and save with zero balance
+        JCSystem.beginTransaction();
+        writeBalance((short) 0);
+        encryptUserData(tempBuffer);
+        JCSystem.commitTransaction();
+    }
 
-        // TAG_GENDER
-        tempBuffer[offset++] = TAG_GENDER;
-        tempBuffer[offset++] = 1;
-        tempBuffer[offset++] = 0; // Default gender
 
-        // TAG_COINS
-        tempBuffer[offset++] = TAG_COINS;
-        tempBuffer[offset++] = 2;
-        Util.setShort(tempBuffer, offset, (short)0); // Initial coins = 0
-        offset += 2;
 
-        // TAG_BOUGHT_GAMES - empty initially
-        tempBuffer[offset++] = TAG_BOUGHT_GAMES;
-        tempBuffer[offset++] = 0; // No games initially, no value bytes
+    /**
+     * Derive a 16-byte KEK from PIN + salt into scratch
+     */
+    private void deriveKek(byte[] pin, short pinOffset, short pinLen, short kekOffset) {
+        if (pbkdf2 != null) {
+            pbkdf2.doFinal(pin, pinOffset, pinLen, salt, (short) 0, SALT_SIZE, PBKDF2_ITERATIONS, scratch, kekOffset, AES_KEY_SIZE);
+        } else {
+            // Fallback: simple hash-based KDF
+            deriveKeySimple(pin, pinOffset, pinLen, scratch, kekOffset);
+        }
+    }
 
-        // TAG_AGE
-        tempBuffer[offset++] = TAG_AGE;
-        tempBuffer[offset++] = 1;
-        tempBuffer[offset++] = 0; // Default age = 0
+    /**
+     * Compare SHA-1 of a candidate master key with the stored hash (uses SCRATCH_HASH)
+     */
+    private boolean checkMasterKeyHash(byte[] key, short keyOffset) {
+        Util.arrayFillNonAtomic(scratch, SCRATCH_HASH, HASH_SIZE, (byte) 0);
+        if (sha1 != null) {
+            sha1.reset();
+            sha1.doFinal(key, keyOffset, AES_KEY_SIZE, scratch, SCRATCH_HASH);
+        }
+        return Util.arrayCompare(scratch, SCRATCH_HASH, masterKeyHash, (short) 0, HASH_SIZE) == 0;
+    }
 
-        // Encrypt and save
-        encryptUserData(tempBuffer);
+    /**
+     * Drop the session master key (deselect, reset, PIN locked)
+     */
+    private void clearSessionKey() {
+        sessionKey.clearKey();
+        Util.arrayFillNonAtomic(masterKey, (short) 0, AES_KEY_SIZE, (byte) 0);
     }
 
+    /**
+     * Wipe all per-command working memory (KEKs, temporary keys, PINs)
+     */
+    private void clearScratch() {
+        Util.arrayFillNonAtomic(scratch, (short) 0, SCRATCH_SIZE, (byte) 0);
+    }
 
+    private void wrapKey(byte[] plainKey, short kekOffset, byte[] wrappedKey) {
+        wrapKey(plainKey, (short) 0, kekOffset, wrappedKey);
+    }
 
-    private void wrapKey(byte[] plainKey, short keyLen, byte[] kek, byte[] wrappedKey) {
+    private void wrapKey(byte[] plainKey, short plainOffset, short kekOffset, byte[] wrappedKey) {
         // Simplified AES key wrap using AES-CBC
         // For production, use proper AES Key Wrap (RFC 3394)
-        AESKey aesKek = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (kek.length * 8), false);
-        aesKek.setKey(kek, (short) 0);
+        kekKey.setKey(scratch, kekOffset);
 
-        // Generate IV
-        byte[] iv = new byte[16];
-        randomGen.generateData(iv, (short) 0, (short) 16);
-
-        // Store IV at the beginning
-        Util.arrayCopy(iv, (short) 0, wrappedKey, (short) 0, (short) 16);
+        // Generate IV directly at the beginning of the wrapped key
+        randomGen.generateData(wrappedKey, (short) 0, (short) 16);
 
         // Encrypt key
-        aesCipher.init(aesKek, Cipher.MODE_ENCRYPT, iv, (short) 0, (short) 16);
-        aesCipher.doFinal(plainKey, (short) 0, keyLen, wrappedKey, (short) 16);
+        aesCipher.init(kekKey, Cipher.MODE_ENCRYPT, wrappedKey, (short) 0, (short) 16);
+        aesCipher.doFinal(plainKey, plainOffset, AES_KEY_SIZE, wrappedKey, (short) 16);
 
-        aesKek.clearKey();
+        kekKey.clearKey();
     }
 
-    private boolean unwrapKey(byte[] wrappedKey, byte[] kek, byte[] plainKey) {
+    private boolean unwrapKey(byte[] wrappedKey, short kekOffset, byte[] plainKey, short plainOffset) {
         try {
-            AESKey aesKek = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (kek.length * 8), false);
-            aesKek.setKey(kek, (short) 0);
-
-            // Extract IV
-            byte[] iv = new byte[16];
-            Util.arrayCopy(wrappedKey, (short) 0, iv, (short) 0, (short) 16);
+            kekKey.setKey(scratch, kekOffset);
 
-            // Decrypt key
-            aesCipher.init(aesKek, Cipher.MODE_DECRYPT, iv, (short) 0, (short) 16);
-            aesCipher.doFinal(wrappedKey, (short) 16, AES_KEY_SIZE, plainKey, (short) 0);
+            // Decrypt key (IV is stored in the first 16 bytes)
+            aesCipher.init(kekKey, Cipher.MODE_DECRYPT, wrappedKey, (short) 0, (short) 16);
+            aesCipher.doFinal(wrappedKey, (short) 16, AES_KEY_SIZE, plainKey, plainOffset);
 
-            aesKek.clearKey();
+            kekKey.clearKey();
             return true;
         } catch (Exception e) {
+            kekKey.clearKey();
             return false;
         }
     }
 
+    /**
+     * Encrypt the record in place (plainData holds ciphertext afterwards) and store IV + ciphertext atomically
+     */
     private void encryptUserData(byte[] plainData) {
-        // Encrypt user data with master key
-        AESKey aesKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (AES_KEY_SIZE * 8), false);
-        aesKey.setKey(masterKey, (short) 0);
-
-        // Generate IV
-        byte[] iv = new byte[16];
-        randomGen.generateData(iv, (short) 0, (short) 16);
+        // Encrypt user data with master key (session key loaded at PIN verify)
+        randomGen.generateData(scratch, SCRATCH_IV, (short) 16);
+        aesCipher.init(sessionKey, Cipher.MODE_ENCRYPT, scratch, SCRATCH_IV, (short) 16);
+        aesCipher.doFinal(plainData, (short) 0, USER_RECORD_SIZE, plainData, (short) 0);
+
+        boolean ownTransaction = beginWrite();
+        Util.arrayCopy(scratch, SCRATCH_IV, encryptedUserData, (short) 0, (short) 16);
+        Util.arrayCopy(plainData, (short) 0, encryptedUserData, (short) 16, USER_RECORD_SIZE);
+        endWrite(ownTransaction, (short) (16 + USER_RECORD_SIZE));
+    }
 
-        // Store IV at the beginning
-        Util.arrayCopy(iv, (short) 0, encryptedUserData, (short) 0, (short) 16);
+    private void decryptUserData(byte[] plainData) {
+        // Decrypt user data with master key (session key loaded at PIN verify)
 
-        // Pad plaintext to block size
-        short dataLen = (short) 160; // Fixed size for user data
-        aesCipher.init(aesKey, Cipher.MODE_ENCRYPT, iv, (short) 0, (short) 16);
-        aesCipher.doFinal(plainData, (short) 0, dataLen, encryptedUserData, (short) 16);
+        // Decrypt (IV is stored in the first 16 bytes)
+        aesCipher.init(sessionKey, Cipher.MODE_DECRYPT, encryptedUserData, (short) 0, (short) 16);
+        aesCipher.doFinal(encryptedUserData, (short) 16, USER_RECORD_SIZE, plainData, (short) 0);
+    }
 
-        aesKey.clearKey();
+    /**
+     * Decrypt the balance block into scratch and check that it belongs to this card
+     * @return current coins
+     */
+    private short readBalance() {
+        aesCipher.init(sessionKey, Cipher.MODE_DECRYPT);
+        aesCipher.doFinal(encryptedBalance, (short) 0, BALANCE_SIZE, scratch, SCRATCH_BALANCE);
+        if (Util.arrayCompare(scratch, (short) (SCRATCH_BALANCE + BAL_CHECK), userID, (short) 0, BAL_CHECK_SIZE) != 0) {
+            ISOException.throwIt(ISO7816.SW_DATA_INVALID);
+        }
+        return Util.getShort(scratch, (short) (SCRATCH_BALANCE + BAL_COINS));
     }
 
-    private void decryptUserData(byte[] plainData) {
-        // Decrypt user data with master key
-        AESKey aesKey = (AESKey) KeyBuilder.buildKey(KeyBuilder.TYPE_AES, (short) (AES_KEY_SIZE * 8), false);
-        aesKey.setKey(masterKey, (short) 0);
+    /**
+     * Encrypt and store the balance block; only these 16 bytes are rewritten
+     */
+    private void writeBalance(short coins) {
+        Util.setShort(scratch, (short) (SCRATCH_BALANCE + BAL_COINS), coins);
+        randomGen.generateData(scratch, (short) (SCRATCH_BALANCE + BAL_NONCE), (short) 4);
+        Util.arrayCopyNonAtomic(userID, (short) 0, scratch, (short) (SCRATCH_BALANCE + BAL_CHECK), BAL_CHECK_SIZE);
+
+        // Single block, zero IV: the nonce makes every stored block different
+        aesCipher.init(sessionKey, Cipher.MODE_ENCRYPT);
+        aesCipher.doFinal(scratch, SCRATCH_BALANCE, BALANCE_SIZE, scratch, SCRATCH_BALANCE);
+
+        boolean ownTransaction = beginWrite();
+        Util.arrayCopy(scratch, SCRATCH_BALANCE, encryptedBalance, (short) 0, BALANCE_SIZE);
+        endWrite(ownTransaction, BALANCE_SIZE);
+        Util.arrayFillNonAtomic(scratch, SCRATCH_BALANCE, BALANCE_SIZE, (byte) 0);
+    }
 
-        // Extract IV
-        byte[] iv = new byte[16];
-        Util.arrayCopy(encryptedUserData, (short) 0, iv, (short) 0, (short) 16);
+    /**
+     * Append a debit/credit to the journal ring, overwriting the oldest entry when full.
+     * Call inside the transaction that updates the balance or record.
+     */
+    private void appendJournal(byte type, byte gameID, short amount, short balanceAfter) {
+        short seq = (short) (journalSeq + 1);
+        short offset = (short) (journalHead * JOURNAL_ENTRY_SIZE);
+
+        boolean ownTransaction = beginWrite();
+        Util.setShort(journal, offset, seq);
+        journal[(short) (offset + 2)] = type;
+        journal[(short) (offset + 3)] = gameID;
+        Util.setShort(journal, (short) (offset + 4), amount);
+        Util.setShort(journal, (short) (offset + 6), balanceAfter);
+        short written = (short) (JOURNAL_ENTRY_SIZE + 4);
+        if (seq == 0) {
+            journalSeqHigh = (short) (journalSeqHigh + 1);
+            written += 2;
+        }
+        journalSeq = seq;
+        journalHead = (short) (journalHead + 1);
+        if (journalHead == JOURNAL_ENTRIES) {
+            journalHead = 0;
+        }
+        endWrite(ownTransaction, written);
+    }
 
-        // Decrypt
-        aesCipher.init(aesKey, Cipher.MODE_DECRYPT, iv, (short) 0, (short) 16);
-        aesCipher.doFinal(encryptedUserData, (short) 16, (short) 160, plainData, (short) 0);
+    /**
+     * Open a transaction unless the caller already did
+     * @return true if this call opened it (pass to endWrite)
+     */
+    private boolean beginWrite() {
+        if (JCSystem.getTransactionDepth() != 0) {
+            return false;
+        }
+        JCSystem.beginTransaction();
+        return true;
+    }
 
-        aesKey.clearKey();
+    /**
+     * Commit a transaction opened by beginWrite and count the bytes written
+     */
+    private void endWrite(boolean ownTransaction, short bytesWritten) {
+        if (ownTransaction) {
+            JCSystem.commitTransaction();
+        }
+        writeStats[0] += bytesWritten;
+        writeStats[1] += bytesWritten;
     }
 
+    /**
+     * Locate a tag in a legacy TLV record (only used by migrateUserRecord)
+     */
     private short findTag(byte[] data, byte tag) {
         short offset = 0;
         while (offset < (short) 160) {
@@ -1298,50 +1627,27 @@ public class Entertainment extends Applet {
         return -1;
     }
 
-    private boolean checkGameAccess(byte[] userData, byte gameID, short requiredCoins) {
-        // Check if game is already bought
-        short gamesOffset = findTag(userData, TAG_BOUGHT_GAMES);
-        if (gamesOffset >= 0) {
-            byte gameCount = userData[(short) (gamesOffset + 1)];
-            for (byte i = 0; i < gameCount; i++) {
-                if (userData[(short) (gamesOffset + 2 + i)] == gameID) {
-                    return true; // Game already purchased
-                }
-            }
-        }
-
-        // Check coins
-        short coinsOffset = findTag(userData, TAG_COINS);
-        if (coinsOffset >= 0) {
-            short coins = Util.getShort(userData, (short) (coinsOffset + 2));
-            return coins >= requiredCoins;
-        }
-
-        return false;
-    }
-
-    private void deriveKeySimple(byte[] pin, short pinLen, byte[] salt, byte[] derivedKey) {
+    private void deriveKeySimple(byte[] pin, short pinOffset, short pinLen, byte[] derivedKey, short keyOffset) {
         // Simple hash-based KDF fallback when PBKDF2 not available
-        // Concatenate PIN + salt and hash multiple times
-        byte[] temp = new byte[(short)(pinLen + SALT_SIZE)];
-        Util.arrayCopy(pin, (short) 0, temp, (short) 0, pinLen);
-        Util.arrayCopy(salt, (short) 0, temp, pinLen, SALT_SIZE);
+        // Concatenate PIN + salt (in SCRATCH_KDF) and hash
+        Util.arrayCopyNonAtomic(pin, pinOffset, scratch, SCRATCH_KDF, pinLen);
+        Util.arrayCopyNonAtomic(salt, (short) 0, scratch, (short) (SCRATCH_KDF + pinLen), SALT_SIZE);
+        short tempLen = (short) (pinLen + SALT_SIZE);
         
         if (sha1 != null) {
             // SHA-1 produces 20 bytes, but we only need 16 bytes for AES-128
-            byte[] hashOutput = new byte[HASH_SIZE];
             sha1.reset();
-            sha1.doFinal(temp, (short) 0, (short)(pinLen + SALT_SIZE), hashOutput, (short) 0);
+            sha1.doFinal(scratch, SCRATCH_KDF, tempLen, scratch, SCRATCH_HASH);
             // Copy only the first 16 bytes for AES-128 key
-            Util.arrayCopy(hashOutput, (short) 0, derivedKey, (short) 0, AES_KEY_SIZE);
-            Util.arrayFillNonAtomic(hashOutput, (short) 0, HASH_SIZE, (byte) 0);
+            Util.arrayCopyNonAtomic(scratch, SCRATCH_HASH, derivedKey, keyOffset, AES_KEY_SIZE);
+            Util.arrayFillNonAtomic(scratch, SCRATCH_HASH, HASH_SIZE, (byte) 0);
         } else {
             // Last resort: just copy and pad
-            Util.arrayCopy(temp, (short) 0, derivedKey, (short) 0, 
-                          (short)((pinLen + SALT_SIZE) < AES_KEY_SIZE ? (pinLen + SALT_SIZE) : AES_KEY_SIZE));
+            Util.arrayCopyNonAtomic(scratch, SCRATCH_KDF, derivedKey, keyOffset, 
+                          (tempLen < AES_KEY_SIZE ? tempLen : AES_KEY_SIZE));
         }
         
-        Util.arrayFillNonAtomic(temp, (short) 0, (short)temp.length, (byte) 0);
+        Util.arrayFillNonAtomic(scratch, SCRATCH_KDF, tempLen, (byte) 0);
     }
 
 }
@@ -131,15 +131,23 @@ public class PBKDF2 {
                          byte[] salt, short saltOffset, short saltLength,
                          short iterations,
                          byte[] out, short outOffset) throws CryptoException {
+        return doFinal(password, passwordOffset, passwordLength, salt, saltOffset, saltLength,
+                       iterations, out, outOffset, (short)(out.length - outOffset));
+    }
+    
+    //same as above, but writes at most outLength bytes (lets callers derive into a shared scratch array)
+    public short doFinal(byte[] password, short passwordOffset, short passwordLength,
+                         byte[] salt, short saltOffset, short saltLength,
+                         short iterations,
+                         byte[] out, short outOffset, short outLength) throws CryptoException {
         
         if (SALT_LEN < saltLength)
             throw new CryptoException(CryptoException.ILLEGAL_USE);
         
-        // Calculate actual output length (minimum of mdlen and available space in out array)
+        // Calculate actual output length (minimum of mdlen and requested length)
         short outputLength = mdlen;
-        short availableSpace = (short)(out.length - outOffset);
-        if (availableSpace < mdlen) {
-            outputLength = availableSpace;
+        if (outLength < mdlen) {
+            outputLength = outLength;
         }
         
         // Validate output array has at least some space
@@ -1,7 +1,11 @@
 package com.example.desktopapp;
 
+import com.example.desktopapp.service.ApduMetrics;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -15,6 +19,7 @@ import java.io.IOException;
 public class AdminApp extends Application {
 
     private static Scene scene;
+    private static final ViewCache views = new ViewCache(AdminApp.class);
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -41,6 +46,7 @@ public class AdminApp extends Application {
      * @param fxml the FXML file name (e.g., "admin-menu.fxml")
      */
     public static void setRoot(String fxml) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
             scene.setRoot(loadFXML(fxml));
         } catch (IOException e) {
@@ -54,14 +60,9 @@ public class AdminApp extends Application {
      * @param controllerCallback callback to configure controller after loading
      */
     public static <T> void setRoot(String fxml, java.util.function.Consumer<T> controllerCallback) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
-            FXMLLoader fxmlLoader = new FXMLLoader(AdminApp.class.getResource(fxml));
-            Parent root = fxmlLoader.load();
-            T controller = fxmlLoader.getController();
-            if (controllerCallback != null && controller != null) {
-                controllerCallback.accept(controller);
-            }
-            scene.setRoot(root);
+            scene.setRoot(views.show(fxml, controllerCallback));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -74,8 +75,7 @@ public class AdminApp extends Application {
      * @throws IOException if loading fails
      */
     private static Parent loadFXML(String fxml) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(AdminApp.class.getResource(fxml));
-        return fxmlLoader.load();
+        return views.show(fxml);
     }
 
     /**
@@ -84,6 +84,7 @@ public class AdminApp extends Application {
      * @param title the new window title
      */
     public static void changeScene(String fxml, String title) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
             scene.setRoot(loadFXML(fxml));
             Stage stage = (Stage) scene.getWindow();
@@ -95,6 +96,22 @@ public class AdminApp extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        // Release card connections kept open between screens
+        CardSessionManager.getInstance().closeAll();
+        TaskExecutor.getInstance().shutdown();
+        if (AppConfig.APDU_METRICS_LOG) {
+            ApduMetrics.getInstance().print(System.out);
+        }
+        if (AppConfig.TASK_METRICS_LOG) {
+            TaskExecutor.getInstance().print(System.out);
+        }
+        if (AppConfig.VIEW_METRICS_LOG) {
+            views.print(System.out);
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,7 +1,12 @@
 package com.example.desktopapp;
 
+import com.example.desktopapp.service.ApduMetrics;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.CardTerminalMonitor;
+import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -15,6 +20,7 @@ import java.io.IOException;
 public class ClientApp extends Application {
 
     private static Scene scene;
+    private static final ViewCache views = new ViewCache(ClientApp.class);
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -34,6 +40,12 @@ public class ClientApp extends Application {
         stage.centerOnScreen();
         
         stage.show();
+
+        // The payment loop screens are parsed once, while the kiosk waits for the first guest
+        views.preload(AppConfig.CLIENT_PRELOAD_VIEWS);
+        
+        // Card taps drive the flow, no "check card" button press needed
+        CardTerminalMonitor.getInstance().start();
     }
 
     /**
@@ -41,6 +53,7 @@ public class ClientApp extends Application {
      * @param fxml the FXML file name (e.g., "game-selection.fxml")
      */
     public static void setRoot(String fxml) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
             scene.setRoot(loadFXML(fxml));
         } catch (IOException e) {
@@ -55,8 +68,24 @@ public class ClientApp extends Application {
      * @throws IOException if loading fails
      */
     private static Parent loadFXML(String fxml) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(ClientApp.class.getResource(fxml));
-        return fxmlLoader.load();
+        return views.show(fxml);
+    }
+
+    @Override
+    public void stop() {
+        // Release card connections kept open between screens
+        CardTerminalMonitor.getInstance().stop();
+        CardSessionManager.getInstance().closeAll();
+        TaskExecutor.getInstance().shutdown();
+        if (AppConfig.APDU_METRICS_LOG) {
+            ApduMetrics.getInstance().print(System.out);
+        }
+        if (AppConfig.TASK_METRICS_LOG) {
+            TaskExecutor.getInstance().print(System.out);
+        }
+        if (AppConfig.VIEW_METRICS_LOG) {
+            views.print(System.out);
+        }
     }
 
     public static void main(String[] args) {
@@ -1,7 +1,11 @@
 package com.example.desktopapp;
 
+import com.example.desktopapp.service.ApduMetrics;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -14,6 +18,7 @@ import java.io.IOException;
 public class MainApp extends Application {
 
     private static Scene scene;
+    private static final ViewCache views = new ViewCache(MainApp.class);
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -40,6 +45,7 @@ public class MainApp extends Application {
      * @param fxml the FXML file name (e.g., "main-menu.fxml")
      */
     public static void setRoot(String fxml) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
             scene.setRoot(loadFXML(fxml));
         } catch (IOException e) {
@@ -53,14 +59,9 @@ public class MainApp extends Application {
      * @param controllerCallback callback to configure controller after loading
      */
     public static <T> void setRoot(String fxml, java.util.function.Consumer<T> controllerCallback) {
+        TaskExecutor.getInstance().newScreen(fxml);
         try {
-            FXMLLoader fxmlLoader = new FXMLLoader(MainApp.class.getResource(fxml));
-            Parent root = fxmlLoader.load();
-            T controller = fxmlLoader.getController();
-            if (controllerCallback != null && controller != null) {
-                controllerCallback.accept(controller);
-            }
-            scene.setRoot(root);
+            scene.setRoot(views.show(fxml, controllerCallback));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -73,8 +74,23 @@ public class MainApp extends Application {
      * @throws IOException if loading fails
      */
     private static Parent loadFXML(String fxml) throws IOException {
-        FXMLLoader fxmlLoader = new FXMLLoader(MainApp.class.getResource(fxml));
-        return fxmlLoader.load();
+        return views.show(fxml);
+    }
+
+    @Override
+    public void stop() {
+        // Release card connections kept open between screens
+        CardSessionManager.getInstance().closeAll();
+        TaskExecutor.getInstance().shutdown();
+        if (AppConfig.APDU_METRICS_LOG) {
+            ApduMetrics.getInstance().print(System.out);
+        }
+        if (AppConfig.TASK_METRICS_LOG) {
+            TaskExecutor.getInstance().print(System.out);
+        }
+        if (AppConfig.VIEW_METRICS_LOG) {
+            views.print(System.out);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,111 @@
+package com.example.desktopapp;
+
+import com.example.desktopapp.model.ProvisioningOrder;
+import com.example.desktopapp.service.ApduMetrics;
+import com.example.desktopapp.service.ProvisioningFile;
+import com.example.desktopapp.service.ProvisioningStation;
+import com.example.desktopapp.service.TransactionService;
+
+import javax.smartcardio.CardException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless provisioning station: issues a batch of cards from a CSV or JSON file on every
+ * attached reader in parallel (no UI).
+ *
+ * Usage:
+ *   mvn exec:java -Dexec.mainClass=com.example.desktopapp.ProvisioningApp \
+ *       -Dexec.args="cards.csv --report report.csv --readers 'Reader 0,Reader 1'"
+ *
+ * Exit code 0 when every card was issued, 1 when some failed, 2 for bad arguments or input.
+ */
+public class ProvisioningApp {
+
+    // How long to wait for queued transactions to reach the backend before exiting
+    private static final long OUTBOX_DRAIN_MS = 15000;
+
+    public static void main(String[] args) throws InterruptedException {
+        Path input = null;
+        Path report = null;
+        List<String> readerNames = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--report") && i + 1 < args.length) {
+                report = Paths.get(args[++i]);
+            } else if (args[i].equals("--readers") && i + 1 < args.length) {
+                for (String name : args[++i].split(",")) {
+                    if (!name.isBlank()) {
+                        readerNames.add(name.trim());
+                    }
+                }
+            } else if (input == null && !args[i].startsWith("--")) {
+                input = Paths.get(args[i]);
+            } else {
+                input = null;
+                break;
+            }
+        }
+        if (input == null) {
+            System.err.println("Usage: ProvisioningApp <cards.csv|cards.json> [--report <report.csv>] [--readers <name,...>]");
+            System.exit(2);
+        }
+
+        List<ProvisioningOrder> orders;
+        List<ProvisioningStation.Reader> readers;
+        try {
+            orders = ProvisioningFile.read(input);
+            readers = ProvisioningStation.detectReaders(readerNames);
+        } catch (IOException | CardException e) {
+            System.err.println("✗ " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        ProvisioningStation.Report result;
+        try {
+            result = new ProvisioningStation(readers).run(orders);
+        } catch (IOException e) {
+            System.err.println("✗ " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        result.print(System.out);
+        ApduMetrics.getInstance().print(System.out);
+
+        if (report != null) {
+            try {
+                result.writeCsv(report);
+                System.out.println("✓ Report: " + report.toAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("✗ Không thể ghi report: " + e.getMessage());
+            }
+        }
+
+        waitForOutbox();
+        System.exit(result.getFailed() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Give the transaction outbox a moment to upload; whatever is left is sent on the next start
+     */
+    private static void waitForOutbox() throws InterruptedException {
+        TransactionService transactionService = new TransactionService();
+        long deadline = System.currentTimeMillis() + OUTBOX_DRAIN_MS;
+        try {
+            int pending;
+            while ((pending = transactionService.getPendingCount()) > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    System.out.println(pending + " giao dịch chờ đồng bộ, sẽ được gửi ở lần chạy sau");
+                    return;
+                }
+                Thread.sleep(200);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Outbox: " + e.getMessage());
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.example.desktopapp.controller;
 import com.example.desktopapp.AdminApp;
 import com.example.desktopapp.service.APDUConstants;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -22,6 +22,7 @@ public class AdminChangePinController {
     @FXML private PasswordField adminPinField, newPinField, confirmPinField;
     @FXML private ProgressIndicator changeProgress;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private CardService cardService;
     private int currentStep = 1;
 
@@ -34,12 +35,12 @@ public class AdminChangePinController {
     private void onCheckCard() {
         cardStatusLabel.setText("Đang kiểm tra thẻ...");
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 boolean connected = cardService.connect();
                 
                 if (!connected) {
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         UIUtils.showError("Lỗi", "Không thể kết nối với thẻ", 
                             "Vui lòng đảm bảo thẻ đã được đặt vào đầu đọc.");
                         cardStatusLabel.setText("Không tìm thấy thẻ");
@@ -51,7 +52,7 @@ public class AdminChangePinController {
                 
                 if (!initialized) {
                     cardService.disconnect();
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         UIUtils.showWarning("Cảnh báo", "Thẻ chưa được khởi tạo", 
                             "Thẻ này chưa được đăng ký.");
                         cardStatusLabel.setText("Thẻ chưa khởi tạo");
@@ -59,19 +60,19 @@ public class AdminChangePinController {
                     return;
                 }
 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     cardStatusLabel.setText("✓ Thẻ đã sẵn sàng");
                     cardStatusLabel.setStyle("-fx-text-fill: #22c55e;");
                     moveToStep(2);
                 });
 
             } catch (CardException e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     UIUtils.showError("Lỗi", "Không thể kiểm tra thẻ", e.getMessage());
                     cardStatusLabel.setText("Lỗi: " + e.getMessage());
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
@@ -86,22 +87,22 @@ public class AdminChangePinController {
         adminPinErrorLabel.setVisible(false);
         adminPinField.setDisable(true);
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 cardService.verifyAdminPin(adminPin);
                 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     moveToStep(3);
                 });
 
             } catch (Exception e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showAdminPinError("Admin PIN sai: " + e.getMessage());
                     adminPinField.setDisable(false);
                     adminPinField.clear();
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
@@ -129,12 +130,12 @@ public class AdminChangePinController {
         changeStatusLabel.setVisible(true);
         changeStatusLabel.setText("Đang đổi mật khẩu...");
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 // Unlock with new PIN (change PIN function)
                 cardService.unlockByAdmin(newPin);
                 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     changeProgress.setVisible(false);
                     changeStatusLabel.setText("✓ Đổi mật khẩu thành công!");
                     changeStatusLabel.setStyle("-fx-text-fill: #22c55e;");
@@ -143,26 +144,26 @@ public class AdminChangePinController {
                         "PIN của thẻ đã được thay đổi.");
                     
                     // Disconnect and return to menu
-                    new Thread(() -> {
+                    tasks.submit(() -> {
                         try {
                             Thread.sleep(2000);
                             cardService.disconnect();
-                            Platform.runLater(() -> AdminApp.setRoot("admin-menu.fxml"));
+                            tasks.runLater(() -> AdminApp.setRoot("admin-menu.fxml"));
                         } catch (InterruptedException e) {
-                            e.printStackTrace();
+                            // Screen left before the delay ended
                         }
-                    }).start();
+                    });
                 });
 
             } catch (CardException e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     changeProgress.setVisible(false);
                     changeStatusLabel.setText("Lỗi: " + e.getMessage());
                     changeStatusLabel.setStyle("-fx-text-fill: #ef4444;");
                     UIUtils.showError("Lỗi", "Không thể đổi mật khẩu", e.getMessage());
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
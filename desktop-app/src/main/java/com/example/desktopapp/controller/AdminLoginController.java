@@ -1,19 +1,13 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
+import com.example.desktopapp.service.ApiClient;
 import com.example.desktopapp.util.AppConfig;
-import javafx.application.Platform;
+import com.example.desktopapp.util.TaskExecutor;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-
 /**
  * Controller for Admin Login Screen
  */
@@ -31,6 +25,8 @@ public class AdminLoginController {
     @FXML
     private ProgressIndicator loadingIndicator;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
+
     @FXML
     public void initialize() {
         // Clear error label when user types
@@ -58,51 +54,19 @@ public class AdminLoginController {
         }
 
         // Call API to login
-        new Thread(() -> {
-            try {
-                Platform.runLater(() -> {
-                    loadingIndicator.setVisible(true);
-                    errorLabel.setVisible(false);
-                });
+        loadingIndicator.setVisible(true);
+        errorLabel.setVisible(false);
 
-                String apiUrl = AppConfig.API_BASE_URL + "/api/admin/login";
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                // Create JSON body
-                JSONObject requestBody = new JSONObject();
-                requestBody.put("username", username);
-                requestBody.put("password", password);
-
-                // Send request
-                try (OutputStream os = conn.getOutputStream()) {
-                    byte[] input = requestBody.toString().getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
-
-                // Read response
-                int responseCode = conn.getResponseCode();
-                BufferedReader in;
-                
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                } else {
-                    in = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
-                }
-
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = in.readLine()) != null) {
-                    response.append(line);
-                }
-                in.close();
-
-                JSONObject jsonResponse = new JSONObject(response.toString());
-
-                Platform.runLater(() -> {
+        // Create JSON body
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("username", username);
+        requestBody.put("password", password);
+
+        ApiClient.getInstance().post(AppConfig.API_BASE_URL + "/api/admin/login", requestBody.toString())
+            .thenAccept(response -> {
+                JSONObject jsonResponse = response.json();
+
+                tasks.runLater(() -> {
                     loadingIndicator.setVisible(false);
 
                     if (jsonResponse.getBoolean("success")) {
@@ -114,16 +78,16 @@ public class AdminLoginController {
                         showError(message);
                     }
                 });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+            })
+            .exceptionally(e -> {
+                tasks.runLater(() -> {
                     loadingIndicator.setVisible(false);
-                    showError("Lỗi kết nối server: " + e.getMessage());
+                    showError("Lỗi kết nối server: " + ApiClient.errorMessage(e));
                 });
-                System.err.println("Login error: " + e.getMessage());
+                System.err.println("Login error: " + ApiClient.errorMessage(e));
                 e.printStackTrace();
-            }
-        }).start();
+                return null;
+            });
     }
 
     private void showError(String message) {
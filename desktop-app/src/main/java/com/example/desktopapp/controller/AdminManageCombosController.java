@@ -1,10 +1,12 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
+import com.example.desktopapp.service.ApiClient;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CatalogCache;
 import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -14,10 +16,6 @@ import org.kordamp.ikonli.javafx.FontIcon;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.util.Locale;
 
@@ -28,6 +26,7 @@ public class AdminManageCombosController {
 
     @FXML private VBox combosManagementBox, combosList, loadingBox;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private CardService cardService;
     private NumberFormat currencyFormat;
     private JSONArray allGames; // Lưu danh sách games để dùng khi hiển thị
@@ -41,81 +40,37 @@ public class AdminManageCombosController {
     }
     
     private void loadGamesFirst() {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String inputLine;
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    allGames = jsonResponse.getJSONArray("data");
+        CatalogCache.getInstance().refreshGames()
+            .whenComplete((games, e) -> {
+                if (e != null) {
+                    e.printStackTrace();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                Platform.runLater(() -> loadCombos());
-            }
-        }).start();
+                tasks.runLater(() -> {
+                    if (games != null) {
+                        allGames = games;
+                    }
+                    loadCombos();
+                });
+            });
     }
 
     private void loadCombos() {
         showLoading(true);
         combosList.getChildren().clear();
 
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_COMBOS;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                int responseCode = conn.getResponseCode();
-                
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String inputLine;
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    JSONArray combos = jsonResponse.getJSONArray("data");
-
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        displayCombos(combos);
-                    });
-
-                } else {
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        UIUtils.showError("Lỗi", "Không thể tải danh sách combo", "Response code: " + responseCode);
-                    });
-                }
-
-            } catch (Exception e) {
+        CatalogCache.getInstance().refreshCombos()
+            .thenAccept(combos -> tasks.runLater(() -> {
+                showLoading(false);
+                displayCombos(combos);
+            }))
+            .exceptionally(e -> {
                 e.printStackTrace();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showLoading(false);
-                    UIUtils.showError("Lỗi", "Không thể tải danh sách combo", e.getMessage());
+                    UIUtils.showError("Lỗi", "Không thể tải danh sách combo", ApiClient.errorMessage(e));
                 });
-            }
-        }).start();
+                return null;
+            });
     }
 
     private void displayCombos(JSONArray combos) {
@@ -203,15 +158,7 @@ public class AdminManageCombosController {
     }
     
     private String getGameNameById(int gameId) {
-        if (allGames == null) return "Game #" + gameId;
-        
-        for (int i = 0; i < allGames.length(); i++) {
-            JSONObject game = allGames.getJSONObject(i);
-            if (game.optInt("_id") == gameId) {
-                return game.optString("name", "Game #" + gameId);
-            }
-        }
-        return "Game #" + gameId;
+        return CatalogCache.getInstance().getGameName(gameId);
     }
 
     @FXML
@@ -392,112 +339,59 @@ public class AdminManageCombosController {
     }
 
     private void createCombo(String name, int priceVND, int discountPercentage, String description, JSONArray gameIds) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_COMBOS;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                JSONObject comboData = new JSONObject();
-                comboData.put("name", name);
-                comboData.put("priceVND", priceVND);
-                comboData.put("discountPercentage", discountPercentage);
-                comboData.put("description", description);
-                comboData.put("game_ids", gameIds);
-
-                OutputStream os = conn.getOutputStream();
-                os.write(comboData.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_CREATED || responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Thêm combo thành công", "");
-                        loadCombos();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể thêm combo", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể thêm combo", e.getMessage());
-                });
-            }
-        }).start();
+        JSONObject comboData = new JSONObject();
+        comboData.put("name", name);
+        comboData.put("priceVND", priceVND);
+        comboData.put("discountPercentage", discountPercentage);
+        comboData.put("description", description);
+        comboData.put("game_ids", gameIds);
+
+        ApiClient.getInstance().post(AppConfig.API_COMBOS, comboData.toString())
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể thêm combo", ApiClient.errorMessage(e));
+                } else if (response.isSuccess()) {
+                    UIUtils.showSuccess("Thành công", "Thêm combo thành công", "");
+                    loadCombos();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể thêm combo", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     private void updateCombo(String id, String name, int priceVND, int discountPercentage, String description, JSONArray gameIds) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_COMBOS + "/" + id;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("PUT");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                JSONObject comboData = new JSONObject();
-                comboData.put("name", name);
-                comboData.put("priceVND", priceVND);
-                comboData.put("discountPercentage", discountPercentage);
-                comboData.put("description", description);
-                comboData.put("game_ids", gameIds);
-
-                OutputStream os = conn.getOutputStream();
-                os.write(comboData.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Cập nhật combo thành công", "");
-                        loadCombos();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể cập nhật combo", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể cập nhật combo", e.getMessage());
-                });
-            }
-        }).start();
+        JSONObject comboData = new JSONObject();
+        comboData.put("name", name);
+        comboData.put("priceVND", priceVND);
+        comboData.put("discountPercentage", discountPercentage);
+        comboData.put("description", description);
+        comboData.put("game_ids", gameIds);
+
+        ApiClient.getInstance().put(AppConfig.API_COMBOS + "/" + id, comboData.toString())
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể cập nhật combo", ApiClient.errorMessage(e));
+                } else if (response.getStatusCode() == 200) {
+                    UIUtils.showSuccess("Thành công", "Cập nhật combo thành công", "");
+                    loadCombos();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể cập nhật combo", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     private void deleteCombo(String id) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_COMBOS + "/" + id;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("DELETE");
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Xóa combo thành công", "");
-                        loadCombos();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể xóa combo", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể xóa combo", e.getMessage());
-                });
-            }
-        }).start();
+        ApiClient.getInstance().delete(AppConfig.API_COMBOS + "/" + id)
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể xóa combo", ApiClient.errorMessage(e));
+                } else if (response.getStatusCode() == 200) {
+                    UIUtils.showSuccess("Thành công", "Xóa combo thành công", "");
+                    loadCombos();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể xóa combo", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     @FXML
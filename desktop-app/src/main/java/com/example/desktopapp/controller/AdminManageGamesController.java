@@ -1,10 +1,12 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
+import com.example.desktopapp.service.ApiClient;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CatalogCache;
 import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -14,10 +16,6 @@ import org.kordamp.ikonli.javafx.FontIcon;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 
 /**
  * Controller for Admin Manage Games
@@ -26,6 +24,7 @@ public class AdminManageGamesController {
 
     @FXML private VBox gamesManagementBox, gamesList, loadingBox;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private CardService cardService;
 
     @FXML
@@ -39,49 +38,20 @@ public class AdminManageGamesController {
         showLoading(true);
         gamesList.getChildren().clear();
 
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                int responseCode = conn.getResponseCode();
-                
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String inputLine;
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    JSONArray games = jsonResponse.getJSONArray("data");
-
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        displayGames(games);
-                    });
-
-                } else {
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        UIUtils.showError("Lỗi", "Không thể tải danh sách games", "Response code: " + responseCode);
-                    });
-                }
-
-            } catch (Exception e) {
+        // Admin always revalidates: a 304 when nothing changed, the new list after an edit
+        CatalogCache.getInstance().refreshGames()
+            .thenAccept(games -> tasks.runLater(() -> {
+                showLoading(false);
+                displayGames(games);
+            }))
+            .exceptionally(e -> {
                 e.printStackTrace();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showLoading(false);
-                    UIUtils.showError("Lỗi", "Không thể tải danh sách games", e.getMessage());
+                    UIUtils.showError("Lỗi", "Không thể tải danh sách games", ApiClient.errorMessage(e));
                 });
-            }
-        }).start();
+                return null;
+            });
     }
 
     private void displayGames(JSONArray games) {
@@ -228,109 +198,56 @@ public class AdminManageGamesController {
     }
 
     private void createGame(String name, int points, String description) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                JSONObject gameData = new JSONObject();
-                // Không gửi _id, để backend tự sinh
-                gameData.put("name", name);
-                gameData.put("points", points);
-                gameData.put("description", description);
-
-                OutputStream os = conn.getOutputStream();
-                os.write(gameData.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_CREATED || responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Thêm trò chơi thành công", "");
-                        loadGames();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể thêm trò chơi", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể thêm trò chơi", e.getMessage());
-                });
-            }
-        }).start();
+        JSONObject gameData = new JSONObject();
+        // Không gửi _id, để backend tự sinh
+        gameData.put("name", name);
+        gameData.put("points", points);
+        gameData.put("description", description);
+
+        ApiClient.getInstance().post(AppConfig.API_GAMES, gameData.toString())
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể thêm trò chơi", ApiClient.errorMessage(e));
+                } else if (response.isSuccess()) {
+                    UIUtils.showSuccess("Thành công", "Thêm trò chơi thành công", "");
+                    loadGames();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể thêm trò chơi", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     private void updateGame(int id, String name, int points, String description) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES + "/" + id;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("PUT");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setDoOutput(true);
-
-                JSONObject gameData = new JSONObject();
-                gameData.put("name", name);
-                gameData.put("points", points);
-                gameData.put("description", description);
-
-                OutputStream os = conn.getOutputStream();
-                os.write(gameData.toString().getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                os.close();
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Cập nhật trò chơi thành công", "");
-                        loadGames();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể cập nhật trò chơi", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể cập nhật trò chơi", e.getMessage());
-                });
-            }
-        }).start();
+        JSONObject gameData = new JSONObject();
+        gameData.put("name", name);
+        gameData.put("points", points);
+        gameData.put("description", description);
+
+        ApiClient.getInstance().put(AppConfig.API_GAMES + "/" + id, gameData.toString())
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể cập nhật trò chơi", ApiClient.errorMessage(e));
+                } else if (response.getStatusCode() == 200) {
+                    UIUtils.showSuccess("Thành công", "Cập nhật trò chơi thành công", "");
+                    loadGames();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể cập nhật trò chơi", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     private void deleteGame(int id) {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES + "/" + id;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("DELETE");
-
-                int responseCode = conn.getResponseCode();
-                
-                Platform.runLater(() -> {
-                    if (responseCode == HttpURLConnection.HTTP_OK) {
-                        UIUtils.showSuccess("Thành công", "Xóa trò chơi thành công", "");
-                        loadGames();
-                    } else {
-                        UIUtils.showError("Lỗi", "Không thể xóa trò chơi", "Response code: " + responseCode);
-                    }
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    UIUtils.showError("Lỗi", "Không thể xóa trò chơi", e.getMessage());
-                });
-            }
-        }).start();
+        ApiClient.getInstance().delete(AppConfig.API_GAMES + "/" + id)
+            .whenComplete((response, e) -> tasks.runLater(() -> {
+                if (e != null) {
+                    UIUtils.showError("Lỗi", "Không thể xóa trò chơi", ApiClient.errorMessage(e));
+                } else if (response.getStatusCode() == 200) {
+                    UIUtils.showSuccess("Thành công", "Xóa trò chơi thành công", "");
+                    loadGames();
+                } else {
+                    UIUtils.showError("Lỗi", "Không thể xóa trò chơi", "Response code: " + response.getStatusCode());
+                }
+            }));
     }
 
     @FXML
@@ -2,8 +2,8 @@ package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -23,6 +23,7 @@ public class AdminResetCardController {
     @FXML private Button resetBtn;
     @FXML private ProgressIndicator resetProgress;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private CardService cardService;
     private int currentStep = 1;
 
@@ -40,12 +41,12 @@ public class AdminResetCardController {
     private void onCheckCard() {
         cardStatusLabel.setText("Đang kiểm tra thẻ...");
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 boolean connected = cardService.connect();
                 
                 if (!connected) {
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         UIUtils.showError("Lỗi", "Không thể kết nối với thẻ", 
                             "Vui lòng đảm bảo thẻ đã được đặt vào đầu đọc.");
                         cardStatusLabel.setText("Không tìm thấy thẻ");
@@ -57,7 +58,7 @@ public class AdminResetCardController {
                 
                 if (!initialized) {
                     cardService.disconnect();
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         UIUtils.showWarning("Cảnh báo", "Thẻ chưa được khởi tạo", 
                             "Thẻ này chưa có dữ liệu để reset.");
                         cardStatusLabel.setText("Thẻ chưa khởi tạo");
@@ -65,19 +66,19 @@ public class AdminResetCardController {
                     return;
                 }
 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     cardStatusLabel.setText("✓ Thẻ đã sẵn sàng");
                     cardStatusLabel.setStyle("-fx-text-fill: #22c55e;");
                     moveToStep(2);
                 });
 
             } catch (CardException e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     UIUtils.showError("Lỗi", "Không thể kiểm tra thẻ", e.getMessage());
                     cardStatusLabel.setText("Lỗi: " + e.getMessage());
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
@@ -92,22 +93,22 @@ public class AdminResetCardController {
         adminPinErrorLabel.setVisible(false);
         adminPinField.setDisable(true);
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 cardService.verifyAdminPin(adminPin);
                 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     moveToStep(3);
                 });
 
             } catch (Exception e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showAdminPinError("Admin PIN sai: " + e.getMessage());
                     adminPinField.setDisable(false);
                     adminPinField.clear();
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
@@ -140,11 +141,11 @@ public class AdminResetCardController {
         resetStatusLabel.setText("Đang reset thẻ...");
         resetBtn.setDisable(true);
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 cardService.resetCard();
                 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     resetProgress.setVisible(false);
                     resetStatusLabel.setText("✓ Reset thẻ thành công!");
                     resetStatusLabel.setStyle("-fx-text-fill: #22c55e;");
@@ -153,19 +154,19 @@ public class AdminResetCardController {
                         "Thẻ đã được reset về trạng thái ban đầu.");
                     
                     // Disconnect and return to menu
-                    new Thread(() -> {
+                    tasks.submit(() -> {
                         try {
                             Thread.sleep(2000);
                             cardService.disconnect();
-                            Platform.runLater(() -> AdminApp.setRoot("admin-menu.fxml"));
+                            tasks.runLater(() -> AdminApp.setRoot("admin-menu.fxml"));
                         } catch (InterruptedException e) {
-                            e.printStackTrace();
+                            // Screen left before the delay ended
                         }
-                    }).start();
+                    });
                 });
 
             } catch (CardException e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     resetProgress.setVisible(false);
                     resetStatusLabel.setText("Lỗi: " + e.getMessage());
                     resetStatusLabel.setStyle("-fx-text-fill: #ef4444;");
@@ -173,7 +174,7 @@ public class AdminResetCardController {
                     resetBtn.setDisable(false);
                 });
             }
-        }).start();
+        });
     }
 
     @FXML
@@ -1,9 +1,12 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
+import com.example.desktopapp.service.AnalyticsStore;
+import com.example.desktopapp.service.ApiClient;
+import com.example.desktopapp.service.CatalogCache;
 import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Side;
 import javafx.scene.chart.BarChart;
@@ -15,16 +18,27 @@ import javafx.scene.layout.VBox;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controller for Admin Statistics Screen
  * Displays 3 main charts: Revenue by Month, Top Games/Combos, Revenue by Age Group
+ *
+ * Charts are computed from the local AnalyticsStore: stored figures are shown at once, then the
+ * store is synced and the charts redrawn if anything changed. Year and product switches are
+ * answered from the same figures. Until the store has been filled once (first run) the charts
+ * come from the /api/statistics endpoints: the four requests run concurrently, each chart is
+ * drawn as soon as its own response arrives, and a failed chart falls back to its last good
+ * response without hiding the others.
  */
 public class AdminStatisticsController {
 
@@ -56,8 +70,17 @@ public class AdminStatisticsController {
     @FXML private Label totalTransactionsLabel;
     @FXML private Label avgTransactionLabel;
     
+    private static final String[] MONTH_NAMES = {"T1", "T2", "T3", "T4", "T5", "T6",
+                                                 "T7", "T8", "T9", "T10", "T11", "T12"};
+
+    // Last good response per statistics URL, shown when a request fails or misses its deadline
+    private static final Map<String, JSONObject> LAST_GOOD = new ConcurrentHashMap<>();
+
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private NumberFormat currencyFormat;
     private ToggleGroup productToggleGroup;
+    private AnalyticsStore.Views views; // null until the local store has been shown
+    private final Map<String, Boolean> failedCharts = new LinkedHashMap<>(); // chart -> stale data shown
 
     @FXML
     public void initialize() {
@@ -69,7 +92,13 @@ public class AdminStatisticsController {
             yearSelector.getItems().add(String.valueOf(i));
         }
         yearSelector.setValue(String.valueOf(currentYear));
-        yearSelector.setOnAction(e -> loadRevenueByMonth());
+        yearSelector.setOnAction(e -> {
+            if (views != null) {
+                showRevenueByMonth(views);
+            } else {
+                loadRevenueByMonth();
+            }
+        });
         
         // Setup product toggle group
         productToggleGroup = new ToggleGroup();
@@ -77,8 +106,8 @@ public class AdminStatisticsController {
         showCombosBtn.setToggleGroup(productToggleGroup);
         showGamesBtn.setSelected(true);
         
-        showGamesBtn.setOnAction(e -> loadTopProducts());
-        showCombosBtn.setOnAction(e -> loadTopProducts());
+        showGamesBtn.setOnAction(e -> onProductToggle());
+        showCombosBtn.setOnAction(e -> onProductToggle());
         
         // Configure charts
         configureCharts();
@@ -111,98 +140,181 @@ public class AdminStatisticsController {
 
     private void loadAllStatistics() {
         showLoading(true);
-        errorLabel.setVisible(false);
-        
-        new Thread(() -> {
+        failedCharts.clear();
+        hideError();
+
+        // Game and combo names for the product chart
+        CompletableFuture<Void> catalog = CompletableFuture.allOf(
+                CatalogCache.getInstance().getGames(),
+                CatalogCache.getInstance().getCombos());
+
+        tasks.submit(() -> {
+            AnalyticsStore store = AnalyticsStore.getInstance();
+            boolean stored = store.size() > 0;
+            if (stored) {
+                showViews(store.views(), catalog);
+            } else {
+                tasks.runLater(this::loadFromServer);
+            }
+
             try {
-                loadSummary();
-                loadRevenueByMonth();
-                loadTopProducts();
-                loadRevenueByAge();
-                
-                Platform.runLater(() -> {
-                    showLoading(false);
-                    errorLabel.setVisible(false);
-                    contentScrollPane.setVisible(true);
-                    contentScrollPane.setManaged(true);
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    showLoading(false);
-                    showError("Lỗi tải dữ liệu: " + e.getMessage());
-                });
+                if (store.sync() || !stored) {
+                    showViews(store.views(), catalog);
+                }
+            } catch (IOException e) {
+                System.err.println("✗ Đồng bộ thống kê lỗi: " + e.getMessage());
+                if (stored) {
+                    tasks.runLater(() -> showError("Không thể cập nhật thống kê, đang hiển thị dữ liệu đã lưu: " + e.getMessage()));
+                }
+            } catch (InterruptedException e) {
+                // Screen left during the sync
+                Thread.currentThread().interrupt();
             }
-        }).start();
+        });
     }
 
-    private void loadSummary() {
-        try {
-            String apiUrl = AppConfig.API_STATISTICS + "/summary";
-            JSONObject response = fetchJSON(apiUrl);
-            
-            if (response.getBoolean("success")) {
-                JSONObject data = response.getJSONObject("data");
-                JSONObject total = data.getJSONObject("total");
-                
-                long totalRevenue = total.optLong("totalRevenue", 0);
-                int totalTransactions = total.optInt("totalTransactions", 0);
-                double avgTransaction = total.optDouble("avgTransaction", 0);
-                
-                Platform.runLater(() -> {
-                    totalRevenueLabel.setText(currencyFormat.format(totalRevenue) + " VNĐ");
-                    totalTransactionsLabel.setText(String.valueOf(totalTransactions));
-                    avgTransactionLabel.setText(currencyFormat.format(avgTransaction) + " VNĐ");
-                });
-            }
-        } catch (Exception e) {
-            System.err.println("Error loading summary: " + e.getMessage());
+    /**
+     * Draw all charts from the local store once the catalog names are available
+     */
+    private void showViews(AnalyticsStore.Views v, CompletableFuture<Void> catalog) {
+        catalog.whenComplete((ignored, e) -> tasks.runLater(() -> {
+            views = v;
+            showSummary(v.getTotalRevenue(), v.getTotalTransactions(), v.getAvgTransaction());
+            showRevenueByMonth(v);
+            showTopProducts(v);
+            showRevenueByAge(v);
+            // Figures of the server path that failed are replaced as well
+            failedCharts.clear();
+            hideError();
+            showContent();
+        }));
+    }
+
+    private void showRevenueByMonth(AnalyticsStore.Views v) {
+        double[] months = v.getRevenueByMonth(Integer.parseInt(yearSelector.getValue()));
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        series.setName("Doanh thu");
+        for (int month = 0; month < 12; month++) {
+            series.getData().add(new XYChart.Data<>(MONTH_NAMES[month], Math.round(months[month])));
         }
+        setSeries(revenueByMonthChart, series);
     }
 
-    private void loadRevenueByMonth() {
-        new Thread(() -> {
-            try {
-                String year = yearSelector.getValue();
-                String apiUrl = AppConfig.API_STATISTICS + "/revenue-by-month?year=" + year;
-                JSONObject response = fetchJSON(apiUrl);
-                
+    private void showTopProducts(AnalyticsStore.Views v) {
+        boolean isGames = showGamesBtn.isSelected();
+        List<AnalyticsStore.Product> products = isGames ? v.getTopGames() : v.getTopCombos();
+        CatalogCache catalog = CatalogCache.getInstance();
+
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        series.setName(isGames ? "Games" : "Combos");
+        for (AnalyticsStore.Product product : products) {
+            String name = isGames ? catalog.getGameName(product.getId()) : catalog.getComboName(product.getId());
+            series.getData().add(new XYChart.Data<>(truncate(name), product.getPurchaseCount()));
+        }
+        showTopProducts(series, isGames);
+    }
+
+    private void showRevenueByAge(AnalyticsStore.Views v) {
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        series.setName("Doanh thu");
+        for (int age : v.getAges()) {
+            series.getData().add(new XYChart.Data<>(String.valueOf(age), Math.round(v.getRevenueByAge(age))));
+        }
+        setSeries(revenueByAgeChart, series);
+    }
+
+    private void onProductToggle() {
+        if (views != null) {
+            showTopProducts(views);
+        } else {
+            loadTopProducts();
+        }
+    }
+
+    /**
+     * First run: the local store is still empty, ask the backend aggregations
+     */
+    private void loadFromServer() {
+        // Requests run concurrently on the shared client and each chart is drawn when its own
+        // response arrives; once all are done the screen is shown even if every chart failed
+        CompletableFuture.allOf(
+                loadSummary(),
+                loadRevenueByMonth(),
+                loadTopProducts(),
+                loadRevenueByAge())
+            .whenComplete((ignored, e) -> tasks.runLater(() -> {
+                if (views == null) {
+                    showContent();
+                }
+            }));
+    }
+
+    private CompletableFuture<Void> loadSummary() {
+        String apiUrl = AppConfig.API_STATISTICS + "/summary";
+        return fetchJSON(apiUrl, "Tổng quan")
+            .thenAccept(response -> {
+                if (response.getBoolean("success")) {
+                    JSONObject data = response.getJSONObject("data");
+                    JSONObject total = data.getJSONObject("total");
+                    
+                    long totalRevenue = total.optLong("totalRevenue", 0);
+                    int totalTransactions = total.optInt("totalTransactions", 0);
+                    double avgTransaction = total.optDouble("avgTransaction", 0);
+                    
+                    tasks.runLater(() -> {
+                        if (views == null) {
+                            showSummary(totalRevenue, totalTransactions, avgTransaction);
+                            showContent();
+                        }
+                    });
+                }
+            })
+            .exceptionally(e -> {
+                System.err.println("Error loading summary: " + ApiClient.errorMessage(e));
+                return null;
+            });
+    }
+
+    private CompletableFuture<Void> loadRevenueByMonth() {
+        String year = yearSelector.getValue();
+        String apiUrl = AppConfig.API_STATISTICS + "/revenue-by-month?year=" + year;
+        return fetchJSON(apiUrl, "Doanh thu theo tháng")
+            .thenAccept(response -> {
                 if (response.getBoolean("success")) {
                     JSONArray data = response.getJSONArray("data");
                     
                     XYChart.Series<String, Number> series = new XYChart.Series<>();
                     series.setName("Doanh thu");
                     
-                    String[] monthNames = {"T1", "T2", "T3", "T4", "T5", "T6", 
-                                          "T7", "T8", "T9", "T10", "T11", "T12"};
-                    
                     for (int i = 0; i < data.length(); i++) {
                         JSONObject item = data.getJSONObject(i);
                         int month = item.getInt("month");
                         long revenue = item.optLong("totalRevenue", 0);
                         
-                        series.getData().add(new XYChart.Data<>(monthNames[month - 1], revenue));
+                        series.getData().add(new XYChart.Data<>(MONTH_NAMES[month - 1], revenue));
                     }
                     
-                    Platform.runLater(() -> {
-                        revenueByMonthChart.getData().clear();
-                        revenueByMonthChart.getData().add(series);
+                    tasks.runLater(() -> {
+                        if (views == null) {
+                            setSeries(revenueByMonthChart, series);
+                            showContent();
+                        }
                     });
                 }
-            } catch (Exception e) {
-                System.err.println("Error loading revenue by month: " + e.getMessage());
-            }
-        }).start();
+            })
+            .exceptionally(e -> {
+                System.err.println("Error loading revenue by month: " + ApiClient.errorMessage(e));
+                return null;
+            });
     }
 
-    private void loadTopProducts() {
-        new Thread(() -> {
-            try {
-                boolean isGames = showGamesBtn.isSelected();
-                String endpoint = isGames ? "/top-games" : "/top-combos";
-                String apiUrl = AppConfig.API_STATISTICS + endpoint;
-                
-                JSONObject response = fetchJSON(apiUrl);
-                
+    private CompletableFuture<Void> loadTopProducts() {
+        boolean isGames = showGamesBtn.isSelected();
+        String endpoint = isGames ? "/top-games" : "/top-combos";
+        String apiUrl = AppConfig.API_STATISTICS + endpoint;
+        
+        return fetchJSON(apiUrl, "Top sản phẩm")
+            .thenAccept(response -> {
                 if (response.getBoolean("success")) {
                     JSONArray data = response.getJSONArray("data");
                     
@@ -214,32 +326,27 @@ public class AdminStatisticsController {
                         String name = item.optString(isGames ? "gameName" : "comboName", "Unknown");
                         int count = item.optInt("purchaseCount", 0);
                         
-                        // Truncate long names
-                        if (name.length() > 20) {
-                            name = name.substring(0, 17) + "...";
-                        }
-                        
-                        series.getData().add(new XYChart.Data<>(name, count));
+                        series.getData().add(new XYChart.Data<>(truncate(name), count));
                     }
                     
-                    Platform.runLater(() -> {
-                        topProductsChart.getData().clear();
-                        topProductsChart.getData().add(series);
-                        productAxis.setLabel(isGames ? "Game" : "Combo");
+                    tasks.runLater(() -> {
+                        if (views == null) {
+                            showTopProducts(series, isGames);
+                            showContent();
+                        }
                     });
                 }
-            } catch (Exception e) {
-                System.err.println("Error loading top products: " + e.getMessage());
-            }
-        }).start();
+            })
+            .exceptionally(e -> {
+                System.err.println("Error loading top products: " + ApiClient.errorMessage(e));
+                return null;
+            });
     }
 
-    private void loadRevenueByAge() {
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_STATISTICS + "/revenue-by-age";
-                JSONObject response = fetchJSON(apiUrl);
-                
+    private CompletableFuture<Void> loadRevenueByAge() {
+        String apiUrl = AppConfig.API_STATISTICS + "/revenue-by-age";
+        return fetchJSON(apiUrl, "Doanh thu theo tuổi")
+            .thenAccept(response -> {
                 if (response.getBoolean("success")) {
                     JSONArray data = response.getJSONArray("data");
                     
@@ -268,42 +375,112 @@ public class AdminStatisticsController {
                         series.getData().add(new XYChart.Data<>(ageGroup, revenue));
                     }
                     
-                    Platform.runLater(() -> {
-                        revenueByAgeChart.getData().clear();
-                        revenueByAgeChart.getData().add(series);
+                    tasks.runLater(() -> {
+                        if (views == null) {
+                            setSeries(revenueByAgeChart, series);
+                            showContent();
+                        }
                     });
                 }
-            } catch (Exception e) {
-                System.err.println("Error loading revenue by age: " + e.getMessage());
-            }
-        }).start();
+            })
+            .exceptionally(e -> {
+                System.err.println("Error loading revenue by age: " + ApiClient.errorMessage(e));
+                return null;
+            });
     }
 
-    private JSONObject fetchJSON(String apiUrl) throws Exception {
-        URL url = new URL(apiUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Content-Type", "application/json");
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            throw new Exception("API returned error code: " + responseCode);
+    /**
+     * GET a statistics endpoint within API_DEADLINE_STATISTICS (headers and body).
+     * A failed request completes with the last good response of the same URL if there is one;
+     * either way the chart is listed in the error note.
+     */
+    private CompletableFuture<JSONObject> fetchJSON(String apiUrl, String chart) {
+        return ApiClient.getInstance().get(apiUrl)
+            .orTimeout(AppConfig.API_DEADLINE_STATISTICS, TimeUnit.MILLISECONDS)
+            .thenApply(response -> {
+                if (response.getStatusCode() != 200) {
+                    throw new IllegalStateException("API returned error code: " + response.getStatusCode());
+                }
+                JSONObject json = response.json();
+                LAST_GOOD.put(apiUrl, json);
+                tasks.runLater(() -> chartLoaded(chart));
+                return json;
+            })
+            .exceptionally(e -> {
+                JSONObject cached = LAST_GOOD.get(apiUrl);
+                System.err.println("✗ Lỗi tải " + chart + ": " + ApiClient.errorMessage(e)
+                    + (cached != null ? ", dùng dữ liệu lần trước" : ""));
+                tasks.runLater(() -> chartFailed(chart, cached != null));
+                if (cached == null) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                return cached;
+            });
+    }
+
+    private void chartLoaded(String chart) {
+        if (failedCharts.remove(chart) != null) {
+            updateErrorNote();
         }
-        
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String inputLine;
-        
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    }
+
+    private void chartFailed(String chart, boolean stale) {
+        failedCharts.put(chart, stale);
+        updateErrorNote();
+    }
+
+    private void updateErrorNote() {
+        if (failedCharts.isEmpty()) {
+            hideError();
+            return;
         }
-        in.close();
-        
-        return new JSONObject(response.toString());
+        StringBuilder note = new StringBuilder("Không tải được: ");
+        String separator = "";
+        for (Map.Entry<String, Boolean> e : failedCharts.entrySet()) {
+            note.append(separator).append(e.getKey());
+            if (e.getValue()) {
+                note.append(" (dữ liệu cũ)");
+            }
+            separator = ", ";
+        }
+        showError(note.toString());
+    }
+
+    /**
+     * Hide the loading box and show the charts; called by the first chart that has data
+     */
+    private void showContent() {
+        loadingBox.setVisible(false);
+        loadingBox.setManaged(false);
+        contentScrollPane.setVisible(true);
+        contentScrollPane.setManaged(true);
+    }
+
+    private void showSummary(double totalRevenue, long totalTransactions, double avgTransaction) {
+        totalRevenueLabel.setText(currencyFormat.format(totalRevenue) + " VNĐ");
+        totalTransactionsLabel.setText(String.valueOf(totalTransactions));
+        avgTransactionLabel.setText(currencyFormat.format(avgTransaction) + " VNĐ");
+    }
+
+    private void showTopProducts(XYChart.Series<String, Number> series, boolean isGames) {
+        setSeries(topProductsChart, series);
+        productAxis.setLabel(isGames ? "Game" : "Combo");
+    }
+
+    private static void setSeries(BarChart<String, Number> chart, XYChart.Series<String, Number> series) {
+        chart.getData().clear();
+        chart.getData().add(series);
+    }
+
+    /**
+     * Truncate long product names
+     */
+    private static String truncate(String name) {
+        return name.length() > 20 ? name.substring(0, 17) + "..." : name;
     }
 
     private void showLoading(boolean show) {
-        Platform.runLater(() -> {
+        tasks.runLater(() -> {
             loadingBox.setVisible(show);
             loadingBox.setManaged(show);
         });
@@ -312,6 +489,12 @@ public class AdminStatisticsController {
     private void showError(String message) {
         errorLabel.setText(message);
         errorLabel.setVisible(true);
+        errorLabel.setManaged(true);
+    }
+
+    private void hideError() {
+        errorLabel.setVisible(false);
+        errorLabel.setManaged(false);
     }
 
     @FXML
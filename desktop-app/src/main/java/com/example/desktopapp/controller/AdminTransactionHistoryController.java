@@ -1,24 +1,23 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.AdminApp;
-import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.model.TransactionPage;
+import com.example.desktopapp.model.TransactionRow;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.TransactionService;
 import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import org.kordamp.ikonli.javafx.FontIcon;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import javax.smartcardio.CardException;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -26,21 +25,33 @@ import java.util.Locale;
 
 /**
  * Controller for Admin Transaction History
+ * Pages of the history are fetched in the background as the list is scrolled; the ListView
+ * only creates cells for the visible rows and reuses them.
  */
 public class AdminTransactionHistoryController {
 
-    @FXML private Label errorLabel, totalLabel;
-    @FXML private VBox transactionContainer, transactionList, loadingBox, emptyBox;
+    @FXML private Label errorLabel, totalLabel, pageStatusLabel;
+    @FXML private VBox transactionContainer, loadingBox, emptyBox;
+    @FXML private ListView<TransactionRow> transactionList;
 
-    private CardService cardService;
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
+    private final TransactionService transactionService = new TransactionService();
+    private final ObservableList<TransactionRow> rows = FXCollections.observableArrayList();
     private NumberFormat currencyFormat;
     private SimpleDateFormat dateFormat;
 
+    private String cardId;
+    private String nextCursor;
+    private long totalCount;
+    private boolean loadingPage = false;
+
     @FXML
     public void initialize() {
-        cardService = new CardService();
         currencyFormat = NumberFormat.getInstance(new Locale("vi", "VN"));
         dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+
+        transactionList.setItems(rows);
+        transactionList.setCellFactory(list -> new TransactionCell());
         
         // Tự động đọc thẻ và load lịch sử ngay khi mở trang
         autoReadCardAndLoadHistory();
@@ -48,165 +59,154 @@ public class AdminTransactionHistoryController {
     
     private void autoReadCardAndLoadHistory() {
         showLoading(true);
+        transactionContainer.setVisible(false);
+        transactionContainer.setManaged(false);
+        emptyBox.setVisible(false);
+        emptyBox.setManaged(false);
         System.out.println("Đang đọc thẻ...");
         
-        new Thread(() -> {
+        tasks.submit(() -> {
+            String id;
             try {
-                cardService.connect();
-                byte[] userIdBytes = cardService.readUserId();
-                String cardId = bytesToHex(userIdBytes);
-                cardService.disconnect();
-                
-                System.out.println("✓ Đọc thẻ thành công - Card ID: " + cardId);
-                
-                // Tự động load lịch sử giao dịch
-                loadTransactionHistory(cardId);
-                
+                id = CardSessionManager.getInstance().acquire().getUserIdHex();
+                System.out.println("✓ Đọc thẻ thành công - Card ID: " + id);
             } catch (CardException e) {
                 System.err.println("❌ Lỗi: Không thể đọc thẻ - " + e.getMessage());
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showLoading(false);
                     showError("Không thể đọc thẻ. Vui lòng cắm thẻ và thử lại.");
                 });
+                return;
             }
-        }).start();
-    }
 
-    private void loadTransactionHistory(String cardId) {
-        showLoading(true);
-        transactionContainer.setVisible(false);
-        transactionContainer.setManaged(false);
-        emptyBox.setVisible(false);
-        emptyBox.setManaged(false);
-
-        new Thread(() -> {
+            // Tự động load trang đầu của lịch sử giao dịch
             try {
-                String apiUrl = AppConfig.API_BASE_URL + "/api/transactions/card/" + cardId;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                int responseCode = conn.getResponseCode();
-                
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String inputLine;
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    JSONArray transactions = jsonResponse.getJSONArray("data");
-
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        displayTransactions(transactions);
-                    });
-
-                } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        showEmpty();
-                    });
-                } else {
-                    Platform.runLater(() -> {
-                        showLoading(false);
-                        showError("Lỗi kết nối server: " + responseCode);
-                    });
-                }
-
-            } catch (Exception e) {
+                TransactionPage page = transactionService.fetchHistoryPage(id, null);
+                tasks.runLater(() -> {
+                    showLoading(false);
+                    cardId = id;
+                    displayFirstPage(page);
+                });
+            } catch (IOException e) {
                 e.printStackTrace();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showLoading(false);
                     showError("Lỗi: " + e.getMessage());
                 });
+            } catch (InterruptedException e) {
+                // Screen left while loading
             }
-        }).start();
+        });
     }
 
-    private void displayTransactions(JSONArray transactions) {
-        transactionList.getChildren().clear();
-
-        if (transactions.length() == 0) {
+    private void displayFirstPage(TransactionPage page) {
+        if (page.getRows().isEmpty()) {
             showEmpty();
             return;
         }
 
-        double total = 0;
-
-        for (int i = 0; i < transactions.length(); i++) {
-            JSONObject transaction = transactions.getJSONObject(i);
-            transactionList.getChildren().add(createTransactionCard(transaction));
-            
-            // Tính tổng với logic tương tự: nếu payment < 1000 thì nhân 10000
-            double payment = transaction.optDouble("payment", 0);
-            if (payment > 0 && payment < 1000) {
-                payment = payment * 10000;
-            }
-            total += payment;
-        }
-
-        totalLabel.setText("Tổng cộng: " + currencyFormat.format(total) + " VNĐ (" + transactions.length() + " giao dịch)");
+        totalCount = page.getTotalCount();
+        totalLabel.setText("Tổng cộng: " + currencyFormat.format(page.getTotalVND()) + " VNĐ (" + totalCount + " giao dịch)");
+        appendPage(page);
         
         transactionContainer.setVisible(true);
         transactionContainer.setManaged(true);
     }
 
-    private VBox createTransactionCard(JSONObject transaction) {
-        VBox card = new VBox(8);
-        card.setStyle("-fx-background-color: rgba(30, 41, 59, 0.8); " +
-                     "-fx-border-color: rgba(99, 102, 241, 0.3); " +
-                     "-fx-border-radius: 8; -fx-background-radius: 8; " +
-                     "-fx-padding: 15;");
-
-        // Header
-        HBox header = new HBox(10);
-        header.setAlignment(Pos.CENTER_LEFT);
+    private void appendPage(TransactionPage page) {
+        rows.addAll(page.getRows());
+        nextCursor = page.getNextCursor();
+        pageStatusLabel.setText(nextCursor != null
+            ? "Đã tải " + rows.size() + "/" + totalCount + " giao dịch, cuộn xuống để xem thêm"
+            : "Đã tải " + rows.size() + " giao dịch");
+    }
 
-        FontIcon icon = new FontIcon("fas-receipt");
-        icon.setIconSize(20);
-        icon.setStyle("-fx-icon-color: #6366f1;");
+    /**
+     * Fetch the next page in the background (no-op while one is loading or on the last page)
+     */
+    private void loadNextPage() {
+        if (loadingPage || nextCursor == null) {
+            return;
+        }
+        loadingPage = true;
+        String cursor = nextCursor;
+        pageStatusLabel.setText("Đang tải thêm giao dịch...");
 
-        String date = transaction.optString("time_stamp", "N/A");
-        Label dateLabel = new Label(formatDate(date));
-        dateLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #cbd5e1; -fx-font-weight: bold;");
+        tasks.submit(() -> {
+            try {
+                TransactionPage page = transactionService.fetchHistoryPage(cardId, cursor);
+                tasks.runLater(() -> {
+                    loadingPage = false;
+                    appendPage(page);
+                });
+            } catch (IOException e) {
+                System.err.println("✗ Không thể tải trang giao dịch: " + e.getMessage());
+                // Retried on the next scroll
+                tasks.runLater(() -> {
+                    loadingPage = false;
+                    pageStatusLabel.setText("Lỗi tải thêm giao dịch: " + e.getMessage());
+                });
+            } catch (InterruptedException e) {
+                // Screen left while loading
+            }
+        });
+    }
 
-        header.getChildren().addAll(icon, dateLabel);
+    /**
+     * Transaction card, built once per visible cell and refilled as rows scroll through it
+     */
+    private class TransactionCell extends ListCell<TransactionRow> {
+        private final VBox card = new VBox(8);
+        private final Label dateLabel = new Label();
+        private final Label amountLabel = new Label();
+        private final Label typeLabel = new Label();
+
+        TransactionCell() {
+            card.setStyle("-fx-background-color: rgba(30, 41, 59, 0.8); " +
+                         "-fx-border-color: rgba(99, 102, 241, 0.3); " +
+                         "-fx-border-radius: 8; -fx-background-radius: 8; " +
+                         "-fx-padding: 15;");
+
+            // Header
+            HBox header = new HBox(10);
+            header.setAlignment(Pos.CENTER_LEFT);
+
+            FontIcon icon = new FontIcon("fas-receipt");
+            icon.setIconSize(20);
+            icon.setStyle("-fx-icon-color: #6366f1;");
+            dateLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #cbd5e1; -fx-font-weight: bold;");
+            header.getChildren().addAll(icon, dateLabel);
+
+            amountLabel.setStyle("-fx-font-size: 18px; -fx-text-fill: #22c55e; -fx-font-weight: bold;");
+            typeLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #94a3b8;");
 
-        // Payment amount
-        double payment = transaction.optDouble("payment", 0);
-        
-        // Fix: Nếu payment nhỏ hơn 1000, có thể là lưu dưới dạng coins, cần nhân 10000
-        // (vì 1 coin = 10,000 VNĐ, nếu payment < 1000 thì chắc chắn là coins)
-        if (payment > 0 && payment < 1000) {
-            payment = payment * 10000;
+            card.getChildren().addAll(header, amountLabel, typeLabel);
         }
-        
-        Label amountLabel = new Label(currencyFormat.format(payment) + " VNĐ");
-        amountLabel.setStyle("-fx-font-size: 18px; -fx-text-fill: #22c55e; -fx-font-weight: bold;");
 
-        // Combo info (if exists)
-        VBox infoBox = new VBox(5);
-        if (transaction.has("combo_id") && !transaction.isNull("combo_id")) {
-            JSONObject combo = transaction.optJSONObject("combo_id");
-            if (combo != null) {
-                Label comboLabel = new Label("📦 Combo: " + combo.optString("name", "N/A"));
-                comboLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #94a3b8;");
-                infoBox.getChildren().add(comboLabel);
+        @Override
+        protected void updateItem(TransactionRow row, boolean empty) {
+            super.updateItem(row, empty);
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
             }
-        } else {
-            Label typeLabel = new Label("💰 Nạp tiền");
-            typeLabel.setStyle("-fx-font-size: 13px; -fx-text-fill: #94a3b8;");
-            infoBox.getChildren().add(typeLabel);
-        }
 
-        card.getChildren().addAll(header, amountLabel, infoBox);
-        return card;
+            dateLabel.setText(formatDate(row.getTimeStamp()));
+            amountLabel.setText(currencyFormat.format(row.getPaymentVND()) + " VNĐ");
+            if (!row.isCombo()) {
+                typeLabel.setText("💰 Nạp tiền");
+            } else {
+                typeLabel.setText(row.getComboName() != null ? "📦 Combo: " + row.getComboName() : "");
+            }
+            typeLabel.setVisible(!typeLabel.getText().isEmpty());
+            typeLabel.setManaged(typeLabel.isVisible());
+            setGraphic(card);
+
+            // Near the end of what is loaded: fetch the next page before the admin gets there
+            if (getIndex() >= rows.size() - AppConfig.HISTORY_PREFETCH_ROWS) {
+                loadNextPage();
+            }
+        }
     }
 
     private String formatDate(String isoDate) {
@@ -234,22 +234,8 @@ public class AdminTransactionHistoryController {
         errorLabel.setVisible(true);
     }
 
-    /**
-     * Convert byte array to hex string
-     */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
-
     @FXML
     private void onBack() {
-        if (cardService != null && cardService.isConnected()) {
-            cardService.disconnect();
-        }
         AdminApp.setRoot("admin-menu.fxml");
     }
 
@@ -1,16 +1,21 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.ClientApp;
-import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.CardTerminalMonitor;
 import com.example.desktopapp.util.AppConfig;
-import javafx.application.Platform;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 
+import java.util.Set;
+
 /**
  * Controller for Card Check Screen (Client App)
+ * Reused between visits (ViewCache), reset in onShow
  */
-public class CardCheckClientController {
+public class CardCheckClientController implements ViewCache.Reusable {
 
     @FXML
     private Label instructionLabel;
@@ -24,66 +29,100 @@ public class CardCheckClientController {
     @FXML
     private Label statusLabel;
 
-    private CardService cardService;
+    private TaskExecutor.Scope tasks;
+    private boolean checking = false;
+    private String instructionText;
+    private String statusStyle;
+
+    // Advances to payment as soon as a card is tapped
+    private final CardTerminalMonitor.Listener cardListener = event -> tasks.runLater(() -> {
+        if (event.isInserted()) {
+            checkCard(event.getTerminalName());
+        } else if (!checking) {
+            statusLabel.setText("Thẻ đã được rút ra");
+            statusLabel.setStyle("-fx-text-fill: #94a3b8;");
+        }
+    });
 
     @FXML
     public void initialize() {
-        cardService = new CardService();
-        
+        instructionText = instructionLabel.getText();
+        statusStyle = statusLabel.getStyle();
+    }
+
+    @Override
+    public void onShow() {
+        tasks = TaskExecutor.getInstance().currentScope();
+        checking = false;
+        checkCardButton.setDisable(false);
+        instructionLabel.setText(instructionText);
+        statusLabel.setStyle(statusStyle);
+        statusLabel.setManaged(false);
+
         // Display selected game info
         String gameName = AppConfig.getProperty("selectedGameName", "Unknown Game");
         String gamePrice = AppConfig.getProperty("selectedGamePrice", "0");
         gameInfoLabel.setText("Trò chơi: " + gameName + " - Giá: " + gamePrice + " coins");
     
         statusLabel.setText("");
+
+        CardTerminalMonitor monitor = CardTerminalMonitor.getInstance();
+        monitor.addListener(cardListener);
+        if (monitor.isRunning()) {
+            instructionLabel.setText("Vui lòng đặt thẻ lên đầu đọc");
+            // Card already on the reader when the screen opens
+            Set<String> withCard = monitor.getTerminalsWithCard();
+            if (!withCard.isEmpty()) {
+                String terminalName = withCard.iterator().next();
+                tasks.runLater(() -> checkCard(terminalName));
+            }
+        }
     }
 
     /**
-     * Check if card is present and connected
+     * Check if card is present and connected (manual fallback when no tap event arrives)
      */
     @FXML
     private void handleCheckCard() {
+        Set<String> withCard = CardTerminalMonitor.getInstance().getTerminalsWithCard();
+        checkCard(withCard.isEmpty() ? null : withCard.iterator().next());
+    }
+
+    /**
+     * Open the card session and go to payment
+     * @param terminalName reader holding the card (null for first available)
+     */
+    private void checkCard(String terminalName) {
+        if (checking) {
+            return;
+        }
+        checking = true;
         checkCardButton.setDisable(true);
         statusLabel.setManaged(true);
         statusLabel.setText("Đang kiểm tra thẻ...");
         statusLabel.setStyle("-fx-text-fill: #94a3b8;");
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
-                cardService.connect();
-                boolean cardFound = true;
+                // Session is kept for the payment screen, no second handshake there
+                CardSessionManager.getInstance().acquire(terminalName);
                 
-                Platform.runLater(() -> {
-                    checkCardButton.setDisable(false);
-                    
-                    if (cardFound) {
-                        statusLabel.setText("Thẻ đã được phát hiện!");
-                        statusLabel.setStyle("-fx-text-fill: #22c55e; -fx-font-size: 14px; -fx-font-weight: bold;");
-                        
-                        // Delay để người dùng nhìn thấy thông báo
-                        new Thread(() -> {
-                            try {
-                                Thread.sleep(1500);
-                                Platform.runLater(() -> ClientApp.setRoot("payment-client.fxml"));
-                            } catch (InterruptedException ex) {
-                                ex.printStackTrace();
-                            }
-                        }).start();
-                    } else {
-                        statusLabel.setText("Không tìm thấy thẻ!");
-                        statusLabel.setStyle("-fx-text-fill: #ef4444; -fx-font-size: 14px; -fx-font-weight: bold;");
-                    }
+                tasks.runLater(() -> {
+                    CardTerminalMonitor.getInstance().removeListener(cardListener);
+                    AppConfig.setProperty("cardTerminal", terminalName != null ? terminalName : "");
+                    ClientApp.setRoot("payment-client.fxml");
                 });
             } catch (Exception e) {
                 e.printStackTrace();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
+                    checking = false;
                     checkCardButton.setDisable(false);
                     statusLabel.setManaged(true);
                     statusLabel.setText("Lỗi: " + e.getMessage());
                     statusLabel.setStyle("-fx-text-fill: #ef4444; -fx-font-size: 13px;");
                 });
             }
-        }).start();
+        });
     }
 
     /**
@@ -91,6 +130,7 @@ public class CardCheckClientController {
      */
     @FXML
     private void handleBack() {
+        CardTerminalMonitor.getInstance().removeListener(cardListener);
         ClientApp.setRoot("game-selection.fxml");
     }
 
@@ -1,9 +1,13 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.MainApp;
+import com.example.desktopapp.model.CardProfile;
+import com.example.desktopapp.service.ApiClient;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.CatalogCache;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -105,6 +109,8 @@ public class CardInfoController implements Initializable {
 
     // Service
     private CardService cardService;
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
+    private CardSessionManager.CardSession cardSession;
     private String verifiedPin; // Store PIN after successful verification
 
     @Override
@@ -119,8 +125,6 @@ public class CardInfoController implements Initializable {
         oldPinDots = new Label[]{oldPinDot1, oldPinDot2, oldPinDot3, oldPinDot4, oldPinDot5, oldPinDot6};
         newPinDots = new Label[]{newPinDot1, newPinDot2, newPinDot3, newPinDot4, newPinDot5, newPinDot6};
         confirmPinDots = new Label[]{confirmPinDot1, confirmPinDot2, confirmPinDot3, confirmPinDot4, confirmPinDot5, confirmPinDot6};
-        cardService = new CardService();
-        
         // Auto-connect to card on initialize
         connectToCard();
     }
@@ -135,13 +139,14 @@ public class CardInfoController implements Initializable {
         Task<Void> connectTask = new Task<>() {
             @Override
             protected Void call() throws Exception {
-                cardService.connect();
+                cardSession = CardSessionManager.getInstance().acquire();
+                cardService = cardSession.getCardService();
                 return null;
             }
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showState("pin");
                     pinBuilder.setLength(0);
                     updatePinDisplay();
@@ -150,7 +155,7 @@ public class CardInfoController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showState("error");
                     Throwable ex = getException();
                     errorLabel.setText(ex != null ? ex.getMessage() : "Không thể kết nối thẻ");
@@ -158,7 +163,7 @@ public class CardInfoController implements Initializable {
             }
         };
 
-        new Thread(connectTask).start();
+        tasks.submit(connectTask);
     }
 
     /**
@@ -261,7 +266,7 @@ public class CardInfoController implements Initializable {
             verifyBtn.setDisable(false);
             
             // Auto-verify when PIN is complete
-            Platform.runLater(() -> onVerifyPin());
+            tasks.runLater(() -> onVerifyPin());
         }
     }
     /**
@@ -285,7 +290,7 @@ public class CardInfoController implements Initializable {
             private byte gender;
             private int coins;
             private byte[] avatar;
-            private short[] gameIds;
+            private java.util.Map<Short, Integer> gameIds;
 
             @Override
             protected Void call() throws Exception {
@@ -294,20 +299,14 @@ public class CardInfoController implements Initializable {
                 cardService.verifyPin(pin);
                 verifiedPin = pin; // Save PIN for later use
 
-                // Read card data
+                // Read whole profile in one APDU
                 updateMessage("Đang đọc dữ liệu thẻ...");
-                name = cardService.readName();
-                age = cardService.readAge();
-                gender = cardService.readGender();
-                coins = cardService.readCoins();
-
-                // Read purchased games
-                updateMessage("Đang đọc game đã mua...");
-                try {
-                    gameIds = cardService.readPurchasedGames();
-                } catch (CardException e) {
-                    gameIds = new short[0];
-                }
+                CardProfile profile = cardService.readProfile();
+                name = profile.getName();
+                age = profile.getAge();
+                gender = profile.getGender();
+                coins = profile.getCoins();
+                gameIds = profile.getPurchasedGames();
 
                 // Read avatar
                 updateMessage("Đang đọc ảnh đại diện...");
@@ -323,7 +322,7 @@ public class CardInfoController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI
                     connectingLabel.textProperty().unbind();
                     
@@ -335,7 +334,7 @@ public class CardInfoController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI - critical for subsequent attempts
                     connectingLabel.textProperty().unbind();
                     
@@ -384,13 +383,13 @@ public class CardInfoController implements Initializable {
         };
 
         connectingLabel.textProperty().bind(verifyTask.messageProperty());
-        new Thread(verifyTask).start();
+        tasks.submit(verifyTask);
     }
 
     /**
      * Display card info on screen
      */
-    private void displayCardInfo(String name, byte age, byte gender, int coins, byte[] avatar, short[] gameIds) {
+    private void displayCardInfo(String name, byte age, byte gender, int coins, byte[] avatar, java.util.Map<Short, Integer> gameIds) {
         // Name
         nameLabel.setText(name != null && !name.isEmpty() ? name : "Chưa có tên");
 
@@ -434,14 +433,14 @@ public class CardInfoController implements Initializable {
     /**
      * Display purchased games list
      */
-    private void displayPurchasedGames(short[] gameIds) {
+    private void displayPurchasedGames(java.util.Map<Short, Integer> gameCountMap) {
         if (purchasedGamesContainer == null) {
             return;
         }
         
         purchasedGamesContainer.getChildren().clear();
         
-        if (gameIds == null || gameIds.length == 0) {
+        if (gameCountMap == null || gameCountMap.isEmpty()) {
             if (noGamesLabel != null) {
                 noGamesLabel.setVisible(true);
                 noGamesLabel.setManaged(true);
@@ -454,66 +453,22 @@ public class CardInfoController implements Initializable {
             noGamesLabel.setManaged(false);
         }
         
-        // Count occurrences of each game ID
-        java.util.Map<Short, Integer> gameCountMap = new java.util.HashMap<>();
-        for (short gameId : gameIds) {
-            gameCountMap.put(gameId, gameCountMap.getOrDefault(gameId, 0) + 1);
-        }
-        
-        // Load game names from backend and display with count
-        Task<Void> loadGamesTask = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                for (java.util.Map.Entry<Short, Integer> entry : gameCountMap.entrySet()) {
-                    short gameId = entry.getKey();
-                    int count = entry.getValue();
-                    
-                    try {
-                        String gameName = fetchGameName(gameId);
-                        Platform.runLater(() -> {
-                            Label gameLabel = createGameLabel(gameId, gameName, count);
-                            purchasedGamesContainer.getChildren().add(gameLabel);
-                        });
-                    } catch (Exception e) {
-                        // Skip games that can't be loaded
-                        System.err.println("Error loading game " + gameId + ": " + e.getMessage());
-                    }
+        // Game names come from the catalog cache (one request at most, usually none)
+        CatalogCache.getInstance().getGames()
+            .whenComplete((games, e) -> {
+                if (e != null) {
+                    // Names fall back to "Game #id"
+                    System.err.println("Error loading games: " + ApiClient.errorMessage(e));
                 }
-                return null;
-            }
-        };
-        
-        new Thread(loadGamesTask).start();
-    }
-    
-    /**
-     * Fetch game name from backend API
-     */
-    private String fetchGameName(short gameId) throws Exception {
-        java.net.URL url = new java.net.URL(com.example.desktopapp.util.AppConfig.API_GAMES + "/" + gameId);
-        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Accept", "application/json");
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode == 200) {
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            
-            // Parse JSON to get name
-            String json = response.toString();
-            int nameStart = json.indexOf("\"name\":\"") + 8;
-            int nameEnd = json.indexOf("\"", nameStart);
-            return json.substring(nameStart, nameEnd);
-        } else {
-            return "Game #" + gameId;
-        }
+                tasks.runLater(() -> {
+                    for (java.util.Map.Entry<Short, Integer> entry : gameCountMap.entrySet()) {
+                        short gameId = entry.getKey();
+                        String gameName = CatalogCache.getInstance().getGameName(gameId);
+                        Label gameLabel = createGameLabel(gameId, gameName, entry.getValue());
+                        purchasedGamesContainer.getChildren().add(gameLabel);
+                    }
+                });
+            });
     }
     
     /**
@@ -538,11 +493,7 @@ public class CardInfoController implements Initializable {
             return;
         }
         
-        // Disconnect current connection
-        if (cardService != null) {
-            cardService.disconnect();
-        }
-        
+        // Payment screen reuses the open card session
         // Navigate to payment screen
         MainApp.setRoot("payment-topup.fxml", (PaymentTopupController controller) -> {
             controller.setPin(verifiedPin);
@@ -559,11 +510,7 @@ public class CardInfoController implements Initializable {
             return;
         }
         
-        // Disconnect current connection
-        if (cardService != null) {
-            cardService.disconnect();
-        }
-        
+        // Payment screen reuses the open card session
         // Navigate to payment screen with combo preselected
         MainApp.setRoot("payment-topup.fxml", (PaymentTopupController controller) -> {
             controller.setPin(verifiedPin);
@@ -591,8 +538,9 @@ public class CardInfoController implements Initializable {
      */
     @FXML
     private void onUnlockCard() {
+        // Unlock screen opens its own connection
         if (cardService != null) {
-            cardService.disconnect();
+            CardSessionManager.getInstance().invalidate(cardService);
         }
         MainApp.setRoot("unlock-card.fxml");
     }
@@ -602,9 +550,6 @@ public class CardInfoController implements Initializable {
      */
     @FXML
     private void onGoHome() {
-        if (cardService != null) {
-            cardService.disconnect();
-        }
         MainApp.setRoot("main-menu.fxml");
     }
 
@@ -729,14 +674,14 @@ public class CardInfoController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     UIUtils.showAlert(Alert.AlertType.INFORMATION, "Thành công", 
                         "Reset thẻ thành công!\n\nThẻ đã được đặt lại về trạng thái ban đầu.\n" +
                         "Người dùng cần khởi tạo lại thẻ để sử dụng.");
                     
-                    // Disconnect and return to main menu
+                    // Card identity is gone, drop the session and return to main menu
                     if (cardService != null) {
-                        cardService.disconnect();
+                        CardSessionManager.getInstance().invalidate(cardService);
                     }
                     MainApp.setRoot("main-menu.fxml");
                 });
@@ -744,7 +689,7 @@ public class CardInfoController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     Throwable ex = getException();
                     String errorMsg;
                     
@@ -774,7 +719,7 @@ public class CardInfoController implements Initializable {
         };
 
         connectingLabel.textProperty().bind(resetTask.messageProperty());
-        new Thread(resetTask).start();
+        tasks.submit(resetTask);
     }
 
     // ============ Change PIN Handlers ============
@@ -901,7 +846,7 @@ public class CardInfoController implements Initializable {
         if (currentBuilder.length() == MAX_PIN_LENGTH) {
             if (changePinStep < 2) {
                 changePinStep++;
-                Platform.runLater(() -> updateChangePinDisplay());
+                tasks.runLater(() -> updateChangePinDisplay());
             }
         }
         
@@ -951,7 +896,7 @@ public class CardInfoController implements Initializable {
             @Override
             protected void succeeded() {
                 verifiedPin = newPin; // Update stored PIN
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     UIUtils.showAlert("Thành công", "Đổi mã PIN thành công!");
                     showState("info");
                 });
@@ -960,7 +905,7 @@ public class CardInfoController implements Initializable {
             @Override
             protected void failed() {
                 Throwable ex = getException();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     confirmChangePinBtn.setDisable(false);
                     if (ex.getMessage().contains("6985")) {
                         UIUtils.showAlert("Lỗi", "Mã PIN cũ không đúng. Vui lòng thử lại.");
@@ -982,7 +927,7 @@ public class CardInfoController implements Initializable {
         };
         
         connectingLabel.textProperty().bind(changePinTask.messageProperty());
-        new Thread(changePinTask).start();
+        tasks.submit(changePinTask);
     }
 
     // ============ Edit Info Handlers ============
@@ -1071,12 +1016,13 @@ public class CardInfoController implements Initializable {
             protected Void call() throws Exception {
                 updateMessage("Đang ghi dữ liệu vào thẻ...");
                 cardService.writeUserData(finalName, finalAge, finalGender);
+                cardSession.refreshIdentity();
                 return null;
             }
             
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Update display with new values
                     nameLabel.setText(finalName);
                     ageLabel.setText(finalAge > 0 ? String.valueOf(finalAge & 0xFF) : "Chưa xác định");
@@ -1097,7 +1043,7 @@ public class CardInfoController implements Initializable {
             @Override
             protected void failed() {
                 Throwable ex = getException();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     saveInfoBtn.setDisable(false);
                     UIUtils.showAlert("Lỗi", "Không thể lưu thông tin: " + ex.getMessage());
                     showState("editinfo");
@@ -1106,6 +1052,6 @@ public class CardInfoController implements Initializable {
         };
         
         connectingLabel.textProperty().bind(saveInfoTask.messageProperty());
-        new Thread(saveInfoTask).start();
+        tasks.submit(saveInfoTask);
     }
 }
@@ -3,12 +3,14 @@ package com.example.desktopapp.controller;
 import com.example.desktopapp.MainApp;
 import com.example.desktopapp.model.UserRegistration;
 import com.example.desktopapp.service.APDUConstants;
+import com.example.desktopapp.service.ApiClient;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CatalogCache;
+import com.example.desktopapp.service.JournalSyncService;
 import com.example.desktopapp.service.TransactionService;
 import com.example.desktopapp.service.MomoService;
-import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -20,6 +22,8 @@ import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import org.kordamp.ikonli.javafx.FontIcon;
 import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -39,9 +43,7 @@ import java.text.NumberFormat;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for Card Registration wizard
@@ -107,13 +109,13 @@ public class CardRegistrationController implements Initializable {
     private String paymentType = "coins"; // "coins" or "combo"
     private ToggleGroup genderGroup;
     private CardService cardService;
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private MomoService momoService;
     private NumberFormat currencyFormat;
     
     // QR Payment polling
-    private ScheduledExecutorService paymentPollingExecutor;
+    private CompletableFuture<MomoService.PaymentStatusResponse> paymentWatch;
     private String currentOrderId;
-    private volatile boolean isPolling = false;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -200,7 +202,7 @@ public class CardRegistrationController implements Initializable {
             }
             
             // Auto-advance to next step when PIN is complete
-            Platform.runLater(() -> onNext());
+            tasks.runLater(() -> onNext());
         }
     }
 
@@ -250,7 +252,7 @@ public class CardRegistrationController implements Initializable {
         }
     }
     
-    private byte[] resizeImage(byte[] originalBytes, int maxSize) {
+    static byte[] resizeImage(byte[] originalBytes, int maxSize) {
         try {
             // Load original image using javax.imageio
             BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(originalBytes));
@@ -387,224 +389,53 @@ public class CardRegistrationController implements Initializable {
         comboLoadingBox.setVisible(true);
         comboErrorLabel.setVisible(false);
         
-        Task<String> loadTask = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                // Call backend API to get combos
-                java.net.URL url = new java.net.URL(AppConfig.API_COMBOS);
-                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-                    return response.toString();
-                } else {
-                    throw new Exception("API trả về lỗi: " + responseCode);
-                }
-            }
-
-            @Override
-            protected void succeeded() {
-                Platform.runLater(() -> {
-                    comboLoadingBox.setVisible(false);
-                    displayCombos(getValue());
-                });
-            }
-
-            @Override
-            protected void failed() {
-                Platform.runLater(() -> {
-                    comboLoadingBox.setVisible(false);
+        CatalogCache.getInstance().getCombos()
+            .whenComplete((combos, e) -> tasks.runLater(() -> {
+                comboLoadingBox.setVisible(false);
+                if (e != null) {
                     comboErrorLabel.setText("Không thể tải danh sách combo. Vui lòng thử lại.");
                     comboErrorLabel.setVisible(true);
-                });
-            }
-        };
-        
-        new Thread(loadTask).start();
+                    return;
+                }
+                displayCombos(combos);
+            }));
     }
 
-    private void displayCombos(String jsonResponse) {
-        try {
-            // Parse JSON more carefully
-            // Expected format: {"success":true,"data":[{combo1},{combo2},...]}
-            
-            // Find the data array
-            int dataStart = jsonResponse.indexOf("\"data\":[");
-            if (dataStart == -1) {
-                throw new Exception("Invalid response format: missing 'data' field");
-            }
-            dataStart += 8; // Move past "data":[
-            
-            // Find matching closing bracket for data array
-            int bracketCount = 0;
-            int dataEnd = -1;
-            boolean inString = false;
-            boolean escaped = false;
-            
-            for (int i = dataStart; i < jsonResponse.length(); i++) {
-                char c = jsonResponse.charAt(i);
-                
-                if (escaped) {
-                    escaped = false;
-                    continue;
-                }
-                
-                if (c == '\\') {
-                    escaped = true;
-                    continue;
-                }
-                
-                if (c == '"') {
-                    inString = !inString;
-                    continue;
-                }
-                
-                if (!inString) {
-                    if (c == '[' || c == '{') {
-                        bracketCount++;
-                    } else if (c == ']' || c == '}') {
-                        bracketCount--;
-                        if (c == ']' && bracketCount == -1) {
-                            dataEnd = i;
-                            break;
-                        }
-                    }
-                }
-            }
-            
-            if (dataEnd == -1) {
-                throw new Exception("Invalid response format: unclosed array");
-            }
-            
-            String dataArray = jsonResponse.substring(dataStart, dataEnd).trim();
-            
-            if (dataArray.isEmpty() || dataArray.equals("")) {
-                comboErrorLabel.setText("Không có combo nào.");
-                comboErrorLabel.setVisible(true);
-                return;
-            }
-            
-            comboListContainer.getChildren().clear();
-            
-            // Parse each combo object manually
-            // Split by },{ pattern but only at top level
-            java.util.List<String> comboStrings = new java.util.ArrayList<>();
-            int start = 0;
-            bracketCount = 0;
-            inString = false;
-            escaped = false;
-            
-            for (int i = 0; i < dataArray.length(); i++) {
-                char c = dataArray.charAt(i);
-                
-                if (escaped) {
-                    escaped = false;
-                    continue;
-                }
-                
-                if (c == '\\') {
-                    escaped = true;
-                    continue;
-                }
-                
-                if (c == '"') {
-                    inString = !inString;
-                    continue;
-                }
-                
-                if (!inString) {
-                    if (c == '{' || c == '[') {
-                        bracketCount++;
-                    } else if (c == '}' || c == ']') {
-                        bracketCount--;
-                        if (c == '}' && bracketCount == 0) {
-                            // Found end of a top-level object
-                            String comboStr = dataArray.substring(start, i + 1);
-                            comboStrings.add(comboStr);
-                            // Skip comma and whitespace
-                            while (i + 1 < dataArray.length() && 
-                                   (dataArray.charAt(i + 1) == ',' || 
-                                    Character.isWhitespace(dataArray.charAt(i + 1)))) {
-                                i++;
-                            }
-                            start = i + 1;
-                        }
-                    }
-                }
-            }
-            
-            // Create cards for each combo
-            for (String comboStr : comboStrings) {
-                try {
-                    // Remove outer braces
-                    comboStr = comboStr.trim();
-                    if (comboStr.startsWith("{")) comboStr = comboStr.substring(1);
-                    if (comboStr.endsWith("}")) comboStr = comboStr.substring(0, comboStr.length() - 1);
-                    
-                    // Parse fields
-                    int id = parseJsonInt(comboStr, "_id");
-                    String name = parseJsonString(comboStr, "name");
-                    int price = parseJsonInt(comboStr, "priceVND");
-                    int discount = parseJsonInt(comboStr, "discountPercentage");
-                    String description = parseJsonString(comboStr, "description");
-                    
-                    // Skip if essential fields are missing
-                    if (name.isEmpty() || price == 0) {
-                        continue;
-                    }
-                    
-                    // Create combo card
-                    VBox comboCard = createComboCard(id, name, price, discount, description);
-                    comboListContainer.getChildren().add(comboCard);
-                } catch (Exception e) {
-                    System.err.println("Error parsing combo: " + e.getMessage());
-                    // Skip this combo and continue with others
-                }
+    private void displayCombos(JSONArray combos) {
+        if (combos.length() == 0) {
+            comboErrorLabel.setText("Không có combo nào.");
+            comboErrorLabel.setVisible(true);
+            return;
+        }
+        
+        comboListContainer.getChildren().clear();
+        
+        for (int i = 0; i < combos.length(); i++) {
+            JSONObject combo = combos.optJSONObject(i);
+            if (combo == null) {
+                continue;
             }
+            int id = combo.optInt("_id");
+            String name = combo.optString("name");
+            int price = combo.optInt("priceVND");
+            int discount = combo.optInt("discountPercentage");
+            String description = combo.optString("description");
             
-            if (comboListContainer.getChildren().isEmpty()) {
-                comboErrorLabel.setText("Không tìm thấy combo nào.");
-                comboErrorLabel.setVisible(true);
+            // Skip if essential fields are missing
+            if (name.isEmpty() || price == 0) {
+                continue;
             }
             
-        } catch (Exception e) {
-            comboErrorLabel.setText("Lỗi khi hiển thị combo: " + e.getMessage());
-            comboErrorLabel.setVisible(true);
-            e.printStackTrace();
+            VBox comboCard = createComboCard(id, name, price, discount, description);
+            comboListContainer.getChildren().add(comboCard);
         }
-    }
-
-    private int parseJsonInt(String json, String key) {
-        try {
-            int start = json.indexOf("\"" + key + "\":")+key.length()+3;
-            int end = json.indexOf(",", start);
-            if (end == -1) end = json.length();
-            return Integer.parseInt(json.substring(start, end).trim());
-        } catch (Exception e) {
-            return 0;
-        }
-    }
-
-    private String parseJsonString(String json, String key) {
-        try {
-            int start = json.indexOf("\"" + key + "\":\"") + key.length() + 4;
-            int end = json.indexOf("\"", start);
-            return json.substring(start, end);
-        } catch (Exception e) {
-            return "";
+        
+        if (comboListContainer.getChildren().isEmpty()) {
+            comboErrorLabel.setText("Không tìm thấy combo nào.");
+            comboErrorLabel.setVisible(true);
         }
     }
-
+    
     private VBox createComboCard(int id, String name, int price, int discount, String description) {
         VBox card = new VBox(10);
         card.getStyleClass().add("glass-panel");
@@ -727,59 +558,26 @@ public class CardRegistrationController implements Initializable {
      */
     private void fetchComboDetails(int comboId, int price) {
         loadingComboDetails = true;
-        Task<short[]> fetchTask = new Task<>() {
-            @Override
-            protected short[] call() throws Exception {
-                // Call backend API to get combo details
-                java.net.URL url = new java.net.URL(AppConfig.API_COMBOS + "/" + comboId);
-                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-                    
-                    // Parse game IDs from response
-                    String jsonResponse = response.toString();
-                    return parseComboGameIds(jsonResponse);
-                } else {
-                    throw new Exception("API trả về lỗi: " + responseCode);
+        // Game IDs come from the cached combo list
+        CatalogCache.getInstance().getComboGameIds(comboId)
+            .whenComplete((gameIds, e) -> tasks.runLater(() -> {
+                loadingComboDetails = false;
+                if (e != null) {
+                    // Remove combo khỏi danh sách đã chọn nếu không load được
+                    selectedComboIds.remove(Integer.valueOf(comboId));
+                    totalComboPrice -= price;
+                    user.setAmountVND(totalComboPrice);
+                    updateSelectedCombosSummary();
+                    System.err.println("Failed to fetch combo details: " + ApiClient.errorMessage(e));
+                    showAlert("Lỗi", "Không thể tải chi tiết combo. Vui lòng thử lại.");
+                    return;
                 }
-            }
-
-            @Override
-            protected void succeeded() {
-                short[] gameIds = getValue();
                 if (gameIds != null && gameIds.length > 0) {
                     comboGameIdsMap.put(comboId, gameIds);
                     mergeComboGameIds();
                     System.out.println("Loaded " + gameIds.length + " games for combo " + comboId);
                 }
-                loadingComboDetails = false;
-            }
-
-            @Override
-            protected void failed() {
-                loadingComboDetails = false;
-                // Remove combo khỏi danh sách đã chọn nếu không load được
-                selectedComboIds.remove(Integer.valueOf(comboId));
-                totalComboPrice -= price;
-                user.setAmountVND(totalComboPrice);
-                updateSelectedCombosSummary();
-                System.err.println("Failed to fetch combo details: " + getException().getMessage());
-                showAlert("Lỗi", "Không thể tải chi tiết combo. Vui lòng thử lại.");
-            }
-        };
-        
-        new Thread(fetchTask).start();
+            }));
     }
     
     /**
@@ -829,50 +627,6 @@ public class CardRegistrationController implements Initializable {
         }
     }
     
-    /**
-     * Parse game IDs from combo JSON response
-     * Expected: {"success":true,"data":{"games":[1,2,3,...]}}
-     */
-    private short[] parseComboGameIds(String jsonResponse) {
-        try {
-            // Find games array in data.games
-            int gamesStart = jsonResponse.indexOf("\"games\":[");
-            if (gamesStart == -1) {
-                // Try alternative format: "gameIds"
-                gamesStart = jsonResponse.indexOf("\"gameIds\":[");
-            }
-            
-            if (gamesStart == -1) {
-                throw new Exception("No games array found in response");
-            }
-            
-            gamesStart += (jsonResponse.charAt(gamesStart + 1) == 'g' && jsonResponse.charAt(gamesStart + 2) == 'a' && jsonResponse.charAt(gamesStart + 3) == 'm' && jsonResponse.charAt(gamesStart + 4) == 'e' && jsonResponse.charAt(gamesStart + 5) == 's') ? 9 : 11; // Skip \"games\":[ or \"gameIds\":[
-            
-            int gamesEnd = jsonResponse.indexOf(']', gamesStart);
-            if (gamesEnd == -1) {
-                throw new Exception("Unclosed games array");
-            }
-            
-            String gamesStr = jsonResponse.substring(gamesStart, gamesEnd).trim();
-            if (gamesStr.isEmpty()) {
-                return new short[0];
-            }
-            
-            // Split by comma and parse
-            String[] gameStrs = gamesStr.split(",");
-            short[] gameIds = new short[gameStrs.length];
-            
-            for (int i = 0; i < gameStrs.length; i++) {
-                gameIds[i] = Short.parseShort(gameStrs[i].trim());
-            }
-            
-            return gameIds;
-        } catch (Exception e) {
-            System.err.println("Error parsing game IDs: " + e.getMessage());
-            return new short[0];
-        }
-    }
-
     // ============ QR Payment Methods ============
     
     /**
@@ -902,7 +656,7 @@ public class CardRegistrationController implements Initializable {
             @Override
             protected void succeeded() {
                 MomoService.QrPaymentResponse response = getValue();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     if (response.resultCode == 0 && response.qrCodeUrl != null) {
                         // Show QR code
                         qrLoadingState.setVisible(false);
@@ -926,13 +680,13 @@ public class CardRegistrationController implements Initializable {
             
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showQrError("Lỗi kết nối: " + getException().getMessage());
                 });
             }
         };
         
-        new Thread(qrTask).start();
+        tasks.submit(qrTask);
     }
     
     private void showQrError(String message) {
@@ -943,53 +697,36 @@ public class CardRegistrationController implements Initializable {
     }
     
     /**
-     * Start polling payment status every 1 second
+     * Wait for the payment result (long-poll, see MomoService.watchPayment)
      */
     private void startPaymentPolling(String orderId) {
-        stopPaymentPolling(); // Stop any existing polling
+        stopPaymentPolling();
         
-        isPolling = true;
-        paymentPollingExecutor = Executors.newSingleThreadScheduledExecutor();
+        paymentStatusLabel.setText("Đang chờ thanh toán...");
+        CompletableFuture<MomoService.PaymentStatusResponse> watch = momoService.watchPayment(orderId);
+        paymentWatch = watch;
         
-        paymentPollingExecutor.scheduleAtFixedRate(() -> {
-            if (!isPolling) return;
-            
-            try {
-                MomoService.PaymentStatusResponse status = momoService.checkPaymentStatus(orderId);
-                
-                Platform.runLater(() -> {
-                    if (status.isSuccess()) {
-                        // Payment successful - start writing to card
-                        stopPaymentPolling();
-                        paymentStatusLabel.setText("Thanh toán thành công! Đang ghi thẻ...");
-                        writeCardAfterPayment();
-                    } else if (!status.isPending()) {
-                        // Payment failed
-                        stopPaymentPolling();
-                        showQrError("Thanh toán thất bại: " + status.message);
-                    } else {
-                        // Still pending
-                        paymentStatusLabel.setText("Đang chờ thanh toán...");
-                    }
-                });
-            } catch (Exception e) {
-                System.err.println("Error polling payment status: " + e.getMessage());
+        watch.thenAccept(status -> tasks.runLater(() -> {
+            if (paymentWatch != watch) {
+                return; // Superseded by a new QR or cancelled
+            }
+            paymentWatch = null;
+            if (status.isSuccess()) {
+                paymentStatusLabel.setText("Thanh toán thành công! Đang ghi thẻ...");
+                writeCardAfterPayment();
+            } else {
+                showQrError("Thanh toán thất bại: " + status.message);
             }
-        }, 1, 1, TimeUnit.SECONDS);
+        }));
     }
     
     /**
-     * Stop payment status polling
+     * Stop waiting for the payment result
      */
     private void stopPaymentPolling() {
-        isPolling = false;
-        if (paymentPollingExecutor != null && !paymentPollingExecutor.isShutdown()) {
-            paymentPollingExecutor.shutdown();
-            try {
-                paymentPollingExecutor.awaitTermination(2, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                paymentPollingExecutor.shutdownNow();
-            }
+        if (paymentWatch != null) {
+            paymentWatch.cancel(false);
+            paymentWatch = null;
         }
     }
     
@@ -1068,12 +805,12 @@ public class CardRegistrationController implements Initializable {
                         if (paymentType.equals("combo") && !selectedComboIds.isEmpty()) {
                             String comboId = String.valueOf(selectedComboIds.get(0));
                             // Chuyển đổi coins sang VNĐ (1 coin = 10,000 VNĐ)
-                            transactionService.createComboTransaction(cardId, userAge, comboId, user.getCoins() * 10000);
+                            transactionService.queueComboTransaction(cardId, userAge, comboId, user.getCoins() * 10000);
                         } else if (user.getCoins() > 0) {
-                            // Chuyển đổi coins sang VNĐ (1 coin = 10,000 VNĐ)
-                            transactionService.createTopupTransaction(cardId, userAge, user.getCoins() * 10000);
+                            // Top-up is in the card journal, queued for upload in the background
+                            JournalSyncService.getInstance().drainAndUpload(cardService, cardId, userAge);
                         }
-                        System.out.println("✓ Transaction saved to database");
+                        System.out.println("✓ Transaction queued for upload");
                     } catch (Exception e) {
                         System.err.println("✗ Failed to save transaction: " + e.getMessage());
                     }
@@ -1090,24 +827,24 @@ public class CardRegistrationController implements Initializable {
             @Override
             protected void succeeded() {
                 cardService.disconnect();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     cardWritingState.setVisible(false);
                     cardSuccessState.setVisible(true);
                     
                     // Auto advance to step 5 after 2 seconds
-                    new Thread(() -> {
+                    tasks.submit(() -> {
                         try {
                             Thread.sleep(2000);
-                            Platform.runLater(() -> goToStep(5));
+                            tasks.runLater(() -> goToStep(5));
                         } catch (InterruptedException ignored) {}
-                    }).start();
+                    });
                 });
             }
 
             @Override
             protected void failed() {
                 cardService.disconnect();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     cardWritingState.setVisible(false);
                     cardErrorState.setVisible(true);
                     errorMessageLabel.setText(getException().getMessage());
@@ -1116,7 +853,7 @@ public class CardRegistrationController implements Initializable {
         };
 
         writeStatusLabel.textProperty().bind(writeTask.messageProperty());
-        new Thread(writeTask).start();
+        tasks.submit(writeTask);
     }
 
 
@@ -1,8 +1,11 @@
 package com.example.desktopapp.controller;
 
 import com.example.desktopapp.ClientApp;
+import com.example.desktopapp.service.ApiClient;
+import com.example.desktopapp.service.CatalogCache;
 import com.example.desktopapp.util.AppConfig;
-import javafx.application.Platform;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -12,10 +15,6 @@ import javafx.geometry.Pos;
 import javafx.scene.text.TextAlignment;
 import org.kordamp.ikonli.javafx.FontIcon;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,17 +23,22 @@ import org.json.JSONObject;
 
 /**
  * Controller for Game Selection Screen
+ * Reused between visits (ViewCache), the list is refreshed on every show
  */
-public class GameSelectionController {
+public class GameSelectionController implements ViewCache.Reusable {
 
     @FXML
     private FlowPane gamesContainer;
 
+    private TaskExecutor.Scope tasks;
     private List<JSONObject> games = new ArrayList<>();
+    private JSONArray shownGames;
     private JSONObject selectedGame;
 
-    @FXML
-    public void initialize() {
+    @Override
+    public void onShow() {
+        tasks = TaskExecutor.getInstance().currentScope();
+        selectedGame = null;
         loadGames();
     }
 
@@ -42,51 +46,29 @@ public class GameSelectionController {
      * Load games from API
      */
     private void loadGames() {
-        
-        new Thread(() -> {
-            try {
-                String apiUrl = AppConfig.API_GAMES;
-                URL url = new URL(apiUrl);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-
-                int responseCode = conn.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    String inputLine;
-                    StringBuilder response = new StringBuilder();
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
-
-                    JSONObject jsonResponse = new JSONObject(response.toString());
-                    JSONArray gamesArray = jsonResponse.getJSONArray("data");
-
-                    Platform.runLater(() -> {
-                        games.clear();
-                        gamesContainer.getChildren().clear();
-                        
-                        for (int i = 0; i < gamesArray.length(); i++) {
-                            JSONObject game = gamesArray.getJSONObject(i);
-                            games.add(game);
-                            addGameCard(game);
-                        }
-                    });
-                } else {
-                    Platform.runLater(() -> {
-                        showError("Không thể kết nối đến server. Mã lỗi: " + responseCode);
-                    });
+        CatalogCache.getInstance().getGames()
+            .thenAccept(gamesArray -> tasks.runLater(() -> {
+                // Same catalog as on the last visit, the cards are still in place
+                if (gamesArray == shownGames) {
+                    return;
+                }
+                shownGames = gamesArray;
+                games.clear();
+                gamesContainer.getChildren().clear();
+                
+                for (int i = 0; i < gamesArray.length(); i++) {
+                    JSONObject game = gamesArray.getJSONObject(i);
+                    games.add(game);
+                    addGameCard(game);
                 }
-            } catch (Exception e) {
+            }))
+            .exceptionally(e -> {
                 e.printStackTrace();
-                Platform.runLater(() -> {
-                    showError("Lỗi kết nối: " + e.getMessage());
+                tasks.runLater(() -> {
+                    showError("Không thể kết nối đến server: " + ApiClient.errorMessage(e));
                 });
-            }
-        }).start();
+                return null;
+            });
     }
 
     /**
@@ -2,9 +2,9 @@ package com.example.desktopapp.controller;
 
 import com.example.desktopapp.MainApp;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
 import javafx.animation.PauseTransition;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.util.Duration;
@@ -19,6 +19,7 @@ public class MainMenuController {
     @FXML
     private Label statusLabel;
 
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private CardService cardService = new CardService();
 
     /**
@@ -29,13 +30,13 @@ public class MainMenuController {
         statusLabel.setText("Đang kiểm tra thẻ...");
         
         // Run card check in background thread to avoid blocking UI
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
                 // Connect to card
                 boolean connected = cardService.connect();
                 
                 if (!connected) {
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         UIUtils.showError("Lỗi", "Không thể kết nối với thẻ", "Vui lòng đảm bảo thẻ đã được đặt vào đầu đọc và jCIDE simulator đang chạy.");
                         statusLabel.setText("");
                     });
@@ -48,7 +49,7 @@ public class MainMenuController {
                 // Disconnect
                 cardService.disconnect();
                 
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     if (initialized) {
                         // Card is initialized, go to card info (PIN will be required)
                         statusLabel.setText("Thẻ đã được khởi tạo. Chuyển đến màn hình xem thông tin...");
@@ -69,11 +70,11 @@ public class MainMenuController {
                 });
                 
             } catch (CardException e) {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     UIUtils.showError("Lỗi kết nối thẻ", "Không thể kiểm tra thẻ", e.getMessage());
                     statusLabel.setText("");
                 });
             }
-        }).start();
+        });
     }
 }
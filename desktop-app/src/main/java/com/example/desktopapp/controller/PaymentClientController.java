@@ -2,19 +2,23 @@ package com.example.desktopapp.controller;
 
 import com.example.desktopapp.ClientApp;
 import com.example.desktopapp.service.CardService;
-import com.example.desktopapp.service.TransactionService;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.CardTerminalMonitor;
+import com.example.desktopapp.service.JournalSyncService;
 import com.example.desktopapp.service.APDUConstants;
 import com.example.desktopapp.service.PinVerificationException;
 import com.example.desktopapp.util.AppConfig;
-import javafx.application.Platform;
+import com.example.desktopapp.util.TaskExecutor;
+import com.example.desktopapp.util.ViewCache;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 
 /**
  * Controller for Payment Screen (Client App)
  * Handles PIN entry and game payment using INS 0x30 (TRY_PLAY_GAME)
+ * Reused between visits (ViewCache), reset in onShow
  */
-public class PaymentClientController {
+public class PaymentClientController implements ViewCache.Reusable {
 
     @FXML
     private Label gameInfoLabel;
@@ -28,27 +32,28 @@ public class PaymentClientController {
     @FXML
     private PinKeypadController pinKeypadController;
 
+    private TaskExecutor.Scope tasks;
     private CardService cardService;
-    private TransactionService transactionService;
+    private String statusStyle;
+
+    private boolean processing = false;
+
+    // Card pulled before paying: the session is gone, start over at the card check
+    private final CardTerminalMonitor.Listener cardListener = event -> tasks.runLater(() -> {
+        if (event.isRemoved() && !processing) {
+            leave("card-check-client.fxml");
+        }
+    });
 
     @FXML
     public void initialize() {
-        cardService = new CardService();
-        transactionService = new TransactionService();
-        
-        // Display selected game info
-        String gameName = AppConfig.getProperty("selectedGameName", "Unknown Game");
-        String gamePrice = AppConfig.getProperty("selectedGamePrice", "0");
-        gameInfoLabel.setText("Trò chơi: " + gameName + "\nGiá: " + gamePrice + " coins");
-        
-        loadingIndicator.setVisible(false);
-        statusLabel.setText("");
-        
+        statusStyle = statusLabel.getStyle();
+
         // Auto-submit when PIN is complete (6 digits)
         if (pinKeypadController != null) {
             pinKeypadController.pinProperty().addListener((obs, oldVal, newVal) -> {
                 if (newVal != null && newVal.length() == 6) {
-                    Platform.runLater(() -> {
+                    tasks.runLater(() -> {
                         try {
                             Thread.sleep(300); // Small delay for visual feedback
                             handlePayment();
@@ -61,6 +66,27 @@ public class PaymentClientController {
         }
     }
 
+    @Override
+    public void onShow() {
+        tasks = TaskExecutor.getInstance().currentScope();
+        processing = false;
+        cardService = null;
+        if (pinKeypadController != null) {
+            pinKeypadController.reset();
+        }
+
+        // Display selected game info
+        String gameName = AppConfig.getProperty("selectedGameName", "Unknown Game");
+        String gamePrice = AppConfig.getProperty("selectedGamePrice", "0");
+        gameInfoLabel.setText("Trò chơi: " + gameName + "\nGiá: " + gamePrice + " coins");
+        
+        loadingIndicator.setVisible(false);
+        statusLabel.setText("");
+        statusLabel.setStyle(statusStyle);
+        
+        CardTerminalMonitor.getInstance().addListener(cardListener);
+    }
+
     /**
      * Process payment using INS 0x30 (TRY_PLAY_GAME)
      */
@@ -75,16 +101,20 @@ public class PaymentClientController {
 
         loadingIndicator.setVisible(true);
         statusLabel.setText("Đang xử lý thanh toán...");
+        processing = true;
 
-        new Thread(() -> {
+        tasks.submit(() -> {
             try {
-                // Connect to card first
-                cardService.connect();
+                // Reuse the session opened on the card check screen
+                String terminalName = AppConfig.getProperty("cardTerminal", "");
+                CardSessionManager.CardSession session = CardSessionManager.getInstance()
+                    .acquire(terminalName.isEmpty() ? null : terminalName);
+                cardService = session.getCardService();
                 
                 // Step 1: Verify PIN using CardService method
                 cardService.verifyPin(pin);
                 
-                Platform.runLater(() -> statusLabel.setText("PIN đã xác thực. Đang thanh toán..."));
+                tasks.runLater(() -> statusLabel.setText("PIN đã xác thực. Đang thanh toán..."));
 
                 // Step 2: Try to play game using CardService method
                 String gameIdStr = AppConfig.getProperty("selectedGameId", "1");
@@ -96,27 +126,26 @@ public class PaymentClientController {
                 
                 boolean success = cardService.tryPlayGame(gameId, gamePrice);
                 
-                Platform.runLater(() -> {
+                if (success) {
+                    // The card journaled the play; upload happens in the background
+                    try {
+                        JournalSyncService.getInstance().drainAndUpload(session);
+                    } catch (Exception e) {
+                        // Entry stays on the card and is uploaded on the next tap
+                        System.err.println("✗ Failed to read card journal: " + e.getMessage());
+                    }
+                }
+                
+                tasks.runLater(() -> {
                     loadingIndicator.setVisible(false);
+                    processing = false;
                     
                     if (success) {
                         statusLabel.setText("Thanh toán thành công!");
                         statusLabel.setStyle("-fx-text-fill: green;");
                         
-                        // Save transaction to database
-                        try {
-                            byte[] userIdBytes = cardService.readUserId();
-                            String cardId = bytesToHex(userIdBytes);
-                            int userAge = cardService.readAge() & 0xFF; // Convert byte to unsigned int
-                            transactionService.createGameTransaction(cardId, userAge, gameId, gamePrice * 10000);
-                            System.out.println("✓ Transaction saved to database");
-                        } catch (Exception e) {
-                            System.err.println("✗ Failed to save transaction: " + e.getMessage());
-                            // Don't block user flow if transaction save fails
-                        }
-                        
                         // Navigate to success screen
-                        ClientApp.setRoot("payment-success.fxml");
+                        leave("payment-success.fxml");
                     } else {
                         statusLabel.setText("Lỗi: Phản hồi không hợp lệ");
                         statusLabel.setStyle("-fx-text-fill: red;");
@@ -127,22 +156,24 @@ public class PaymentClientController {
             } catch (PinVerificationException e) {
                 // Handle PIN verification errors specifically
                 String errorMsg = getErrorMessage(e.getStatusWord());
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     loadingIndicator.setVisible(false);
+                    processing = false;
                     statusLabel.setText("Lỗi: " + errorMsg);
                     statusLabel.setStyle("-fx-text-fill: red;");
                     showError("Xác thực PIN thất bại: " + errorMsg);
                 });
             } catch (Exception e) {
                 e.printStackTrace();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     loadingIndicator.setVisible(false);
+                    processing = false;
                     statusLabel.setText("Lỗi: " + e.getMessage());
                     statusLabel.setStyle("-fx-text-fill: red;");
                     showError("Lỗi thanh toán: " + e.getMessage());
                 });
             }
-        }).start();
+        });
     }
 
     /**
@@ -174,7 +205,15 @@ public class PaymentClientController {
      */
     @FXML
     private void handleBack() {
-        ClientApp.setRoot("card-check-client.fxml");
+        leave("card-check-client.fxml");
+    }
+
+    /**
+     * Stop listening for card events and switch screen
+     */
+    private void leave(String fxml) {
+        CardTerminalMonitor.getInstance().removeListener(cardListener);
+        ClientApp.setRoot(fxml);
     }
 
     /**
@@ -187,15 +226,4 @@ public class PaymentClientController {
         alert.setContentText(message);
         alert.showAndWait();
     }
-
-    /**
-     * Convert byte array to hex string
-     */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
 }
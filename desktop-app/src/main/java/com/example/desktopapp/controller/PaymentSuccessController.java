@@ -2,14 +2,16 @@ package com.example.desktopapp.controller;
 
 import com.example.desktopapp.ClientApp;
 import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.ViewCache;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 
 /**
  * Controller for Payment Success Screen
+ * Reused between visits (ViewCache)
  */
-public class PaymentSuccessController {
+public class PaymentSuccessController implements ViewCache.Reusable {
 
     @FXML
     private Label gameNameLabel;
@@ -23,8 +25,8 @@ public class PaymentSuccessController {
     @FXML
     private Button exitButton;
 
-    @FXML
-    public void initialize() {
+    @Override
+    public void onShow() {
         String gameName = AppConfig.getProperty("selectedGameName", "Unknown Game");
         gameNameLabel.setText(gameName);
         messageLabel.setText("Chúc bạn chơi game vui vẻ!");
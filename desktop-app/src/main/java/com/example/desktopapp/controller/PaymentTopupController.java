@@ -2,11 +2,13 @@ package com.example.desktopapp.controller;
 
 import com.example.desktopapp.MainApp;
 import com.example.desktopapp.service.CardService;
+import com.example.desktopapp.service.CatalogCache;
+import com.example.desktopapp.service.CardSessionManager;
+import com.example.desktopapp.service.JournalSyncService;
 import com.example.desktopapp.service.TransactionService;
 import com.example.desktopapp.service.MomoService;
-import com.example.desktopapp.util.AppConfig;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -16,13 +18,13 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.net.URL;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for Payment Top-up screen
@@ -71,20 +73,19 @@ public class PaymentTopupController implements Initializable {
     
     // Services
     private CardService cardService;
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
     private TransactionService transactionService;
     private MomoService momoService;
     private NumberFormat currencyFormat;
     private String pin; // PIN from previous screen
     
     // QR Payment polling
-    private ScheduledExecutorService paymentPollingExecutor;
+    private CompletableFuture<MomoService.PaymentStatusResponse> paymentWatch;
     private String currentOrderId;
-    private volatile boolean isPolling = false;
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
         currencyFormat = NumberFormat.getInstance(new Locale("vi", "VN"));
-        cardService = new CardService();
         transactionService = new TransactionService();
         momoService = new MomoService();
         
@@ -109,7 +110,7 @@ public class PaymentTopupController implements Initializable {
      * Preselect combo mode instead of coins
      */
     public void preselectComboMode() {
-        Platform.runLater(() -> onSelectBuyCombo());
+        tasks.runLater(() -> onSelectBuyCombo());
     }
 
     // ============ Payment Type Selection ============
@@ -221,201 +222,50 @@ public class PaymentTopupController implements Initializable {
         comboLoadingBox.setVisible(true);
         comboErrorLabel.setVisible(false);
         
-        Task<String> loadTask = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                java.net.URL url = new java.net.URL(AppConfig.API_COMBOS);
-                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-                    return response.toString();
-                } else {
-                    throw new Exception("API trả về lỗi: " + responseCode);
-                }
-            }
-
-            @Override
-            protected void succeeded() {
-                Platform.runLater(() -> {
-                    comboLoadingBox.setVisible(false);
-                    displayCombos(getValue());
-                });
-            }
-
-            @Override
-            protected void failed() {
-                Platform.runLater(() -> {
-                    comboLoadingBox.setVisible(false);
+        CatalogCache.getInstance().getCombos()
+            .whenComplete((combos, e) -> tasks.runLater(() -> {
+                comboLoadingBox.setVisible(false);
+                if (e != null) {
                     comboErrorLabel.setText("Không thể tải danh sách combo. Vui lòng thử lại.");
                     comboErrorLabel.setVisible(true);
-                });
-            }
-        };
-        
-        new Thread(loadTask).start();
+                    return;
+                }
+                displayCombos(combos);
+            }));
     }
     
-    private void displayCombos(String jsonResponse) {
-        try {
-            // Parse JSON (similar to CardRegistrationController)
-            int dataStart = jsonResponse.indexOf("\"data\":[");
-            if (dataStart == -1) {
-                throw new Exception("Invalid response format");
-            }
-            dataStart += 8;
-            
-            int bracketCount = 0;
-            int dataEnd = -1;
-            boolean inString = false;
-            boolean escaped = false;
-            
-            for (int i = dataStart; i < jsonResponse.length(); i++) {
-                char c = jsonResponse.charAt(i);
-                
-                if (escaped) {
-                    escaped = false;
-                    continue;
-                }
-                if (c == '\\') {
-                    escaped = true;
-                    continue;
-                }
-                if (c == '"') {
-                    inString = !inString;
-                    continue;
-                }
-                if (!inString) {
-                    if (c == '[' || c == '{') {
-                        bracketCount++;
-                    } else if (c == ']' || c == '}') {
-                        bracketCount--;
-                        if (c == ']' && bracketCount == -1) {
-                            dataEnd = i;
-                            break;
-                        }
-                    }
-                }
-            }
-            
-            if (dataEnd == -1) {
-                throw new Exception("Invalid response format");
-            }
-            
-            String dataArray = jsonResponse.substring(dataStart, dataEnd).trim();
-            
-            if (dataArray.isEmpty()) {
-                comboErrorLabel.setText("Không có combo nào.");
-                comboErrorLabel.setVisible(true);
-                return;
-            }
-            
-            comboListContainer.getChildren().clear();
-            
-            // Parse combo objects
-            List<String> comboStrings = new ArrayList<>();
-            int start = 0;
-            bracketCount = 0;
-            inString = false;
-            escaped = false;
-            
-            for (int i = 0; i < dataArray.length(); i++) {
-                char c = dataArray.charAt(i);
-                
-                if (escaped) {
-                    escaped = false;
-                    continue;
-                }
-                if (c == '\\') {
-                    escaped = true;
-                    continue;
-                }
-                if (c == '"') {
-                    inString = !inString;
-                    continue;
-                }
-                if (!inString) {
-                    if (c == '{' || c == '[') {
-                        bracketCount++;
-                    } else if (c == '}' || c == ']') {
-                        bracketCount--;
-                        if (c == '}' && bracketCount == 0) {
-                            String comboStr = dataArray.substring(start, i + 1);
-                            comboStrings.add(comboStr);
-                            while (i + 1 < dataArray.length() && 
-                                   (dataArray.charAt(i + 1) == ',' || 
-                                    Character.isWhitespace(dataArray.charAt(i + 1)))) {
-                                i++;
-                            }
-                            start = i + 1;
-                        }
-                    }
-                }
-            }
-            
-            // Create combo cards
-            for (String comboStr : comboStrings) {
-                try {
-                    comboStr = comboStr.trim();
-                    if (comboStr.startsWith("{")) comboStr = comboStr.substring(1);
-                    if (comboStr.endsWith("}")) comboStr = comboStr.substring(0, comboStr.length() - 1);
-                    
-                    int id = parseJsonInt(comboStr, "_id");
-                    String name = parseJsonString(comboStr, "name");
-                    int price = parseJsonInt(comboStr, "priceVND");
-                    int discount = parseJsonInt(comboStr, "discountPercentage");
-                    String description = parseJsonString(comboStr, "description");
-                    
-                    if (name.isEmpty() || price == 0) {
-                        continue;
-                    }
-                    
-                    VBox comboCard = createComboCard(id, name, price, discount, description);
-                    comboListContainer.getChildren().add(comboCard);
-                } catch (Exception e) {
-                    System.err.println("Error parsing combo: " + e.getMessage());
-                }
+    private void displayCombos(JSONArray combos) {
+        if (combos.length() == 0) {
+            comboErrorLabel.setText("Không có combo nào.");
+            comboErrorLabel.setVisible(true);
+            return;
+        }
+        
+        comboListContainer.getChildren().clear();
+        
+        for (int i = 0; i < combos.length(); i++) {
+            JSONObject combo = combos.optJSONObject(i);
+            if (combo == null) {
+                continue;
             }
+            int id = combo.optInt("_id");
+            String name = combo.optString("name");
+            int price = combo.optInt("priceVND");
+            int discount = combo.optInt("discountPercentage");
+            String description = combo.optString("description");
             
-            if (comboListContainer.getChildren().isEmpty()) {
-                comboErrorLabel.setText("Không tìm thấy combo nào.");
-                comboErrorLabel.setVisible(true);
+            // Skip if essential fields are missing
+            if (name.isEmpty() || price == 0) {
+                continue;
             }
             
-        } catch (Exception e) {
-            comboErrorLabel.setText("Lỗi khi hiển thị combo: " + e.getMessage());
-            comboErrorLabel.setVisible(true);
-        }
-    }
-    
-    private int parseJsonInt(String json, String key) {
-        try {
-            int start = json.indexOf("\"" + key + "\":") + key.length() + 3;
-            int end = json.indexOf(",", start);
-            if (end == -1) end = json.length();
-            return Integer.parseInt(json.substring(start, end).trim());
-        } catch (Exception e) {
-            return 0;
+            VBox comboCard = createComboCard(id, name, price, discount, description);
+            comboListContainer.getChildren().add(comboCard);
         }
-    }
-    
-    private String parseJsonString(String json, String key) {
-        try {
-            int start = json.indexOf("\"" + key + "\":\"") + key.length() + 4;
-            int end = json.indexOf("\"", start);
-            return json.substring(start, end);
-        } catch (Exception e) {
-            return "";
+        
+        if (comboListContainer.getChildren().isEmpty()) {
+            comboErrorLabel.setText("Không tìm thấy combo nào.");
+            comboErrorLabel.setVisible(true);
         }
     }
     
@@ -476,80 +326,21 @@ public class PaymentTopupController implements Initializable {
     private void fetchComboDetails(int comboId, int price) {
         loadingComboDetails = true;
         
-        Task<short[]> fetchTask = new Task<>() {
-            @Override
-            protected short[] call() throws Exception {
-                java.net.URL url = new java.net.URL(AppConfig.API_COMBOS + "/" + comboId);
-                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Content-Type", "application/json");
-                
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    reader.close();
-                    
-                    return parseComboGameIds(response.toString());
-                } else {
-                    throw new Exception("API trả về lỗi: " + responseCode);
+        CatalogCache.getInstance().getComboGameIds(comboId)
+            .whenComplete((gameIds, e) -> tasks.runLater(() -> {
+                loadingComboDetails = false;
+                if (e != null) {
+                    selectedComboIds.remove(Integer.valueOf(comboId));
+                    totalComboPrice -= price;
+                    updateSelectedCombosSummary();
+                    UIUtils.showAlert("Lỗi", "Không thể tải chi tiết combo. Vui lòng thử lại.");
+                    return;
                 }
-            }
-
-            @Override
-            protected void succeeded() {
-                short[] gameIds = getValue();
                 if (gameIds != null && gameIds.length > 0) {
                     comboGameIdsMap.put(comboId, gameIds);
                     mergeComboGameIds();
                 }
-                loadingComboDetails = false;
-            }
-
-            @Override
-            protected void failed() {
-                loadingComboDetails = false;
-                selectedComboIds.remove(Integer.valueOf(comboId));
-                totalComboPrice -= price;
-                updateSelectedCombosSummary();
-                UIUtils.showAlert("Lỗi", "Không thể tải chi tiết combo. Vui lòng thử lại.");
-            }
-        };
-        
-        new Thread(fetchTask).start();
-    }
-    
-    private short[] parseComboGameIds(String jsonResponse) {
-        try {
-            int gamesStart = jsonResponse.indexOf("\"games\":[");
-            if (gamesStart == -1) {
-                return new short[0];
-            }
-            gamesStart += 9;
-            
-            int gamesEnd = jsonResponse.indexOf("]", gamesStart);
-            String gamesArray = jsonResponse.substring(gamesStart, gamesEnd).trim();
-            
-            if (gamesArray.isEmpty()) {
-                return new short[0];
-            }
-            
-            String[] gameIdStrings = gamesArray.split(",");
-            short[] gameIds = new short[gameIdStrings.length];
-            
-            for (int i = 0; i < gameIdStrings.length; i++) {
-                gameIds[i] = Short.parseShort(gameIdStrings[i].trim());
-            }
-            
-            return gameIds;
-        } catch (Exception e) {
-            return new short[0];
-        }
+            }));
     }
     
     private void mergeComboGameIds() {
@@ -656,7 +447,7 @@ public class PaymentTopupController implements Initializable {
             @Override
             protected void succeeded() {
                 MomoService.QrPaymentResponse response = getValue();
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     if (response.resultCode == 0 && response.qrCodeUrl != null) {
                         // Show QR code
                         qrLoadingState.setVisible(false);
@@ -679,13 +470,13 @@ public class PaymentTopupController implements Initializable {
             
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showQrError("Lỗi kết nối: " + getException().getMessage());
                 });
             }
         };
         
-        new Thread(qrTask).start();
+        tasks.submit(qrTask);
     }
     
     private void showQrError(String message) {
@@ -697,50 +488,36 @@ public class PaymentTopupController implements Initializable {
     }
     
     /**
-     * Start polling payment status every 1 second
+     * Wait for the payment result (long-poll, see MomoService.watchPayment)
      */
     private void startPaymentPolling(String orderId) {
         stopPaymentPolling();
         
-        isPolling = true;
-        paymentPollingExecutor = Executors.newSingleThreadScheduledExecutor();
+        paymentStatusLabel.setText("Đang chờ thanh toán...");
+        CompletableFuture<MomoService.PaymentStatusResponse> watch = momoService.watchPayment(orderId);
+        paymentWatch = watch;
         
-        paymentPollingExecutor.scheduleAtFixedRate(() -> {
-            if (!isPolling) return;
-            
-            try {
-                MomoService.PaymentStatusResponse status = momoService.checkPaymentStatus(orderId);
-                
-                Platform.runLater(() -> {
-                    if (status.isSuccess()) {
-                        stopPaymentPolling();
-                        paymentStatusLabel.setText("Thanh toán thành công! Đang ghi thẻ...");
-                        writeToCard();
-                    } else if (!status.isPending()) {
-                        stopPaymentPolling();
-                        showQrError("Thanh toán thất bại: " + status.message);
-                    } else {
-                        paymentStatusLabel.setText("Đang chờ thanh toán...");
-                    }
-                });
-            } catch (Exception e) {
-                System.err.println("Error polling payment status: " + e.getMessage());
+        watch.thenAccept(status -> tasks.runLater(() -> {
+            if (paymentWatch != watch) {
+                return; // Superseded by a new QR or cancelled
             }
-        }, 1, 1, TimeUnit.SECONDS);
+            paymentWatch = null;
+            if (status.isSuccess()) {
+                paymentStatusLabel.setText("Thanh toán thành công! Đang ghi thẻ...");
+                writeToCard();
+            } else {
+                showQrError("Thanh toán thất bại: " + status.message);
+            }
+        }));
     }
     
     /**
-     * Stop payment status polling
+     * Stop waiting for the payment result
      */
     private void stopPaymentPolling() {
-        isPolling = false;
-        if (paymentPollingExecutor != null && !paymentPollingExecutor.isShutdown()) {
-            paymentPollingExecutor.shutdown();
-            try {
-                paymentPollingExecutor.awaitTermination(2, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                paymentPollingExecutor.shutdownNow();
-            }
+        if (paymentWatch != null) {
+            paymentWatch.cancel(false);
+            paymentWatch = null;
         }
     }
     
@@ -753,7 +530,9 @@ public class PaymentTopupController implements Initializable {
     }
     
     /**
-     * Write data to card after successful payment
+     * Write data to card after successful payment.
+     * The customer has already paid, so the write and the transaction upload run detached from
+     * the screen: leaving it (Hủy, navigation) must not cancel or interrupt them halfway.
      */
     private void writeToCard() {
         qrDisplayState.setVisible(false);
@@ -763,7 +542,8 @@ public class PaymentTopupController implements Initializable {
             @Override
             protected Void call() throws Exception {
                 updateMessage("Đang kết nối thẻ...");
-                cardService.connect();
+                CardSessionManager.CardSession session = CardSessionManager.getInstance().acquire();
+                cardService = session.getCardService();
                 
                 updateMessage("Đang xác thực PIN...");
                 cardService.verifyPin(pin);
@@ -780,20 +560,20 @@ public class PaymentTopupController implements Initializable {
                 // Save transaction to database
                 updateMessage("Đang lưu giao dịch...");
                 try {
-                    byte[] userIdBytes = cardService.readUserId();
-                    String cardId = bytesToHex(userIdBytes);
-                    int userAge = cardService.readAge() & 0xFF;
+                    String cardId = session.getUserIdHex();
+                    int userAge = session.getAge();
                     
                     if (paymentType.equals("coins")) {
-                        transactionService.createTopupTransaction(cardId, userAge, selectedAmount);
+                        // Top-up is in the card journal, queued for upload in the background
+                        JournalSyncService.getInstance().drainAndUpload(session);
                     } else {
                         // For combo, need to get combo ID from selectedComboIds
                         String comboId = selectedComboIds.isEmpty() ? null : String.valueOf(selectedComboIds.get(0));
                         if (comboId != null) {
-                            transactionService.createComboTransaction(cardId, userAge, comboId, totalComboPrice);
+                            transactionService.queueComboTransaction(cardId, userAge, comboId, totalComboPrice);
                         }
                     }
-                    System.out.println("✓ Transaction saved to database");
+                    System.out.println("✓ Transaction queued for upload");
                 } catch (Exception e) {
                     System.err.println("✗ Failed to save transaction: " + e.getMessage());
                     // Don't fail the whole flow if transaction save fails
@@ -804,26 +584,30 @@ public class PaymentTopupController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     writingProgress.setVisible(false);
                     successIndicator.setVisible(true);
                     actionButtons.setVisible(true);
                     
                     // Auto return to card info after 3 seconds
-                    new Thread(() -> {
+                    tasks.submit(() -> {
                         try {
                             Thread.sleep(3000);
-                            Platform.runLater(() -> goToCardInfo());
+                            tasks.runLater(() -> goToCardInfo());
                         } catch (InterruptedException e) {
-                            e.printStackTrace();
+                            // Screen left before the delay ended
                         }
-                    }).start();
+                    });
                 });
             }
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                // Reported even if the screen was left in the meantime
+                Throwable error = getException();
+                System.err.println("✗ Ghi thẻ sau thanh toán thất bại (" + paymentType + ", "
+                    + (paymentType.equals("coins") ? selectedAmount : totalComboPrice) + " VNĐ): " + (error != null ? error.getMessage() : "không rõ lỗi"));
+                tasks.runLater(() -> {
                     writingProgress.setVisible(false);
                     errorIndicator.setVisible(true);
                     actionButtons.setVisible(true);
@@ -835,15 +619,13 @@ public class PaymentTopupController implements Initializable {
         };
         
         writeStatusLabel.textProperty().bind(writeTask.messageProperty());
-        new Thread(writeTask).start();
+        TaskExecutor.getInstance().detached().submit(writeTask);
     }
     
     @FXML
     private void onCancel() {
         stopPaymentPolling();
-        if (cardService != null) {
-            cardService.disconnect();
-        }
+        // Card session stays open for the card info screen
         MainApp.setRoot("card-info.fxml");
     }
     
@@ -852,20 +634,7 @@ public class PaymentTopupController implements Initializable {
      */
     private void goToCardInfo() {
         stopPaymentPolling();
-        if (cardService != null) {
-            cardService.disconnect();
-        }
+        // Card session stays open for the card info screen
         MainApp.setRoot("card-info.fxml");
     }
-
-    /**
-     * Convert byte array to hex string
-     */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
 }
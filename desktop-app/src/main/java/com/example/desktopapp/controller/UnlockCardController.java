@@ -3,8 +3,8 @@ package com.example.desktopapp.controller;
 import com.example.desktopapp.MainApp;
 import com.example.desktopapp.service.CardService;
 import com.example.desktopapp.service.PinVerificationException;
+import com.example.desktopapp.util.TaskExecutor;
 import com.example.desktopapp.util.UIUtils;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -54,6 +54,7 @@ public class UnlockCardController implements Initializable {
 
     // Service
     private CardService cardService;
+    private final TaskExecutor.Scope tasks = TaskExecutor.getInstance().currentScope();
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
@@ -64,8 +65,8 @@ public class UnlockCardController implements Initializable {
         cardService = new CardService();
         
         // Listen to new PIN keypad changes to enable/disable confirm button
-        // Use Platform.runLater to ensure the nested controller from fx:include is available
-        Platform.runLater(() -> {
+        // Run later to ensure the nested controller from fx:include is available
+        tasks.runLater(() -> {
             if (newPinKeypadController != null) {
                 newPinKeypadController.pinProperty().addListener((obs, oldVal, newVal) -> {
                     confirmNewPinBtn.setDisable(!newPinKeypadController.isPinComplete());
@@ -93,7 +94,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showState("adminPin");
                     adminPinBuilder.setLength(0);
                     updateAdminPinDisplay();
@@ -102,7 +103,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     showState("error");
                     Throwable ex = getException();
                     errorLabel.setText(ex != null ? ex.getMessage() : "Không thể kết nối thẻ");
@@ -110,7 +111,7 @@ public class UnlockCardController implements Initializable {
             }
         };
 
-        new Thread(connectTask).start();
+        tasks.submit(connectTask);
     }
 
     /**
@@ -200,7 +201,7 @@ public class UnlockCardController implements Initializable {
             unlockBtn.setDisable(false);
             
             // Auto-unlock when Admin PIN is complete
-            Platform.runLater(() -> onUnlock());
+            tasks.runLater(() -> onUnlock());
         }
     }
 
@@ -230,7 +231,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI
                     connectingLabel.textProperty().unbind();
                     
@@ -245,7 +246,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI
                     connectingLabel.textProperty().unbind();
                     
@@ -287,7 +288,7 @@ public class UnlockCardController implements Initializable {
         };
 
         connectingLabel.textProperty().bind(verifyTask.messageProperty());
-        new Thread(verifyTask).start();
+        tasks.submit(verifyTask);
     }
 
     /**
@@ -316,7 +317,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void succeeded() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI
                     connectingLabel.textProperty().unbind();
                     showState("success");
@@ -325,7 +326,7 @@ public class UnlockCardController implements Initializable {
 
             @Override
             protected void failed() {
-                Platform.runLater(() -> {
+                tasks.runLater(() -> {
                     // Unbind before updating UI
                     connectingLabel.textProperty().unbind();
                     
@@ -338,7 +339,7 @@ public class UnlockCardController implements Initializable {
         };
 
         connectingLabel.textProperty().bind(unlockTask.messageProperty());
-        new Thread(unlockTask).start();
+        tasks.submit(unlockTask);
     }
 
     /**
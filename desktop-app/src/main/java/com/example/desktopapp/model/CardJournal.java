@@ -0,0 +1,56 @@
+package com.example.desktopapp.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unacknowledged part of the card transaction journal (one READ_JOURNAL response)
+ */
+public class CardJournal {
+    private final long lastSeq;
+    private final int ackedSeq;
+    private final List<JournalEntry> entries;
+
+    public CardJournal(long lastSeq, int ackedSeq, List<JournalEntry> entries) {
+        this.lastSeq = lastSeq;
+        this.ackedSeq = ackedSeq;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Sequence number of the newest entry on the card (32-bit)
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Entries up to this sequence number were already acknowledged (low 16 bits)
+     */
+    public int getAckedSeq() {
+        return ackedSeq;
+    }
+
+    /**
+     * Unacknowledged entries, oldest first
+     */
+    public List<JournalEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Entries overwritten on the card before the host read them
+     */
+    public int getLostCount() {
+        return Math.max(0, (int) ((lastSeq - ackedSeq) & 0xFFFF) - entries.size());
+    }
+
+    @Override
+    public String toString() {
+        return "CardJournal{" +
+                "lastSeq=" + lastSeq +
+                ", ackedSeq=" + ackedSeq +
+                ", entries=" + entries.size() +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.desktopapp.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the user profile stored on the card (read in one APDU)
+ */
+public class CardProfile {
+    private final String name;
+    private final byte gender; // 0 = Not specified, 1 = Male, 2 = Female
+    private final byte age;
+    private final int coins;
+    private final Map<Short, Integer> purchasedGames; // game ID -> remaining plays
+
+    public CardProfile(String name, byte gender, byte age, int coins, Map<Short, Integer> purchasedGames) {
+        this.name = name;
+        this.gender = gender;
+        this.age = age;
+        this.coins = coins;
+        this.purchasedGames = purchasedGames != null
+            ? Collections.unmodifiableMap(new LinkedHashMap<>(purchasedGames))
+            : Collections.emptyMap();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte getGender() {
+        return gender;
+    }
+
+    public byte getAge() {
+        return age;
+    }
+
+    public int getCoins() {
+        return coins;
+    }
+
+    /**
+     * Purchased games as game ID -> remaining plays (read-only, card order)
+     */
+    public Map<Short, Integer> getPurchasedGames() {
+        return purchasedGames;
+    }
+
+    @Override
+    public String toString() {
+        return "CardProfile{" +
+                "name='" + name + '\'' +
+                ", gender=" + gender +
+                ", age=" + (age & 0xFF) +
+                ", coins=" + coins +
+                ", purchasedGames=" + purchasedGames +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.desktopapp.model;
+
+/**
+ * One debit/credit recorded by the card in its transaction journal
+ */
+public class JournalEntry {
+    public static final byte TYPE_TOPUP = (byte) 0x01;
+    public static final byte TYPE_PLAY_COINS = (byte) 0x02;
+    public static final byte TYPE_PLAY_PREPAID = (byte) 0x03;
+
+    private final long seq;
+    private final byte type;
+    private final int gameId;
+    private final int amount; // coins
+    private final int balanceAfter; // coins
+
+    public JournalEntry(long seq, byte type, int gameId, int amount, int balanceAfter) {
+        this.seq = seq;
+        this.type = type;
+        this.gameId = gameId;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+    }
+
+    /**
+     * Card sequence number (32-bit, increasing)
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Amount in coins (top-up amount or game price)
+     */
+    public int getAmount() {
+        return amount;
+    }
+
+    public int getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public boolean isTopup() {
+        return type == TYPE_TOPUP;
+    }
+
+    /**
+     * Play of a game already paid for by a combo
+     */
+    public boolean isPrepaid() {
+        return type == TYPE_PLAY_PREPAID;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEntry{" +
+                "seq=" + seq +
+                ", type=" + type +
+                ", gameId=" + gameId +
+                ", amount=" + amount +
+                ", balanceAfter=" + balanceAfter +
+                '}';
+    }
+}
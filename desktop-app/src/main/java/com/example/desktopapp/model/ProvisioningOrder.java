@@ -0,0 +1,66 @@
+package com.example.desktopapp.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One card to issue at the provisioning station: the registration data plus what was paid for
+ * (a coin top-up, or one or more combos)
+ */
+public class ProvisioningOrder {
+    private final int row; // 1-based row in the input file
+    private final UserRegistration user;
+    private final List<Integer> comboIds;
+
+    // Resolved from the catalog before provisioning starts
+    private short[] comboGameIds = new short[0];
+    private int[] comboPricesVND = new int[0];
+
+    public ProvisioningOrder(int row, UserRegistration user, List<Integer> comboIds) {
+        this.row = row;
+        this.user = user;
+        this.comboIds = comboIds != null ? List.copyOf(comboIds) : Collections.emptyList();
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public UserRegistration getUser() {
+        return user;
+    }
+
+    public List<Integer> getComboIds() {
+        return comboIds;
+    }
+
+    public boolean isCombo() {
+        return !comboIds.isEmpty();
+    }
+
+    public short[] getComboGameIds() {
+        return comboGameIds;
+    }
+
+    public int[] getComboPricesVND() {
+        return comboPricesVND;
+    }
+
+    /**
+     * Set the games and prices of the ordered combos; the paid amount becomes the sum of the prices
+     */
+    public void setCombos(short[] gameIds, int[] pricesVND) {
+        this.comboGameIds = gameIds;
+        this.comboPricesVND = pricesVND;
+        int total = 0;
+        for (int price : pricesVND) {
+            total += price;
+        }
+        user.setAmountVND(total);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + row + " " + user.getName();
+    }
+}
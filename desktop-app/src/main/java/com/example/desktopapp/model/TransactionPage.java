@@ -0,0 +1,52 @@
+package com.example.desktopapp.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a card's transaction history, newest first
+ */
+public class TransactionPage {
+    public static final TransactionPage EMPTY = new TransactionPage(Collections.emptyList(), null, 0, 0);
+
+    private final List<TransactionRow> rows;
+    private final String nextCursor;
+    private final long totalCount;
+    private final double totalVND;
+
+    public TransactionPage(List<TransactionRow> rows, String nextCursor, long totalCount, double totalVND) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+        this.totalCount = totalCount;
+        this.totalVND = totalVND;
+    }
+
+    public List<TransactionRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * Cursor of the following page, null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Number of transactions of the card (first page only, -1 otherwise)
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Sum of all payments of the card in VND (first page only)
+     */
+    public double getTotalVND() {
+        return totalVND;
+    }
+}
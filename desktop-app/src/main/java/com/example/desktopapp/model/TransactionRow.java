@@ -0,0 +1,67 @@
+package com.example.desktopapp.model;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONObject;
+
+/**
+ * One row of a card's transaction history, reduced to what the history list shows
+ */
+public class TransactionRow {
+    private final String id;
+    private final String timeStamp; // ISO-8601 from the backend
+    private final double paymentVND;
+    private final boolean combo;
+    private final String comboName; // null when the combo was not populated
+
+    public TransactionRow(String id, String timeStamp, double paymentVND, boolean combo, String comboName) {
+        this.id = id;
+        this.timeStamp = timeStamp;
+        this.paymentVND = paymentVND;
+        this.combo = combo;
+        this.comboName = comboName;
+    }
+
+    /**
+     * Row from a transaction object of /api/transactions/card/:cardId
+     */
+    public static TransactionRow fromJson(JSONObject tx) {
+        double payment = tx.optDouble("payment", 0);
+        // Payments below 1000 were stored in coins, not VND
+        if (payment > 0 && payment < 1000) {
+            payment = payment * AppConfig.COIN_VALUE_VND;
+        }
+
+        boolean combo = tx.has("combo_id") && !tx.isNull("combo_id");
+        String comboName = null;
+        if (combo) {
+            JSONObject comboObject = tx.optJSONObject("combo_id");
+            if (comboObject != null) {
+                comboName = comboObject.optString("name", "N/A");
+            }
+        }
+        return new TransactionRow(tx.optString("_id"), tx.optString("time_stamp", "N/A"), payment, combo, comboName);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTimeStamp() {
+        return timeStamp;
+    }
+
+    public double getPaymentVND() {
+        return paymentVND;
+    }
+
+    /**
+     * False for a top-up
+     */
+    public boolean isCombo() {
+        return combo;
+    }
+
+    public String getComboName() {
+        return comboName;
+    }
+}
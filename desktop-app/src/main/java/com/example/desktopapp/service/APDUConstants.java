@@ -25,6 +25,10 @@ public class APDUConstants {
     public static final byte INS_WRITE_IMAGE_CONTINUE = (byte) 0x53;
     public static final byte INS_READ_IMAGE = (byte) 0x54;
     public static final byte INS_READ_USER_ID = (byte) 0x55;
+    public static final byte INS_READ_USER_PROFILE = (byte) 0x56;
+    public static final byte INS_READ_JOURNAL = (byte) 0x57;
+    public static final byte INS_GET_MEMORY_INFO = (byte) 0x60;
+    public static final byte INS_GET_WRITE_STATS = (byte) 0x61;
     public static final byte INS_RESET_CARD = (byte) 0x99;
     
     // TLV Tags for user data
@@ -38,6 +42,7 @@ public class APDUConstants {
     public static final int SW_SUCCESS = 0x9000;
     public static final int SW_PIN_VERIFICATION_REQUIRED = 0x6982;
     public static final int SW_AUTHENTICATION_BLOCKED = 0x6983;
+    public static final int SW_DATA_INVALID = 0x6984;
     public static final int SW_INSUFFICIENT_FUNDS = 0x6985;
     public static final int SW_WRONG_DATA = 0x6A80;
     public static final int SW_NOT_ENOUGH_MEMORY = 0x6A84;
@@ -55,8 +60,10 @@ public class APDUConstants {
     public static final int ADMIN_PIN_LENGTH = 16;
     public static final int USER_ID_LENGTH = 16;
     public static final int MAX_NAME_LENGTH = 64;
-    public static final int MAX_IMAGE_SIZE = 32767; // 32KB
-    public static final int IMAGE_CHUNK_SIZE = 200; // Bytes per chunk
+    public static final int MAX_IMAGE_SIZE = 32751; // 32KB card buffer minus the PKCS#7 padding block
+    public static final int IMAGE_CHUNK_SIZE = 200; // Bytes per chunk (short APDU)
+    // Extended APDU chunk sizes tried before falling back to IMAGE_CHUNK_SIZE (multiples of 16)
+    public static final int[] EXTENDED_IMAGE_CHUNK_SIZES = {8192, 2048};
     
     // Image types
     public static final byte IMAGE_TYPE_JPG = (byte) 0x01;
@@ -80,6 +87,8 @@ public class APDUConstants {
                 return "Cần xác thực PIN";
             case SW_AUTHENTICATION_BLOCKED:
                 return "Thẻ bị khóa";
+            case SW_DATA_INVALID:
+                return "Dữ liệu trên thẻ không hợp lệ";
             case SW_INSUFFICIENT_FUNDS:
                 return "Không đủ tiền";
             case SW_WRONG_DATA:
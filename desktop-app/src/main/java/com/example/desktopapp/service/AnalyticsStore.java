@@ -0,0 +1,501 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of all transactions for the admin statistics dashboard.
+ *
+ * Rows are kept in primitive columns (time, payment, age, game, combo) and synced incrementally
+ * from /api/statistics/transactions: only transactions created or edited since the stored cursor
+ * are fetched. When the store holds more transactions than the backend counts up to the final
+ * cursor (transactions were deleted) it is rebuilt from scratch. The columns are saved to
+ * AppConfig.ANALYTICS_STORE_FILE, so the dashboard opens with the last synced data before the
+ * sync finishes.
+ *
+ * {@link #views()} computes everything the dashboard shows in one pass over the columns (summary,
+ * revenue per month of every year, top games and combos, revenue by age), so switching the year
+ * or the product chart needs no request and no recomputation.
+ * Figures follow the backend aggregations (/api/statistics/*): raw payments, months in UTC.
+ */
+public final class AnalyticsStore {
+
+    private static final AnalyticsStore INSTANCE = new AnalyticsStore(Paths.get(AppConfig.ANALYTICS_STORE_FILE));
+
+    private static final int MAGIC = 0x414E4C54; // "ANLT"
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+    private static final int TOP_PRODUCTS = 10;
+    private static final int MAX_AGE = 80;
+
+    /**
+     * Game or combo with its sales
+     */
+    public static final class Product {
+        private final int id;
+        private final int purchaseCount;
+        private final double totalRevenue;
+
+        Product(int id, int purchaseCount, double totalRevenue) {
+            this.id = id;
+            this.purchaseCount = purchaseCount;
+            this.totalRevenue = totalRevenue;
+        }
+
+        /**
+         * Game or combo ID, -1 for a combo reference that is not a combo ID
+         */
+        public int getId() {
+            return id;
+        }
+
+        public int getPurchaseCount() {
+            return purchaseCount;
+        }
+
+        public double getTotalRevenue() {
+            return totalRevenue;
+        }
+    }
+
+    /**
+     * Everything the statistics dashboard shows, computed in one pass
+     */
+    public static final class Views {
+        private double totalRevenue;
+        private long totalTransactions;
+        private final Map<Integer, double[]> revenueByMonth = new HashMap<>();
+        private List<Product> topGames = Collections.emptyList();
+        private List<Product> topCombos = Collections.emptyList();
+        private final double[] revenueByAge = new double[MAX_AGE + 1];
+        private final long[] countByAge = new long[MAX_AGE + 1];
+
+        public double getTotalRevenue() {
+            return totalRevenue;
+        }
+
+        public long getTotalTransactions() {
+            return totalTransactions;
+        }
+
+        public double getAvgTransaction() {
+            return totalTransactions == 0 ? 0 : totalRevenue / totalTransactions;
+        }
+
+        /**
+         * Revenue of the 12 months of a year (index 0 = January)
+         */
+        public double[] getRevenueByMonth(int year) {
+            double[] months = revenueByMonth.get(year);
+            return months != null ? months.clone() : new double[12];
+        }
+
+        /**
+         * Top 10 games by number of purchases
+         */
+        public List<Product> getTopGames() {
+            return topGames;
+        }
+
+        /**
+         * Top 10 combos by number of purchases
+         */
+        public List<Product> getTopCombos() {
+            return topCombos;
+        }
+
+        /**
+         * Ages 1..80 that have transactions, ascending
+         */
+        public List<Integer> getAges() {
+            List<Integer> ages = new ArrayList<>();
+            for (int age = 1; age <= MAX_AGE; age++) {
+                if (countByAge[age] > 0) {
+                    ages.add(age);
+                }
+            }
+            return ages;
+        }
+
+        public double getRevenueByAge(int age) {
+            return age >= 1 && age <= MAX_AGE ? revenueByAge[age] : 0;
+        }
+    }
+
+    private final Path file;
+    private final Object syncLock = new Object();
+    private boolean loaded;
+
+    // Columns, rows 0..size-1
+    private int size;
+    private String[] ids = new String[0];
+    private long[] times = new long[0]; // epoch ms, 0 = no time stamp
+    private double[] payments = new double[0];
+    private short[] ages = new short[0];
+    private int[] gameIds = new int[0]; // NONE = no game
+    private int[] comboRefs = new int[0]; // index into comboKeys, NONE = no combo
+
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final List<String> comboKeys = new ArrayList<>();
+    private final Map<String, Integer> comboIndex = new HashMap<>();
+    private String cursor;
+    private Views views;
+
+    private AnalyticsStore(Path file) {
+        this.file = file;
+    }
+
+    public static AnalyticsStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Number of stored transactions (reads the saved store on first use)
+     */
+    public synchronized int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Dashboard figures of the stored transactions; cached until the next sync changes something
+     */
+    public synchronized Views views() {
+        ensureLoaded();
+        if (views == null) {
+            views = compute();
+        }
+        return views;
+    }
+
+    /**
+     * Fetch the transactions created or changed since the last sync. Blocks, call from a worker thread.
+     * @return true if the stored data changed
+     */
+    public boolean sync() throws IOException, InterruptedException {
+        synchronized (syncLock) {
+            String from;
+            synchronized (this) {
+                ensureLoaded();
+                from = cursor;
+            }
+
+            boolean changed = false;
+            for (int attempt = 0; ; attempt++) {
+                SyncPage page;
+                do {
+                    page = fetch(from);
+                    changed |= apply(page);
+                    from = page.nextCursor;
+                } while (page.hasMore);
+
+                // total counts the backend rows up to the final cursor; rows added since then only
+                // make it smaller than the truth, so only a surplus means something was deleted
+                if (page.total < 0 || size() <= page.total || attempt > 0) {
+                    break;
+                }
+                // Transactions were deleted on the backend, the deltas cannot tell which
+                System.out.println("Analytics: " + size() + " giao dịch cục bộ, backend có " + page.total + ", đồng bộ lại từ đầu");
+                clear();
+                from = null;
+                changed = true;
+            }
+
+            if (changed) {
+                save();
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * One page of /api/statistics/transactions
+     */
+    private static final class SyncPage {
+        final List<JSONArray> rows = new ArrayList<>();
+        String nextCursor;
+        boolean hasMore;
+        long total = -1; // last page only
+    }
+
+    private SyncPage fetch(String from) throws IOException, InterruptedException {
+        String url = AppConfig.API_STATISTICS_SYNC + "?limit=" + AppConfig.ANALYTICS_SYNC_PAGE_SIZE;
+        if (from != null) {
+            url += "&cursor=" + URLEncoder.encode(from, StandardCharsets.UTF_8);
+        }
+        return ApiClient.getInstance().getStreaming(url, (status, body) -> {
+            if (status != 200) {
+                throw new IOException("Lỗi đồng bộ thống kê: " + status);
+            }
+            return readPage(new JSONTokener(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        });
+    }
+
+    /**
+     * Read a sync page from the stream; rows stay small arrays, no tree of the whole body is built
+     */
+    private static SyncPage readPage(JSONTokener in) throws IOException {
+        SyncPage page = new SyncPage();
+        try {
+            if (in.nextClean() != '{') {
+                throw in.syntaxError("Expected '{'");
+            }
+            char c = in.nextClean();
+            while (c != '}') {
+                if (c != '"') {
+                    throw in.syntaxError("Expected a key");
+                }
+                String key = in.nextString('"');
+                if (in.nextClean() != ':') {
+                    throw in.syntaxError("Expected ':'");
+                }
+                if (key.equals("data")) {
+                    if (in.nextClean() != '[') {
+                        throw in.syntaxError("Expected '['");
+                    }
+                    c = in.nextClean();
+                    while (c != ']') {
+                        in.back();
+                        page.rows.add(new JSONArray(in));
+                        c = in.nextClean();
+                        if (c == ',') {
+                            c = in.nextClean();
+                        }
+                    }
+                } else {
+                    Object value = in.nextValue();
+                    switch (key) {
+                        case "next_cursor":
+                            page.nextCursor = value == JSONObject.NULL ? null : value.toString();
+                            break;
+                        case "has_more":
+                            page.hasMore = Boolean.TRUE.equals(value);
+                            break;
+                        case "total":
+                            page.total = value instanceof Number ? ((Number) value).longValue() : -1;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                c = in.nextClean();
+                if (c == ',') {
+                    c = in.nextClean();
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Dữ liệu thống kê không hợp lệ: " + e.getMessage(), e);
+        }
+        return page;
+    }
+
+    /**
+     * Insert new rows and overwrite edited ones
+     */
+    private synchronized boolean apply(SyncPage page) {
+        for (JSONArray row : page.rows) {
+            String id = row.getString(0);
+            Integer index = rowById.get(id);
+            int i;
+            if (index != null) {
+                i = index;
+            } else {
+                i = size++;
+                ensureCapacity(size);
+                ids[i] = id;
+                rowById.put(id, i);
+            }
+            times[i] = row.optLong(1, 0);
+            payments[i] = row.optDouble(2, 0);
+            ages[i] = (short) row.optInt(3, 0);
+            gameIds[i] = row.isNull(4) ? NONE : row.optInt(4, NONE);
+            comboRefs[i] = row.isNull(5) ? NONE : comboRef(row.get(5).toString());
+        }
+        if (page.nextCursor != null) {
+            cursor = page.nextCursor;
+        }
+        if (!page.rows.isEmpty()) {
+            views = null;
+            return true;
+        }
+        return false;
+    }
+
+    private int comboRef(String key) {
+        Integer ref = comboIndex.get(key);
+        if (ref == null) {
+            ref = comboKeys.size();
+            comboKeys.add(key);
+            comboIndex.put(key, ref);
+        }
+        return ref;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int length = Math.max(capacity, Math.max(1024, ids.length * 2));
+        ids = Arrays.copyOf(ids, length);
+        times = Arrays.copyOf(times, length);
+        payments = Arrays.copyOf(payments, length);
+        ages = Arrays.copyOf(ages, length);
+        gameIds = Arrays.copyOf(gameIds, length);
+        comboRefs = Arrays.copyOf(comboRefs, length);
+    }
+
+    private synchronized void clear() {
+        size = 0;
+        rowById.clear();
+        comboKeys.clear();
+        comboIndex.clear();
+        cursor = null;
+        views = null;
+    }
+
+    private Views compute() {
+        Views v = new Views();
+        Map<Integer, double[]> games = new HashMap<>(); // game ID -> { count, revenue }
+        double[][] combos = new double[comboKeys.size()][2];
+
+        for (int i = 0; i < size; i++) {
+            double payment = payments[i];
+            v.totalRevenue += payment;
+
+            if (times[i] != 0) {
+                LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(times[i], 86_400_000L));
+                v.revenueByMonth.computeIfAbsent(day.getYear(), y -> new double[12])[day.getMonthValue() - 1] += payment;
+            }
+            if (gameIds[i] != NONE) {
+                double[] game = games.computeIfAbsent(gameIds[i], id -> new double[2]);
+                game[0]++;
+                game[1] += payment;
+            }
+            if (comboRefs[i] != NONE) {
+                combos[comboRefs[i]][0]++;
+                combos[comboRefs[i]][1] += payment;
+            }
+            int age = ages[i];
+            if (age >= 1 && age <= MAX_AGE) {
+                v.revenueByAge[age] += payment;
+                v.countByAge[age]++;
+            }
+        }
+        v.totalTransactions = size;
+
+        List<Product> topGames = new ArrayList<>();
+        for (Map.Entry<Integer, double[]> e : games.entrySet()) {
+            topGames.add(new Product(e.getKey(), (int) e.getValue()[0], e.getValue()[1]));
+        }
+        List<Product> topCombos = new ArrayList<>();
+        for (int ref = 0; ref < combos.length; ref++) {
+            if (combos[ref][0] > 0) {
+                topCombos.add(new Product(comboId(comboKeys.get(ref)), (int) combos[ref][0], combos[ref][1]));
+            }
+        }
+        v.topGames = top(topGames);
+        v.topCombos = top(topCombos);
+        return v;
+    }
+
+    private static List<Product> top(List<Product> products) {
+        products.sort((a, b) -> Integer.compare(b.purchaseCount, a.purchaseCount));
+        return List.copyOf(products.subList(0, Math.min(TOP_PRODUCTS, products.size())));
+    }
+
+    private static int comboId(String key) {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException("định dạng không hỗ trợ");
+            }
+            String savedCursor = in.readUTF();
+            int count = in.readInt();
+            int keyCount = in.readInt();
+            for (int k = 0; k < keyCount; k++) {
+                comboRef(in.readUTF());
+            }
+            ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readUTF();
+                times[i] = in.readLong();
+                payments[i] = in.readDouble();
+                ages[i] = in.readShort();
+                gameIds[i] = in.readInt();
+                comboRefs[i] = in.readInt();
+                rowById.put(ids[i], i);
+            }
+            size = count;
+            cursor = savedCursor.isEmpty() ? null : savedCursor;
+        } catch (IOException e) {
+            // Rebuilt by the next sync
+            System.err.println("✗ Không thể đọc analytics store: " + e.getMessage());
+            clear();
+        }
+    }
+
+    private synchronized void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(cursor != null ? cursor : "");
+                out.writeInt(size);
+                out.writeInt(comboKeys.size());
+                for (String key : comboKeys) {
+                    out.writeUTF(key);
+                }
+                for (int i = 0; i < size; i++) {
+                    out.writeUTF(ids[i]);
+                    out.writeLong(times[i]);
+                    out.writeDouble(payments[i]);
+                    out.writeShort(ages[i]);
+                    out.writeInt(gameIds[i]);
+                    out.writeInt(comboRefs[i]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("✗ Không thể ghi analytics store: " + e.getMessage());
+        }
+    }
+}
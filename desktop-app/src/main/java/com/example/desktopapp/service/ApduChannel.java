@@ -0,0 +1,48 @@
+package com.example.desktopapp.service;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+/**
+ * Transport between CardService and the Entertainment applet.
+ * Implemented by a PC/SC reader ({@link PcscChannel}) and by the in-memory card
+ * ({@link SimulatedCard}), so host logic runs the same with or without a reader.
+ */
+public interface ApduChannel {
+
+    /**
+     * Send one command APDU and wait for the response
+     * @throws CardException if the reader or card cannot carry the command
+     */
+    ResponseAPDU transmit(CommandAPDU command) throws CardException;
+
+    /**
+     * Reader name shown to the user and used as session key
+     */
+    String getName();
+
+    /**
+     * Check whether the card is still in the reader
+     */
+    boolean isCardPresent();
+
+    /**
+     * Release the card; the channel is not used afterwards
+     */
+    void disconnect();
+
+    /**
+     * Challenge for the next RSA authentication, or null to use a random one.
+     * A replayed session answers with the recorded challenge, so the recorded signature verifies.
+     */
+    default byte[] nextChallenge() {
+        return null;
+    }
+
+    /**
+     * Called with the public key the card is being authenticated with (kept by trace recording)
+     */
+    default void onPublicKey(String userIdHex, byte[] x509Key) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.desktopapp.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one APDU round trip, committed by CardService.transmitCommand
+ * Record with: java -XX:StartFlightRecording:filename=kiosk.jfr ... then open in JDK Mission Control
+ */
+@Name("com.example.desktopapp.Apdu")
+@Label("APDU")
+@Category({"Smart Card", "APDU"})
+@Description("Command sent to the card and its response")
+@StackTrace(false)
+final class ApduEvent extends Event {
+
+    @Label("Instruction")
+    String ins;
+
+    @Label("P1")
+    int p1;
+
+    @Label("P2")
+    int p2;
+
+    @Label("Bytes Out")
+    @DataAmount
+    int bytesOut;
+
+    @Label("Bytes In")
+    @DataAmount
+    int bytesIn;
+
+    @Label("Status Word")
+    @Description("SW1SW2 in hex, ERR when transmit failed")
+    String sw;
+
+    @Label("Reader")
+    String reader;
+}
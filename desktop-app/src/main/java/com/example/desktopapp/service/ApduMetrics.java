@@ -0,0 +1,263 @@
+package com.example.desktopapp.service;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-INS statistics of every APDU sent by CardService: latency histogram, bytes sent and
+ * received, status words and retries (e.g. image chunk size negotiation).
+ * Recording is lock-free, so the provisioning station's readers can share the registry.
+ * Each APDU is also emitted as a JFR event ({@link ApduEvent}), backend requests as
+ * {@link BackendRequestEvent}, to see card and backend time on one timeline.
+ */
+public final class ApduMetrics {
+
+    private static final ApduMetrics INSTANCE = new ApduMetrics();
+
+    // Latency buckets: bucket i holds [2^(i-1), 2^i) µs, the last one everything above ~1 min
+    private static final int BUCKETS = 28;
+
+    // Status word recorded when transmit itself failed (reader error, APDU length rejected)
+    public static final int SW_TRANSMIT_ERROR = -1;
+
+    private static final class Counters {
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final Map<Integer, LongAdder> statusWords = new ConcurrentHashMap<>();
+        volatile long maxNanos;
+    }
+
+    /**
+     * Statistics of one instruction at the time of {@link #snapshot()}
+     */
+    public static final class InsStats {
+        private final byte ins;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long bytesOut;
+        private final long bytesIn;
+        private final long retries;
+        private final long[] histogram;
+        private final Map<Integer, Long> statusWords;
+
+        private InsStats(byte ins, Counters counters) {
+            this.ins = ins;
+            this.count = counters.count.sum();
+            this.totalNanos = counters.totalNanos.sum();
+            this.maxNanos = counters.maxNanos;
+            this.bytesOut = counters.bytesOut.sum();
+            this.bytesIn = counters.bytesIn.sum();
+            this.retries = counters.retries.sum();
+            this.histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = counters.histogram.get(i);
+            }
+            Map<Integer, Long> sw = new TreeMap<>();
+            counters.statusWords.forEach((key, value) -> sw.put(key, value.sum()));
+            this.statusWords = Collections.unmodifiableMap(sw);
+        }
+
+        public byte getIns() {
+            return ins;
+        }
+
+        public String getName() {
+            return insName(ins);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return count > 0 ? totalNanos / 1e6 / count : 0;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Latency percentile in ms, as the upper bound of its histogram bucket
+         * @param p percentile (0-100)
+         */
+        public double getPercentileMillis(double p) {
+            long total = 0;
+            for (long n : histogram) {
+                total += n;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return Math.min((1L << i) / 1e3, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * Count per status word ({@link #SW_TRANSMIT_ERROR} for failed transmits)
+         */
+        public Map<Integer, Long> getStatusWords() {
+            return statusWords;
+        }
+    }
+
+    private final AtomicReferenceArray<Counters> byIns = new AtomicReferenceArray<>(256);
+
+    private ApduMetrics() {
+    }
+
+    public static ApduMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record one APDU round trip
+     * @param sw status word, or SW_TRANSMIT_ERROR
+     */
+    public void record(byte ins, long nanos, int bytesOut, int bytesIn, int sw) {
+        Counters counters = counters(ins);
+        counters.count.increment();
+        counters.totalNanos.add(nanos);
+        counters.bytesOut.add(bytesOut);
+        counters.bytesIn.add(bytesIn);
+        counters.histogram.incrementAndGet(bucket(nanos));
+        counters.statusWords.computeIfAbsent(sw, key -> new LongAdder()).increment();
+        if (nanos > counters.maxNanos) {
+            synchronized (counters) {
+                counters.maxNanos = Math.max(counters.maxNanos, nanos);
+            }
+        }
+    }
+
+    /**
+     * Record that a command is sent again (e.g. with a smaller image chunk)
+     */
+    public void recordRetry(byte ins) {
+        counters(ins).retries.increment();
+    }
+
+    /**
+     * Statistics of every instruction sent so far, most total time first
+     */
+    public List<InsStats> snapshot() {
+        List<InsStats> stats = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            Counters counters = byIns.get(i);
+            if (counters != null) {
+                stats.add(new InsStats((byte) i, counters));
+            }
+        }
+        stats.sort((a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+        return stats;
+    }
+
+    public void reset() {
+        for (int i = 0; i < 256; i++) {
+            byIns.set(i, null);
+        }
+    }
+
+    public void print(PrintStream out) {
+        out.println("=== APDU Metrics ===");
+        out.printf("%-24s %7s %9s %8s %8s %8s %8s %9s %9s %7s  %s%n",
+            "INS", "count", "total ms", "mean", "p50", "p95", "max", "bytes out", "bytes in", "retries", "SW");
+        for (InsStats s : snapshot()) {
+            StringBuilder sw = new StringBuilder();
+            for (Map.Entry<Integer, Long> e : s.getStatusWords().entrySet()) {
+                if (sw.length() > 0) {
+                    sw.append(' ');
+                }
+                sw.append(e.getKey() == SW_TRANSMIT_ERROR ? "ERR" : String.format("%04X", e.getKey()))
+                    .append('=').append(e.getValue());
+            }
+            out.printf("%-24s %7d %9.1f %8.2f %8.2f %8.2f %8.2f %9d %9d %7d  %s%n",
+                s.getName(), s.getCount(), s.getTotalMillis(), s.getMeanMillis(),
+                s.getPercentileMillis(50), s.getPercentileMillis(95), s.getMaxMillis(),
+                s.getBytesOut(), s.getBytesIn(), s.getRetries(), sw);
+        }
+    }
+
+    /**
+     * Name of an instruction for reports, e.g. "VERIFY_PIN (20)"
+     */
+    public static String insName(byte ins) {
+        String name;
+        switch (ins) {
+            case (byte) 0xA4: name = "SELECT"; break;
+            case APDUConstants.INS_INSTALL: name = "INSTALL"; break;
+            case APDUConstants.INS_VERIFY_PIN: name = "VERIFY_PIN"; break;
+            case APDUConstants.INS_UNLOCK_BY_ADMIN: name = "UNLOCK_BY_ADMIN"; break;
+            case APDUConstants.INS_VERIFY_ADMIN_PIN: name = "VERIFY_ADMIN_PIN"; break;
+            case APDUConstants.INS_CHANGE_PIN: name = "CHANGE_PIN"; break;
+            case APDUConstants.INS_CHECK_ACCESS_FOR_GAME: name = "CHECK_ACCESS_FOR_GAME"; break;
+            case APDUConstants.INS_TOPUP_COINS: name = "TOPUP_COINS"; break;
+            case APDUConstants.INS_PURCHASE_COMBO: name = "PURCHASE_COMBO"; break;
+            case APDUConstants.INS_SIGN_CHALLENGE: name = "SIGN_CHALLENGE"; break;
+            case APDUConstants.INS_READ_USER_DATA_BASIC: name = "READ_USER_DATA"; break;
+            case APDUConstants.INS_WRITE_USER_DATA_BASIC: name = "WRITE_USER_DATA"; break;
+            case APDUConstants.INS_WRITE_IMAGE_START: name = "WRITE_IMAGE_START"; break;
+            case APDUConstants.INS_WRITE_IMAGE_CONTINUE: name = "WRITE_IMAGE_CONTINUE"; break;
+            case APDUConstants.INS_READ_IMAGE: name = "READ_IMAGE"; break;
+            case APDUConstants.INS_READ_USER_ID: name = "READ_USER_ID"; break;
+            case APDUConstants.INS_READ_USER_PROFILE: name = "READ_USER_PROFILE"; break;
+            case APDUConstants.INS_READ_JOURNAL: name = "READ_JOURNAL"; break;
+            case APDUConstants.INS_GET_MEMORY_INFO: name = "GET_MEMORY_INFO"; break;
+            case APDUConstants.INS_GET_WRITE_STATS: name = "GET_WRITE_STATS"; break;
+            case APDUConstants.INS_RESET_CARD: name = "RESET_CARD"; break;
+            default: name = "INS"; break;
+        }
+        return String.format("%s (%02X)", name, ins);
+    }
+
+    private Counters counters(byte ins) {
+        int index = ins & 0xFF;
+        Counters counters = byIns.get(index);
+        if (counters == null) {
+            byIns.compareAndSet(index, null, new Counters());
+            counters = byIns.get(index);
+        }
+        return counters;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.desktopapp.service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary APDU trace format shared by {@link ApduTraceRecorder} and {@link ApduTraceReplay}
+ *
+ * Header: "APDT" (4) | version (1) | start time, epoch ms (8) | reader name (UTF)
+ * Records, numbers as unsigned varints (times in µs since the start):
+ *   'X' offset | duration | command length | command | response length | response
+ *   'E' offset | duration | command length | command | error message (UTF)   transmit failed
+ *   'K' user ID hex (UTF) | key length | X.509 public key                      key used to authenticate
+ */
+final class ApduTraceFile {
+
+    static final int MAGIC = 0x41504454; // "APDT"
+    static final int VERSION = 1;
+
+    static final byte TYPE_EXCHANGE = 'X';
+    static final byte TYPE_ERROR = 'E';
+    static final byte TYPE_PUBLIC_KEY = 'K';
+
+    /**
+     * One record of a trace
+     */
+    static final class Record {
+        byte type;
+        long offsetMicros;
+        long durationMicros;
+        byte[] command;
+        byte[] response;
+        String error;
+        String userIdHex;
+        byte[] publicKey;
+    }
+
+    /**
+     * Whole trace read back from a file
+     */
+    static final class Trace {
+        long startMillis;
+        String readerName;
+        final List<Record> records = new ArrayList<>();
+    }
+
+    private ApduTraceFile() {
+    }
+
+    static void writeHeader(DataOutputStream out, String readerName) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(readerName != null ? readerName : "");
+    }
+
+    static Trace read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Không phải file APDU trace: " + file);
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Phiên bản APDU trace không hỗ trợ: " + version);
+            }
+
+            Trace trace = new Trace();
+            trace.startMillis = in.readLong();
+            trace.readerName = in.readUTF();
+
+            int type;
+            while ((type = in.read()) != -1) {
+                Record record = new Record();
+                record.type = (byte) type;
+                try {
+                    switch (record.type) {
+                        case TYPE_EXCHANGE:
+                            record.offsetMicros = readVarLong(in);
+                            record.durationMicros = readVarLong(in);
+                            record.command = readBytes(in);
+                            record.response = readBytes(in);
+                            break;
+                        case TYPE_ERROR:
+                            record.offsetMicros = readVarLong(in);
+                            record.durationMicros = readVarLong(in);
+                            record.command = readBytes(in);
+                            record.error = in.readUTF();
+                            break;
+                        case TYPE_PUBLIC_KEY:
+                            record.userIdHex = in.readUTF();
+                            record.publicKey = readBytes(in);
+                            break;
+                        default:
+                            throw new IOException("APDU trace hỏng, record không hợp lệ: " + type);
+                    }
+                } catch (EOFException e) {
+                    // Recording cut off mid-record (app killed), keep what is complete
+                    break;
+                }
+                trace.records.add(record);
+            }
+            return trace;
+        }
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("APDU trace hỏng, varint quá dài");
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        writeVarLong(out, data.length);
+        out.write(data);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length > 1 << 20) {
+            throw new IOException("APDU trace hỏng, độ dài không hợp lệ: " + length);
+        }
+        byte[] data = new byte[(int) length];
+        in.readFully(data);
+        return data;
+    }
+}
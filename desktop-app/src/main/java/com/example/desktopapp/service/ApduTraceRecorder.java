@@ -0,0 +1,173 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Channel wrapper that writes every command/response pair, with its timing, to an APDU trace
+ * file ({@link ApduTraceFile}) while passing it through to the real card.
+ * A trace captured at a kiosk can be fed back with {@link ApduTraceReplay}.
+ * Data of commands that carry a PIN (INSTALL, VERIFY/CHANGE PIN, admin PIN, unlock) is zeroed.
+ * Recording problems never break the session: the trace just stops.
+ */
+public final class ApduTraceRecorder implements ApduChannel {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final ApduChannel channel;
+    private final Path file;
+    private final long startNanos = System.nanoTime();
+    private DataOutputStream out;
+
+    private ApduTraceRecorder(ApduChannel channel, Path file, DataOutputStream out) {
+        this.channel = channel;
+        this.file = file;
+        this.out = out;
+    }
+
+    /**
+     * Start recording the APDUs of a channel
+     */
+    public static ApduTraceRecorder open(ApduChannel channel, Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        ApduTraceFile.writeHeader(out, channel.getName());
+        out.flush();
+        return new ApduTraceRecorder(channel, file, out);
+    }
+
+    /**
+     * New trace file in AppConfig.APDU_TRACE_DIR, named after the time and the reader
+     */
+    public static Path newTraceFile(String readerName) {
+        String reader = readerName != null ? readerName.replaceAll("[^A-Za-z0-9]+", "_") : "card";
+        return Paths.get(AppConfig.APDU_TRACE_DIR, "apdu-" + LocalDateTime.now().format(FILE_TIME) + "-" + reader + ".trace");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+        long start = System.nanoTime();
+        ResponseAPDU response;
+        try {
+            response = channel.transmit(command);
+        } catch (CardException e) {
+            write(ApduTraceFile.TYPE_ERROR, start, System.nanoTime(), redact(command), null, String.valueOf(e.getMessage()));
+            throw e;
+        }
+        write(ApduTraceFile.TYPE_EXCHANGE, start, System.nanoTime(), redact(command), response.getBytes(), null);
+        return response;
+    }
+
+    /**
+     * Record the public key the card was authenticated with, so a replay does not need the backend
+     */
+    @Override
+    public synchronized void onPublicKey(String userIdHex, byte[] x509Key) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(ApduTraceFile.TYPE_PUBLIC_KEY);
+            out.writeUTF(userIdHex);
+            ApduTraceFile.writeBytes(out, x509Key);
+            out.flush();
+        } catch (IOException e) {
+            stop(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return channel.getName();
+    }
+
+    @Override
+    public byte[] nextChallenge() {
+        return channel.nextChallenge();
+    }
+
+    @Override
+    public boolean isCardPresent() {
+        return channel.isCardPresent();
+    }
+
+    @Override
+    public void disconnect() {
+        channel.disconnect();
+        synchronized (this) {
+            if (out != null) {
+                try {
+                    out.close();
+                    System.out.println("✓ APDU trace: " + file);
+                } catch (IOException e) {
+                    System.err.println("✗ APDU trace: " + e.getMessage());
+                }
+                out = null;
+            }
+        }
+    }
+
+    private synchronized void write(byte type, long startNanos, long endNanos, byte[] command, byte[] response, String error) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeByte(type);
+            ApduTraceFile.writeVarLong(out, (startNanos - this.startNanos) / 1000);
+            ApduTraceFile.writeVarLong(out, (endNanos - startNanos) / 1000);
+            ApduTraceFile.writeBytes(out, command);
+            if (type == ApduTraceFile.TYPE_EXCHANGE) {
+                ApduTraceFile.writeBytes(out, response);
+            } else {
+                out.writeUTF(error);
+            }
+            // Flushed per APDU so a crash or a pulled plug still leaves a usable trace
+            out.flush();
+        } catch (IOException e) {
+            stop(e);
+        }
+    }
+
+    /**
+     * Command bytes to store, with PIN data replaced by zeros of the same length
+     */
+    private static byte[] redact(CommandAPDU command) {
+        switch ((byte) command.getINS()) {
+            case APDUConstants.INS_INSTALL:
+            case APDUConstants.INS_VERIFY_PIN:
+            case APDUConstants.INS_CHANGE_PIN:
+            case APDUConstants.INS_VERIFY_ADMIN_PIN:
+            case APDUConstants.INS_UNLOCK_BY_ADMIN:
+                return new CommandAPDU(command.getCLA(), command.getINS(), command.getP1(), command.getP2(),
+                    new byte[command.getNc()], command.getNe()).getBytes();
+            default:
+                return command.getBytes();
+        }
+    }
+
+    private void stop(IOException e) {
+        System.err.println("✗ APDU trace stopped: " + e.getMessage());
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
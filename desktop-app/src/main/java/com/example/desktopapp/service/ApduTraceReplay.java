@@ -0,0 +1,209 @@
+package com.example.desktopapp.service;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Channel that answers from an APDU trace recorded by {@link ApduTraceRecorder}, so a kiosk
+ * session can be run again without a card: with the original card timing (each response is
+ * held back for as long as the card took) or at full speed.
+ *
+ * Commands must come in the recorded order with the same CLA/INS/P1/P2, otherwise transmit
+ * fails and tells where the host code went another way. Different command data (random
+ * challenge, other avatar) is only counted. Public keys stored in the trace are put into
+ * PublicKeyCache, and CardService signs the recorded challenge, so authentication passes
+ * without the backend.
+ */
+public final class ApduTraceReplay implements ApduChannel {
+
+    private final Path file;
+    private final ApduTraceFile.Trace trace;
+    private final List<ApduTraceFile.Record> exchanges = new ArrayList<>();
+    private final boolean originalTiming;
+    private int position;
+    private int dataMismatches;
+
+    private ApduTraceReplay(Path file, ApduTraceFile.Trace trace, boolean originalTiming) {
+        this.file = file;
+        this.trace = trace;
+        this.originalTiming = originalTiming;
+        for (ApduTraceFile.Record record : trace.records) {
+            if (record.type == ApduTraceFile.TYPE_PUBLIC_KEY) {
+                try {
+                    PublicKeyCache.getInstance().put(record.userIdHex, record.publicKey);
+                } catch (java.security.GeneralSecurityException e) {
+                    System.err.println("✗ APDU trace: public key không hợp lệ cho " + record.userIdHex);
+                }
+            } else {
+                exchanges.add(record);
+            }
+        }
+    }
+
+    /**
+     * @param originalTiming hold each response back for the recorded card time, false for full speed
+     */
+    public static ApduTraceReplay open(Path file, boolean originalTiming) throws IOException {
+        return new ApduTraceReplay(file, ApduTraceFile.read(file), originalTiming);
+    }
+
+    @Override
+    public synchronized ResponseAPDU transmit(CommandAPDU command) throws CardException {
+        long start = System.nanoTime();
+        if (position >= exchanges.size()) {
+            throw new CardException("APDU trace đã hết (" + exchanges.size() + " APDU): " + file);
+        }
+
+        ApduTraceFile.Record record = exchanges.get(position);
+        byte[] sent = command.getBytes();
+        if (sent.length < 4 || !Arrays.equals(sent, 0, 4, record.command, 0, 4)) {
+            throw new CardException(String.format("APDU trace không khớp tại APDU #%d: trace có %s, host gửi %s",
+                position + 1, header(record.command), header(sent)));
+        }
+        if (!Arrays.equals(sent, record.command)) {
+            dataMismatches++;
+        }
+        position++;
+
+        if (originalTiming) {
+            long until = start + record.durationMicros * 1000;
+            long remaining;
+            while ((remaining = until - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+
+        if (record.type == ApduTraceFile.TYPE_ERROR) {
+            throw new CardException(record.error);
+        }
+        return new ResponseAPDU(record.response);
+    }
+
+    /**
+     * Challenge of the next command if it is the recorded SIGN_CHALLENGE, else null
+     */
+    @Override
+    public synchronized byte[] nextChallenge() {
+        if (position >= exchanges.size()) {
+            return null;
+        }
+        byte[] command = exchanges.get(position).command;
+        if (command.length < 4 || command[1] != APDUConstants.INS_SIGN_CHALLENGE) {
+            return null;
+        }
+        return new CommandAPDU(command).getData();
+    }
+
+    /**
+     * Start again from the first APDU (e.g. between benchmark iterations)
+     */
+    public synchronized void rewind() {
+        position = 0;
+        dataMismatches = 0;
+    }
+
+    /**
+     * True when every recorded APDU was replayed
+     */
+    public synchronized boolean isFinished() {
+        return position == exchanges.size();
+    }
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public int getLength() {
+        return exchanges.size();
+    }
+
+    /**
+     * Commands that matched the trace header but carried other data
+     */
+    public synchronized int getDataMismatches() {
+        return dataMismatches;
+    }
+
+    /**
+     * Card time of the whole trace in ms (sum of recorded round trips)
+     */
+    public double getRecordedCardMillis() {
+        long micros = 0;
+        for (ApduTraceFile.Record record : exchanges) {
+            micros += record.durationMicros;
+        }
+        return micros / 1e3;
+    }
+
+    @Override
+    public String getName() {
+        return "Replay: " + trace.readerName;
+    }
+
+    @Override
+    public boolean isCardPresent() {
+        return true;
+    }
+
+    @Override
+    public void disconnect() {
+        // Nothing to release
+    }
+
+    /**
+     * Print a trace, one line per APDU: offset, duration, instruction, sizes and status word
+     */
+    public static void print(Path file, PrintStream out) throws IOException {
+        ApduTraceFile.Trace trace = ApduTraceFile.read(file);
+        out.println("=== APDU Trace: " + file + " ===");
+        out.println("Reader: " + trace.readerName + ", bắt đầu: " + java.time.Instant.ofEpochMilli(trace.startMillis));
+        out.printf("%5s %10s %9s  %-24s %6s %6s  %s%n", "#", "offset ms", "ms", "INS", "out", "in", "SW");
+        int index = 0;
+        long cardMicros = 0;
+        for (ApduTraceFile.Record record : trace.records) {
+            if (record.type == ApduTraceFile.TYPE_PUBLIC_KEY) {
+                out.println("      public key: " + record.userIdHex);
+                continue;
+            }
+            cardMicros += record.durationMicros;
+            String status;
+            int in;
+            if (record.type == ApduTraceFile.TYPE_ERROR) {
+                status = "ERR " + record.error;
+                in = 0;
+            } else {
+                ResponseAPDU response = new ResponseAPDU(record.response);
+                status = String.format("%04X", response.getSW());
+                in = record.response.length;
+            }
+            out.printf("%5d %10.1f %9.2f  %-24s %6d %6d  %s%n", ++index, record.offsetMicros / 1e3,
+                record.durationMicros / 1e3, ApduMetrics.insName(record.command[1]), record.command.length, in, status);
+        }
+        out.printf("%d APDU, thời gian thẻ %.1f ms%n", index, cardMicros / 1e3);
+    }
+
+    private static String header(byte[] command) {
+        if (command.length < 4) {
+            return CardService.bytesToHex(command);
+        }
+        return ApduMetrics.insName(command[1]) + " " + CardService.bytesToHex(Arrays.copyOf(command, 4));
+    }
+
+    /**
+     * Print trace files: ApduTraceReplay <file.trace>...
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            print(Paths.get(arg), System.out);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared client for the backend API.
+ * All requests go through one HttpClient, so connections are kept alive and reused between
+ * screens. Responses may be gzip-compressed, and every request gets a deadline picked by
+ * endpoint. Calls return a CompletableFuture; code already running on a worker thread can
+ * block with {@link #await}.
+ */
+public final class ApiClient {
+
+    /**
+     * Status code and body of a backend response
+     */
+    public static final class Response {
+        private final int statusCode;
+        private final String body;
+        private final HttpHeaders headers;
+
+        Response(int statusCode, String body, HttpHeaders headers) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * First value of a response header, or null
+         */
+        public String getHeader(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        /**
+         * True for 2xx responses
+         */
+        public boolean isSuccess() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        public JSONObject json() {
+            return new JSONObject(body);
+        }
+
+        /**
+         * The "data" array of a { success, data: [...] } response
+         */
+        public JSONArray dataArray() {
+            return json().getJSONArray("data");
+        }
+    }
+
+    /**
+     * Consumes a response body as it arrives (see {@link #getStreaming})
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+        T read(int statusCode, InputStream body) throws IOException;
+    }
+
+    private static final ApiClient INSTANCE = new ApiClient();
+
+    // Matched by URL prefix, first match wins
+    private static final Map<String, Duration> DEADLINES = new LinkedHashMap<>();
+    static {
+        DEADLINES.put(AppConfig.API_MOMO_QR, Duration.ofMillis(AppConfig.API_DEADLINE_MOMO_QR));
+        DEADLINES.put(AppConfig.API_MOMO_STATUS, Duration.ofMillis(AppConfig.API_DEADLINE_MOMO_STATUS));
+        DEADLINES.put(AppConfig.API_STATISTICS, Duration.ofMillis(AppConfig.API_DEADLINE_STATISTICS));
+        DEADLINES.put(AppConfig.API_TRANSACTIONS_BATCH, Duration.ofMillis(AppConfig.API_DEADLINE_TRANSACTIONS_BATCH));
+        DEADLINES.put(AppConfig.API_CARDS_BATCH, Duration.ofMillis(AppConfig.API_DEADLINE_CARDS_BATCH));
+    }
+    private static final Duration DEFAULT_DEADLINE = Duration.ofMillis(AppConfig.READ_TIMEOUT);
+
+    private final HttpClient httpClient;
+
+    private ApiClient() {
+        // HTTP/1.1: the backend is plain http, so skip the h2c upgrade attempt on every new connection
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(AppConfig.CONNECTION_TIMEOUT))
+            .build();
+    }
+
+    public static ApiClient getInstance() {
+        return INSTANCE;
+    }
+
+    public CompletableFuture<Response> get(String url) {
+        return send("GET", url, null, Map.of());
+    }
+
+    /**
+     * GET with extra request headers (e.g. If-None-Match for conditional requests)
+     */
+    public CompletableFuture<Response> get(String url, Map<String, String> headers) {
+        return send("GET", url, null, headers);
+    }
+
+    public CompletableFuture<Response> post(String url, String jsonBody) {
+        return send("POST", url, jsonBody, Map.of());
+    }
+
+    public CompletableFuture<Response> put(String url, String jsonBody) {
+        return send("PUT", url, jsonBody, Map.of());
+    }
+
+    public CompletableFuture<Response> delete(String url) {
+        return send("DELETE", url, null, Map.of());
+    }
+
+    /**
+     * GET whose body is handed to the reader while it downloads instead of being buffered
+     * (long lists). Blocks, call it from a worker thread; interrupting the thread aborts the read.
+     */
+    public <T> T getStreaming(String url, BodyReader<T> reader) throws IOException, InterruptedException {
+        BackendRequestEvent event = new BackendRequestEvent();
+        event.begin();
+        int status = 0;
+        try {
+            HttpResponse<InputStream> response = httpClient.send(newRequest("GET", url, null, Map.of()),
+                HttpResponse.BodyHandlers.ofInputStream());
+            status = response.statusCode();
+            InputStream body = response.body();
+            if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+                body = new GZIPInputStream(body);
+            }
+            try (InputStream in = body) {
+                return reader.read(status, in);
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = "GET";
+                event.url = url;
+                event.status = status;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Wait for a request from a worker thread, rethrowing the original failure
+     * (HttpTimeoutException when the deadline passes, ConnectException when the backend is down)
+     */
+    public static Response await(CompletableFuture<Response> request) throws IOException, InterruptedException {
+        try {
+            return request.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Message of the original failure of a request future (for exceptionally handlers)
+     */
+    public static String errorMessage(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    private CompletableFuture<Response> send(String method, String url, String jsonBody, Map<String, String> headers) {
+        BackendRequestEvent event = new BackendRequestEvent();
+        event.begin();
+        return httpClient.sendAsync(newRequest(method, url, jsonBody, headers), HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(ApiClient::toResponse)
+            .whenComplete((response, error) -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.method = method;
+                    event.url = url;
+                    event.status = response != null ? response.getStatusCode() : 0;
+                    event.commit();
+                }
+            });
+    }
+
+    private static HttpRequest newRequest(String method, String url, String jsonBody, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .timeout(deadlineFor(url))
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip");
+        headers.forEach(builder::header);
+
+        if (jsonBody != null) {
+            builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8));
+        } else {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return builder.build();
+    }
+
+    private static Response toResponse(HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Response(response.statusCode(), new String(body, StandardCharsets.UTF_8), response.headers());
+    }
+
+    private static Duration deadlineFor(String url) {
+        for (Map.Entry<String, Duration> e : DEADLINES.entrySet()) {
+            if (url.startsWith(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return DEFAULT_DEADLINE;
+    }
+}
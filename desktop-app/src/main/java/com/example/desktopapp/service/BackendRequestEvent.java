@@ -0,0 +1,30 @@
+package com.example.desktopapp.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one backend request made through ApiClient, so card and backend time show up
+ * on the same timeline as {@link ApduEvent}
+ */
+@Name("com.example.desktopapp.BackendRequest")
+@Label("Backend Request")
+@Category({"Smart Card", "Backend"})
+@Description("HTTP request to the backend API")
+@StackTrace(false)
+final class BackendRequestEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("URL")
+    String url;
+
+    @Label("Status")
+    @Description("HTTP status code, 0 when the request failed")
+    int status;
+}
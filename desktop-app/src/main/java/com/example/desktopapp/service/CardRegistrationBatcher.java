@@ -0,0 +1,177 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.smartcardio.CardException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects card registrations from the provisioning workers and sends them to
+ * /api/cards/batch, PROVISION_BATCH_SIZE cards per request. A batch leaves as soon as it is
+ * full or PROVISION_BATCH_WAIT_MS after its first card, so a slow station is not held back.
+ * Each card gets its own future, completed when the backend stored (or refused) that card.
+ */
+final class CardRegistrationBatcher {
+
+    private static final class Pending {
+        final String userIdHex;
+        final byte[] x509Key;
+        final JSONObject card;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Pending(String userIdHex, byte[] x509Key, JSONObject card) {
+            this.userIdHex = userIdHex;
+            this.x509Key = x509Key;
+            this.card = card;
+        }
+    }
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private int batchCount;
+
+    CardRegistrationBatcher() {
+        thread = new Thread(this::run, "card-registration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a card for registration
+     * @param cardService service connected to the card, used for the key conversion
+     * @param rawPublicKey public key as returned by INSTALL (modulus + exponent)
+     */
+    CompletableFuture<Void> submit(CardService cardService, byte[] userId, byte[] rawPublicKey, String userName, int userAge, boolean userGender)
+            throws CardException {
+        String userIdHex = CardService.bytesToHex(userId).replace(" ", "");
+        byte[] x509Key = cardService.convertRawRSAKeyToX509(rawPublicKey);
+        String publicKeyBase64 = java.util.Base64.getEncoder().encodeToString(x509Key);
+
+        Pending pending = new Pending(userIdHex, x509Key,
+            CardService.newCardDocument(userIdHex, publicKeyBase64, userName, userAge, userGender));
+        queue.add(pending);
+        return pending.result;
+    }
+
+    /**
+     * Number of requests sent so far
+     */
+    synchronized int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Send what is still queued and stop
+     */
+    void close() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                Pending first = queue.poll(AppConfig.PROVISION_BATCH_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Give the other readers a moment to finish their INSTALL
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AppConfig.PROVISION_BATCH_WAIT_MS);
+                while (batch.size() < AppConfig.PROVISION_BATCH_SIZE) {
+                    long waitNanos = deadline - System.nanoTime();
+                    Pending next = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) throws InterruptedException {
+        JSONArray cards = new JSONArray();
+        for (Pending pending : batch) {
+            cards.put(pending.card);
+        }
+        String body = new JSONObject().put("cards", cards).toString();
+
+        long retryMs = AppConfig.OUTBOX_RETRY_MIN_MS;
+        Exception lastError = null;
+        for (int attempt = 0; attempt <= AppConfig.PROVISION_BATCH_RETRIES; attempt++) {
+            if (attempt > 0) {
+                Thread.sleep(retryMs);
+                retryMs = Math.min(retryMs * 2, AppConfig.OUTBOX_RETRY_MAX_MS);
+            }
+            try {
+                ApiClient.Response response = ApiClient.await(ApiClient.getInstance().post(AppConfig.API_CARDS_BATCH, body));
+                synchronized (this) {
+                    batchCount++;
+                }
+                if (response.isSuccess()) {
+                    complete(batch, response.json().getJSONObject("data"));
+                    return;
+                }
+                lastError = new IOException("HTTP " + response.getStatusCode() + ": " + response.getBody());
+                if (response.getStatusCode() < 500) {
+                    break; // Same data would be refused again
+                }
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+
+        System.err.println("✗ Card registration batch failed (" + batch.size() + " cards): " + lastError.getMessage());
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(
+                new CardException("Lỗi đăng ký thẻ vào backend: " + lastError.getMessage()));
+        }
+    }
+
+    private void complete(List<Pending> batch, JSONObject data) {
+        Map<String, String> failed = new HashMap<>();
+        JSONArray failedCards = data.optJSONArray("failed");
+        if (failedCards != null) {
+            for (int i = 0; i < failedCards.length(); i++) {
+                JSONObject card = failedCards.getJSONObject(i);
+                failed.put(card.optString("_id"), card.optString("message"));
+            }
+        }
+
+        for (Pending pending : batch) {
+            String message = failed.get(pending.userIdHex);
+            if (message != null) {
+                pending.result.completeExceptionally(new CardException("Lỗi đăng ký thẻ vào backend: " + message));
+                continue;
+            }
+            // Same as registerCardToBackend: the new key replaces whatever was cached
+            try {
+                PublicKeyCache.getInstance().put(pending.userIdHex, pending.x509Key);
+            } catch (java.security.GeneralSecurityException e) {
+                PublicKeyCache.getInstance().invalidate(pending.userIdHex);
+            }
+            pending.result.complete(null);
+        }
+    }
+}
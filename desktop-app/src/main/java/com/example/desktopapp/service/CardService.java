@@ -1,5 +1,8 @@
 package com.example.desktopapp.service;
 
+import com.example.desktopapp.model.CardJournal;
+import com.example.desktopapp.model.CardProfile;
+import com.example.desktopapp.model.JournalEntry;
 import com.example.desktopapp.model.UserRegistration;
 import com.example.desktopapp.util.AppConfig;
 
@@ -11,9 +14,12 @@ import java.util.List;
  */
 public class CardService {
     
-    private Card card;
-    private CardChannel channel;
+    private ApduChannel channel;
     private boolean connected = false;
+    private byte[] authenticatedUserId; // user ID verified by connect(), null for a blank card
+    
+    // Image chunk size accepted by reader + card, 0 until negotiated
+    private int imageChunkSize = 0;
     
     // Debug mode for logging APDU commands
     private boolean debugMode = true;
@@ -23,7 +29,7 @@ public class CardService {
      * @return true if connection successful
      */
     public boolean connect() throws CardException {
-        return connect(null); // Use first available terminal
+        return connect((String) null); // Use first available terminal
     }
     
     /**
@@ -32,76 +38,43 @@ public class CardService {
      * @return true if connection successful
      */
     public boolean connect(String terminalName) throws CardException {
-        TerminalFactory factory = TerminalFactory.getDefault();
-        List<CardTerminal> terminals = factory.terminals().list();
-        
-        if (terminals.isEmpty()) {
-            throw new CardException("Không tìm thấy đầu đọc thẻ. Hãy đảm bảo jCIDE simulator đang chạy với PC/SC được bật.");
-        }
+        ApduChannel channel = AppConfig.CARD_SIMULATOR
+            ? SimulatedCard.getDefault()
+            : PcscChannel.open(terminalName, debugMode);
         
-        // Log available terminals
-        if (debugMode) {
-            System.out.println("=== Available Card Terminals ===");
-            for (CardTerminal t : terminals) {
-                System.out.println("  - " + t.getName());
+        // Field capture: record the session for ApduTraceReplay
+        if (AppConfig.APDU_TRACE_DIR != null) {
+            try {
+                channel = ApduTraceRecorder.open(channel, ApduTraceRecorder.newTraceFile(channel.getName()));
+            } catch (java.io.IOException e) {
+                System.err.println("✗ APDU trace: " + e.getMessage());
             }
         }
-        
-        // Find terminal
-        CardTerminal terminal = null;
-        if (terminalName != null && !terminalName.isEmpty()) {
-            for (CardTerminal t : terminals) {
-                if (t.getName().contains(terminalName)) {
-                    terminal = t;
-                    break;
-                }
-            }
-            if (terminal == null) {
-                throw new CardException("Không tìm thấy terminal: " + terminalName);
-            }
-        } else {
-            // Use first available terminal
-            terminal = terminals.get(0);
+        return connect(channel);
+    }
+    
+    /**
+     * Full name of the terminal connect(terminalName) would use
+     * @param terminalName part of a terminal name (null for first available)
+     */
+    public static String resolveTerminalName(String terminalName) throws CardException {
+        if (AppConfig.CARD_SIMULATOR) {
+            return SimulatedCard.getDefault().getName();
         }
-        
+        return PcscChannel.findTerminal(terminalName, false).getName();
+    }
+    
+    /**
+     * Select the applet and authenticate the card over an already open channel
+     * (PC/SC reader or {@link SimulatedCard})
+     * @return true if connection successful
+     */
+    public boolean connect(ApduChannel channel) throws CardException {
+        this.channel = channel;
         if (debugMode) {
-            System.out.println("Using terminal: " + terminal.getName());
-        }
-        
-        if (!terminal.isCardPresent()) {
-            throw new CardException("Không có thẻ trong đầu đọc. Hãy đảm bảo jCIDE simulator đang chạy và thẻ đã được power on.");
+            System.out.println("Using card channel: " + channel.getName());
         }
         
-        // Connect to card - try T=1 first (preferred for jCIDE), then T=0, then any
-        String[] protocols = {"T=1", "T=0", "*"};
-        CardException lastException = null;
-        
-        for (String protocol : protocols) {
-            try {
-                if (debugMode) {
-                    System.out.println("Trying protocol: " + protocol);
-                }
-                card = terminal.connect(protocol);
-                if (debugMode) {
-                    System.out.println("Connected with protocol: " + card.getProtocol());
-                    System.out.println("ATR: " + bytesToHex(card.getATR().getBytes()));
-                }
-                break;
-            } catch (CardException e) {
-                lastException = e;
-                if (debugMode) {
-                    System.out.println("Protocol " + protocol + " failed: " + e.getMessage());
-                }
-            }
-        }
-        
-        if (card == null) {
-            throw new CardException("Không thể kết nối với thẻ: " + 
-                (lastException != null ? lastException.getMessage() : "Unknown error"));
-        }
-        
-        channel = card.getBasicChannel();
-        
         // Select applet
         if (debugMode) {
             System.out.println("=== Selecting Applet ===");
@@ -163,12 +136,36 @@ public class CardService {
     /**
      * Transmit APDU command with debug logging
      * Public method to allow sending raw APDU commands when needed
+     * Every command is timed into {@link ApduMetrics} and emitted as a JFR {@link ApduEvent}.
      */
     public ResponseAPDU transmitCommand(CommandAPDU cmd) throws CardException {
         // if (debugMode) {
         //     System.out.println(">> " + bytesToHex(cmd.getBytes()));
         // }
-        ResponseAPDU response = channel.transmit(cmd);
+        ApduEvent event = new ApduEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ResponseAPDU response = null;
+        try {
+            response = channel.transmit(cmd);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            int sw = response != null ? response.getSW() : ApduMetrics.SW_TRANSMIT_ERROR;
+            int bytesOut = cmd.getBytes().length;
+            int bytesIn = response != null ? response.getBytes().length : 0;
+            ApduMetrics.getInstance().record((byte) cmd.getINS(), nanos, bytesOut, bytesIn, sw);
+            if (event.shouldCommit()) {
+                event.ins = ApduMetrics.insName((byte) cmd.getINS());
+                event.p1 = cmd.getP1();
+                event.p2 = cmd.getP2();
+                event.bytesOut = bytesOut;
+                event.bytesIn = bytesIn;
+                event.sw = response != null ? String.format("%04X", sw) : "ERR";
+                event.reader = channel.getName();
+                event.commit();
+            }
+        }
         // if (debugMode) {
         //     System.out.println("<< " + bytesToHex(response.getBytes()) + 
         //         " (SW=" + String.format("%04X", response.getSW()) + ")");
@@ -180,23 +177,41 @@ public class CardService {
      * Disconnect from smart card
      */
     public void disconnect() {
-        if (card != null) {
-            try {
-                card.disconnect(false);
-            } catch (CardException e) {
-                // Ignore
-            }
+        if (channel != null) {
+            channel.disconnect();
         }
         connected = false;
-        card = null;
         channel = null;
+        authenticatedUserId = null;
+        imageChunkSize = 0;
+    }
+    
+    /**
+     * User ID of the card authenticated by connect(), null if the card was blank
+     */
+    public byte[] getAuthenticatedUserId() {
+        return authenticatedUserId != null ? authenticatedUserId.clone() : null;
     }
     
     /**
      * Check if connected to card
      */
     public boolean isConnected() {
-        return connected && card != null;
+        return connected && channel != null;
+    }
+    
+    /**
+     * Check whether a card is still present in the connected terminal
+     */
+    public boolean isCardPresent() {
+        return channel != null && channel.isCardPresent();
+    }
+    
+    /**
+     * Get name of the terminal used by the last connect, or null
+     */
+    public String getTerminalName() {
+        return channel != null ? channel.getName() : null;
     }
     
     /**
@@ -489,29 +504,7 @@ public class CardService {
             throw new CardException("Chưa kết nối với thẻ");
         }
         
-        byte[] nameBytes = user.getNameBytes();
-        byte age = user.getAgeAsByte();
-        
-        // Build TLV data: [TAG_NAME][LEN][VALUE] [TAG_GENDER][LEN][VALUE] [TAG_AGE][LEN][VALUE]
-        int dataLen = 2 + nameBytes.length + 3 + 3; // Name TLV + Gender TLV + Age TLV
-        byte[] data = new byte[dataLen];
-        int offset = 0;
-        
-        // Name TLV
-        data[offset++] = APDUConstants.TAG_NAME;
-        data[offset++] = (byte) nameBytes.length;
-        System.arraycopy(nameBytes, 0, data, offset, nameBytes.length);
-        offset += nameBytes.length;
-        
-        // Gender TLV
-        data[offset++] = APDUConstants.TAG_GENDER;
-        data[offset++] = (byte) 1;
-        data[offset++] = user.getGender();
-        
-        // Age TLV
-        data[offset++] = APDUConstants.TAG_AGE;
-        data[offset++] = (byte) 1;
-        data[offset++] = age;
+        byte[] data = encodeUserData(user.getNameBytes(), user.getGender(), user.getAgeAsByte());
         
         CommandAPDU cmd = new CommandAPDU(
             APDUConstants.CLA,
@@ -541,8 +534,26 @@ public class CardService {
         }
         
         byte[] nameBytes = name.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] data = encodeUserData(nameBytes, gender, age);
         
-        // Build TLV data: [TAG_NAME][LEN][VALUE] [TAG_GENDER][LEN][VALUE] [TAG_AGE][LEN][VALUE]
+        CommandAPDU cmd = new CommandAPDU(
+            APDUConstants.CLA,
+            APDUConstants.INS_WRITE_USER_DATA_BASIC,
+            0x00, 0x00,
+            data
+        );
+        
+        ResponseAPDU response = transmitCommand(cmd);
+        
+        if (response.getSW() != APDUConstants.SW_SUCCESS) {
+            throw new CardException("Lỗi ghi dữ liệu: " + APDUConstants.getErrorMessage(response.getSW()));
+        }
+    }
+    
+    /**
+     * Build TLV data: [TAG_NAME][LEN][VALUE] [TAG_GENDER][LEN][VALUE] [TAG_AGE][LEN][VALUE]
+     */
+    static byte[] encodeUserData(byte[] nameBytes, byte gender, byte age) {
         int dataLen = 2 + nameBytes.length + 3 + 3; // Name TLV + Gender TLV + Age TLV
         byte[] data = new byte[dataLen];
         int offset = 0;
@@ -563,18 +574,7 @@ public class CardService {
         data[offset++] = (byte) 1;
         data[offset++] = age;
         
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_WRITE_USER_DATA_BASIC,
-            0x00, 0x00,
-            data
-        );
-        
-        ResponseAPDU response = transmitCommand(cmd);
-        
-        if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            throw new CardException("Lỗi ghi dữ liệu: " + APDUConstants.getErrorMessage(response.getSW()));
-        }
+        return data;
     }
     
     /**
@@ -594,30 +594,56 @@ public class CardService {
         }
         
         int totalSize = imageData.length;
-        int chunkSize = APDUConstants.IMAGE_CHUNK_SIZE;
-        
-        // First chunk with INS_WRITE_IMAGE_START
-        int firstChunkLen = Math.min(chunkSize, totalSize);
-        byte[] firstData = new byte[3 + firstChunkLen]; // 2 bytes total size + 1 byte type + data
-        firstData[0] = (byte) ((totalSize >> 8) & 0xFF);
-        firstData[1] = (byte) (totalSize & 0xFF);
-        firstData[2] = imageType;
-        System.arraycopy(imageData, 0, firstData, 3, firstChunkLen);
         
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_WRITE_IMAGE_START,
-            0x00, 0x00,
-            firstData
-        );
+        // First chunk with INS_WRITE_IMAGE_START, also negotiates the chunk size:
+        // largest extended size first, short APDU as the last resort
+        int chunkSize = 0;
+        ResponseAPDU response = null;
+        CardException lastException = null;
+        for (int candidate : getImageChunkCandidates()) {
+            int firstChunkLen = Math.min(candidate, totalSize);
+            byte[] firstData = new byte[3 + firstChunkLen]; // 2 bytes total size + 1 byte type + data
+            firstData[0] = (byte) ((totalSize >> 8) & 0xFF);
+            firstData[1] = (byte) (totalSize & 0xFF);
+            firstData[2] = imageType;
+            System.arraycopy(imageData, 0, firstData, 3, firstChunkLen);
+            
+            CommandAPDU cmd = new CommandAPDU(
+                APDUConstants.CLA,
+                APDUConstants.INS_WRITE_IMAGE_START,
+                0x00, 0x00,
+                firstData
+            );
+            
+            try {
+                response = transmitCommand(cmd);
+            } catch (CardException e) {
+                // Reader rejected the APDU length, try a smaller chunk
+                lastException = e;
+                response = null;
+                ApduMetrics.getInstance().recordRetry(APDUConstants.INS_WRITE_IMAGE_START);
+                continue;
+            }
+            if (response.getSW() == APDUConstants.SW_SUCCESS) {
+                chunkSize = candidate;
+                break;
+            }
+            ApduMetrics.getInstance().recordRetry(APDUConstants.INS_WRITE_IMAGE_START);
+        }
         
-        ResponseAPDU response = transmitCommand(cmd);
-        if (response.getSW() != APDUConstants.SW_SUCCESS) {
+        if (chunkSize == 0) {
+            if (response == null) {
+                throw new CardException("Lỗi ghi ảnh: " + (lastException != null ? lastException.getMessage() : "Unknown error"));
+            }
             throw new CardException("Lỗi ghi ảnh: " + APDUConstants.getErrorMessage(response.getSW()));
         }
+        imageChunkSize = chunkSize;
+        if (debugMode) {
+            System.out.println("Image chunk size: " + chunkSize);
+        }
         
         // Continue with remaining chunks
-        int offset = firstChunkLen;
+        int offset = Math.min(chunkSize, totalSize);
         while (offset < totalSize) {
             int remaining = totalSize - offset;
             int thisChunkLen = Math.min(chunkSize, remaining);
@@ -627,7 +653,7 @@ public class CardService {
             chunkData[1] = (byte) (offset & 0xFF);
             System.arraycopy(imageData, offset, chunkData, 2, thisChunkLen);
             
-            cmd = new CommandAPDU(
+            CommandAPDU cmd = new CommandAPDU(
                 APDUConstants.CLA,
                 APDUConstants.INS_WRITE_IMAGE_CONTINUE,
                 0x00, 0x00,
@@ -663,160 +689,191 @@ public class CardService {
     }
     
     /**
-     * Read current coins from card (INS_READ_USER_DATA_BASIC)
+     * Read the whole user profile in one APDU (INS_READ_USER_PROFILE)
+     * Card decrypts the record once and returns all TLV fields
      */
-    public int readCoins() throws CardException {
+    public CardProfile readProfile() throws CardException {
         if (!isConnected()) {
             throw new CardException("Chưa kết nối với thẻ");
         }
         
-        byte[] data = { APDUConstants.TAG_COINS };
-        
         CommandAPDU cmd = new CommandAPDU(
             APDUConstants.CLA,
-            APDUConstants.INS_READ_USER_DATA_BASIC,
+            APDUConstants.INS_READ_USER_PROFILE,
             0x00, 0x00,
-            data,
-            4 // 4 bytes for coins
+            256 // Whole TLV record (160 bytes max)
         );
         
         ResponseAPDU response = transmitCommand(cmd);
         
         if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            throw new CardException("Lỗi đọc coins: " + APDUConstants.getErrorMessage(response.getSW()));
+            throw new CardException("Lỗi đọc thông tin thẻ: " + APDUConstants.getErrorMessage(response.getSW()));
         }
         
-        byte[] coinBytes = response.getData();
-        if (coinBytes.length >= 2) {
-            return ((coinBytes[0] & 0xFF) << 8) | (coinBytes[1] & 0xFF);
-        }
-        return 0;
+        return parseProfile(response.getData());
     }
     
     /**
-     * Read user name from card (INS_READ_USER_DATA_BASIC with TAG_NAME)
+     * Drain the card transaction journal (INS_READ_JOURNAL)
+     * Acknowledges entries up to ackSeq (already stored by the backend) and returns the rest in one APDU
+     * @param ackSeq sequence number to acknowledge, or -1 to only read
+     * @return unacknowledged entries, oldest first
      */
-    public String readName() throws CardException {
+    public CardJournal drainJournal(long ackSeq) throws CardException {
         if (!isConnected()) {
             throw new CardException("Chưa kết nối với thẻ");
         }
         
-        byte[] data = { APDUConstants.TAG_NAME };
-        
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_READ_USER_DATA_BASIC,
-            0x00, 0x00,
-            data,
-            64 // Max name length
-        );
+        CommandAPDU cmd;
+        if (ackSeq >= 0) {
+            cmd = new CommandAPDU(
+                APDUConstants.CLA,
+                APDUConstants.INS_READ_JOURNAL,
+                0x01, 0x00,
+                APDUConstants.shortToBytes((short) ackSeq),
+                256
+            );
+        } else {
+            cmd = new CommandAPDU(
+                APDUConstants.CLA,
+                APDUConstants.INS_READ_JOURNAL,
+                0x00, 0x00,
+                256
+            );
+        }
         
         ResponseAPDU response = transmitCommand(cmd);
         
         if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            throw new CardException("Lỗi đọc tên: " + APDUConstants.getErrorMessage(response.getSW()));
+            throw new CardException("Lỗi đọc nhật ký giao dịch: " + APDUConstants.getErrorMessage(response.getSW()));
         }
         
-        byte[] nameBytes = response.getData();
-        return new String(nameBytes, java.nio.charset.StandardCharsets.UTF_8).trim();
+        CardJournal journal = parseJournal(response.getData());
+        if (debugMode) {
+            System.out.println("Journal: last=" + journal.getLastSeq() + ", acked=" + journal.getAckedSeq()
+                + ", entries=" + journal.getEntries().size());
+        }
+        return journal;
     }
     
     /**
-     * Read gender from card (INS_READ_USER_DATA_BASIC with TAG_GENDER)
-     * @return 0=Unknown, 1=Male, 2=Female
+     * Parse a READ_JOURNAL response:
+     * [LAST_SEQ(4)] [ACKED_SEQ(2)] [COUNT(1)] [SEQ(2) TYPE(1) GAME_ID(1) AMOUNT(2) BALANCE(2)]...
+     * ACKED_SEQ and entry SEQ are the low 16 bits of the 32-bit sequence number
      */
-    public byte readGender() throws CardException {
-        if (!isConnected()) {
-            throw new CardException("Chưa kết nối với thẻ");
+    static CardJournal parseJournal(byte[] data) throws CardException {
+        if (data.length < 7) {
+            throw new CardException("Phản hồi nhật ký không hợp lệ");
         }
         
-        byte[] data = { APDUConstants.TAG_GENDER };
-        
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_READ_USER_DATA_BASIC,
-            0x00, 0x00,
-            data,
-            1
-        );
-        
-        ResponseAPDU response = transmitCommand(cmd);
+        long lastSeq = ((long) (data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16)
+            | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        int ackedSeq = ((data[4] & 0xFF) << 8) | (data[5] & 0xFF);
+        int count = data[6] & 0xFF;
+        if (data.length < 7 + count * 8) {
+            throw new CardException("Phản hồi nhật ký không hợp lệ");
+        }
         
-        if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            throw new CardException("Lỗi đọc giới tính: " + APDUConstants.getErrorMessage(response.getSW()));
+        // Entries are consecutive and end at LAST_SEQ
+        List<JournalEntry> entries = new java.util.ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int off = 7 + i * 8;
+            entries.add(new JournalEntry(
+                lastSeq - (count - 1 - i),
+                data[off + 2],
+                data[off + 3] & 0xFF,
+                (short) (((data[off + 4] & 0xFF) << 8) | (data[off + 5] & 0xFF)),
+                (short) (((data[off + 6] & 0xFF) << 8) | (data[off + 7] & 0xFF))
+            ));
         }
         
-        byte[] genderBytes = response.getData();
-        return genderBytes.length > 0 ? genderBytes[0] : 0;
+        return new CardJournal(lastSeq, ackedSeq, entries);
     }
     
     /**
-     * Read age from card (INS_READ_USER_DATA_BASIC with TAG_AGE)
+     * Parse TLV record: [TAG(1)] [LEN(1)] [VALUE]... terminated by tag 0 or end of data
      */
-    public byte readAge() throws CardException {
-        if (!isConnected()) {
-            throw new CardException("Chưa kết nối với thẻ");
-        }
-        
-        byte[] data = { APDUConstants.TAG_AGE };
+    static CardProfile parseProfile(byte[] tlv) {
+        String name = "";
+        byte gender = 0;
+        byte age = 0;
+        int coins = 0;
+        java.util.Map<Short, Integer> games = new java.util.LinkedHashMap<>();
         
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_READ_USER_DATA_BASIC,
-            0x00, 0x00,
-            data,
-            1
-        );
-        
-        ResponseAPDU response = transmitCommand(cmd);
-        
-        if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            throw new CardException("Lỗi đọc tuổi: " + APDUConstants.getErrorMessage(response.getSW()));
+        int offset = 0;
+        while (offset + 2 <= tlv.length && tlv[offset] != 0) {
+            byte tag = tlv[offset];
+            int len = tlv[offset + 1] & 0xFF;
+            int valueOffset = offset + 2;
+            if (valueOffset + len > tlv.length) {
+                break; // Truncated record
+            }
+            
+            switch (tag) {
+                case APDUConstants.TAG_NAME:
+                    name = new String(tlv, valueOffset, len, java.nio.charset.StandardCharsets.UTF_8).trim();
+                    break;
+                case APDUConstants.TAG_GENDER:
+                    gender = len > 0 ? tlv[valueOffset] : 0;
+                    break;
+                case APDUConstants.TAG_COINS:
+                    coins = len >= 2 ? ((tlv[valueOffset] & 0xFF) << 8) | (tlv[valueOffset + 1] & 0xFF) : 0;
+                    break;
+                case APDUConstants.TAG_BOUGHT_GAMES:
+                    // [GAME_ID(1)] [REMAINING_PLAYS(1)] per game
+                    for (int i = 0; i + 1 < len; i += 2) {
+                        short gameId = (short) (tlv[valueOffset + i] & 0xFF);
+                        games.merge(gameId, tlv[valueOffset + i + 1] & 0xFF, Integer::sum);
+                    }
+                    break;
+                case APDUConstants.TAG_AGE:
+                    age = len > 0 ? tlv[valueOffset] : 0;
+                    break;
+                default:
+                    // Unknown tag, skip
+                    break;
+            }
+            offset = valueOffset + len;
         }
         
-        byte[] ageBytes = response.getData();
-        return ageBytes.length > 0 ? ageBytes[0] : 0;
+        return new CardProfile(name, gender, age, coins, games);
     }
     
     /**
-     * Read purchased game IDs from card (INS_READ_USER_DATA_BASIC with TAG_BOUGHT_GAMES)
-     * @return array of game IDs (shorts), or empty array if no games
+     * Read current coins from card
      */
-    public short[] readPurchasedGames() throws CardException {
-        if (!isConnected()) {
-            throw new CardException("Chưa kết nối với thẻ");
-        }
-        
-        byte[] data = { APDUConstants.TAG_BOUGHT_GAMES };
-        
-        CommandAPDU cmd = new CommandAPDU(
-            APDUConstants.CLA,
-            APDUConstants.INS_READ_USER_DATA_BASIC,
-            0x00, 0x00,
-            data,
-            256 // Max games data
-        );
-        
-        ResponseAPDU response = transmitCommand(cmd);
-        
-        if (response.getSW() != APDUConstants.SW_SUCCESS) {
-            // If no games purchased, might return empty or error
-            return new short[0];
-        }
-        
-        byte[] gameBytes = response.getData();
-        if (gameBytes.length == 0) {
-            return new short[0];
-        }
-        
-        // Convert bytes to shorts (each game ID is 1 byte, not 2)
-        // Card stores game IDs as byte array: [01, 04, 07, 0A, 05] for games 1, 4, 7, 10, 5
-        short[] gameIds = new short[gameBytes.length];
-        for (int i = 0; i < gameIds.length; i++) {
-            gameIds[i] = (short) (gameBytes[i] & 0xFF); // Convert byte to unsigned short
-        }
-        
-        return gameIds;
+    public int readCoins() throws CardException {
+        return readProfile().getCoins();
+    }
+    
+    /**
+     * Read user name from card
+     */
+    public String readName() throws CardException {
+        return readProfile().getName();
+    }
+    
+    /**
+     * Read gender from card
+     * @return 0=Unknown, 1=Male, 2=Female
+     */
+    public byte readGender() throws CardException {
+        return readProfile().getGender();
+    }
+    
+    /**
+     * Read age from card
+     */
+    public byte readAge() throws CardException {
+        return readProfile().getAge();
+    }
+    
+    /**
+     * Read purchased games from card
+     * @return game ID -> remaining plays, or empty map if no games
+     */
+    public java.util.Map<Short, Integer> readPurchasedGames() throws CardException {
+        return readProfile().getPurchasedGames();
     }
     
     /**
@@ -828,47 +885,48 @@ public class CardService {
             throw new CardException("Chưa kết nối với thẻ");
         }
         
-        // First, read a small chunk to get image info
-        int chunkSize = APDUConstants.IMAGE_CHUNK_SIZE;
         java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        int offset = 0;
         
+        // First read negotiates the chunk size (extended first, short as fallback)
+        int chunkSize = 0;
+        byte[] chunk = null;
+        for (int candidate : getImageChunkCandidates()) {
+            try {
+                ResponseAPDU response = transmitCommand(buildReadImageCommand(0, candidate));
+                if (response.getSW() == APDUConstants.SW_SUCCESS) {
+                    chunkSize = candidate;
+                    chunk = response.getData();
+                    break;
+                }
+            } catch (CardException e) {
+                // Reader rejected the APDU length, try a smaller chunk
+            }
+            ApduMetrics.getInstance().recordRetry(APDUConstants.INS_READ_IMAGE);
+        }
+        
+        if (chunkSize == 0 || chunk == null || chunk.length == 0) {
+            // No image stored
+            return null;
+        }
+        imageChunkSize = chunkSize;
+        
+        int offset = 0;
         while (true) {
-            // Build read command: [offset 2 bytes] [length 2 bytes]
-            byte[] data = new byte[4];
-            data[0] = (byte) ((offset >> 8) & 0xFF);
-            data[1] = (byte) (offset & 0xFF);
-            data[2] = (byte) ((chunkSize >> 8) & 0xFF);
-            data[3] = (byte) (chunkSize & 0xFF);
-            
-            CommandAPDU cmd = new CommandAPDU(
-                APDUConstants.CLA,
-                APDUConstants.INS_READ_IMAGE,
-                0x00, 0x00,
-                data,
-                chunkSize
-            );
-            
-            ResponseAPDU response = transmitCommand(cmd);
+            baos.write(chunk, 0, chunk.length);
+            offset += chunk.length;
             
-            if (response.getSW() != APDUConstants.SW_SUCCESS) {
-                if (offset == 0) {
-                    // No image stored
-                    return null;
-                }
+            // If we got less than requested, we're done
+            if (chunk.length < chunkSize) {
                 break;
             }
             
-            byte[] chunk = response.getData();
-            if (chunk == null || chunk.length == 0) {
+            ResponseAPDU response = transmitCommand(buildReadImageCommand(offset, chunkSize));
+            if (response.getSW() != APDUConstants.SW_SUCCESS) {
                 break;
             }
             
-            baos.write(chunk, 0, chunk.length);
-            offset += chunk.length;
-            
-            // If we got less than requested, we're done
-            if (chunk.length < chunkSize) {
+            chunk = response.getData();
+            if (chunk == null || chunk.length == 0) {
                 break;
             }
         }
@@ -897,6 +955,39 @@ public class CardService {
         return result.length > 0 ? result : null;
     }
     
+    /**
+     * Build INS_READ_IMAGE command: [offset 2 bytes] [length 2 bytes]
+     * Extended APDU is used automatically when length > 256
+     */
+    private CommandAPDU buildReadImageCommand(int offset, int length) {
+        byte[] data = new byte[4];
+        data[0] = (byte) ((offset >> 8) & 0xFF);
+        data[1] = (byte) (offset & 0xFF);
+        data[2] = (byte) ((length >> 8) & 0xFF);
+        data[3] = (byte) (length & 0xFF);
+        
+        return new CommandAPDU(
+            APDUConstants.CLA,
+            APDUConstants.INS_READ_IMAGE,
+            0x00, 0x00,
+            data,
+            length
+        );
+    }
+    
+    /**
+     * Image chunk sizes to try, the negotiated one if already known
+     */
+    private int[] getImageChunkCandidates() {
+        if (imageChunkSize > 0) {
+            return new int[]{imageChunkSize};
+        }
+        int[] candidates = java.util.Arrays.copyOf(APDUConstants.EXTENDED_IMAGE_CHUNK_SIZES,
+            APDUConstants.EXTENDED_IMAGE_CHUNK_SIZES.length + 1);
+        candidates[candidates.length - 1] = APDUConstants.IMAGE_CHUNK_SIZE;
+        return candidates;
+    }
+    
     /**
      * Reset card (INS_RESET_CARD)
      */
@@ -905,6 +996,14 @@ public class CardService {
             throw new CardException("Chưa kết nối với thẻ");
         }
         
+        // Remember user ID so its cached public key can be dropped
+        byte[] userId = null;
+        try {
+            userId = readUserId();
+        } catch (CardException e) {
+            // Card not initialized, nothing cached
+        }
+        
         CommandAPDU cmd = new CommandAPDU(
             APDUConstants.CLA,
             APDUConstants.INS_RESET_CARD,
@@ -916,6 +1015,77 @@ public class CardService {
         if (response.getSW() != APDUConstants.SW_SUCCESS) {
             throw new CardException("Lỗi reset thẻ: " + APDUConstants.getErrorMessage(response.getSW()));
         }
+        
+        if (userId != null) {
+            PublicKeyCache.getInstance().invalidate(bytesToHex(userId));
+        }
+    }
+    
+    /**
+     * Read free memory on the card (INS_GET_MEMORY_INFO)
+     * @return {persistent, transientReset, transientDeselect} in bytes, each capped at 32767
+     */
+    public int[] getMemoryInfo() throws CardException {
+        if (!isConnected()) {
+            throw new CardException("Chưa kết nối với thẻ");
+        }
+        
+        CommandAPDU cmd = new CommandAPDU(
+            APDUConstants.CLA,
+            APDUConstants.INS_GET_MEMORY_INFO,
+            0x00, 0x00,
+            6
+        );
+        
+        ResponseAPDU response = transmitCommand(cmd);
+        
+        if (response.getSW() != APDUConstants.SW_SUCCESS) {
+            throw new CardException("Lỗi đọc bộ nhớ thẻ: " + APDUConstants.getErrorMessage(response.getSW()));
+        }
+        
+        byte[] data = response.getData();
+        if (data.length < 6) {
+            throw new CardException("Phản hồi bộ nhớ không hợp lệ");
+        }
+        
+        return new int[] {
+            ((data[0] & 0xFF) << 8) | (data[1] & 0xFF),
+            ((data[2] & 0xFF) << 8) | (data[3] & 0xFF),
+            ((data[4] & 0xFF) << 8) | (data[5] & 0xFF)
+        };
+    }
+    
+    /**
+     * Read EEPROM write counters of user data (INS_GET_WRITE_STATS)
+     * @return {bytesWrittenByLastCommand, totalSinceSelect}
+     */
+    public int[] getWriteStats() throws CardException {
+        if (!isConnected()) {
+            throw new CardException("Chưa kết nối với thẻ");
+        }
+        
+        CommandAPDU cmd = new CommandAPDU(
+            APDUConstants.CLA,
+            APDUConstants.INS_GET_WRITE_STATS,
+            0x00, 0x00,
+            4
+        );
+        
+        ResponseAPDU response = transmitCommand(cmd);
+        
+        if (response.getSW() != APDUConstants.SW_SUCCESS) {
+            throw new CardException("Lỗi đọc thống kê ghi: " + APDUConstants.getErrorMessage(response.getSW()));
+        }
+        
+        byte[] data = response.getData();
+        if (data.length < 4) {
+            throw new CardException("Phản hồi thống kê ghi không hợp lệ");
+        }
+        
+        return new int[] {
+            ((data[0] & 0xFF) << 8) | (data[1] & 0xFF),
+            ((data[2] & 0xFF) << 8) | (data[3] & 0xFF)
+        };
     }
     
     /**
@@ -1014,11 +1184,29 @@ public class CardService {
      * @return true if authentication successful
      */
     public boolean authenticateWithChallenge(byte[] publicKeyBytes) throws CardException {
+        java.security.PublicKey publicKey;
         try {
-            // Generate random challenge (32 bytes)
-            java.security.SecureRandom random = new java.security.SecureRandom();
-            byte[] challenge = new byte[32];
-            random.nextBytes(challenge);
+            publicKey = PublicKeyCache.parse(publicKeyBytes);
+        } catch (java.security.GeneralSecurityException e) {
+            throw new CardException("Lỗi xác thực RSA: " + e.getMessage());
+        }
+        return authenticateWithChallenge(publicKey);
+    }
+    
+    /**
+     * Authenticate card using RSA challenge-response with an already parsed key
+     * @param publicKey card RSA public key
+     * @return true if authentication successful
+     */
+    public boolean authenticateWithChallenge(java.security.PublicKey publicKey) throws CardException {
+        try {
+            // Generate random challenge (32 bytes) unless the channel supplies one
+            byte[] challenge = channel.nextChallenge();
+            if (challenge == null) {
+                java.security.SecureRandom random = new java.security.SecureRandom();
+                challenge = new byte[32];
+                random.nextBytes(challenge);
+            }
             
             if (debugMode) {
                 System.out.println("=== RSA Authentication ===");
@@ -1032,11 +1220,6 @@ public class CardService {
                 System.out.println("Signature: " + bytesToHex(signature));
             }
             
-            // Parse public key and verify signature
-            java.security.KeyFactory keyFactory = java.security.KeyFactory.getInstance("RSA");
-            java.security.spec.X509EncodedKeySpec keySpec = new java.security.spec.X509EncodedKeySpec(publicKeyBytes);
-            java.security.PublicKey publicKey = keyFactory.generatePublic(keySpec);
-            
             // Verify signature
             java.security.Signature verifier = java.security.Signature.getInstance("SHA1withRSA");
             verifier.initVerify(publicKey);
@@ -1061,48 +1244,48 @@ public class CardService {
     /**
      * Get public key from backend API using user ID
      * @param userId 16-byte user ID from card
-     * @return RSA public key bytes (DER encoded)
+     * @return RSA public key bytes (DER encoded), null if the backend does not know the card (404)
+     * @throws java.io.IOException backend unreachable, timed out or failing (5xx)
+     * @throws CardException backend rejected the request or sent no usable key
      */
-    private byte[] getPublicKeyFromBackend(byte[] userId) throws CardException {
+    private byte[] getPublicKeyFromBackend(byte[] userId) throws CardException, java.io.IOException {
+        // Convert user ID to hex string
+        String userIdHex = bytesToHex(userId).replace(" ", "");
+        
+        if (debugMode) {
+            System.out.println("=== Fetching Public Key from Backend ===");
+            System.out.println("User ID: " + userIdHex);
+        }
+        
+        // Call backend API; transport failures propagate as IOException
+        String apiUrl = AppConfig.API_CARDS + "/" + userIdHex;
+        ApiClient.Response response;
+        try {
+            response = ApiClient.await(ApiClient.getInstance().get(apiUrl));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Lỗi lấy public key từ backend: bị ngắt");
+        }
+        
+        int responseCode = response.getStatusCode();
+        if (responseCode == 404) {
+            return null;
+        }
+        if (responseCode >= 500) {
+            throw new java.io.IOException("Backend lỗi (HTTP " + responseCode + ")");
+        }
+        if (responseCode != 200) {
+            throw new CardException("Không tìm thấy thẻ trong hệ thống (HTTP " + responseCode + ")");
+        }
+        
         try {
-            // Convert user ID to hex string
-            String userIdHex = bytesToHex(userId).replace(" ", "");
-            
-            if (debugMode) {
-                System.out.println("=== Fetching Public Key from Backend ===");
-                System.out.println("User ID: " + userIdHex);
-            }
-            
-            // Call backend API
-            String apiUrl = AppConfig.API_CARDS + "/" + userIdHex;
-            java.net.URL url = new java.net.URL(apiUrl);
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                throw new CardException("Không tìm thấy thẻ trong hệ thống (HTTP " + responseCode + ")");
-            }
-            
-            // Read response
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(conn.getInputStream())
-            );
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-            
             if (debugMode) {
-                System.out.println("Backend response: " + response.toString());
+                System.out.println("Backend response: " + response.getBody());
             }
             
             // Parse JSON to extract public_key field
             // Simple parsing (for production, use Jackson or Gson)
-            String jsonResponse = response.toString();
+            String jsonResponse = response.getBody();
             int keyStart = jsonResponse.indexOf("\"public_key\"");
             if (keyStart == -1) {
                 throw new CardException("Không tìm thấy public key trong response");
@@ -1128,6 +1311,49 @@ public class CardService {
         }
     }
     
+    /**
+     * Get card public key from cache, fetching from backend on miss.
+     * Falls back to an expired cache entry only if the backend cannot be reached; a card the
+     * backend no longer knows (deleted or revoked) is dropped from the cache and rejected.
+     * @param userId 16-byte user ID from card
+     */
+    private java.security.PublicKey getPublicKey(byte[] userId) throws CardException {
+        PublicKeyCache cache = PublicKeyCache.getInstance();
+        String userIdHex = bytesToHex(userId).replace(" ", "");
+        
+        java.security.PublicKey publicKey = cache.get(userIdHex);
+        if (publicKey != null) {
+            if (debugMode) {
+                System.out.println("Step 2: Public Key from cache");
+            }
+            return publicKey;
+        }
+        
+        try {
+            byte[] keyBytes = getPublicKeyFromBackend(userId);
+            if (keyBytes == null) {
+                cache.invalidate(userIdHex);
+                throw new CardException("Không tìm thấy thẻ trong hệ thống (HTTP 404)");
+            }
+            publicKey = cache.put(userIdHex, keyBytes);
+            if (debugMode) {
+                System.out.println("Step 2: Retrieved Public Key from backend");
+            }
+            return publicKey;
+        } catch (java.security.GeneralSecurityException e) {
+            throw new CardException("Public key không hợp lệ: " + e.getMessage());
+        } catch (java.io.IOException e) {
+            java.security.PublicKey stale = cache.getStale(userIdHex);
+            if (stale == null) {
+                throw new CardException("Lỗi lấy public key từ backend: " + e.getMessage());
+            }
+            if (debugMode) {
+                System.out.println("Step 2: Backend unavailable, using cached Public Key");
+            }
+            return stale;
+        }
+    }
+    
     /**
      * Full authentication flow when connecting to card:
      * 1. Read user ID from card
@@ -1150,14 +1376,15 @@ public class CardService {
             System.out.println("Step 1: Read User ID - " + bytesToHex(userId));
         }
         
-        // Step 2: Get public key from backend
-        byte[] publicKey = getPublicKeyFromBackend(userId);
-        if (debugMode) {
-            System.out.println("Step 2: Retrieved Public Key from backend");
-        }
+        // Step 2: Get public key (cache first, then backend)
+        java.security.PublicKey publicKey = getPublicKey(userId);
+        channel.onPublicKey(bytesToHex(userId).replace(" ", ""), publicKey.getEncoded());
         
         // Step 3: Authenticate using RSA challenge-response
         boolean authenticated = authenticateWithChallenge(publicKey);
+        if (authenticated) {
+            authenticatedUserId = userId;
+        }
         if (debugMode) {
             System.out.println("Step 3: Authentication " + (authenticated ? "SUCCESS" : "FAILED"));
             System.out.println("==============================================\n");
@@ -1196,53 +1423,26 @@ public class CardService {
             }
             
             // Build JSON payload
-            String jsonPayload = String.format(
-                "{\"_id\":\"%s\",\"user_name\":\"%s\",\"user_age\":%d,\"user_gender\":%b,\"public_key\":\"%s\"}",
-                userIdHex, userName, userAge, userGender, publicKeyBase64
-            );
+            String jsonPayload = newCardDocument(userIdHex, publicKeyBase64, userName, userAge, userGender).toString();
             
             // Call backend API
             String apiUrl = AppConfig.API_CARDS;
-            java.net.URL url = new java.net.URL(apiUrl);
-            java.net.HttpURLConnection conn = (java.net.HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setDoOutput(true);
-            
-            // Write payload
-            try (java.io.OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonPayload.getBytes("utf-8");
-                os.write(input, 0, input.length);
-            }
-            
-            int responseCode = conn.getResponseCode();
-            
-            // Read response
-            java.io.BufferedReader reader;
-            if (responseCode >= 200 && responseCode < 300) {
-                reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(conn.getInputStream())
-                );
-            } else {
-                reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(conn.getErrorStream())
-                );
-            }
-            
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
+            ApiClient.Response response = ApiClient.await(ApiClient.getInstance().post(apiUrl, jsonPayload));
+            int responseCode = response.getStatusCode();
             
             if (debugMode) {
-                System.out.println("Backend response (HTTP " + responseCode + "): " + response.toString());
+                System.out.println("Backend response (HTTP " + responseCode + "): " + response.getBody());
             }
             
             if (responseCode < 200 || responseCode >= 300) {
-                throw new CardException("Lỗi đăng ký thẻ vào hệ thống (HTTP " + responseCode + "): " + response.toString());
+                throw new CardException("Lỗi đăng ký thẻ vào hệ thống (HTTP " + responseCode + "): " + response.getBody());
+            }
+            
+            // New key replaces whatever was cached for this user ID
+            try {
+                PublicKeyCache.getInstance().put(userIdHex, x509Key);
+            } catch (java.security.GeneralSecurityException e) {
+                PublicKeyCache.getInstance().invalidate(userIdHex);
             }
             
             System.out.println("=== Card Registered Successfully ===");
@@ -1257,6 +1457,19 @@ public class CardService {
         }
     }
     
+    /**
+     * Card document as stored by the backend (POST /api/cards and /api/cards/batch)
+     */
+    static org.json.JSONObject newCardDocument(String userIdHex, String publicKeyBase64, String userName, int userAge, boolean userGender) {
+        org.json.JSONObject card = new org.json.JSONObject();
+        card.put("_id", userIdHex);
+        card.put("user_name", userName);
+        card.put("user_age", userAge);
+        card.put("user_gender", userGender);
+        card.put("public_key", publicKeyBase64);
+        return card;
+    }
+    
     /**
      * Full card setup process for new user registration
      */
@@ -1293,6 +1506,9 @@ public class CardService {
      * Check if any card terminal is available
      */
     public static boolean hasCardReader() {
+        if (AppConfig.CARD_SIMULATOR) {
+            return true;
+        }
         try {
             return !getAvailableTerminals().isEmpty();
         } catch (CardException e) {
@@ -1331,7 +1547,7 @@ public class CardService {
      * JavaCard returns: [modulus bytes][exponent bytes]
      * For RSA 1024-bit: modulus = 128 bytes, exponent = typically 3 bytes (0x010001)
      */
-    private byte[] convertRawRSAKeyToX509(byte[] rawKey) throws CardException {
+    byte[] convertRawRSAKeyToX509(byte[] rawKey) throws CardException {
         try {
             // For RSA 1024-bit: modulus = 128 bytes
             // Exponent is typically 3 bytes (65537 = 0x010001)
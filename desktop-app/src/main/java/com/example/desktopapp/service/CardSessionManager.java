@@ -0,0 +1,201 @@
+package com.example.desktopapp.service;
+
+import javax.smartcardio.CardException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one authenticated card connection per terminal.
+ * A session is reused by every screen as long as the same card stays in the reader,
+ * so SELECT + RSA challenge only run once per card tap.
+ * Sessions are keyed by the full terminal name and connecting locks only that terminal,
+ * so a slow reader does not hold up the others.
+ */
+public final class CardSessionManager {
+
+    private static final CardSessionManager INSTANCE = new CardSessionManager();
+
+    private final Map<String, CardSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Object> terminalLocks = new ConcurrentHashMap<>();
+
+    private CardSessionManager() {
+        // A pulled card ends its session at once, not at the next acquire()
+        CardTerminalMonitor.getInstance().addListener(event -> {
+            if (event.isRemoved()) {
+                invalidateTerminal(event.getTerminalName());
+            }
+        });
+    }
+
+    public static CardSessionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get session on the first available terminal, connecting if needed
+     */
+    public CardSession acquire() throws CardException {
+        return acquire(null);
+    }
+
+    /**
+     * Get session on a terminal, connecting if needed.
+     * An existing session is reused only if the same card is still present.
+     * @param terminalName terminal name (null for first available)
+     */
+    public CardSession acquire(String terminalName) throws CardException {
+        // Same reader, same key, whether it was asked for by name or as the first available
+        String key = CardService.resolveTerminalName(terminalName);
+
+        synchronized (terminalLocks.computeIfAbsent(key, k -> new Object())) {
+            CardSession session = sessions.get(key);
+            if (session != null) {
+                if (session.isAlive()) {
+                    return session;
+                }
+                // Card removed or swapped - drop the stale channel
+                sessions.remove(key, session);
+                session.close();
+            }
+
+            CardService cardService = new CardService();
+            cardService.connect(key);
+
+            session = new CardSession(cardService);
+            sessions.put(key, session);
+            return session;
+        }
+    }
+
+    /**
+     * Drop the session of a terminal (e.g. after the card was reset)
+     * @param terminalName terminal name (null for first available)
+     */
+    public void invalidate(String terminalName) {
+        String key;
+        try {
+            key = CardService.resolveTerminalName(terminalName);
+        } catch (CardException e) {
+            // Reader gone, its session is dropped by invalidateTerminal
+            return;
+        }
+        CardSession session = sessions.remove(key);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * Drop every session opened on a reader (card removed from it)
+     * @param readerName full reader name, as reported by the terminal
+     */
+    public void invalidateTerminal(String readerName) {
+        sessions.entrySet().removeIf(entry -> {
+            if (readerName.equals(entry.getValue().getCardService().getTerminalName())) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Drop the session that owns the given service, if any
+     */
+    public void invalidate(CardService cardService) {
+        sessions.entrySet().removeIf(entry -> {
+            if (entry.getValue().getCardService() == cardService) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Close every open session (application shutdown)
+     */
+    public void closeAll() {
+        sessions.values().removeIf(session -> {
+            session.close();
+            return true;
+        });
+    }
+
+    /**
+     * Connected card plus the identity already read from it
+     */
+    public static final class CardSession {
+
+        private final CardService cardService;
+        private byte[] userId; // read when the session is opened, null for a blank card
+        private Integer age;
+
+        private CardSession(CardService cardService) {
+            this.cardService = cardService;
+            // Pin the card that was authenticated: isAlive compares against this ID
+            userId = cardService.getAuthenticatedUserId();
+        }
+
+        public CardService getCardService() {
+            return cardService;
+        }
+
+        /**
+         * Get user ID (read when the session was opened, or once after a blank card was installed)
+         */
+        public synchronized byte[] getUserId() throws CardException {
+            if (userId == null) {
+                userId = cardService.readUserId();
+            }
+            return userId.clone();
+        }
+
+        /**
+         * Get user ID as lowercase hex, the format used by the backend
+         */
+        public String getUserIdHex() throws CardException {
+            return CardService.bytesToHex(getUserId()).replace(" ", "").toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Get user age (read once per session, requires verified PIN)
+         */
+        public synchronized int getAge() throws CardException {
+            if (age == null) {
+                age = cardService.readAge() & 0xFF;
+            }
+            return age;
+        }
+
+        /**
+         * Forget cached profile fields after user data was rewritten
+         */
+        public synchronized void refreshIdentity() {
+            age = null;
+        }
+
+        /**
+         * Check that the channel is still usable and still talks to the same card
+         */
+        synchronized boolean isAlive() {
+            if (!cardService.isConnected() || !cardService.isCardPresent()) {
+                return false;
+            }
+            try {
+                // Cheap probe: a re-inserted card invalidates the handle,
+                // a swapped card returns a different ID
+                // A blank card has no ID to compare, reconnect to identify it
+                return userId != null && Arrays.equals(userId, cardService.readUserId());
+            } catch (CardException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            cardService.disconnect();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.TerminalFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches every attached reader and publishes card insert/remove events.
+ * A background thread blocks in CardTerminals.waitForChange (or on the simulated card),
+ * so screens react to a tap the moment it happens instead of polling or waiting for a button.
+ * Listeners are called on the monitor thread; UI code must hop to the FX thread.
+ */
+public final class CardTerminalMonitor {
+
+    private static final CardTerminalMonitor INSTANCE = new CardTerminalMonitor();
+
+    /**
+     * Card inserted into or removed from a reader
+     */
+    public static final class CardEvent {
+        private final boolean inserted;
+        private final String terminalName;
+
+        CardEvent(boolean inserted, String terminalName) {
+            this.inserted = inserted;
+            this.terminalName = terminalName;
+        }
+
+        public boolean isInserted() {
+            return inserted;
+        }
+
+        public boolean isRemoved() {
+            return !inserted;
+        }
+
+        public String getTerminalName() {
+            return terminalName;
+        }
+
+        @Override
+        public String toString() {
+            return (inserted ? "inserted: " : "removed: ") + terminalName;
+        }
+    }
+
+    public interface Listener {
+        void onCardEvent(CardEvent event);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<String> cardsPresent = ConcurrentHashMap.newKeySet();
+    private Thread thread;
+    private volatile boolean running;
+
+    private CardTerminalMonitor() {
+    }
+
+    public static CardTerminalMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start watching readers (no-op if already running)
+     * Cards already in a reader are reported as inserted right away.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "card-monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching readers
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        cardsPresent.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void addListener(Listener listener) {
+        // Reused screens register again on every visit
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Readers that currently hold a card, as last seen by the monitor
+     */
+    public Set<String> getTerminalsWithCard() {
+        return Set.copyOf(cardsPresent);
+    }
+
+    private void run() {
+        try {
+            if (AppConfig.CARD_SIMULATOR) {
+                watchSimulatedCard(SimulatedCard.getDefault());
+            } else {
+                watchReaders();
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private void watchReaders() throws InterruptedException {
+        CardTerminals terminals = TerminalFactory.getDefault().terminals();
+        long retryMs = AppConfig.CARD_MONITOR_RETRY_MIN_MS;
+
+        while (running) {
+            try {
+                // The first call returns at once, so cards present at startup are reported too
+                terminals.waitForChange(AppConfig.CARD_MONITOR_WAIT_MS);
+                if (!running) {
+                    return;
+                }
+
+                // Removals first: a card swapped between two wake-ups must end the old session
+                for (CardTerminal terminal : terminals.list(CardTerminals.State.CARD_REMOVAL)) {
+                    setPresent(terminal.getName(), false);
+                }
+                for (CardTerminal terminal : terminals.list(CardTerminals.State.CARD_INSERTION)) {
+                    setPresent(terminal.getName(), true);
+                }
+
+                // Readers unplugged with a card in them do not report a removal
+                Set<String> present = new HashSet<>();
+                for (CardTerminal terminal : terminals.list(CardTerminals.State.CARD_PRESENT)) {
+                    present.add(terminal.getName());
+                }
+                for (String name : getTerminalsWithCard()) {
+                    if (!present.contains(name)) {
+                        setPresent(name, false);
+                    }
+                }
+                for (String name : present) {
+                    setPresent(name, true);
+                }
+                retryMs = AppConfig.CARD_MONITOR_RETRY_MIN_MS;
+            } catch (CardException | IllegalStateException e) {
+                // No reader attached, or the PC/SC service restarted: report cards as gone and retry
+                for (String name : getTerminalsWithCard()) {
+                    setPresent(name, false);
+                }
+                Thread.sleep(retryMs);
+                retryMs = Math.min(retryMs * 2, AppConfig.CARD_MONITOR_RETRY_MAX_MS);
+                terminals = TerminalFactory.getDefault().terminals();
+            }
+        }
+    }
+
+    private void watchSimulatedCard(SimulatedCard card) throws InterruptedException {
+        boolean present = false;
+        while (running) {
+            boolean now = card.waitForChange(present, AppConfig.CARD_MONITOR_WAIT_MS);
+            if (now != present) {
+                present = now;
+                setPresent(card.getName(), present);
+            }
+        }
+    }
+
+    private void setPresent(String terminalName, boolean present) {
+        boolean changed = present ? cardsPresent.add(terminalName) : cardsPresent.remove(terminalName);
+        if (!changed) {
+            return;
+        }
+
+        CardEvent event = new CardEvent(present, terminalName);
+        System.out.println((present ? "✓ Card " : "✗ Card ") + event);
+        for (Listener listener : listeners) {
+            try {
+                listener.onCardEvent(event);
+            } catch (RuntimeException e) {
+                System.err.println("✗ Card event listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
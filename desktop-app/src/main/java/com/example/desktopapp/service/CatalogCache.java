@@ -0,0 +1,286 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide cache of the game and combo lists (/api/games, /api/combos).
+ * Lists are indexed by ID and revalidated with If-None-Match / If-Modified-Since, so an
+ * unchanged catalog costs one 304. A background task refreshes both lists periodically and
+ * the last good copy is kept on disk, so a kiosk can start while the backend is down.
+ */
+public final class CatalogCache {
+
+    private static final CatalogCache INSTANCE = new CatalogCache(
+        AppConfig.CATALOG_SNAPSHOT_FILE != null ? Paths.get(AppConfig.CATALOG_SNAPSHOT_FILE) : null
+    );
+
+    /**
+     * One cached list endpoint
+     */
+    private static final class Catalog {
+        final String name;
+        final String url;
+        volatile JSONArray items = new JSONArray();
+        volatile Map<Integer, JSONObject> byId = Collections.emptyMap();
+        String etag;
+        String lastModified;
+        long fetchedAt; // 0 = not confirmed by the backend since startup
+        CompletableFuture<JSONArray> inFlight;
+
+        Catalog(String name, String url) {
+            this.name = name;
+            this.url = url;
+        }
+    }
+
+    private final Path snapshotFile;
+    private final Catalog games = new Catalog("games", AppConfig.API_GAMES);
+    private final Catalog combos = new Catalog("combos", AppConfig.API_COMBOS);
+    private final ScheduledExecutorService refresher;
+
+    private CatalogCache(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        loadSnapshot();
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            revalidate(games).exceptionally(e -> logFailure(games, e));
+            revalidate(combos).exceptionally(e -> logFailure(combos, e));
+        }, AppConfig.CATALOG_REFRESH_MS, AppConfig.CATALOG_REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static CatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Game list, served from the cache when possible
+     */
+    public CompletableFuture<JSONArray> getGames() {
+        return get(games);
+    }
+
+    /**
+     * Combo list (game_ids populated with game objects), served from the cache when possible
+     */
+    public CompletableFuture<JSONArray> getCombos() {
+        return get(combos);
+    }
+
+    /**
+     * Revalidate the game list with the backend now (admin screens, after an edit)
+     */
+    public CompletableFuture<JSONArray> refreshGames() {
+        return revalidate(games);
+    }
+
+    /**
+     * Revalidate the combo list with the backend now (admin screens, after an edit)
+     */
+    public CompletableFuture<JSONArray> refreshCombos() {
+        return revalidate(combos);
+    }
+
+    /**
+     * Cached game by ID, or null
+     */
+    public JSONObject getGame(int gameId) {
+        return games.byId.get(gameId);
+    }
+
+    /**
+     * Cached game name, or "Game #id" when unknown
+     */
+    public String getGameName(int gameId) {
+        JSONObject game = getGame(gameId);
+        return game != null ? game.optString("name", "Game #" + gameId) : "Game #" + gameId;
+    }
+
+    /**
+     * Cached combo name, or "Combo #id" when unknown
+     */
+    public String getComboName(int comboId) {
+        JSONObject combo = combos.byId.get(comboId);
+        return combo != null ? combo.optString("name", "Combo #" + comboId) : "Combo #" + comboId;
+    }
+
+    /**
+     * Game IDs of a combo; taken from the cached combo list, fetched from /api/combos/:id otherwise
+     */
+    public CompletableFuture<short[]> getComboGameIds(int comboId) {
+        JSONObject combo = combos.byId.get(comboId);
+        if (combo != null) {
+            return CompletableFuture.completedFuture(gameIdsOf(combo.optJSONArray("game_ids")));
+        }
+        return ApiClient.getInstance().get(AppConfig.API_COMBOS + "/" + comboId)
+            .thenApply(response -> {
+                if (response.getStatusCode() != 200) {
+                    throw new IllegalStateException("API trả về lỗi: " + response.getStatusCode());
+                }
+                return gameIdsOf(response.json().getJSONObject("data").optJSONArray("games"));
+            });
+    }
+
+    /**
+     * game_ids is an array of IDs, or of game objects when populated
+     */
+    private static short[] gameIdsOf(JSONArray gameIds) {
+        if (gameIds == null) {
+            return new short[0];
+        }
+        short[] ids = new short[gameIds.length()];
+        for (int i = 0; i < ids.length; i++) {
+            JSONObject game = gameIds.optJSONObject(i);
+            ids[i] = (short) (game != null ? game.getInt("_id") : gameIds.getInt(i));
+        }
+        return ids;
+    }
+
+    private CompletableFuture<JSONArray> get(Catalog catalog) {
+        JSONArray items;
+        boolean fresh;
+        synchronized (this) {
+            items = catalog.items;
+            fresh = catalog.fetchedAt != 0
+                && System.currentTimeMillis() - catalog.fetchedAt < AppConfig.CATALOG_TTL_MS;
+        }
+        if (fresh) {
+            return CompletableFuture.completedFuture(items);
+        }
+        if (items.length() > 0) {
+            // Stale or from the snapshot: answer now, revalidate in the background
+            revalidate(catalog).exceptionally(e -> logFailure(catalog, e));
+            return CompletableFuture.completedFuture(items);
+        }
+        return revalidate(catalog);
+    }
+
+    /**
+     * Conditional GET; concurrent callers share one request
+     */
+    private synchronized CompletableFuture<JSONArray> revalidate(Catalog catalog) {
+        if (catalog.inFlight != null) {
+            return catalog.inFlight;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (catalog.etag != null) {
+            headers.put("If-None-Match", catalog.etag);
+        }
+        if (catalog.lastModified != null) {
+            headers.put("If-Modified-Since", catalog.lastModified);
+        }
+
+        CompletableFuture<JSONArray> request = ApiClient.getInstance().get(catalog.url, headers)
+            .thenApply(response -> update(catalog, response));
+        catalog.inFlight = request;
+        request.whenComplete((items, e) -> {
+            synchronized (this) {
+                catalog.inFlight = null;
+            }
+        });
+        return request;
+    }
+
+    private JSONArray update(Catalog catalog, ApiClient.Response response) {
+        int status = response.getStatusCode();
+        if (status == 304) {
+            synchronized (this) {
+                catalog.fetchedAt = System.currentTimeMillis();
+                return catalog.items;
+            }
+        }
+        if (status != 200) {
+            throw new IllegalStateException("API trả về lỗi: " + status);
+        }
+
+        JSONArray items = response.dataArray();
+        synchronized (this) {
+            setItems(catalog, items);
+            catalog.etag = response.getHeader("ETag");
+            catalog.lastModified = response.getHeader("Last-Modified");
+            catalog.fetchedAt = System.currentTimeMillis();
+            saveSnapshot();
+        }
+        return items;
+    }
+
+    private static void setItems(Catalog catalog, JSONArray items) {
+        Map<Integer, JSONObject> byId = new HashMap<>();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            byId.put(item.optInt("_id"), item);
+        }
+        catalog.byId = byId;
+        catalog.items = items;
+    }
+
+    private static JSONArray logFailure(Catalog catalog, Throwable e) {
+        System.err.println("✗ Catalog " + catalog.name + " refresh failed: " + ApiClient.errorMessage(e));
+        return null;
+    }
+
+    /**
+     * Snapshot format: { "games": { etag, lastModified, items }, "combos": { ... } }
+     */
+    private void loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try {
+            JSONObject snapshot = new JSONObject(Files.readString(snapshotFile, StandardCharsets.UTF_8));
+            for (Catalog catalog : new Catalog[] { games, combos }) {
+                JSONObject entry = snapshot.optJSONObject(catalog.name);
+                if (entry != null) {
+                    setItems(catalog, entry.getJSONArray("items"));
+                    catalog.etag = entry.optString("etag", null);
+                    catalog.lastModified = entry.optString("lastModified", null);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            System.err.println("Không thể đọc catalog cache: " + e.getMessage());
+        }
+    }
+
+    private void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        JSONObject snapshot = new JSONObject();
+        for (Catalog catalog : new Catalog[] { games, combos }) {
+            snapshot.put(catalog.name, new JSONObject()
+                .put("etag", catalog.etag)
+                .put("lastModified", catalog.lastModified)
+                .put("items", catalog.items));
+        }
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.writeString(tmp, snapshot.toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Không thể ghi catalog cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.CardJournal;
+import com.example.desktopapp.model.JournalEntry;
+
+import javax.smartcardio.CardException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves card journal entries to the backend off the tap path.
+ * The card records every top-up and play in its journal; after a card operation the caller
+ * drains the journal (one APDU) and the entries are written to the transaction outbox, which
+ * uploads them in the background. Queued entries are acknowledged on the card by the next
+ * drain; if queueing fails they stay on the card and are drained again next time.
+ */
+public final class JournalSyncService {
+
+    private static final JournalSyncService INSTANCE = new JournalSyncService();
+
+    private final TransactionService transactionService = new TransactionService();
+
+    // Highest sequence number durably queued, per card, not yet acknowledged on the card
+    private final Map<String, Long> queuedSeq = new ConcurrentHashMap<>();
+
+    private JournalSyncService() {
+    }
+
+    public static JournalSyncService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Drain the journal of a session card into the transaction outbox
+     * Must be called from a worker thread after PIN verification
+     */
+    public void drainAndUpload(CardSessionManager.CardSession session) throws CardException {
+        drainAndUpload(session.getCardService(), session.getUserIdHex(), session.getAge());
+    }
+
+    /**
+     * Drain the journal of a card into the transaction outbox
+     * Must be called from a worker thread after PIN verification
+     * @param cardId card ID in the backend format (lowercase hex)
+     */
+    public void drainAndUpload(CardService cardService, String cardId, int userAge) throws CardException {
+        // If the drain fails the acknowledgement is dropped, entries are just uploaded again
+        Long ackSeq = queuedSeq.remove(cardId);
+        CardJournal journal = cardService.drainJournal(ackSeq != null ? ackSeq : -1);
+
+        if (journal.getLostCount() > 0) {
+            System.err.println("✗ Journal of card " + cardId + " overwrote " + journal.getLostCount() + " entries");
+        }
+
+        List<JournalEntry> entries = journal.getEntries();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        long lastSeq = entries.get(entries.size() - 1).getSeq();
+        try {
+            transactionService.queueJournal(cardId, userAge, entries);
+            queuedSeq.put(cardId, lastSeq);
+        } catch (IOException e) {
+            // Entries stay unacknowledged on the card and are drained again next time
+            System.err.println("✗ Failed to queue journal: " + e.getMessage());
+        }
+    }
+}
@@ -2,19 +2,52 @@ package com.example.desktopapp.service;
 
 import com.example.desktopapp.util.AppConfig;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for MoMo payment integration
- * Handles QR code generation and payment status polling
+ * Handles QR code generation and waiting for the payment result: the status endpoint is
+ * long-polled (answered as soon as the IPN arrives), with exponential backoff when the
+ * backend answers immediately or is unreachable. All waits share one scheduler and end
+ * with status "expired" after MOMO_PAYMENT_EXPIRY_MS.
  */
 public class MomoService {
 
+    /**
+     * Source of payment status: the backend by default, {@link LocalStatusSource} in tests
+     */
+    public interface StatusSource {
+        /**
+         * Status of an order; may hold the request up to waitMs while the order is pending
+         */
+        CompletableFuture<PaymentStatusResponse> fetchStatus(String orderId, long waitMs);
+    }
+
+    // One scheduler for every payment wait in the app
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "momo-status");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final StatusSource statusSource;
+
+    public MomoService() {
+        this.statusSource = MomoService::fetchStatusFromBackend;
+    }
+
+    public MomoService(StatusSource statusSource) {
+        this.statusSource = statusSource;
+    }
+
     /**
      * Response from creating QR payment
      */
@@ -41,6 +74,7 @@ public class MomoService {
         public String description;
         public String transId;
         public String message;
+        public boolean longPoll; // backend held the request (long-poll supported)
 
         public boolean isSuccess() {
             return "success".equals(status);
@@ -50,6 +84,10 @@ public class MomoService {
             return "pending".equals(status);
         }
 
+        public boolean isExpired() {
+            return "expired".equals(status);
+        }
+
         @Override
         public String toString() {
             return "PaymentStatusResponse{orderId='" + orderId + "', status='" + status + "', message='" + message + "'}";
@@ -63,87 +101,123 @@ public class MomoService {
      * @return QR payment response with QR code URL and order ID
      */
     public QrPaymentResponse createQrPayment(int amount, String description) throws Exception {
-        URL url = new URL(AppConfig.API_MOMO_QR);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(AppConfig.CONNECTION_TIMEOUT);
-            conn.setReadTimeout(AppConfig.READ_TIMEOUT);
-
-            // Build JSON request body
-            String jsonBody = String.format(
-                "{\"amount\":\"%d\",\"orderInfo\":\"Nap tien\",\"description\":\"%s\"}",
-                amount, description
-            );
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(jsonBody.getBytes(StandardCharsets.UTF_8));
-            }
+        // Build JSON request body
+        String jsonBody = String.format(
+            "{\"amount\":\"%d\",\"orderInfo\":\"Nap tien\",\"description\":\"%s\"}",
+            amount, description
+        );
 
-            int responseCode = conn.getResponseCode();
-            
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(
-                        responseCode >= 400 ? conn.getErrorStream() : conn.getInputStream(),
-                        StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line);
-                }
-            }
+        String jsonResponse = ApiClient.await(ApiClient.getInstance().post(AppConfig.API_MOMO_QR, jsonBody)).getBody();
+        System.out.println("MoMo QR Response: " + jsonResponse);
+
+        return parseQrPaymentResponse(jsonResponse);
+    }
+
+    /**
+     * Wait for the result of a payment
+     * Cancel the returned future to stop waiting (e.g. when leaving the screen).
+     * @param orderId Order ID returned by {@link #createQrPayment}
+     * @return future completed with the first non-pending status, or status "expired"
+     */
+    public CompletableFuture<PaymentStatusResponse> watchPayment(String orderId) {
+        CompletableFuture<PaymentStatusResponse> result = new CompletableFuture<>();
 
-            String jsonResponse = response.toString();
-            System.out.println("MoMo QR Response: " + jsonResponse);
+        ScheduledFuture<?> expiry = SCHEDULER.schedule(() -> {
+            PaymentStatusResponse expired = new PaymentStatusResponse();
+            expired.orderId = orderId;
+            expired.status = "expired";
+            expired.message = "Mã QR đã hết hạn";
+            result.complete(expired);
+        }, AppConfig.MOMO_PAYMENT_EXPIRY_MS, TimeUnit.MILLISECONDS);
+        result.whenComplete((status, e) -> expiry.cancel(false));
 
-            return parseQrPaymentResponse(jsonResponse);
+        poll(orderId, result, AppConfig.MOMO_POLL_MIN_MS);
+        return result;
+    }
 
-        } finally {
-            conn.disconnect();
+    private void poll(String orderId, CompletableFuture<PaymentStatusResponse> result, long backoffMs) {
+        if (result.isDone()) {
+            return;
         }
+        long startedAt = System.currentTimeMillis();
+        statusSource.fetchStatus(orderId, AppConfig.MOMO_LONG_POLL_MS).whenComplete((status, e) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (e == null && !status.isPending()) {
+                result.complete(status);
+                return;
+            }
+
+            long delay;
+            long nextBackoff;
+            boolean held = e == null && status.longPoll
+                && System.currentTimeMillis() - startedAt >= AppConfig.MOMO_POLL_MIN_MS;
+            if (held) {
+                // Long-poll timed out with nothing new: ask again right away
+                delay = 0;
+                nextBackoff = AppConfig.MOMO_POLL_MIN_MS;
+            } else {
+                if (e != null) {
+                    System.err.println("Error polling payment status: " + ApiClient.errorMessage(e));
+                }
+                delay = backoffMs;
+                nextBackoff = Math.min(backoffMs * 2, AppConfig.MOMO_POLL_MAX_MS);
+            }
+            SCHEDULER.schedule(() -> poll(orderId, result, nextBackoff), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static CompletableFuture<PaymentStatusResponse> fetchStatusFromBackend(String orderId, long waitMs) {
+        String url = AppConfig.API_MOMO_STATUS + "/" + orderId + "?wait=" + (waitMs / 1000);
+        return ApiClient.getInstance().get(url)
+            .thenApply(response -> parsePaymentStatusResponse(response.getBody()));
     }
 
     /**
-     * Check payment status by order ID
-     * @param orderId Order ID to check
-     * @return Payment status response
+     * In-memory stand-in for the backend status endpoint (tests, offline demos)
+     * Orders stay pending until {@link #complete} is called; waiting long-polls are answered at once.
      */
-    public PaymentStatusResponse checkPaymentStatus(String orderId) throws Exception {
-        URL url = new URL(AppConfig.API_MOMO_STATUS + "/" + orderId);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        try {
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(AppConfig.CONNECTION_TIMEOUT);
-            conn.setReadTimeout(AppConfig.READ_TIMEOUT);
-
-            int responseCode = conn.getResponseCode();
-            
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(
-                        responseCode >= 400 ? conn.getErrorStream() : conn.getInputStream(),
-                        StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line);
-                }
-            }
+    public static final class LocalStatusSource implements StatusSource {
+        private final Map<String, String> statuses = new ConcurrentHashMap<>();
+        private final Map<String, List<CompletableFuture<PaymentStatusResponse>>> waiters = new ConcurrentHashMap<>();
 
-            String jsonResponse = response.toString();
-            System.out.println("MoMo Status Response: " + jsonResponse);
+        /**
+         * Set the final status of an order ("success" or "failed")
+         */
+        public void complete(String orderId, String status) {
+            statuses.put(orderId, status);
+            List<CompletableFuture<PaymentStatusResponse>> pending = waiters.remove(orderId);
+            if (pending != null) {
+                pending.forEach(f -> f.complete(response(orderId, status, true)));
+            }
+        }
 
-            return parsePaymentStatusResponse(jsonResponse);
+        @Override
+        public CompletableFuture<PaymentStatusResponse> fetchStatus(String orderId, long waitMs) {
+            String status = statuses.getOrDefault(orderId, "pending");
+            if (!"pending".equals(status) || waitMs <= 0) {
+                return CompletableFuture.completedFuture(response(orderId, status, false));
+            }
+            CompletableFuture<PaymentStatusResponse> waiter = new CompletableFuture<>();
+            waiters.computeIfAbsent(orderId, k -> new CopyOnWriteArrayList<>()).add(waiter);
+            // complete() may have run before the waiter was registered
+            if (statuses.containsKey(orderId)) {
+                waiter.complete(response(orderId, statuses.get(orderId), true));
+            }
+            return waiter.completeOnTimeout(response(orderId, "pending", true), waitMs, TimeUnit.MILLISECONDS);
+        }
 
-        } finally {
-            conn.disconnect();
+        private static PaymentStatusResponse response(String orderId, String status, boolean longPoll) {
+            PaymentStatusResponse response = new PaymentStatusResponse();
+            response.orderId = orderId;
+            response.status = status;
+            response.longPoll = longPoll;
+            return response;
         }
     }
 
-    private QrPaymentResponse parseQrPaymentResponse(String json) {
+    static QrPaymentResponse parseQrPaymentResponse(String json) {
         QrPaymentResponse response = new QrPaymentResponse();
         response.qrCodeUrl = parseJsonString(json, "qrCodeUrl");
         response.orderId = parseJsonString(json, "orderId");
@@ -153,7 +227,7 @@ public class MomoService {
         return response;
     }
 
-    private PaymentStatusResponse parsePaymentStatusResponse(String json) {
+    static PaymentStatusResponse parsePaymentStatusResponse(String json) {
         PaymentStatusResponse response = new PaymentStatusResponse();
         response.orderId = parseJsonString(json, "orderId");
         response.status = parseJsonString(json, "status");
@@ -161,10 +235,11 @@ public class MomoService {
         response.description = parseJsonString(json, "description");
         response.transId = parseJsonString(json, "transId");
         response.message = parseJsonString(json, "message");
+        response.longPoll = json.contains("\"longPoll\":true");
         return response;
     }
 
-    private String parseJsonString(String json, String key) {
+    private static String parseJsonString(String json, String key) {
         String pattern = "\"" + key + "\":";
         int start = json.indexOf(pattern);
         if (start == -1) return null;
@@ -193,7 +268,7 @@ public class MomoService {
         return null;
     }
 
-    private int parseJsonInt(String json, String key) {
+    private static int parseJsonInt(String json, String key) {
         String pattern = "\"" + key + "\":";
         int start = json.indexOf(pattern);
         if (start == -1) return -1;
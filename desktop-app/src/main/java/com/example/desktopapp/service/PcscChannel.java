@@ -0,0 +1,139 @@
+package com.example.desktopapp.service;
+
+import javax.smartcardio.*;
+import java.util.List;
+
+/**
+ * APDU channel to a card in a PC/SC reader (physical reader or jCIDE simulator)
+ */
+final class PcscChannel implements ApduChannel {
+
+    private final CardTerminal terminal;
+    private final Card card;
+    private final CardChannel channel;
+
+    private PcscChannel(CardTerminal terminal, Card card) {
+        this.terminal = terminal;
+        this.card = card;
+        this.channel = card.getBasicChannel();
+    }
+
+    /**
+     * Find a terminal and connect to its card
+     * @param terminalName name of terminal to connect (null for first available)
+     */
+    static PcscChannel open(String terminalName, boolean debugMode) throws CardException {
+        return open(findTerminal(terminalName, debugMode), debugMode);
+    }
+
+    /**
+     * Terminal whose name contains terminalName, or the first available one for null
+     */
+    static CardTerminal findTerminal(String terminalName, boolean debugMode) throws CardException {
+        TerminalFactory factory = TerminalFactory.getDefault();
+        List<CardTerminal> terminals = factory.terminals().list();
+
+        if (terminals.isEmpty()) {
+            throw new CardException("Không tìm thấy đầu đọc thẻ. Hãy đảm bảo jCIDE simulator đang chạy với PC/SC được bật.");
+        }
+
+        // Log available terminals
+        if (debugMode) {
+            System.out.println("=== Available Card Terminals ===");
+            for (CardTerminal t : terminals) {
+                System.out.println("  - " + t.getName());
+            }
+        }
+
+        // Find terminal
+        CardTerminal terminal = null;
+        if (terminalName != null && !terminalName.isEmpty()) {
+            for (CardTerminal t : terminals) {
+                if (t.getName().contains(terminalName)) {
+                    terminal = t;
+                    break;
+                }
+            }
+            if (terminal == null) {
+                throw new CardException("Không tìm thấy terminal: " + terminalName);
+            }
+        } else {
+            // Use first available terminal
+            terminal = terminals.get(0);
+        }
+
+        if (debugMode) {
+            System.out.println("Using terminal: " + terminal.getName());
+        }
+
+        return terminal;
+    }
+
+    /**
+     * Connect to the card in a known terminal
+     */
+    static PcscChannel open(CardTerminal terminal, boolean debugMode) throws CardException {
+        if (!terminal.isCardPresent()) {
+            throw new CardException("Không có thẻ trong đầu đọc. Hãy đảm bảo jCIDE simulator đang chạy và thẻ đã được power on.");
+        }
+
+        // Connect to card - try T=1 first (preferred for jCIDE), then T=0, then any
+        String[] protocols = {"T=1", "T=0", "*"};
+        CardException lastException = null;
+        Card card = null;
+
+        for (String protocol : protocols) {
+            try {
+                if (debugMode) {
+                    System.out.println("Trying protocol: " + protocol);
+                }
+                card = terminal.connect(protocol);
+                if (debugMode) {
+                    System.out.println("Connected with protocol: " + card.getProtocol());
+                    System.out.println("ATR: " + CardService.bytesToHex(card.getATR().getBytes()));
+                }
+                break;
+            } catch (CardException e) {
+                lastException = e;
+                if (debugMode) {
+                    System.out.println("Protocol " + protocol + " failed: " + e.getMessage());
+                }
+            }
+        }
+
+        if (card == null) {
+            throw new CardException("Không thể kết nối với thẻ: " +
+                (lastException != null ? lastException.getMessage() : "Unknown error"));
+        }
+
+        return new PcscChannel(terminal, card);
+    }
+
+    @Override
+    public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+        return channel.transmit(command);
+    }
+
+    @Override
+    public String getName() {
+        return terminal.getName();
+    }
+
+    @Override
+    public boolean isCardPresent() {
+        try {
+            return terminal.isCardPresent();
+        } catch (CardException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        try {
+            card.disconnect(false);
+        } catch (CardException e) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.ProvisioningOrder;
+import com.example.desktopapp.model.UserRegistration;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a batch of card registrations for the provisioning station.
+ * Either CSV with a header row, or a JSON array of objects, with the columns/keys:
+ *   name, age, gender (male/female/other, nam/nu/khac or 1/2/0), pin (6 digits),
+ *   amount_vnd (coin top-up), combos (combo IDs, "1|3" in CSV), avatar (image path, relative to the file)
+ * Every row is checked before anything is written to a card, with the same rules as the
+ * registration screen.
+ */
+public final class ProvisioningFile {
+
+    private static final int PIN_LENGTH = 6;
+
+    private ProvisioningFile() {
+    }
+
+    public static List<ProvisioningOrder> read(Path file) throws IOException {
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+            text = text.substring(1); // BOM written by Excel
+        }
+
+        List<Map<String, String>> rows = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+            ? parseJson(text)
+            : parseCsv(text);
+
+        List<ProvisioningOrder> orders = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                orders.add(toOrder(i + 1, rows.get(i), file.toAbsolutePath().getParent()));
+            } catch (IllegalArgumentException e) {
+                errors.add("Dòng " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IOException("Dữ liệu không hợp lệ:\n  " + String.join("\n  ", errors));
+        }
+        return orders;
+    }
+
+    private static ProvisioningOrder toOrder(int row, Map<String, String> fields, Path baseDir) throws IOException {
+        UserRegistration user = new UserRegistration();
+
+        String name = fields.getOrDefault("name", "").trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Thiếu họ tên");
+        }
+        user.setName(name);
+
+        String age = fields.getOrDefault("age", "").trim();
+        if (!age.matches("\\d+") || Integer.parseInt(age) < 1 || Integer.parseInt(age) > 150) {
+            throw new IllegalArgumentException("Tuổi không hợp lệ: " + age);
+        }
+        user.setAge(age);
+        user.setGender(parseGender(fields.getOrDefault("gender", "")));
+
+        String pin = fields.getOrDefault("pin", "").trim();
+        if (pin.length() != PIN_LENGTH || !pin.matches("\\d+")) {
+            throw new IllegalArgumentException("PIN phải gồm " + PIN_LENGTH + " số");
+        }
+        user.setPin(pin);
+
+        List<Integer> comboIds = new ArrayList<>();
+        for (String id : fields.getOrDefault("combos", "").split("[|\\s]+")) {
+            if (!id.isEmpty()) {
+                try {
+                    comboIds.add(Integer.parseInt(id));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Mã combo không hợp lệ: " + id);
+                }
+            }
+        }
+
+        if (comboIds.isEmpty()) {
+            String amount = fields.getOrDefault("amount_vnd", "").trim();
+            int amountVND;
+            try {
+                amountVND = amount.isEmpty() ? 0 : Integer.parseInt(amount);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Số tiền không hợp lệ: " + amount);
+            }
+            if (amountVND > 0 && amountVND < 10000) {
+                throw new IllegalArgumentException("Số tiền tối thiểu là 10,000đ");
+            }
+            user.setAmountVND(amountVND);
+        }
+
+        String avatar = fields.getOrDefault("avatar", "").trim();
+        if (!avatar.isEmpty()) {
+            Path avatarFile = baseDir.resolve(avatar);
+            if (!Files.isRegularFile(avatarFile)) {
+                throw new IllegalArgumentException("Không tìm thấy ảnh: " + avatar);
+            }
+            byte[] avatarBytes = Files.readAllBytes(avatarFile);
+            if (avatarBytes.length > APDUConstants.MAX_IMAGE_SIZE) {
+                throw new IllegalArgumentException("Ảnh quá lớn (" + avatarBytes.length + " bytes), tối đa "
+                    + APDUConstants.MAX_IMAGE_SIZE + " bytes: " + avatar);
+            }
+            user.setAvatar(avatarBytes);
+        }
+
+        return new ProvisioningOrder(row, user, comboIds);
+    }
+
+    private static byte parseGender(String value) {
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "1":
+            case "male":
+            case "m":
+            case "nam":
+                return 1;
+            case "2":
+            case "female":
+            case "f":
+            case "nu":
+            case "nữ":
+                return 2;
+            case "":
+            case "0":
+            case "other":
+            case "khac":
+            case "khác":
+                return 0;
+            default:
+                throw new IllegalArgumentException("Giới tính không hợp lệ: " + value);
+        }
+    }
+
+    private static List<Map<String, String>> parseJson(String text) throws IOException {
+        List<Map<String, String>> rows = new ArrayList<>();
+        try {
+            JSONArray items = new JSONArray(text);
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject item = items.getJSONObject(i);
+                Map<String, String> fields = new HashMap<>();
+                for (String key : item.keySet()) {
+                    Object value = item.get(key);
+                    if (value instanceof JSONArray) {
+                        List<String> parts = new ArrayList<>();
+                        for (Object part : (JSONArray) value) {
+                            parts.add(String.valueOf(part));
+                        }
+                        fields.put(key, String.join("|", parts));
+                    } else if (value != JSONObject.NULL) {
+                        fields.put(key, String.valueOf(value));
+                    }
+                }
+                rows.add(fields);
+            }
+        } catch (JSONException e) {
+            throw new IOException("File JSON không hợp lệ: " + e.getMessage());
+        }
+        return rows;
+    }
+
+    private static List<Map<String, String>> parseCsv(String text) throws IOException {
+        String[] lines = text.split("\r?\n");
+        if (lines.length == 0 || lines[0].isBlank()) {
+            throw new IOException("File CSV trống");
+        }
+
+        // Excel with a Vietnamese locale saves with ";"
+        char separator = lines[0].indexOf(';') >= 0 && lines[0].indexOf(',') < 0 ? ';' : ',';
+        List<String> header = splitCsvLine(lines[0], separator);
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].isBlank()) {
+                continue;
+            }
+            List<String> values = splitCsvLine(lines[i], separator);
+            Map<String, String> fields = new HashMap<>();
+            for (int c = 0; c < header.size() && c < values.size(); c++) {
+                fields.put(header.get(c).trim().toLowerCase(Locale.ROOT), values.get(c));
+            }
+            rows.add(fields);
+        }
+        return rows;
+    }
+
+    /**
+     * Split one CSV line; values may be quoted ("Nguyen, Van A"), "" is an escaped quote
+     */
+    private static List<String> splitCsvLine(String line, char separator) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
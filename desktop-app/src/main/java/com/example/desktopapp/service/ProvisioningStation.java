@@ -0,0 +1,579 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.ProvisioningOrder;
+import com.example.desktopapp.model.UserRegistration;
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.TerminalFactory;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless card issuing for event days.
+ * Runs the registration flow of CardRegistrationController (INSTALL, backend registration,
+ * user data, combo/top-up, avatar, transactions) on every attached reader at once, one worker
+ * thread per reader, taking the next order from a shared queue whenever a blank card is put on
+ * a reader. Backend registrations are batched by {@link CardRegistrationBatcher}; the card keeps
+ * being written while its registration is in flight.
+ */
+public final class ProvisioningStation {
+
+    // Stage names, in the order they run
+    public static final String STAGE_CONNECT = "connect";
+    public static final String STAGE_INSTALL = "install";
+    public static final String STAGE_USER_DATA = "userdata";
+    public static final String STAGE_PAYMENT = "payment";
+    public static final String STAGE_AVATAR = "avatar";
+    public static final String STAGE_REGISTER = "register";
+    public static final String STAGE_TRANSACTIONS = "transactions";
+    private static final String[] STAGES = {
+        STAGE_CONNECT, STAGE_INSTALL, STAGE_USER_DATA, STAGE_PAYMENT, STAGE_AVATAR, STAGE_REGISTER, STAGE_TRANSACTIONS
+    };
+
+    /**
+     * A reader the station issues cards on
+     */
+    public interface Reader {
+        String getName();
+
+        /**
+         * Wait for a card to be put on the reader
+         * @return channel to the card, or null if none arrived within timeoutMs
+         */
+        ApduChannel awaitCard(long timeoutMs) throws CardException, InterruptedException;
+
+        /**
+         * Wait for the card to be taken off the reader
+         * @return true once the reader is empty
+         */
+        boolean awaitRemoval(long timeoutMs) throws CardException, InterruptedException;
+    }
+
+    /**
+     * Outcome and stage timings of one issued card
+     */
+    public static final class CardResult {
+        private final ProvisioningOrder order;
+        private final String readerName;
+        private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        private String userIdHex;
+        private String failedStage;
+        private String error;
+
+        CardResult(ProvisioningOrder order, String readerName) {
+            this.order = order;
+            this.readerName = readerName;
+        }
+
+        public ProvisioningOrder getOrder() {
+            return order;
+        }
+
+        public String getReaderName() {
+            return readerName;
+        }
+
+        public String getUserIdHex() {
+            return userIdHex;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String getFailedStage() {
+            return failedStage;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Time spent in a stage in ms, -1 if the stage did not run
+         */
+        public double getStageMillis(String stage) {
+            Long nanos = stageNanos.get(stage);
+            return nanos != null ? nanos / 1e6 : -1;
+        }
+
+        public double getTotalMillis() {
+            long total = 0;
+            for (long nanos : stageNanos.values()) {
+                total += nanos;
+            }
+            return total / 1e6;
+        }
+    }
+
+    /**
+     * Results of a whole run
+     */
+    public static final class Report {
+        private final List<CardResult> results;
+        private final int skipped;
+        private final int batches;
+        private final long elapsedNanos;
+
+        Report(List<CardResult> results, int skipped, int batches, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.skipped = skipped;
+            this.batches = batches;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<CardResult> getResults() {
+            return results;
+        }
+
+        public int getSucceeded() {
+            int count = 0;
+            for (CardResult result : results) {
+                if (result.isSuccess()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int getFailed() {
+            return results.size() - getSucceeded();
+        }
+
+        /**
+         * Cards that were already initialized (or unreadable) and left untouched
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Registration requests sent to the backend
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        public double getElapsedSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        /**
+         * Successfully issued cards per minute of wall time
+         */
+        public double getCardsPerMinute() {
+            return elapsedNanos > 0 ? getSucceeded() * 60e9 / elapsedNanos : 0;
+        }
+
+        public void print(PrintStream out) {
+            out.println("=== Provisioning Report ===");
+            out.printf("Thẻ thành công: %d, lỗi: %d, bỏ qua: %d%n", getSucceeded(), getFailed(), skipped);
+            out.printf("Thời gian: %.1f s, thông lượng: %.1f thẻ/phút, %d request đăng ký%n",
+                getElapsedSeconds(), getCardsPerMinute(), batches);
+
+            Map<String, Integer> perReader = new LinkedHashMap<>();
+            for (CardResult result : results) {
+                if (result.isSuccess()) {
+                    perReader.merge(result.getReaderName(), 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<String, Integer> e : perReader.entrySet()) {
+                out.printf("  %-40s %d thẻ%n", e.getKey(), e.getValue());
+            }
+
+            out.printf("%-14s %8s %8s %8s %8s%n", "stage (ms)", "mean", "p50", "p95", "max");
+            for (String stage : STAGES) {
+                printStage(out, stage, stageTimes(stage));
+            }
+            List<Double> totals = new ArrayList<>();
+            for (CardResult result : results) {
+                if (result.isSuccess()) {
+                    totals.add(result.getTotalMillis());
+                }
+            }
+            printStage(out, "total", totals);
+
+            for (CardResult result : results) {
+                if (!result.isSuccess()) {
+                    out.println("✗ " + result.getOrder() + " [" + result.getReaderName() + "] "
+                        + result.getFailedStage() + ": " + result.getError());
+                }
+            }
+        }
+
+        /**
+         * Write one line per card: row, name, reader, card ID, status, then ms per stage
+         */
+        public void writeCsv(Path file) throws IOException {
+            StringBuilder csv = new StringBuilder("row,name,reader,card_id,status,error");
+            for (String stage : STAGES) {
+                csv.append(',').append(stage).append("_ms");
+            }
+            csv.append(",total_ms\n");
+
+            for (CardResult result : results) {
+                csv.append(result.getOrder().getRow()).append(',')
+                    .append(csvValue(result.getOrder().getUser().getName())).append(',')
+                    .append(csvValue(result.getReaderName())).append(',')
+                    .append(result.getUserIdHex() != null ? result.getUserIdHex() : "").append(',')
+                    .append(result.isSuccess() ? "ok" : "failed:" + result.getFailedStage()).append(',')
+                    .append(result.isSuccess() ? "" : csvValue(result.getError()));
+                for (String stage : STAGES) {
+                    double ms = result.getStageMillis(stage);
+                    csv.append(',').append(ms >= 0 ? String.format(java.util.Locale.ROOT, "%.1f", ms) : "");
+                }
+                csv.append(',').append(String.format(java.util.Locale.ROOT, "%.1f", result.getTotalMillis())).append('\n');
+            }
+            Files.writeString(file, csv, StandardCharsets.UTF_8);
+        }
+
+        private List<Double> stageTimes(String stage) {
+            List<Double> times = new ArrayList<>();
+            for (CardResult result : results) {
+                double ms = result.getStageMillis(stage);
+                if (result.isSuccess() && ms >= 0) {
+                    times.add(ms);
+                }
+            }
+            return times;
+        }
+
+        private static void printStage(PrintStream out, String name, List<Double> times) {
+            if (times.isEmpty()) {
+                return;
+            }
+            Collections.sort(times);
+            double sum = 0;
+            for (double t : times) {
+                sum += t;
+            }
+            out.printf("%-14s %8.1f %8.1f %8.1f %8.1f%n", name, sum / times.size(),
+                percentile(times, 50), percentile(times, 95), times.get(times.size() - 1));
+        }
+
+        private static double percentile(List<Double> sorted, int p) {
+            int index = (int) Math.ceil(p / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+        }
+
+        private static String csvValue(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+    }
+
+    private final List<Reader> readers;
+    private final Queue<ProvisioningOrder> orders = new ConcurrentLinkedQueue<>();
+    private final List<CardResult> results = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final TransactionService transactionService = new TransactionService();
+    private CardRegistrationBatcher batcher;
+
+    public ProvisioningStation(List<Reader> readers) {
+        this.readers = List.copyOf(readers);
+    }
+
+    /**
+     * Every attached PC/SC reader, or AppConfig.SIMULATOR_READERS simulated readers in
+     * simulator mode (each card put on them is a new blank SimulatedCard)
+     * @param nameFilter only readers whose name contains one of these (empty for all)
+     */
+    public static List<Reader> detectReaders(List<String> nameFilter) throws CardException {
+        List<Reader> readers = new ArrayList<>();
+        if (AppConfig.CARD_SIMULATOR) {
+            for (int i = 1; i <= AppConfig.SIMULATOR_READERS; i++) {
+                readers.add(new SimulatedReader("Entertainment Simulator " + i));
+            }
+        } else {
+            for (CardTerminal terminal : TerminalFactory.getDefault().terminals().list()) {
+                readers.add(new PcscReader(terminal));
+            }
+        }
+
+        if (!nameFilter.isEmpty()) {
+            readers.removeIf(reader -> nameFilter.stream().noneMatch(name -> reader.getName().contains(name)));
+        }
+        if (readers.isEmpty()) {
+            throw new CardException("Không tìm thấy đầu đọc thẻ");
+        }
+        return readers;
+    }
+
+    /**
+     * Issue one card per order, spread over all readers; returns when every order was taken
+     * by a reader and its card finished (successfully or not)
+     */
+    public Report run(List<ProvisioningOrder> batch) throws IOException, InterruptedException {
+        resolveCombos(batch);
+
+        orders.addAll(batch);
+        results.clear();
+        skipped.set(0);
+        batcher = new CardRegistrationBatcher();
+
+        System.out.println("Provisioning " + batch.size() + " thẻ trên " + readers.size() + " đầu đọc");
+        long start = System.nanoTime();
+
+        List<Thread> workers = new ArrayList<>();
+        for (Reader reader : readers) {
+            Thread worker = new Thread(() -> work(reader), "provision-" + reader.getName());
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        batcher.close();
+
+        List<CardResult> sorted = new ArrayList<>(results);
+        sorted.sort((a, b) -> Integer.compare(a.getOrder().getRow(), b.getOrder().getRow()));
+        return new Report(sorted, skipped.get(), batcher.getBatchCount(), System.nanoTime() - start);
+    }
+
+    /**
+     * Look up game IDs and prices of the ordered combos before any card is written
+     */
+    private void resolveCombos(List<ProvisioningOrder> batch) throws IOException, InterruptedException {
+        boolean needed = batch.stream().anyMatch(ProvisioningOrder::isCombo);
+        if (!needed) {
+            return;
+        }
+
+        try {
+            Map<Integer, Integer> prices = new HashMap<>();
+            JSONArray combos = CatalogCache.getInstance().getCombos().get();
+            for (int i = 0; i < combos.length(); i++) {
+                JSONObject combo = combos.getJSONObject(i);
+                prices.put(combo.optInt("_id"), combo.optInt("priceVND"));
+            }
+
+            Map<Integer, short[]> gameIds = new HashMap<>();
+            for (ProvisioningOrder order : batch) {
+                List<Short> games = new ArrayList<>();
+                int[] orderPrices = new int[order.getComboIds().size()];
+                for (int i = 0; i < orderPrices.length; i++) {
+                    int comboId = order.getComboIds().get(i);
+                    Integer price = prices.get(comboId);
+                    if (price == null || price == 0) {
+                        throw new IOException("Dòng " + order.getRow() + ": không tìm thấy combo " + comboId);
+                    }
+                    orderPrices[i] = price;
+                    short[] ids = gameIds.get(comboId);
+                    if (ids == null) {
+                        ids = CatalogCache.getInstance().getComboGameIds(comboId).get();
+                        gameIds.put(comboId, ids);
+                    }
+                    for (short id : ids) {
+                        games.add(id);
+                    }
+                }
+
+                short[] merged = new short[games.size()];
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i] = games.get(i);
+                }
+                if (order.isCombo()) {
+                    order.setCombos(merged, orderPrices);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Không thể tải danh sách combo: " + ApiClient.errorMessage(e.getCause()));
+        }
+    }
+
+    private void work(Reader reader) {
+        try {
+            while (!orders.isEmpty()) {
+                ApduChannel channel = reader.awaitCard(AppConfig.PROVISION_CARD_WAIT_MS);
+                if (channel == null) {
+                    continue;
+                }
+
+                CardService cardService = new CardService();
+                cardService.setDebugMode(false);
+                try {
+                    long start = System.nanoTime();
+                    boolean blank;
+                    try {
+                        cardService.connect(channel);
+                        blank = !cardService.isCardInitialized();
+                    } catch (CardException e) {
+                        System.err.println("✗ [" + reader.getName() + "] Không đọc được thẻ: " + e.getMessage());
+                        blank = false;
+                    }
+
+                    // Only a blank card takes an order, anything else is left as it is
+                    ProvisioningOrder order = blank ? orders.poll() : null;
+                    if (order != null) {
+                        results.add(provision(order, reader, cardService, System.nanoTime() - start));
+                    } else if (!blank) {
+                        skipped.incrementAndGet();
+                        System.err.println("✗ [" + reader.getName() + "] Thẻ đã được khởi tạo, bỏ qua. Hãy đặt thẻ mới.");
+                    }
+                } finally {
+                    cardService.disconnect();
+                }
+
+                // Next card only after the operator swapped it; the last card need not be taken off
+                while (!orders.isEmpty() && !reader.awaitRemoval(AppConfig.PROVISION_CARD_WAIT_MS)) {
+                    // Keep waiting
+                }
+            }
+        } catch (CardException e) {
+            System.err.println("✗ [" + reader.getName() + "] Đầu đọc lỗi, dừng: " + e.getMessage());
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private CardResult provision(ProvisioningOrder order, Reader reader, CardService cardService, long connectNanos) {
+        CardResult result = new CardResult(order, reader.getName());
+        result.stageNanos.put(STAGE_CONNECT, connectNanos);
+        UserRegistration user = order.getUser();
+        int userAge = Integer.parseInt(user.getAge());
+        String stage = STAGE_INSTALL;
+
+        try {
+            long t = System.nanoTime();
+            user.generateUserId();
+            byte[] publicKey = cardService.installCard(user);
+            result.userIdHex = CardService.bytesToHex(user.getUserId()).replace(" ", "");
+            CompletableFuture<Void> registration = batcher.submit(cardService, user.getUserId(), publicKey,
+                user.getName(), userAge, user.getGender() == 1);
+            t = lap(result, stage, t);
+
+            stage = STAGE_USER_DATA;
+            cardService.writeUserData(user);
+            t = lap(result, stage, t);
+
+            stage = STAGE_PAYMENT;
+            if (order.isCombo()) {
+                cardService.purchaseCombo(order.getComboGameIds(), user.getCoins());
+            } else if (user.getCoins() > 0) {
+                cardService.topupCoins(user.getCoins());
+            }
+            t = lap(result, stage, t);
+
+            if (user.getAvatar() != null) {
+                stage = STAGE_AVATAR;
+                cardService.writeAvatar(user.getAvatar(), (byte) 0x01);
+                t = lap(result, stage, t);
+            }
+
+            // Usually already answered: the batch went out while the card was being written
+            stage = STAGE_REGISTER;
+            try {
+                registration.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            t = lap(result, stage, t);
+
+            stage = STAGE_TRANSACTIONS;
+            String cardId = result.userIdHex.toLowerCase(java.util.Locale.ROOT);
+            if (order.isCombo()) {
+                for (int i = 0; i < order.getComboIds().size(); i++) {
+                    transactionService.queueComboTransaction(cardId, userAge,
+                        String.valueOf(order.getComboIds().get(i)), order.getComboPricesVND()[i]);
+                }
+            } else if (user.getCoins() > 0) {
+                // Top-up is in the card journal, queued for upload in the background
+                JournalSyncService.getInstance().drainAndUpload(cardService, cardId, userAge);
+            }
+            lap(result, stage, t);
+
+            System.out.printf("✓ [%s] %s: %s (%.0f ms)%n", reader.getName(), order, result.userIdHex, result.getTotalMillis());
+        } catch (Exception e) {
+            result.failedStage = stage;
+            result.error = e.getMessage()
+                + (STAGE_INSTALL.equals(stage) ? "" : " (thẻ đã được ghi một phần, cần reset)");
+            System.err.println("✗ [" + reader.getName() + "] " + order + " " + stage + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static long lap(CardResult result, String stage, long start) {
+        long now = System.nanoTime();
+        result.stageNanos.put(stage, now - start);
+        return now;
+    }
+
+    /**
+     * PC/SC reader, waits on the terminal itself
+     */
+    private static final class PcscReader implements Reader {
+        private final CardTerminal terminal;
+
+        PcscReader(CardTerminal terminal) {
+            this.terminal = terminal;
+        }
+
+        @Override
+        public String getName() {
+            return terminal.getName();
+        }
+
+        @Override
+        public ApduChannel awaitCard(long timeoutMs) throws CardException {
+            if (!terminal.waitForCardPresent(timeoutMs)) {
+                return null;
+            }
+            return PcscChannel.open(terminal, false);
+        }
+
+        @Override
+        public boolean awaitRemoval(long timeoutMs) throws CardException {
+            return terminal.waitForCardAbsent(timeoutMs);
+        }
+    }
+
+    /**
+     * Simulated reader, a new blank card is on it as soon as the previous one is done
+     */
+    private static final class SimulatedReader implements Reader {
+        private final String name;
+
+        SimulatedReader(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ApduChannel awaitCard(long timeoutMs) {
+            return new SimulatedCard(name, AppConfig.SIMULATOR_APDU_LATENCY_MICROS, AppConfig.SIMULATOR_BYTE_LATENCY_NANOS);
+        }
+
+        @Override
+        public boolean awaitRemoval(long timeoutMs) {
+            return true;
+        }
+    }
+}
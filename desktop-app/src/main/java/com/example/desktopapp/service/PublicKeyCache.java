@@ -0,0 +1,189 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of parsed card public keys, keyed by user ID (hex).
+ * Entries expire after a TTL; expired entries are still kept as a fallback
+ * while the backend is unreachable. Optionally persisted to a snapshot file
+ * so a restarted kiosk does not start cold.
+ */
+public final class PublicKeyCache {
+
+    private static final PublicKeyCache INSTANCE = new PublicKeyCache(
+        AppConfig.PUBLIC_KEY_CACHE_SIZE,
+        AppConfig.PUBLIC_KEY_CACHE_TTL_MS,
+        AppConfig.PUBLIC_KEY_CACHE_FILE != null ? Paths.get(AppConfig.PUBLIC_KEY_CACHE_FILE) : null
+    );
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path snapshotFile;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private PublicKeyCache(int maxEntries, long ttlMillis, Path snapshotFile) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.snapshotFile = snapshotFile;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PublicKeyCache.this.maxEntries;
+            }
+        };
+        loadSnapshot();
+    }
+
+    public static PublicKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a key that is still within its TTL
+     * @return parsed key, or null if missing or expired
+     */
+    public synchronized PublicKey get(String userIdHex) {
+        Entry entry = entries.get(normalize(userIdHex));
+        if (entry == null || isExpired(entry)) {
+            return null;
+        }
+        return entry.publicKey;
+    }
+
+    /**
+     * Get a key regardless of its age (used when the backend cannot be reached)
+     * @return parsed key, or null if never cached
+     */
+    public synchronized PublicKey getStale(String userIdHex) {
+        Entry entry = entries.get(normalize(userIdHex));
+        return entry != null ? entry.publicKey : null;
+    }
+
+    /**
+     * Parse and store an X.509 encoded key
+     * @return the parsed key
+     */
+    public PublicKey put(String userIdHex, byte[] x509Key) throws GeneralSecurityException {
+        PublicKey publicKey = parse(x509Key);
+        synchronized (this) {
+            entries.put(normalize(userIdHex), new Entry(publicKey, System.currentTimeMillis()));
+            saveSnapshot();
+        }
+        return publicKey;
+    }
+
+    /**
+     * Remove the key of a card (card reset or re-registered)
+     */
+    public synchronized void invalidate(String userIdHex) {
+        if (entries.remove(normalize(userIdHex)) != null) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * Remove all keys
+     */
+    public synchronized void clear() {
+        entries.clear();
+        saveSnapshot();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Parse X.509 (SubjectPublicKeyInfo) encoded RSA key
+     */
+    static PublicKey parse(byte[] x509Key) throws GeneralSecurityException {
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        return keyFactory.generatePublic(new X509EncodedKeySpec(x509Key));
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt > ttlMillis;
+    }
+
+    private static String normalize(String userIdHex) {
+        return userIdHex.replace(" ", "").toUpperCase();
+    }
+
+    /**
+     * Snapshot format: one "userIdHex;fetchedAt;base64Key" line per entry, oldest first
+     */
+    private void loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(";");
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    PublicKey publicKey = parse(Base64.getDecoder().decode(parts[2]));
+                    entries.put(parts[0], new Entry(publicKey, Long.parseLong(parts[1])));
+                } catch (GeneralSecurityException | IllegalArgumentException e) {
+                    // Skip corrupted line
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Không thể đọc public key cache: " + e.getMessage());
+        }
+    }
+
+    private void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            lines.add(e.getKey() + ";" + e.getValue().fetchedAt + ";"
+                + Base64.getEncoder().encodeToString(e.getValue().publicKey.getEncoded()));
+        }
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Không thể ghi public key cache: " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final PublicKey publicKey;
+        final long fetchedAt;
+
+        Entry(PublicKey publicKey, long fetchedAt) {
+            this.publicKey = publicKey;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
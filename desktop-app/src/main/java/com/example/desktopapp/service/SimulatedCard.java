@@ -0,0 +1,914 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory Entertainment applet.
+ * Answers the same commands with the same data formats and status words as the card
+ * (PIN try counters, fixed user record served as TLV, per-game play counters, balance,
+ * transaction journal, chunked image and RSA challenge signing), so CardService can run
+ * without a reader, e.g. in benchmarks and on development machines.
+ * Data is kept in plain form: the card's encryption is not modelled, only its results.
+ * Reader behaviour is configurable: latency per APDU and per byte, extra processing time
+ * per INS (PBKDF2 at VERIFY PIN, RSA at SIGN) and extended APDU support.
+ */
+public final class SimulatedCard implements ApduChannel {
+
+    private static final SimulatedCard DEFAULT = new SimulatedCard(
+        AppConfig.SIMULATOR_APDU_LATENCY_MICROS, AppConfig.SIMULATOR_BYTE_LATENCY_NANOS);
+
+    // Status words not in APDUConstants (ISO 7816)
+    private static final int SW_WRONG_LENGTH = 0x6700;
+    private static final int SW_SECURITY_STATUS_NOT_SATISFIED = 0x6982;
+    private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+    private static final int SW_FUNC_NOT_SUPPORTED = 0x6A81;
+    private static final int SW_FILE_NOT_FOUND = 0x6A82;
+    private static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+    private static final int SW_UNKNOWN = 0x6F00;
+
+    // Applet limits
+    private static final int PIN_TRY_LIMIT = 3;
+    private static final int ADMIN_PIN_TRY_LIMIT = 3;
+    private static final byte[] DEFAULT_ADMIN_PIN = "1234567890123456".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_GAMES = 50;
+    private static final int MAX_GAME_SLOTS = 44;
+    private static final int MAX_PLAYS_PER_GAME = 255;
+    private static final int RSA_KEY_SIZE = 1024;
+
+    // Journal ring, same layout as the card: [SEQ(2)][TYPE(1)][GAME_ID(1)][AMOUNT(2)][BALANCE_AFTER(2)]
+    private static final int JOURNAL_ENTRIES = 31;
+    private static final int JOURNAL_ENTRY_SIZE = 8;
+    private static final byte JOURNAL_TOPUP = 0x01;
+    private static final byte JOURNAL_PLAY_COINS = 0x02;
+    private static final byte JOURNAL_PLAY_PREPAID = 0x03;
+
+    // EEPROM bytes the card writes per store, reported by INS_GET_WRITE_STATS
+    private static final int RECORD_WRITE_BYTES = 16 + 160; // IV + user record
+    private static final int BALANCE_WRITE_BYTES = 16;
+    private static final int JOURNAL_WRITE_BYTES = JOURNAL_ENTRY_SIZE + 4;
+
+    // Free memory reported by INS_GET_MEMORY_INFO
+    private static final int[] MEMORY_INFO = {32767, 1024, 512};
+
+    /**
+     * User record fields; copied before a multi-field update so a failed command changes nothing
+     */
+    private static final class Record implements Cloneable {
+        byte[] name = new byte[0];
+        byte gender;
+        byte age;
+        short coins;
+        byte[] games = new byte[MAX_GAME_SLOTS * 2]; // [GAME_ID][REMAINING_PLAYS] per slot
+        int gameCount;
+
+        @Override
+        protected Record clone() {
+            try {
+                Record copy = (Record) super.clone();
+                copy.games = games.clone();
+                return copy;
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Status word raised while processing a command (ISOException on the card)
+     */
+    private static final class StatusException extends RuntimeException {
+        final int sw;
+
+        StatusException(int sw) {
+            super(null, null, false, false);
+            this.sw = sw;
+        }
+    }
+
+    private final String name;
+
+    // Reader model
+    private volatile long apduLatencyNanos;
+    private volatile long byteLatencyNanos;
+    private final long[] insLatencyNanos = new long[256];
+    private volatile boolean extendedLength = true;
+    private volatile boolean present = true;
+
+    // Persistent state
+    private boolean initialized;
+    private byte[] userId = new byte[16];
+    private byte[] pin;
+    private byte[] adminPin;
+    private int pinTries = PIN_TRY_LIMIT;
+    private int adminPinTries = ADMIN_PIN_TRY_LIMIT;
+    private boolean locked;
+    private boolean adminLocked;
+    private Record record = new Record();
+    private KeyPair rsaKeyPair;
+    private byte[] journal = new byte[JOURNAL_ENTRIES * JOURNAL_ENTRY_SIZE];
+    private short journalSeq; // low 16 bits
+    private short journalSeqHigh;
+    private short journalAckedSeq;
+    private int journalHead;
+    private byte[] image = new byte[0];
+    private int imageSize; // Announced size, readable once the first chunk arrived
+    private int imageWriteOffset;
+
+    // Session state (cleared on select)
+    private boolean sessionAuth;
+    private boolean adminSessionAuth;
+    private final int[] writeStats = new int[2];
+
+    /**
+     * Card without reader latency
+     */
+    public SimulatedCard() {
+        this(0, 0);
+    }
+
+    /**
+     * @param apduLatencyMicros fixed cost of every APDU round trip
+     * @param byteLatencyNanos transfer cost of every command and response byte
+     */
+    public SimulatedCard(long apduLatencyMicros, long byteLatencyNanos) {
+        this("Entertainment Simulator", apduLatencyMicros, byteLatencyNanos);
+    }
+
+    public SimulatedCard(String name, long apduLatencyMicros, long byteLatencyNanos) {
+        this.name = name;
+        setLatency(apduLatencyMicros, byteLatencyNanos);
+    }
+
+    /**
+     * Card shared by the whole process, used by CardService when AppConfig.CARD_SIMULATOR is set
+     */
+    public static SimulatedCard getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Set the reader latency model
+     * @param apduLatencyMicros fixed cost of every APDU round trip
+     * @param byteLatencyNanos transfer cost of every command and response byte
+     */
+    public void setLatency(long apduLatencyMicros, long byteLatencyNanos) {
+        this.apduLatencyNanos = apduLatencyMicros * 1000;
+        this.byteLatencyNanos = byteLatencyNanos;
+    }
+
+    /**
+     * Extra on-card processing time of one instruction (e.g. PBKDF2 at VERIFY PIN)
+     */
+    public void setInstructionLatency(byte ins, long micros) {
+        insLatencyNanos[ins & 0xFF] = micros * 1000;
+    }
+
+    /**
+     * Model a reader with or without extended length support; without it, extended APDUs
+     * fail in transmit and CardService falls back to short image chunks
+     */
+    public void setExtendedLength(boolean extendedLength) {
+        this.extendedLength = extendedLength;
+    }
+
+    /**
+     * Put the card back into the reader (power-up clears the session)
+     */
+    public synchronized void insert() {
+        present = true;
+        sessionAuth = false;
+        adminSessionAuth = false;
+        notifyAll();
+    }
+
+    /**
+     * Pull the card out of the reader; further commands fail until {@link #insert()}
+     */
+    public synchronized void remove() {
+        present = false;
+        notifyAll();
+    }
+
+    /**
+     * Block until the card is inserted or removed, like CardTerminals.waitForChange
+     * @param present presence the caller last saw
+     * @return presence when the wait ended (unchanged on timeout)
+     */
+    public synchronized boolean waitForChange(boolean present, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (this.present == present && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return this.present;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isCardPresent() {
+        return present;
+    }
+
+    /**
+     * Nothing to release; the next SELECT starts a new session
+     */
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+        if (!present) {
+            throw new CardException("Không có thẻ trong đầu đọc");
+        }
+        if (!extendedLength && (command.getNc() > 255 || command.getNe() > 256)) {
+            throw new CardException("Đầu đọc không hỗ trợ extended APDU");
+        }
+        byte[] commandBytes = command.getBytes();
+
+        long started = System.nanoTime();
+        byte[] response;
+        synchronized (this) {
+            response = process(command);
+        }
+
+        long latency = apduLatencyNanos
+            + (commandBytes.length + response.length) * byteLatencyNanos
+            + insLatencyNanos[command.getINS() & 0xFF];
+        sleepUntil(started + latency);
+        return new ResponseAPDU(response);
+    }
+
+    /**
+     * RSA public key of the card (X.509), e.g. to seed PublicKeyCache without a backend
+     * @return key bytes, or null before INS_INSTALL
+     */
+    public synchronized byte[] getPublicKeyEncoded() {
+        return rsaKeyPair != null ? rsaKeyPair.getPublic().getEncoded() : null;
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Run one command: response data + SW
+     */
+    private byte[] process(CommandAPDU command) {
+        byte[] data = command.getData();
+        int ins = command.getINS();
+
+        if (command.getCLA() == 0x00 && ins == 0xA4) {
+            return select(command, data);
+        }
+
+        if ((byte) ins != APDUConstants.INS_GET_WRITE_STATS) {
+            writeStats[0] = 0;
+        }
+
+        byte[] out;
+        try {
+            out = dispatch((byte) ins, command.getP1(), data, command.getNe());
+        } catch (StatusException e) {
+            return status(new byte[0], e.sw);
+        } catch (RuntimeException e) {
+            return status(new byte[0], SW_UNKNOWN);
+        }
+
+        int ne = command.getNe();
+        if (ne > 0 && out.length > ne) {
+            out = Arrays.copyOf(out, ne);
+        }
+        return status(out, APDUConstants.SW_SUCCESS);
+    }
+
+    private byte[] select(CommandAPDU command, byte[] aid) {
+        if (command.getP1() != 0x04 || !Arrays.equals(aid, APDUConstants.APPLET_AID)) {
+            return status(new byte[0], SW_FILE_NOT_FOUND);
+        }
+        sessionAuth = false;
+        adminSessionAuth = false;
+        writeStats[0] = 0;
+        writeStats[1] = 0;
+        return status(new byte[0], APDUConstants.SW_SUCCESS);
+    }
+
+    private byte[] dispatch(byte ins, int p1, byte[] data, int ne) {
+        switch (ins) {
+            case APDUConstants.INS_INSTALL:
+                return install(data);
+            case APDUConstants.INS_VERIFY_PIN:
+                return verifyPin(data);
+            case APDUConstants.INS_CHANGE_PIN:
+                return changePin(data);
+            case APDUConstants.INS_VERIFY_ADMIN_PIN:
+                return verifyAdminPin(data);
+            case APDUConstants.INS_UNLOCK_BY_ADMIN:
+                return unlockByAdmin(data);
+            case APDUConstants.INS_CHECK_ACCESS_FOR_GAME:
+                return tryPlayGame(data);
+            case APDUConstants.INS_TOPUP_COINS:
+                return topupCoins(data);
+            case APDUConstants.INS_PURCHASE_COMBO:
+                return purchaseCombo(data);
+            case APDUConstants.INS_SIGN_CHALLENGE:
+                return signChallenge(data);
+            case APDUConstants.INS_READ_USER_DATA_BASIC:
+                requireSession();
+                requireLength(data, 1);
+                return readField(record, data[0]);
+            case APDUConstants.INS_WRITE_USER_DATA_BASIC:
+                return writeUserData(data);
+            case APDUConstants.INS_WRITE_IMAGE_START:
+                return writeImageStart(data);
+            case APDUConstants.INS_WRITE_IMAGE_CONTINUE:
+                return writeImageContinue(data);
+            case APDUConstants.INS_READ_IMAGE:
+                return readImage(data, ne);
+            case APDUConstants.INS_READ_USER_ID:
+                if (!initialized) {
+                    throw new StatusException(SW_CONDITIONS_NOT_SATISFIED);
+                }
+                return userId.clone();
+            case APDUConstants.INS_READ_USER_PROFILE:
+                return readProfile();
+            case APDUConstants.INS_READ_JOURNAL:
+                return readJournal(p1, data);
+            case APDUConstants.INS_GET_MEMORY_INFO:
+                return shorts(MEMORY_INFO);
+            case APDUConstants.INS_GET_WRITE_STATS:
+                return shorts(writeStats);
+            case APDUConstants.INS_RESET_CARD:
+                return resetCard();
+            default:
+                throw new StatusException(SW_INS_NOT_SUPPORTED);
+        }
+    }
+
+    private byte[] install(byte[] data) {
+        if (initialized) {
+            throw new StatusException(APDUConstants.SW_COMMAND_NOT_ALLOWED);
+        }
+        if (data.length < 17) { // At least 1 byte PIN + 16 bytes userID
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+        int pinLength = data[0];
+        if (pinLength > APDUConstants.MAX_PIN_LENGTH || pinLength < APDUConstants.MIN_PIN_LENGTH) {
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+        requireLength(data, 1 + pinLength + 16);
+
+        pin = Arrays.copyOfRange(data, 1, 1 + pinLength);
+        adminPin = DEFAULT_ADMIN_PIN.clone();
+        userId = Arrays.copyOfRange(data, 1 + pinLength, 1 + pinLength + 16);
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(RSA_KEY_SIZE);
+            rsaKeyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            rsaKeyPair = null;
+        }
+
+        record = new Record();
+        countWrite(BALANCE_WRITE_BYTES + RECORD_WRITE_BYTES);
+
+        initialized = true;
+        pinTries = PIN_TRY_LIMIT;
+        adminPinTries = ADMIN_PIN_TRY_LIMIT;
+        locked = false;
+        adminLocked = false;
+        sessionAuth = true; // Auto-authenticate after successful installation
+        adminSessionAuth = false;
+
+        if (rsaKeyPair == null) {
+            return new byte[0];
+        }
+        // Raw public key as the card returns it: [MODULUS(128)] [EXPONENT]
+        RSAPublicKey publicKey = (RSAPublicKey) rsaKeyPair.getPublic();
+        byte[] modulus = unsigned(publicKey.getModulus(), RSA_KEY_SIZE / 8);
+        byte[] exponent = publicKey.getPublicExponent().toByteArray();
+        byte[] out = Arrays.copyOf(modulus, modulus.length + exponent.length);
+        System.arraycopy(exponent, 0, out, modulus.length, exponent.length);
+        return out;
+    }
+
+    private byte[] verifyPin(byte[] data) {
+        if (!initialized) {
+            throw new StatusException(APDUConstants.SW_COMMAND_NOT_ALLOWED);
+        }
+        if (locked) {
+            throw new StatusException(APDUConstants.SW_AUTHENTICATION_BLOCKED);
+        }
+        requirePinLength(data.length);
+
+        if (!MessageDigest.isEqual(data, pin)) {
+            pinTries--;
+            if (pinTries == 0) {
+                locked = true;
+                sessionAuth = false;
+                throw new StatusException(APDUConstants.SW_AUTHENTICATION_BLOCKED);
+            }
+            throw new StatusException(0x63C0 | pinTries);
+        }
+        sessionAuth = true;
+        pinTries = PIN_TRY_LIMIT;
+        return new byte[0];
+    }
+
+    private byte[] changePin(byte[] data) {
+        if (!initialized) {
+            throw new StatusException(APDUConstants.SW_COMMAND_NOT_ALLOWED);
+        }
+        requireSession();
+        if (locked) {
+            throw new StatusException(APDUConstants.SW_AUTHENTICATION_BLOCKED);
+        }
+
+        // Parse: oldPinLen | oldPin | newPinLen | newPin
+        requireLength(data, 1);
+        int oldPinLen = data[0];
+        requirePinLength(oldPinLen);
+        requireLength(data, 2 + oldPinLen);
+        int newPinLen = data[1 + oldPinLen];
+        requirePinLength(newPinLen);
+        requireLength(data, 2 + oldPinLen + newPinLen);
+
+        byte[] oldPin = Arrays.copyOfRange(data, 1, 1 + oldPinLen);
+        if (!MessageDigest.isEqual(oldPin, pin)) {
+            throw new StatusException(SW_SECURITY_STATUS_NOT_SATISFIED);
+        }
+        pin = Arrays.copyOfRange(data, 2 + oldPinLen, 2 + oldPinLen + newPinLen);
+        return new byte[0];
+    }
+
+    private byte[] verifyAdminPin(byte[] data) {
+        if (!initialized) {
+            throw new StatusException(APDUConstants.SW_COMMAND_NOT_ALLOWED);
+        }
+        if (adminLocked) {
+            throw new StatusException(APDUConstants.SW_AUTHENTICATION_BLOCKED);
+        }
+        requirePinLength(data.length);
+
+        if (!MessageDigest.isEqual(data, adminPin)) {
+            adminPinTries--;
+            if (adminPinTries == 0) {
+                adminLocked = true;
+                throw new StatusException(APDUConstants.SW_AUTHENTICATION_BLOCKED);
+            }
+            throw new StatusException(0x63C0 | adminPinTries);
+        }
+        adminSessionAuth = true;
+        adminPinTries = ADMIN_PIN_TRY_LIMIT;
+        return new byte[0];
+    }
+
+    private byte[] unlockByAdmin(byte[] data) {
+        if (!initialized) {
+            throw new StatusException(APDUConstants.SW_COMMAND_NOT_ALLOWED);
+        }
+        if (!adminSessionAuth) {
+            throw new StatusException(APDUConstants.SW_PIN_VERIFICATION_REQUIRED);
+        }
+
+        pinTries = PIN_TRY_LIMIT;
+        locked = false;
+
+        // Optionally change PIN if new PIN provided
+        if (data.length >= APDUConstants.MIN_PIN_LENGTH && data.length <= APDUConstants.MAX_PIN_LENGTH) {
+            pin = data.clone();
+        }
+        return new byte[0];
+    }
+
+    private byte[] tryPlayGame(byte[] data) {
+        requireSession();
+        requireLength(data, 3);
+
+        byte gameId = data[0];
+        short price = getShort(data, 1);
+
+        // Use one prepaid play if the game was bought
+        int slot = findGameSlot(record, gameId);
+        if (slot >= 0) {
+            int remaining = (record.games[slot + 1] & 0xFF) - 1;
+            if (remaining == 0) {
+                removeGameSlot(record, slot);
+            } else {
+                record.games[slot + 1] = (byte) remaining;
+            }
+            countWrite(RECORD_WRITE_BYTES);
+            appendJournal(JOURNAL_PLAY_PREPAID, gameId, price, record.coins);
+            return new byte[] { 0x01 };
+        }
+
+        // Game not purchased - pay per play
+        if (record.coins < price) {
+            throw new StatusException(APDUConstants.SW_INSUFFICIENT_FUNDS);
+        }
+        record.coins = (short) (record.coins - price);
+        countWrite(BALANCE_WRITE_BYTES);
+        appendJournal(JOURNAL_PLAY_COINS, gameId, price, record.coins);
+        return new byte[] { 0x01 };
+    }
+
+    private byte[] topupCoins(byte[] data) {
+        requireSession();
+        requireLength(data, 2);
+
+        short amount = getShort(data, 0);
+        record.coins = (short) (record.coins + amount);
+        countWrite(BALANCE_WRITE_BYTES);
+        appendJournal(JOURNAL_TOPUP, (byte) 0, amount, record.coins);
+        return new byte[0];
+    }
+
+    private byte[] purchaseCombo(byte[] data) {
+        requireSession();
+        requireLength(data, 1);
+
+        // [NUM_GAMES(1)] [GAME_ID]... [TOTAL_PRICE]; the card does not charge the price
+        int numGames = data[0];
+        if (numGames <= 0 || numGames > MAX_GAMES) {
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+        requireLength(data, 1 + numGames);
+
+        // One play per listed game, nothing is stored if a counter does not fit
+        Record updated = record.clone();
+        for (int i = 0; i < numGames; i++) {
+            if (!addGamePlays(updated, data[1 + i], 1)) {
+                throw new StatusException(APDUConstants.SW_NOT_ENOUGH_MEMORY);
+            }
+        }
+        record = updated;
+        countWrite(RECORD_WRITE_BYTES);
+        return new byte[0];
+    }
+
+    private byte[] signChallenge(byte[] data) {
+        if (rsaKeyPair == null) {
+            throw new StatusException(SW_FUNC_NOT_SUPPORTED);
+        }
+        try {
+            Signature signer = Signature.getInstance("SHA1withRSA");
+            signer.initSign(rsaKeyPair.getPrivate());
+            signer.update(data);
+            return signer.sign();
+        } catch (GeneralSecurityException e) {
+            throw new StatusException(SW_UNKNOWN);
+        }
+    }
+
+    /**
+     * Whole profile as TLV, same field order as the card
+     */
+    private byte[] readProfile() {
+        requireSession();
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream(160);
+        for (byte tag : new byte[] { APDUConstants.TAG_NAME, APDUConstants.TAG_GENDER, APDUConstants.TAG_COINS,
+                APDUConstants.TAG_BOUGHT_GAMES, APDUConstants.TAG_AGE }) {
+            byte[] value = readField(record, tag);
+            out.write(tag);
+            out.write(value.length);
+            out.write(value, 0, value.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readField(Record record, byte tag) {
+        switch (tag) {
+            case APDUConstants.TAG_NAME:
+                return record.name.clone();
+            case APDUConstants.TAG_GENDER:
+                return new byte[] { record.gender };
+            case APDUConstants.TAG_COINS:
+                return APDUConstants.shortToBytes(record.coins);
+            case APDUConstants.TAG_BOUGHT_GAMES:
+                return Arrays.copyOf(record.games, record.gameCount * 2);
+            case APDUConstants.TAG_AGE:
+                return new byte[] { record.age };
+            default:
+                throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+    }
+
+    private byte[] writeUserData(byte[] data) {
+        requireSession();
+
+        // All fields are stored together or not at all
+        Record updated = record.clone();
+        boolean coinsWritten = false;
+        int offset = 0;
+        while (offset < data.length) {
+            requireLength(data, offset + 2);
+            byte tag = data[offset++];
+            int len = data[offset++] & 0xFF;
+            requireLength(data, offset + len);
+            switch (tag) {
+                case APDUConstants.TAG_NAME:
+                    if (len > APDUConstants.MAX_NAME_LENGTH) {
+                        throw new StatusException(APDUConstants.SW_WRONG_DATA);
+                    }
+                    updated.name = Arrays.copyOfRange(data, offset, offset + len);
+                    break;
+                case APDUConstants.TAG_GENDER:
+                case APDUConstants.TAG_AGE:
+                    if (len != 1) {
+                        throw new StatusException(APDUConstants.SW_WRONG_DATA);
+                    }
+                    if (tag == APDUConstants.TAG_GENDER) {
+                        updated.gender = data[offset];
+                    } else {
+                        updated.age = data[offset];
+                    }
+                    break;
+                case APDUConstants.TAG_COINS:
+                    if (len != 2) {
+                        throw new StatusException(APDUConstants.SW_WRONG_DATA);
+                    }
+                    updated.coins = getShort(data, offset);
+                    coinsWritten = true;
+                    break;
+                case APDUConstants.TAG_BOUGHT_GAMES:
+                    if ((len & 1) != 0 || len > MAX_GAME_SLOTS * 2) {
+                        throw new StatusException(APDUConstants.SW_WRONG_DATA);
+                    }
+                    Arrays.fill(updated.games, (byte) 0);
+                    System.arraycopy(data, offset, updated.games, 0, len);
+                    updated.gameCount = len / 2;
+                    break;
+                default:
+                    break;
+            }
+            offset += len;
+        }
+
+        record = updated;
+        countWrite(RECORD_WRITE_BYTES + (coinsWritten ? BALANCE_WRITE_BYTES : 0));
+        return new byte[0];
+    }
+
+    private byte[] writeImageStart(byte[] data) {
+        requireSession();
+        if (data.length < 3) {
+            throw new StatusException(SW_WRONG_LENGTH);
+        }
+
+        int totalSize = getShort(data, 0);
+        if (totalSize < 0 || totalSize > APDUConstants.MAX_IMAGE_SIZE) {
+            throw new StatusException(APDUConstants.SW_NOT_ENOUGH_MEMORY);
+        }
+        int chunkLen = data.length - 3;
+        if (chunkLen > totalSize) {
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+
+        image = new byte[totalSize];
+        imageSize = totalSize;
+        imageWriteOffset = 0;
+        appendImage(data, 3, chunkLen);
+        return new byte[0];
+    }
+
+    private byte[] writeImageContinue(byte[] data) {
+        requireSession();
+        if (data.length < 2) {
+            throw new StatusException(SW_WRONG_LENGTH);
+        }
+
+        // Chunks are appended in order, the offset field is informational (as on the card)
+        int chunkLen = data.length - 2;
+        if (imageWriteOffset + chunkLen > image.length) {
+            throw new StatusException(APDUConstants.SW_NOT_ENOUGH_MEMORY);
+        }
+        appendImage(data, 2, chunkLen);
+        return new byte[0];
+    }
+
+    private void appendImage(byte[] data, int offset, int length) {
+        System.arraycopy(data, offset, image, imageWriteOffset, length);
+        imageWriteOffset += length;
+    }
+
+    private byte[] readImage(byte[] data, int ne) {
+        requireSession();
+        requireLength(data, 4);
+
+        int offset = getShort(data, 0);
+        int length = getShort(data, 2);
+        if (offset < 0 || length < 0 || offset > imageSize) {
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+        length = Math.min(length, imageSize - offset);
+        if (ne > 0) {
+            length = Math.min(length, ne);
+        }
+        return Arrays.copyOfRange(image, offset, offset + length);
+    }
+
+    /**
+     * [LAST_SEQ(4)] [ACKED_SEQ(2)] [COUNT(1)] [ENTRY(8)]..., P1 = 0x01 acknowledges [ACK_SEQ(2)] first
+     */
+    private byte[] readJournal(int p1, byte[] data) {
+        if (!sessionAuth && !adminSessionAuth) {
+            throw new StatusException(APDUConstants.SW_PIN_VERIFICATION_REQUIRED);
+        }
+
+        if (p1 == 0x01) {
+            requireLength(data, 2);
+            short ackSeq = getShort(data, 0);
+            short ackCount = (short) (ackSeq - journalAckedSeq);
+            if (ackCount < 0 || ackCount > (short) (journalSeq - journalAckedSeq)) {
+                throw new StatusException(APDUConstants.SW_WRONG_DATA);
+            }
+            journalAckedSeq = ackSeq;
+        }
+
+        int count = (short) (journalSeq - journalAckedSeq);
+        if (count < 0 || count > JOURNAL_ENTRIES) {
+            count = JOURNAL_ENTRIES;
+        }
+
+        byte[] out = new byte[7 + count * JOURNAL_ENTRY_SIZE];
+        putShort(out, 0, journalSeqHigh);
+        putShort(out, 2, journalSeq);
+        putShort(out, 4, journalAckedSeq);
+        out[6] = (byte) count;
+        int slot = Math.floorMod(journalHead - count, JOURNAL_ENTRIES);
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(journal, slot * JOURNAL_ENTRY_SIZE, out, 7 + i * JOURNAL_ENTRY_SIZE, JOURNAL_ENTRY_SIZE);
+            slot = (slot + 1) % JOURNAL_ENTRIES;
+        }
+        return out;
+    }
+
+    private byte[] resetCard() {
+        if (!adminSessionAuth) {
+            throw new StatusException(APDUConstants.SW_PIN_VERIFICATION_REQUIRED);
+        }
+
+        initialized = false;
+        userId = new byte[16];
+        pin = null;
+        adminPin = null;
+        rsaKeyPair = null;
+        record = new Record();
+        journal = new byte[JOURNAL_ENTRIES * JOURNAL_ENTRY_SIZE];
+        journalSeq = 0;
+        journalSeqHigh = 0;
+        journalAckedSeq = 0;
+        journalHead = 0;
+        image = new byte[0];
+        imageSize = 0;
+        imageWriteOffset = 0;
+        sessionAuth = false;
+        adminSessionAuth = false;
+        pinTries = PIN_TRY_LIMIT;
+        adminPinTries = ADMIN_PIN_TRY_LIMIT;
+        locked = false;
+        adminLocked = false;
+        return new byte[0];
+    }
+
+    private void appendJournal(byte type, byte gameId, short amount, short balanceAfter) {
+        short seq = (short) (journalSeq + 1);
+        int offset = journalHead * JOURNAL_ENTRY_SIZE;
+        putShort(journal, offset, seq);
+        journal[offset + 2] = type;
+        journal[offset + 3] = gameId;
+        putShort(journal, offset + 4, amount);
+        putShort(journal, offset + 6, balanceAfter);
+        if (seq == 0) {
+            journalSeqHigh++;
+        }
+        journalSeq = seq;
+        journalHead = (journalHead + 1) % JOURNAL_ENTRIES;
+        countWrite(JOURNAL_WRITE_BYTES);
+    }
+
+    private static int findGameSlot(Record record, byte gameId) {
+        for (int slot = 0; slot < record.gameCount * 2; slot += 2) {
+            if (record.games[slot] == gameId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add plays to a game counter, taking a new slot if needed
+     * @return false if the slot table is full or the counter would overflow
+     */
+    private static boolean addGamePlays(Record record, byte gameId, int plays) {
+        int slot = findGameSlot(record, gameId);
+        if (slot < 0) {
+            if (record.gameCount >= MAX_GAME_SLOTS) {
+                return false;
+            }
+            slot = record.gameCount * 2;
+            record.games[slot] = gameId;
+            record.games[slot + 1] = 0;
+            record.gameCount++;
+        }
+        int remaining = (record.games[slot + 1] & 0xFF) + plays;
+        if (remaining > MAX_PLAYS_PER_GAME) {
+            return false;
+        }
+        record.games[slot + 1] = (byte) remaining;
+        return true;
+    }
+
+    /**
+     * Free a counter slot by moving the last slot into it (keeps the card's slot order)
+     */
+    private static void removeGameSlot(Record record, int slot) {
+        int last = (record.gameCount - 1) * 2;
+        if (slot != last) {
+            System.arraycopy(record.games, last, record.games, slot, 2);
+        }
+        record.games[last] = 0;
+        record.games[last + 1] = 0;
+        record.gameCount--;
+    }
+
+    private void requireSession() {
+        if (!sessionAuth) {
+            throw new StatusException(APDUConstants.SW_PIN_VERIFICATION_REQUIRED);
+        }
+    }
+
+    private static void requirePinLength(int length) {
+        if (length < APDUConstants.MIN_PIN_LENGTH || length > APDUConstants.MAX_PIN_LENGTH) {
+            throw new StatusException(APDUConstants.SW_WRONG_DATA);
+        }
+    }
+
+    private static void requireLength(byte[] data, int length) {
+        if (data.length < length) {
+            throw new StatusException(SW_WRONG_LENGTH);
+        }
+    }
+
+    private void countWrite(int bytes) {
+        writeStats[0] += bytes;
+        writeStats[1] += bytes;
+    }
+
+    private static short getShort(byte[] data, int offset) {
+        return APDUConstants.bytesToShort(data, offset);
+    }
+
+    private static void putShort(byte[] data, int offset, short value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    private static byte[] shorts(int[] values) {
+        byte[] out = new byte[values.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            putShort(out, i * 2, (short) Math.min(values[i], Short.MAX_VALUE));
+        }
+        return out;
+    }
+
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+        byte[] out = new byte[length];
+        int copy = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copy, out, length - copy, copy);
+        return out;
+    }
+
+    private static byte[] status(byte[] data, int sw) {
+        byte[] out = Arrays.copyOf(data, data.length + 2);
+        out[data.length] = (byte) (sw >> 8);
+        out[data.length + 1] = (byte) sw;
+        return out;
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable write-behind queue of backend transactions.
+ * Records are appended to a local log and fsynced before {@link #add} returns; a background
+ * thread uploads them in batches to /api/transactions/batch. Every record carries an
+ * idempotency key, so a batch re-sent after a crash or timeout is not stored twice.
+ *
+ * Log format, one line per event:
+ *   A\tkey\tjson   record added
+ *   K\tkey         record stored by the backend (or rejected, see the .rejected file)
+ * Pending records (A without K) are replayed on startup; the log is compacted once it grows
+ * past OUTBOX_COMPACT_BYTES with nothing pending.
+ */
+final class TransactionOutbox {
+
+    /**
+     * Uploads one batch, returns normally only if the backend processed it
+     */
+    interface BatchSender {
+        /**
+         * @return keys of the records the backend refused (invalid data) with the reason, the rest is stored
+         */
+        Map<String, String> send(JSONArray transactions) throws Exception;
+    }
+
+    /**
+     * Backend refused the batch (4xx), retrying the same data will not help
+     */
+    static final class RejectedException extends Exception {
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private static TransactionOutbox instance;
+
+    private final Path logFile;
+    private final Path rejectedFile;
+    private final BatchSender sender;
+    private final Map<String, JSONObject> pending = new LinkedHashMap<>();
+    private final ScheduledExecutorService uploader;
+    private FileOutputStream logStream;
+    private boolean uploadScheduled;
+    private long retryDelayMs = AppConfig.OUTBOX_RETRY_MIN_MS;
+
+    private TransactionOutbox(Path logFile, BatchSender sender) throws IOException {
+        this.logFile = logFile;
+        this.rejectedFile = logFile.resolveSibling(logFile.getFileName() + ".rejected");
+        this.sender = sender;
+        this.uploader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transaction-outbox");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Files.createDirectories(logFile.getParent());
+        replay();
+        compact();
+        if (!pending.isEmpty()) {
+            System.out.println("Outbox: " + pending.size() + " giao dịch chờ đồng bộ từ lần chạy trước");
+            scheduleUpload(0);
+        }
+    }
+
+    /**
+     * Get the shared outbox, opening the log and replaying pending records on first use
+     */
+    static synchronized TransactionOutbox getInstance(BatchSender sender) throws IOException {
+        if (instance == null) {
+            instance = new TransactionOutbox(Paths.get(AppConfig.OUTBOX_FILE), sender);
+        }
+        return instance;
+    }
+
+    /**
+     * Open an outbox on its own log file (tests); the app uses the shared {@link #getInstance}
+     */
+    static TransactionOutbox open(Path logFile, BatchSender sender) throws IOException {
+        return new TransactionOutbox(logFile, sender);
+    }
+
+    /**
+     * Durably queue a transaction; returns once the record is fsynced to the local log
+     * @param key idempotency key (a record with an already queued key is ignored)
+     */
+    synchronized void add(String key, JSONObject transaction) throws IOException {
+        if (pending.containsKey(key)) {
+            return;
+        }
+        transaction.put("idempotency_key", key);
+        append("A\t" + key + "\t" + transaction + "\n");
+        pending.put(key, transaction);
+        scheduleUpload(0);
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Append and fsync through a stream, not a FileChannel: add() runs on screen tasks that are
+     * interrupted on navigation, and an interrupt would close a channel for every later append.
+     */
+    private void append(String line) throws IOException {
+        if (logStream == null) {
+            logStream = new FileOutputStream(logFile.toFile(), true);
+        }
+        logStream.write(line.getBytes(StandardCharsets.UTF_8));
+        logStream.getFD().sync();
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        truncateTornTail();
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                try {
+                    if (parts.length == 3 && parts[0].equals("A")) {
+                        pending.put(parts[1], new JSONObject(parts[2]));
+                    } else if (parts.length == 2 && parts[0].equals("K")) {
+                        pending.remove(parts[1]);
+                    }
+                } catch (org.json.JSONException e) {
+                    System.err.println("✗ Outbox: bỏ qua dòng log hỏng: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Cut a torn last line (crash during append) back to the last '\n'. Its caller never got an
+     * ack; left in place, the next append would be written onto the fragment and lost on replay.
+     */
+    private void truncateTornTail() throws IOException {
+        try (FileChannel log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = log.size();
+            long end = size;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while (end > 0) {
+                last.clear();
+                log.read(last, end - 1);
+                if (last.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < size) {
+                log.truncate(end);
+                log.force(true);
+                System.err.println("✗ Outbox: cắt " + (size - end) + " byte dòng log dở dang");
+            }
+        }
+    }
+
+    /**
+     * Rewrite the log with only pending records once it has grown large
+     */
+    private void compact() throws IOException {
+        if (!Files.exists(logFile) || Files.size(logFile) < AppConfig.OUTBOX_COMPACT_BYTES) {
+            return;
+        }
+        if (logStream != null) {
+            logStream.close();
+            logStream = null;
+        }
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, JSONObject> e : pending.entrySet()) {
+                out.write(ByteBuffer.wrap(("A\t" + e.getKey() + "\t" + e.getValue() + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+            out.force(true);
+        }
+        Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void scheduleUpload(long delayMs) {
+        if (uploadScheduled) {
+            return;
+        }
+        uploadScheduled = true;
+        uploader.schedule(this::uploadPending, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void uploadPending() {
+        synchronized (this) {
+            uploadScheduled = false;
+        }
+        try {
+            List<String> keys;
+            JSONArray batch = new JSONArray();
+            while (!(keys = nextBatch(batch)).isEmpty()) {
+                try {
+                    Map<String, String> failed = sender.send(batch);
+                    List<String> stored = new ArrayList<>(keys);
+                    stored.removeAll(failed.keySet());
+                    if (!stored.isEmpty()) {
+                        acknowledge(stored);
+                    }
+                    for (String key : keys) {
+                        if (failed.containsKey(key)) {
+                            reject(key, failed.get(key));
+                        }
+                    }
+                } catch (RejectedException e) {
+                    if (keys.size() == 1) {
+                        reject(keys.get(0), e.getMessage());
+                    } else {
+                        uploadOneByOne(keys);
+                    }
+                }
+                batch = new JSONArray();
+            }
+            retryDelayMs = AppConfig.OUTBOX_RETRY_MIN_MS;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    compact();
+                }
+            }
+        } catch (Exception e) {
+            // Backend unreachable, records stay in the log
+            System.err.println("✗ Outbox upload failed, retry in " + retryDelayMs + " ms: " + e.getMessage());
+            long delay = retryDelayMs;
+            retryDelayMs = Math.min(retryDelayMs * 2, AppConfig.OUTBOX_RETRY_MAX_MS);
+            scheduleUpload(delay);
+        }
+    }
+
+    /**
+     * Find the bad record(s) of a rejected batch so the rest still gets stored
+     */
+    private void uploadOneByOne(List<String> keys) throws Exception {
+        for (String key : keys) {
+            JSONObject tx;
+            synchronized (this) {
+                tx = pending.get(key);
+            }
+            if (tx == null) {
+                continue;
+            }
+            try {
+                Map<String, String> failed = sender.send(new JSONArray().put(tx));
+                if (failed.containsKey(key)) {
+                    reject(key, failed.get(key));
+                } else {
+                    acknowledge(List.of(key));
+                }
+            } catch (RejectedException e) {
+                reject(key, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized List<String> nextBatch(JSONArray batch) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> e : pending.entrySet()) {
+            if (keys.size() >= AppConfig.OUTBOX_BATCH_SIZE) {
+                break;
+            }
+            keys.add(e.getKey());
+            batch.put(e.getValue());
+        }
+        return keys;
+    }
+
+    private synchronized void acknowledge(List<String> keys) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String key : keys) {
+            lines.append("K\t").append(key).append("\n");
+        }
+        append(lines.toString());
+        for (String key : keys) {
+            pending.remove(key);
+        }
+        System.out.println("✓ Outbox: " + keys.size() + " giao dịch đã đồng bộ, còn " + pending.size());
+    }
+
+    private synchronized void reject(String key, String reason) throws IOException {
+        System.err.println("✗ Outbox: backend từ chối giao dịch " + key + ": " + reason);
+        Files.writeString(rejectedFile, pending.get(key) + "\t" + reason + "\n", StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        acknowledge(List.of(key));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.TransactionPage;
+import com.example.desktopapp.model.TransactionRow;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a page of /api/transactions/card/:cardId?limit=N straight from the response stream.
+ * Only one transaction object exists at a time: each is turned into a TransactionRow and
+ * dropped, so neither the body text nor a JSON tree of the whole page is ever held.
+ *
+ * { "success": true, "data": [ {...}, ... ], "next_cursor": "..." | null,
+ *   "summary": { "count": N, "total_vnd": X } }   summary on the first page only
+ */
+final class TransactionPageReader {
+
+    private TransactionPageReader() {
+    }
+
+    static TransactionPage read(Reader reader) throws IOException {
+        JSONTokener in = new JSONTokener(reader);
+        List<TransactionRow> rows = new ArrayList<>();
+        String nextCursor = null;
+        long totalCount = -1;
+        double totalVND = 0;
+
+        try {
+            expect(in, '{');
+            char c = in.nextClean();
+            while (c != '}') {
+                if (c != '"') {
+                    throw in.syntaxError("Expected a key");
+                }
+                String key = in.nextString('"');
+                expect(in, ':');
+                switch (key) {
+                    case "data":
+                        expect(in, '[');
+                        c = in.nextClean();
+                        while (c != ']') {
+                            in.back();
+                            rows.add(TransactionRow.fromJson(new JSONObject(in)));
+                            c = in.nextClean();
+                            if (c == ',') {
+                                c = in.nextClean();
+                            }
+                        }
+                        break;
+                    case "next_cursor":
+                        Object cursor = in.nextValue();
+                        nextCursor = cursor == JSONObject.NULL ? null : cursor.toString();
+                        break;
+                    case "summary":
+                        JSONObject summary = new JSONObject(in);
+                        totalCount = summary.optLong("count", 0);
+                        totalVND = summary.optDouble("total_vnd", 0);
+                        break;
+                    default:
+                        in.nextValue();
+                        break;
+                }
+                c = in.nextClean();
+                if (c == ',') {
+                    c = in.nextClean();
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Dữ liệu giao dịch không hợp lệ: " + e.getMessage(), e);
+        }
+        return new TransactionPage(rows, nextCursor, totalCount, totalVND);
+    }
+
+    private static void expect(JSONTokener in, char expected) {
+        char c = in.nextClean();
+        if (c != expected) {
+            throw in.syntaxError("Expected '" + expected + "'");
+        }
+    }
+}
@@ -1,122 +1,174 @@
 package com.example.desktopapp.service;
 
+import com.example.desktopapp.model.JournalEntry;
+import com.example.desktopapp.model.TransactionPage;
 import com.example.desktopapp.util.AppConfig;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
- * Service for creating transactions in the backend database
+ * Service for creating transactions in the backend database.
+ * Transactions go through a durable local outbox: the queue* methods return as soon as the
+ * record is fsynced to disk and a background thread uploads batches to the backend.
  */
 public class TransactionService {
 
     /**
-     * Create a transaction record for coin top-up
+     * Queue a transaction record for coin top-up
      * @param cardId Card ID
      * @param userAge User's age at time of transaction
      * @param amount Payment amount in VND
-     * @return Transaction ID if successful, null otherwise
      */
-    public String createTopupTransaction(String cardId, int userAge, int amount) throws Exception {
-        String jsonBody = String.format(
-            "{\"card_id\":\"%s\",\"user_age\":%d,\"payment\":%d}",
-            cardId, userAge, amount
-        );
-        
-        return createTransaction(jsonBody);
+    public void queueTopupTransaction(String cardId, int userAge, int amount) throws IOException {
+        JSONObject tx = newTransaction(cardId, userAge, amount);
+        outbox().add(UUID.randomUUID().toString(), tx);
     }
 
     /**
-     * Create a transaction record for game purchase
+     * Queue a transaction record for game purchase
      * @param cardId Card ID
      * @param userAge User's age at time of transaction
      * @param gameId Game ID
      * @param amount Payment amount (game price in coins converted to VND)
-     * @return Transaction ID if successful, null otherwise
      */
-    public String createGameTransaction(String cardId, int userAge, int gameId, int amount) throws Exception {
-        String jsonBody = String.format(
-            "{\"card_id\":\"%s\",\"user_age\":%d,\"payment\":%d,\"game_id\":%d}",
-            cardId, userAge, amount, gameId
-        );
-        
-        return createTransaction(jsonBody);
+    public void queueGameTransaction(String cardId, int userAge, int gameId, int amount) throws IOException {
+        JSONObject tx = newTransaction(cardId, userAge, amount);
+        tx.put("game_id", gameId);
+        outbox().add(UUID.randomUUID().toString(), tx);
     }
 
     /**
-     * Create a transaction record for combo purchase
+     * Queue a transaction record for combo purchase
      * @param cardId Card ID
      * @param userAge User's age at time of transaction
      * @param comboId Combo ID
      * @param amount Payment amount in VND
-     * @return Transaction ID if successful, null otherwise
      */
-    public String createComboTransaction(String cardId, int userAge, String comboId, int amount) throws Exception {
-        String jsonBody = String.format(
-            "{\"card_id\":\"%s\",\"user_age\":%d,\"payment\":%d,\"combo_id\":\"%s\"}",
-            cardId, userAge, amount, comboId
-        );
-        
-        return createTransaction(jsonBody);
+    public void queueComboTransaction(String cardId, int userAge, String comboId, int amount) throws IOException {
+        JSONObject tx = newTransaction(cardId, userAge, amount);
+        tx.put("combo_id", comboId);
+        outbox().add(UUID.randomUUID().toString(), tx);
     }
 
     /**
-     * Internal method to send POST request to create transaction
+     * Queue card journal entries; the idempotency key is derived from the card sequence number,
+     * so entries drained twice from the card are only stored once. Prepaid plays are stored with
+     * payment 0: they count as plays of the game but the revenue was booked with the combo.
+     * @param cardId Card ID
+     * @param userAge User's age at time of transaction
+     * @param entries Journal entries read from the card
      */
-    private String createTransaction(String jsonBody) throws Exception {
-        URL url = new URL(AppConfig.API_TRANSACTIONS);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(AppConfig.CONNECTION_TIMEOUT);
-            conn.setReadTimeout(AppConfig.READ_TIMEOUT);
-
-            // Send request body
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(jsonBody.getBytes(StandardCharsets.UTF_8));
+    public void queueJournal(String cardId, int userAge, List<JournalEntry> entries) throws IOException {
+        TransactionOutbox outbox = outbox();
+        for (JournalEntry entry : entries) {
+            // A prepaid play was paid with its combo, its coins are not new revenue
+            int payment = entry.isPrepaid() ? 0 : entry.getAmount() * AppConfig.COIN_VALUE_VND;
+            JSONObject tx = newTransaction(cardId, userAge, payment);
+            tx.put("card_seq", entry.getSeq());
+            if (!entry.isTopup()) {
+                tx.put("game_id", entry.getGameId());
             }
+            outbox.add("card:" + cardId + ":" + entry.getSeq(), tx);
+        }
+    }
 
-            int responseCode = conn.getResponseCode();
-            
-            // Read response
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(
-                        responseCode >= 400 ? conn.getErrorStream() : conn.getInputStream(),
-                        StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line);
-                }
+    /**
+     * One page of a card's transaction history, newest first; blocks, call from a worker thread
+     * @param cardId Card ID
+     * @param cursor cursor of the previous page, null for the first page (which carries the totals)
+     */
+    public TransactionPage fetchHistoryPage(String cardId, String cursor) throws IOException, InterruptedException {
+        String url = AppConfig.API_TRANSACTIONS + "/card/" + cardId + "?limit=" + AppConfig.HISTORY_PAGE_SIZE;
+        if (cursor != null) {
+            url += "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8);
+        }
+        return ApiClient.getInstance().getStreaming(url, (status, body) -> {
+            if (status == 404) {
+                return TransactionPage.EMPTY;
+            }
+            if (status != 200) {
+                throw new IOException("Lỗi kết nối server: " + status);
             }
+            return TransactionPageReader.read(new InputStreamReader(body, StandardCharsets.UTF_8));
+        });
+    }
+
+    /**
+     * Number of transactions not yet stored by the backend
+     */
+    public int getPendingCount() throws IOException {
+        return outbox().pendingCount();
+    }
+
+    static JSONObject newTransaction(String cardId, int userAge, int payment) {
+        JSONObject tx = new JSONObject();
+        tx.put("card_id", cardId);
+        tx.put("user_age", userAge);
+        tx.put("payment", payment);
+        tx.put("time_stamp", java.time.Instant.now().toString());
+        return tx;
+    }
 
-            if (responseCode == HttpURLConnection.HTTP_CREATED || responseCode == HttpURLConnection.HTTP_OK) {
-                String jsonResponse = response.toString();
-                System.out.println("Transaction created: " + jsonResponse);
-                
-                // Extract transaction ID from response
-                int idStart = jsonResponse.indexOf("\"_id\":\"");
-                if (idStart != -1) {
-                    idStart += 7;
-                    int idEnd = jsonResponse.indexOf("\"", idStart);
-                    return jsonResponse.substring(idStart, idEnd);
-                }
-                return "success";
-            } else {
-                System.err.println("Failed to create transaction. Status: " + responseCode);
-                System.err.println("Response: " + response.toString());
-                throw new Exception("Failed to create transaction: " + response.toString());
+    private TransactionOutbox outbox() throws IOException {
+        return TransactionOutbox.getInstance(TransactionService::uploadBatch);
+    }
+
+    /**
+     * Upload one outbox batch (POST /api/transactions/batch)
+     * The backend skips records whose idempotency key it already stored
+     * @return idempotency keys of the records the backend refused, with the reason
+     */
+    private static Map<String, String> uploadBatch(JSONArray transactions) throws Exception {
+        String body = postJson(AppConfig.API_TRANSACTIONS_BATCH, batchBody(transactions));
+        return failedKeys(new JSONObject(body));
+    }
+
+    /**
+     * Records listed in data.failed of a batch response, by idempotency key
+     */
+    static Map<String, String> failedKeys(JSONObject response) {
+        Map<String, String> failed = new HashMap<>();
+        JSONObject data = response.optJSONObject("data");
+        JSONArray failedTransactions = data != null ? data.optJSONArray("failed") : null;
+        if (failedTransactions != null) {
+            for (int i = 0; i < failedTransactions.length(); i++) {
+                JSONObject tx = failedTransactions.getJSONObject(i);
+                failed.put(tx.optString("idempotency_key"), tx.optString("message"));
             }
+        }
+        return failed;
+    }
+
+    /**
+     * Request body of POST /api/transactions/batch
+     */
+    static String batchBody(JSONArray transactions) {
+        return new JSONObject().put("transactions", transactions).toString();
+    }
+
+    /**
+     * Send a JSON POST request
+     * @return response body on 200/201
+     */
+    private static String postJson(String endpoint, String jsonBody) throws Exception {
+        ApiClient.Response response = ApiClient.await(ApiClient.getInstance().post(endpoint, jsonBody));
+        int responseCode = response.getStatusCode();
 
-        } finally {
-            conn.disconnect();
+        if (response.isSuccess()) {
+            return response.getBody();
+        } else if (responseCode >= 400 && responseCode < 500) {
+            throw new TransactionOutbox.RejectedException("Status " + responseCode + ": " + response.getBody());
+        } else {
+            throw new Exception("Failed to create transaction. Status: " + responseCode + ": " + response.getBody());
         }
     }
 }
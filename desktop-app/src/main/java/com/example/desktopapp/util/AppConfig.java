@@ -1,6 +1,7 @@
 package com.example.desktopapp.util;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,8 +21,10 @@ public class AppConfig {
      */
     public static final String API_COMBOS = API_BASE_URL + "/api/combos";
     public static final String API_CARDS = API_BASE_URL + "/api/cards";
+    public static final String API_CARDS_BATCH = API_CARDS + "/batch";
     public static final String API_GAMES = API_BASE_URL + "/api/games";
     public static final String API_TRANSACTIONS = API_BASE_URL + "/api/transactions";
+    public static final String API_TRANSACTIONS_BATCH = API_TRANSACTIONS + "/batch";
     public static final String API_STATISTICS = API_BASE_URL + "/api/statistics";
     
     // MoMo Payment API
@@ -38,6 +41,140 @@ public class AppConfig {
      */
     public static final int READ_TIMEOUT = 5000;
     
+    /**
+     * Per-endpoint request deadlines in milliseconds (whole request, connect included)
+     * Endpoints not listed here use READ_TIMEOUT
+     */
+    public static final int API_DEADLINE_MOMO_QR = 15000;
+    public static final int API_DEADLINE_MOMO_STATUS = 30000; // long-poll, must exceed MOMO_LONG_POLL_MS
+    public static final int API_DEADLINE_STATISTICS = 15000;
+    public static final int API_DEADLINE_TRANSACTIONS_BATCH = 10000;
+    public static final int API_DEADLINE_CARDS_BATCH = 10000;
+    
+    /**
+     * Value of one card coin in VND
+     */
+    public static final int COIN_VALUE_VND = 10000;
+    
+    /**
+     * Local data directory for caches and snapshots
+     */
+    public static final String APP_DATA_DIR = System.getProperty("user.home") + java.io.File.separator + ".smartcard";
+    
+    /**
+     * Card public key cache (authentication)
+     * Snapshot file is optional, set to null to keep the cache in memory only
+     */
+    public static final int PUBLIC_KEY_CACHE_SIZE = 256;
+    public static final long PUBLIC_KEY_CACHE_TTL_MS = 24L * 60 * 60 * 1000;
+    public static final String PUBLIC_KEY_CACHE_FILE = APP_DATA_DIR + java.io.File.separator + "public-keys.cache";
+    
+    /**
+     * MoMo payment status wait
+     * The backend holds a status request up to MOMO_LONG_POLL_MS; if it answers at once (or fails)
+     * the next check backs off from MOMO_POLL_MIN_MS to MOMO_POLL_MAX_MS. A QR is given up after
+     * MOMO_PAYMENT_EXPIRY_MS.
+     */
+    public static final long MOMO_LONG_POLL_MS = 25000;
+    public static final long MOMO_POLL_MIN_MS = 1000;
+    public static final long MOMO_POLL_MAX_MS = 10000;
+    public static final long MOMO_PAYMENT_EXPIRY_MS = 10 * 60 * 1000;
+    
+    /**
+     * Game/combo catalog cache
+     * Lists younger than the TTL are served without asking the backend; older ones are served
+     * immediately and revalidated (ETag) in the background. The snapshot lets the app start offline.
+     */
+    public static final long CATALOG_TTL_MS = 60 * 1000;
+    public static final long CATALOG_REFRESH_MS = 5 * 60 * 1000;
+    public static final String CATALOG_SNAPSHOT_FILE = APP_DATA_DIR + java.io.File.separator + "catalog.json";
+    
+    /**
+     * Transaction outbox (durable local queue, uploaded in batches)
+     */
+    public static final String OUTBOX_FILE = APP_DATA_DIR + java.io.File.separator + "transactions-outbox.log";
+    public static final int OUTBOX_BATCH_SIZE = 50;
+    public static final long OUTBOX_RETRY_MIN_MS = 2000;
+    public static final long OUTBOX_RETRY_MAX_MS = 60000;
+    public static final long OUTBOX_COMPACT_BYTES = 1024 * 1024;
+    
+    /**
+     * In-memory card simulator, used instead of the PC/SC reader when enabled
+     * (-Dsmartcard.simulator=true). Latencies model a real reader: a fixed cost per APDU
+     * plus a transfer cost per command/response byte.
+     */
+    public static final boolean CARD_SIMULATOR = Boolean.getBoolean("smartcard.simulator");
+    public static final long SIMULATOR_APDU_LATENCY_MICROS = Long.getLong("smartcard.simulator.apduLatencyMicros", 0L);
+    public static final long SIMULATOR_BYTE_LATENCY_NANOS = Long.getLong("smartcard.simulator.byteLatencyNanos", 0L);
+    public static final int SIMULATOR_READERS = Integer.getInteger("smartcard.simulator.readers", 1);
+
+    /**
+     * Print the per-INS APDU statistics (ApduMetrics) when the app exits (-Dsmartcard.apduMetrics=true)
+     * The same data is always available as JFR events (-XX:StartFlightRecording).
+     */
+    public static final boolean APDU_METRICS_LOG = Boolean.getBoolean("smartcard.apduMetrics");
+
+    /**
+     * Record every APDU session to a trace file in this directory (-Dsmartcard.trace=<dir>), null = off
+     * Traces can be printed and replayed with ApduTraceReplay.
+     */
+    public static final String APDU_TRACE_DIR = System.getProperty("smartcard.trace");
+
+    /**
+     * Card reader monitor (insert/remove events)
+     * The monitor wakes up at least every CARD_MONITOR_WAIT_MS; without any reader it retries
+     * with a backoff from CARD_MONITOR_RETRY_MIN_MS to CARD_MONITOR_RETRY_MAX_MS.
+     */
+    public static final long CARD_MONITOR_WAIT_MS = 1000;
+    public static final long CARD_MONITOR_RETRY_MIN_MS = 1000;
+    public static final long CARD_MONITOR_RETRY_MAX_MS = 10000;
+
+    /**
+     * Background tasks of the screens (TaskExecutor)
+     * At most TASK_POOL_SIZE tasks run at once, the rest wait (a warning is logged the first time
+     * TASK_QUEUE_WARN_DEPTH are waiting); idle threads end after TASK_KEEP_ALIVE_MS. -Dsmartcard.taskMetrics=true prints queue and latency stats on exit.
+     */
+    public static final int TASK_POOL_SIZE = 8;
+    public static final int TASK_QUEUE_WARN_DEPTH = 64;
+    public static final long TASK_KEEP_ALIVE_MS = 30000;
+    public static final boolean TASK_METRICS_LOG = Boolean.getBoolean("smartcard.taskMetrics");
+
+    /**
+     * Screens (ViewCache)
+     * Client screens preloaded after startup; their controllers are reused on every visit.
+     * -Dsmartcard.viewMetrics=true prints per-view load and show times on exit.
+     */
+    public static final List<String> CLIENT_PRELOAD_VIEWS = List.of(
+        "card-check-client.fxml", "payment-client.fxml", "payment-success.fxml");
+    public static final boolean VIEW_METRICS_LOG = Boolean.getBoolean("smartcard.viewMetrics");
+
+    /**
+     * Admin transaction history
+     * Transactions are fetched HISTORY_PAGE_SIZE at a time; the next page is requested once the
+     * list is scrolled to within HISTORY_PREFETCH_ROWS rows of the end.
+     */
+    public static final int HISTORY_PAGE_SIZE = 50;
+    public static final int HISTORY_PREFETCH_ROWS = 20;
+
+    /**
+     * Local statistics store (AnalyticsStore)
+     * Transactions are synced ANALYTICS_SYNC_PAGE_SIZE at a time from /api/statistics/transactions
+     * and kept in ANALYTICS_STORE_FILE, so reopening the dashboard only fetches what changed.
+     */
+    public static final String API_STATISTICS_SYNC = API_STATISTICS + "/transactions";
+    public static final int ANALYTICS_SYNC_PAGE_SIZE = 5000;
+    public static final String ANALYTICS_STORE_FILE = APP_DATA_DIR + java.io.File.separator + "analytics.bin";
+
+    /**
+     * Provisioning station (headless batch card issuing, one worker per reader)
+     * Backend registrations are sent as one request per PROVISION_BATCH_SIZE cards, or after
+     * PROVISION_BATCH_WAIT_MS when fewer cards are waiting.
+     */
+    public static final int PROVISION_BATCH_SIZE = 20;
+    public static final long PROVISION_BATCH_WAIT_MS = 200;
+    public static final int PROVISION_BATCH_RETRIES = 3;
+    public static final long PROVISION_CARD_WAIT_MS = 500;
+
     /**
      * Session storage for client app - simple properties for game selection flow
      */
@@ -0,0 +1,299 @@
+package com.example.desktopapp.util;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.PrintStream;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared executor for the background work of the screens (card I/O, backend calls, delays).
+ *
+ * A fixed pool of daemon threads (AppConfig.TASK_POOL_SIZE) replaces one new Thread per action. The
+ * queue is unbounded: a screen that submitted work has already shown its spinner, so work is
+ * never dropped; a queue deeper than AppConfig.TASK_QUEUE_WARN_DEPTH is only logged. Work is submitted to the {@link Scope} of the screen that
+ * started it; MainApp/AdminApp/ClientApp.setRoot open a new scope, which cancels (interrupts)
+ * everything the previous screen left running. Scope.runLater drops UI updates of a cancelled
+ * scope, so late results never touch nodes that are no longer shown.
+ * Work that must finish once started, whatever the user does next (writing a paid top-up to the
+ * card), goes to the {@link #detached()} scope instead, which navigation never cancels.
+ */
+public final class TaskExecutor {
+
+    private static final TaskExecutor INSTANCE = new TaskExecutor();
+
+    /**
+     * Background work of one screen
+     */
+    public static final class Scope {
+        private final String name;
+        private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        private Scope(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Run work in the background; it is interrupted when the screen is left
+         */
+        public Future<?> submit(Runnable work) {
+            FutureTask<Void> task = new FutureTask<>(work, null);
+            INSTANCE.execute(this, task);
+            return task;
+        }
+
+        /**
+         * Run a JavaFX task in the background; it ends CANCELLED when the screen is left,
+         * so its succeeded/failed handlers do not run for a screen that is gone
+         */
+        public <T> Task<T> submit(Task<T> task) {
+            INSTANCE.execute(this, task);
+            return task;
+        }
+
+        /**
+         * Platform.runLater that is skipped when the scope was cancelled in the meantime
+         */
+        public void runLater(Runnable update) {
+            Platform.runLater(() -> {
+                if (!cancelled) {
+                    update.run();
+                }
+            });
+        }
+
+        /**
+         * Cancel all work of this scope (called on navigation)
+         */
+        public void cancel() {
+            cancelled = true;
+            for (Future<?> task : tasks) {
+                if (task.cancel(true)) {
+                    INSTANCE.cancelled.increment();
+                }
+            }
+            tasks.clear();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public int getPendingCount() {
+            return tasks.size();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Snapshot of the executor metrics
+     */
+    public static final class Stats {
+        public final int poolSize;
+        public final int active;
+        public final int queueDepth;
+        public final int peakQueueDepth;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long cancelled;
+        public final double meanWaitMillis;
+        public final double maxWaitMillis;
+        public final double meanRunMillis;
+        public final double maxRunMillis;
+
+        private Stats(TaskExecutor e) {
+            poolSize = e.pool.getPoolSize();
+            active = e.pool.getActiveCount();
+            queueDepth = e.pool.getQueue().size();
+            peakQueueDepth = e.peakQueueDepth.get();
+            submitted = e.submitted.sum();
+            completed = e.completed.sum();
+            failed = e.failed.sum();
+            cancelled = e.cancelled.sum();
+            long started = e.started.sum();
+            meanWaitMillis = started == 0 ? 0 : e.waitNanos.sum() / 1e6 / started;
+            maxWaitMillis = e.maxWaitNanos.get() / 1e6;
+            meanRunMillis = started == 0 ? 0 : e.runNanos.sum() / 1e6 / started;
+            maxRunMillis = e.maxRunNanos.get() / 1e6;
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private volatile Scope screen = new Scope("startup");
+    private final Scope detached = new Scope("detached");
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    private TaskExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(AppConfig.TASK_POOL_SIZE, AppConfig.TASK_POOL_SIZE,
+            AppConfig.TASK_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "ui-task-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        // Idle kiosk keeps no threads around
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static TaskExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Scope of the screen currently shown; controllers take it when they are created
+     */
+    public Scope currentScope() {
+        return screen;
+    }
+
+    /**
+     * Scope that is never cancelled by navigation. Its runLater always runs, so UI updates of
+     * such work should still go through the screen scope.
+     */
+    public Scope detached() {
+        return detached;
+    }
+
+    /**
+     * Cancel the work of the current screen and open a scope for the next one
+     * @param name screen name for logs (e.g. the FXML file)
+     */
+    public synchronized Scope newScreen(String name) {
+        Scope previous = screen;
+        screen = new Scope(name);
+        previous.cancel();
+        return screen;
+    }
+
+    private void execute(Scope scope, RunnableFuture<?> task) {
+        submitted.increment();
+        if (scope.cancelled) {
+            task.cancel(false);
+            cancelled.increment();
+            return;
+        }
+        scope.tasks.add(task);
+        long queuedAt = System.nanoTime();
+        try {
+            pool.execute(() -> run(scope, task, queuedAt));
+        } catch (RejectedExecutionException e) {
+            // Pool shut down, the app is exiting
+            scope.tasks.remove(task);
+            task.cancel(false);
+            return;
+        }
+        int depth = pool.getQueue().size();
+        if (peakQueueDepth.getAndAccumulate(depth, Math::max) < AppConfig.TASK_QUEUE_WARN_DEPTH
+                && depth >= AppConfig.TASK_QUEUE_WARN_DEPTH) {
+            System.err.println("✗ TaskExecutor: " + depth + " tác vụ đang chờ (" + scope.name + ")");
+        }
+        // Scope cancelled between the check and the add
+        if (scope.cancelled && task.cancel(true)) {
+            cancelled.increment();
+        }
+    }
+
+    private void run(Scope scope, RunnableFuture<?> task, long queuedAt) {
+        // Screen left while the task was queued
+        if (scope.cancelled) {
+            if (task.cancel(false)) {
+                cancelled.increment();
+            }
+            scope.tasks.remove(task);
+            return;
+        }
+        long start = System.nanoTime();
+        started.increment();
+        waitNanos.add(start - queuedAt);
+        maxWaitNanos.accumulateAndGet(start - queuedAt, Math::max);
+        try {
+            task.run();
+        } finally {
+            long took = System.nanoTime() - start;
+            runNanos.add(took);
+            maxRunNanos.accumulateAndGet(took, Math::max);
+            scope.tasks.remove(task);
+            // Cancelled tasks are counted by cancel()
+            if (!task.isCancelled()) {
+                Throwable error = failure(task);
+                if (error == null) {
+                    completed.increment();
+                } else {
+                    failed.increment();
+                    if (!(task instanceof Task)) {
+                        // JavaFX tasks report through failed(), a plain runnable would fail silently
+                        System.err.println("✗ Tác vụ nền lỗi (" + scope.name + "): " + error);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Exception a finished task ended with, null if it completed
+     */
+    private static Throwable failure(Future<?> task) {
+        try {
+            task.get(0, TimeUnit.MILLISECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException | InterruptedException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    public void print(PrintStream out) {
+        Stats s = getStats();
+        out.println("=== Task Metrics ===");
+        out.printf("threads %d, active %d, queue %d (peak %d)%n",
+            s.poolSize, s.active, s.queueDepth, s.peakQueueDepth);
+        out.printf("submitted %d, completed %d, failed %d, cancelled %d%n",
+            s.submitted, s.completed, s.failed, s.cancelled);
+        out.printf("wait mean %.2f ms, max %.2f ms; run mean %.2f ms, max %.2f ms%n",
+            s.meanWaitMillis, s.maxWaitMillis, s.meanRunMillis, s.maxRunMillis);
+    }
+
+    /**
+     * Cancel the current screen's work and stop the pool (app exit)
+     */
+    public void shutdown() {
+        screen.cancel();
+        pool.shutdownNow();
+    }
+}
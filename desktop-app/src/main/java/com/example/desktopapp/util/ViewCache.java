@@ -0,0 +1,164 @@
+package com.example.desktopapp.util;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Screens of one app, loaded from FXML.
+ *
+ * A view whose controller implements {@link Reusable} is parsed once and kept: navigating to it
+ * again only swaps the scene root and calls onShow() to reset the controller. Other views are
+ * loaded fresh on every visit, as before. Reusable views can be preloaded after startup so even
+ * the first visit is a swap. Load and show times are kept per view (print()).
+ * Used on the FX thread only.
+ */
+public final class ViewCache {
+
+    /**
+     * Controller of a view that is loaded once and shown many times.
+     * initialize() must only build the UI; everything done per visit (reading session data,
+     * listeners, background work, clearing inputs) goes into onShow(), which runs each time
+     * the view is shown, after the new TaskExecutor scope is opened.
+     */
+    public interface Reusable {
+        void onShow();
+    }
+
+    private static final class View {
+        final Parent root;
+        final Object controller;
+
+        View(Parent root, Object controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
+
+    private static final class ViewStats {
+        int loads;
+        int cacheHits;
+        long loadNanos;
+        long maxLoadNanos;
+        long showNanos;
+        long maxShowNanos;
+    }
+
+    private final Class<?> owner;
+    private final Map<String, View> views = new HashMap<>();
+    private final Map<String, ViewStats> stats = new LinkedHashMap<>();
+
+    /**
+     * @param owner class next to the FXML resources (the app class)
+     */
+    public ViewCache(Class<?> owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Root of a view ready to be put into the scene
+     */
+    public Parent show(String fxml) throws IOException {
+        return show(fxml, null);
+    }
+
+    /**
+     * Root of a view ready to be put into the scene
+     * @param controllerCallback called with the controller before onShow()
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Parent show(String fxml, Consumer<T> controllerCallback) throws IOException {
+        long start = System.nanoTime();
+        View view = views.get(fxml);
+        boolean cached = view != null;
+        if (!cached) {
+            view = load(fxml);
+        }
+        if (controllerCallback != null && view.controller != null) {
+            controllerCallback.accept((T) view.controller);
+        }
+        if (view.controller instanceof Reusable) {
+            ((Reusable) view.controller).onShow();
+        }
+        if (cached) {
+            long took = System.nanoTime() - start;
+            ViewStats s = stats(fxml);
+            s.cacheHits++;
+            s.showNanos += took;
+            s.maxShowNanos = Math.max(s.maxShowNanos, took);
+        }
+        return view.root;
+    }
+
+    /**
+     * Load reusable views one at a time on the FX thread while the app is idle,
+     * so input between two loads is not held up
+     */
+    public void preload(List<String> fxmls) {
+        Deque<String> pending = new ArrayDeque<>(fxmls);
+        Platform.runLater(() -> preloadNext(pending));
+    }
+
+    private void preloadNext(Deque<String> pending) {
+        String fxml = pending.poll();
+        if (fxml == null) {
+            return;
+        }
+        if (!views.containsKey(fxml)) {
+            try {
+                View view = load(fxml);
+                if (!(view.controller instanceof Reusable)) {
+                    System.err.println("✗ Preload: " + fxml + " không có controller Reusable, bỏ qua");
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("✗ Preload " + fxml + ": " + e.getMessage());
+            }
+        }
+        Platform.runLater(() -> preloadNext(pending));
+    }
+
+    private View load(String fxml) throws IOException {
+        long start = System.nanoTime();
+        FXMLLoader loader = new FXMLLoader(owner.getResource(fxml));
+        Parent root = loader.load();
+        View view = new View(root, loader.getController());
+        long took = System.nanoTime() - start;
+
+        ViewStats s = stats(fxml);
+        s.loads++;
+        s.loadNanos += took;
+        s.maxLoadNanos = Math.max(s.maxLoadNanos, took);
+        if (view.controller instanceof Reusable) {
+            views.put(fxml, view);
+        }
+        return view;
+    }
+
+    private ViewStats stats(String fxml) {
+        return stats.computeIfAbsent(fxml, k -> new ViewStats());
+    }
+
+    /**
+     * Per view: FXML loads (parse + initialize) and cached shows (swap + onShow)
+     */
+    public void print(PrintStream out) {
+        out.println("=== View Metrics ===");
+        out.printf("%-40s %6s %9s %9s %6s %9s %9s%n", "view", "loads", "load ms", "max ms", "hits", "show ms", "max ms");
+        for (Map.Entry<String, ViewStats> e : stats.entrySet()) {
+            ViewStats s = e.getValue();
+            out.printf("%-40s %6d %9.2f %9.2f %6d %9.2f %9.2f%n", e.getKey(),
+                s.loads, s.loads == 0 ? 0 : s.loadNanos / 1e6 / s.loads, s.maxLoadNanos / 1e6,
+                s.cacheHits, s.cacheHits == 0 ? 0 : s.showNanos / 1e6 / s.cacheHits, s.maxShowNanos / 1e6);
+        }
+    }
+}
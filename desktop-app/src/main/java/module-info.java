@@ -6,6 +6,8 @@ module com.example.desktopapp {
     requires org.kordamp.ikonli.javafx;
     requires org.kordamp.ikonli.fontawesome5;
     requires org.json;
+    requires java.net.http;
+    requires jdk.jfr;
 
     opens com.example.desktopapp to javafx.fxml;
     opens com.example.desktopapp.controller to javafx.fxml;
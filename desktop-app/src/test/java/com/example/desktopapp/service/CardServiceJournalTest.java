@@ -0,0 +1,80 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.CardJournal;
+import com.example.desktopapp.model.JournalEntry;
+import com.example.desktopapp.model.UserRegistration;
+import org.junit.jupiter.api.Test;
+
+import javax.smartcardio.CardException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CardServiceJournalTest {
+
+    @Test
+    void parseRebuildsSequenceAcrossWrap() throws CardException {
+        // LAST_SEQ 65537 (high 1, low 1), ACKED_SEQ low bits of 65534, three entries
+        byte[] data = {
+            0x00, 0x01, 0x00, 0x01, (byte) 0xFF, (byte) 0xFE, 3,
+            (byte) 0xFF, (byte) 0xFF, JournalEntry.TYPE_TOPUP, 0, 0x00, 0x0A, 0x00, 0x0A,
+            0x00, 0x00, JournalEntry.TYPE_PLAY_COINS, 4, 0x00, 0x03, 0x00, 0x07,
+            0x00, 0x01, JournalEntry.TYPE_PLAY_PREPAID, 4, 0x00, 0x03, 0x00, 0x07
+        };
+
+        CardJournal journal = CardService.parseJournal(data);
+        assertEquals(65537, journal.getLastSeq());
+        assertEquals(0xFFFE, journal.getAckedSeq());
+        assertEquals(0, journal.getLostCount());
+
+        List<JournalEntry> entries = journal.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(65535, entries.get(0).getSeq());
+        assertEquals(65536, entries.get(1).getSeq());
+        assertEquals(65537, entries.get(2).getSeq());
+        assertTrue(entries.get(0).isTopup());
+        assertEquals(10, entries.get(0).getAmount());
+        assertEquals(4, entries.get(1).getGameId());
+        assertEquals(7, entries.get(1).getBalanceAfter());
+        assertTrue(entries.get(2).isPrepaid());
+    }
+
+    @Test
+    void parseRejectsTruncatedResponse() {
+        assertThrows(CardException.class, () -> CardService.parseJournal(new byte[] {0, 0, 0, 2, 0, 0}));
+        assertThrows(CardException.class, () -> CardService.parseJournal(new byte[] {0, 0, 0, 2, 0, 0, 2, 0, 1}));
+    }
+
+    @Test
+    void drainAndAckAcrossWrap() throws CardException {
+        CardService card = new CardService();
+        card.connect(new SimulatedCard());
+        UserRegistration user = new UserRegistration();
+        user.setPin("1234");
+        user.setUserId(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        card.installCard(user);
+        card.verifyPin("1234");
+
+        // Drain every 20 entries, acknowledging what the previous drain returned
+        long ack = -1;
+        long expected = 1;
+        for (int i = 1; i <= 65540; i++) {
+            card.topupCoins(0);
+            if (i % 20 == 0 || i == 65540) {
+                CardJournal journal = card.drainJournal(ack);
+                assertEquals(0, journal.getLostCount());
+                for (JournalEntry entry : journal.getEntries()) {
+                    assertEquals(expected++, entry.getSeq());
+                }
+                ack = journal.getLastSeq();
+            }
+        }
+        assertEquals(65541, expected);
+
+        CardJournal last = card.drainJournal(ack);
+        assertEquals(65540, last.getLastSeq());
+        assertTrue(last.getEntries().isEmpty());
+    }
+}
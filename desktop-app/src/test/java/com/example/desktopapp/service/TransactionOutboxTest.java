@@ -0,0 +1,110 @@
+package com.example.desktopapp.service;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionOutboxTest {
+
+    // Backend unreachable: nothing is ever acknowledged, the log only holds what add() wrote
+    private static final TransactionOutbox.BatchSender OFFLINE = batch -> {
+        throw new IOException("offline");
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayCutsTornLineBeforeNextAppend() throws Exception {
+        Path log = dir.resolve("outbox.log");
+        Files.writeString(log, "A\tk1\t{\"payment\":1}\nA\tk2\t{\"pay", StandardCharsets.UTF_8);
+
+        TransactionOutbox outbox = TransactionOutbox.open(log, OFFLINE);
+        assertEquals(1, outbox.pendingCount());
+
+        outbox.add("k3", tx(3));
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("A\tk1\t{\"payment\":1}", lines.get(0));
+        assertTrue(lines.get(1).startsWith("A\tk3\t{"), lines.get(1));
+
+        assertEquals(2, TransactionOutbox.open(log, OFFLINE).pendingCount());
+    }
+
+    @Test
+    void reAddingQueuedKeyIsIgnored() throws Exception {
+        Path log = dir.resolve("outbox.log");
+        TransactionOutbox outbox = TransactionOutbox.open(log, OFFLINE);
+        outbox.add("card:ab:7", tx(1));
+        outbox.add("card:ab:7", tx(1));
+        assertEquals(1, outbox.pendingCount());
+
+        // Same key after a restart, e.g. a journal entry drained again before its ack reached the card
+        TransactionOutbox reopened = TransactionOutbox.open(log, OFFLINE);
+        reopened.add("card:ab:7", tx(1));
+        assertEquals(1, reopened.pendingCount());
+        assertEquals(1, Files.readAllLines(log, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    void acknowledgedRecordsAreNotReplayed() throws Exception {
+        Path log = dir.resolve("outbox.log");
+        TransactionOutbox outbox = TransactionOutbox.open(log, batch -> Collections.emptyMap());
+        outbox.add("k1", tx(1));
+        outbox.add("k2", tx(2));
+        awaitEmpty(outbox);
+
+        assertEquals(0, TransactionOutbox.open(log, OFFLINE).pendingCount());
+    }
+
+    @Test
+    void failedRecordsMoveToRejectedFile() throws Exception {
+        Path log = dir.resolve("outbox.log");
+        TransactionOutbox outbox = TransactionOutbox.open(log, batch -> Map.of("bad", "payment: required"));
+        outbox.add("bad", tx(1));
+        awaitEmpty(outbox);
+
+        String rejected = Files.readString(dir.resolve("outbox.log.rejected"), StandardCharsets.UTF_8);
+        assertTrue(rejected.contains("payment: required"), rejected);
+        assertEquals(0, TransactionOutbox.open(log, OFFLINE).pendingCount());
+    }
+
+    @Test
+    void interruptedAddDoesNotBreakLaterAppends() throws Exception {
+        Path log = dir.resolve("outbox.log");
+        TransactionOutbox outbox = TransactionOutbox.open(log, OFFLINE);
+
+        // Screen task cancelled with cancel(true) while queueing
+        Thread.currentThread().interrupt();
+        try {
+            outbox.add("k1", tx(1));
+        } finally {
+            Thread.interrupted();
+        }
+        outbox.add("k2", tx(2));
+
+        assertEquals(2, TransactionOutbox.open(log, OFFLINE).pendingCount());
+    }
+
+    private static JSONObject tx(int payment) {
+        return new JSONObject().put("card_id", "ab").put("user_age", 20).put("payment", payment);
+    }
+
+    private static void awaitEmpty(TransactionOutbox outbox) throws InterruptedException {
+        for (int i = 0; i < 100 && outbox.pendingCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, outbox.pendingCount());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.desktopapp.service;
+
+import com.example.desktopapp.model.TransactionPage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionPageReaderTest {
+
+    @Test
+    void readsFirstPageWithSummary() throws IOException {
+        String body = "{\"success\":true,\"data\":["
+            + "{\"_id\":\"a1\",\"time_stamp\":\"2026-01-02T03:04:05Z\",\"payment\":5,\"combo_id\":null},"
+            + "{\"_id\":\"a2\",\"payment\":150000,\"combo_id\":{\"_id\":\"c1\",\"name\":\"Combo 1\"},\"game_id\":{\"_id\":3}}"
+            + "],\"next_cursor\":\"MTc=\",\"summary\":{\"count\":42,\"total_vnd\":1.5e6}}";
+
+        TransactionPage page = TransactionPageReader.read(new StringReader(body));
+        assertEquals(2, page.getRows().size());
+        assertEquals("a1", page.getRows().get(0).getId());
+        // Payments below 1000 are coins
+        assertEquals(50000, page.getRows().get(0).getPaymentVND());
+        assertFalse(page.getRows().get(0).isCombo());
+        assertTrue(page.getRows().get(1).isCombo());
+        assertEquals("Combo 1", page.getRows().get(1).getComboName());
+        assertEquals("MTc=", page.getNextCursor());
+        assertTrue(page.hasMore());
+        assertEquals(42, page.getTotalCount());
+        assertEquals(1.5e6, page.getTotalVND());
+    }
+
+    @Test
+    void readsLastPageWithoutSummary() throws IOException {
+        TransactionPage page = TransactionPageReader.read(new StringReader("{\"success\":true,\"data\":[],\"next_cursor\":null}"));
+        assertTrue(page.getRows().isEmpty());
+        assertNull(page.getNextCursor());
+        assertFalse(page.hasMore());
+        assertEquals(-1, page.getTotalCount());
+    }
+
+    @Test
+    void rejectsMalformedBody() {
+        assertThrows(IOException.class, () -> TransactionPageReader.read(new StringReader("{\"data\":[{\"_id\":")));
+    }
+}
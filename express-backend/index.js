@@ -4,6 +4,7 @@ const cors = require("cors");
 const morgan = require("morgan");
 const connectDB = require("./config/database");
 const seedDatabase = require("./config/seedData");
+const Transaction = require("./models/Transaction");
 
 // Import routes
 const gameRoutes = require("./routes/gameRoutes");
@@ -20,6 +21,10 @@ const PORT = process.env.PORT || 4000;
 // Connect to MongoDB và seed dữ liệu
 connectDB().then(async () => {
   await seedDatabase();
+  const normalized = await Transaction.normalizeCardIds();
+  if (normalized > 0) {
+    console.log(`✅ Đã chuyển card_id của ${normalized} giao dịch về chữ thường`);
+  }
 });
 
 // Middleware
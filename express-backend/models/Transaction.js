@@ -3,7 +3,8 @@ const mongoose = require('mongoose');
 const transactionSchema = new mongoose.Schema({
   card_id: {
     type: String,  // Phải là String vì Card._id là String
-    required: true
+    required: true,
+    lowercase: true // Lưu một dạng duy nhất để tìm theo thẻ bằng so sánh bằng (dùng được index)
   },
   user_age: {
     type: Number,
@@ -29,9 +30,47 @@ const transactionSchema = new mongoose.Schema({
     type: mongoose.Schema.Types.ObjectId,
     ref: 'Combo',
     default: null
+  },
+  card_seq: {
+    type: Number,
+    default: undefined,
+    comment: 'Số thứ tự trong nhật ký giao dịch trên thẻ (giao dịch đồng bộ từ thẻ)'
+  },
+  idempotency_key: {
+    type: String,
+    default: undefined,
+    comment: 'Khóa do desktop app sinh ra, gửi lại cùng khóa không tạo giao dịch mới'
   }
 }, {
   timestamps: true
 });
 
+// Một entry nhật ký của thẻ chỉ được lưu một lần
+transactionSchema.index(
+  { card_id: 1, card_seq: 1 },
+  { unique: true, partialFilterExpression: { card_seq: { $exists: true } } }
+);
+
+// Giao dịch gửi lại từ outbox của desktop app chỉ được lưu một lần
+transactionSchema.index(
+  { idempotency_key: 1 },
+  { unique: true, partialFilterExpression: { idempotency_key: { $exists: true } } }
+);
+
+// Lịch sử giao dịch theo thẻ (GET /api/transactions/card/:cardId) lọc theo card_id, sắp xếp mới nhất trước
+transactionSchema.index({ card_id: 1, time_stamp: -1, _id: -1 });
+
+// Đồng bộ thống kê của desktop app (GET /api/statistics/transactions) lọc và sắp xếp theo updatedAt, _id
+transactionSchema.index({ updatedAt: 1, _id: 1 });
+
+// Chuyển card_id cũ (lưu chữ hoa trước khi có lowercase) về chữ thường, chạy lúc khởi động
+transactionSchema.statics.normalizeCardIds = async function () {
+  const result = await this.updateMany(
+    { card_id: /[A-Z]/ },
+    [{ $set: { card_id: { $toLower: '$card_id' } } }],
+    { timestamps: false }
+  );
+  return result.modifiedCount;
+};
+
 module.exports = mongoose.model('Transaction', transactionSchema);
@@ -36,6 +36,60 @@ router.post('/', async (req, res) => {
   }
 });
 
+// POST register cards in bulk (trạm phát hành thẻ); thẻ đã đăng ký trước đó (trùng _id) được bỏ qua
+router.post('/batch', async (req, res) => {
+  try {
+    const items = Array.isArray(req.body.cards) ? req.body.cards : [];
+    if (items.length === 0) {
+      return res.status(400).json({ success: false, message: 'cards must be a non-empty array' });
+    }
+
+    // Thẻ sai dữ liệu được báo riêng, không làm hỏng cả lô
+    const failed = [];
+    const valid = [];
+    for (const item of items) {
+      const error = new Card(item).validateSync();
+      if (error) {
+        failed.push({ _id: item._id, message: error.message });
+      } else {
+        valid.push(item);
+      }
+    }
+
+    let inserted = 0;
+    let duplicates = 0;
+    if (valid.length > 0) {
+      try {
+        const docs = await Card.insertMany(valid, { ordered: false });
+        inserted = docs.length;
+      } catch (error) {
+        const writeErrors = error.writeErrors || [];
+        if (writeErrors.length === 0) {
+          throw error;
+        }
+        for (const writeError of writeErrors) {
+          const item = valid[writeError.index];
+          const existing = writeError.code === 11000 ? await Card.findById(item._id) : null;
+          if (existing && existing.public_key === item.public_key) {
+            // Gửi lại lô đã lưu
+            duplicates++;
+          } else {
+            failed.push({ _id: item._id, message: writeError.errmsg || 'Duplicate card' });
+          }
+        }
+        inserted = valid.length - writeErrors.length;
+      }
+    }
+
+    res.status(201).json({
+      success: true,
+      data: { inserted, duplicates, failed }
+    });
+  } catch (error) {
+    res.status(500).json({ success: false, message: error.message });
+  }
+});
+
 // PUT update card
 router.put('/:id', async (req, res) => {
   try {
@@ -19,6 +19,10 @@ const NGROK_URL = process.env.MOMO_REDIRECT_URL;
 // In-memory storage cho demo (production nên dùng database)
 const paymentStorage = new Map();
 
+// Long-poll: các request /status đang chờ order rời trạng thái pending
+const statusWaiters = new Map();
+const MAX_STATUS_WAIT_SECONDS = 30;
+
 // ===== HELPER FUNCTIONS =====
 
 /**
@@ -28,6 +32,34 @@ function hmacSHA256(data, key) {
   return crypto.createHmac("sha256", key).update(data, "utf-8").digest("hex");
 }
 
+const statusMessages = {
+  success: "Thanh toán thành công",
+  pending: "Đang chờ thanh toán",
+  failed: "Thanh toán thất bại",
+};
+
+function statusBody(payment) {
+  return {
+    orderId: payment.orderId,
+    status: payment.status,
+    amount: payment.amount,
+    description: payment.description,
+    transId: payment.transId,
+    completedAt: payment.completedAt,
+    message: statusMessages[payment.status] || null,
+  };
+}
+
+/**
+ * Trả lời ngay các request long-poll đang chờ order này
+ */
+function notifyStatus(orderId) {
+  const waiters = statusWaiters.get(orderId);
+  if (!waiters) return;
+  statusWaiters.delete(orderId);
+  waiters.forEach((respond) => respond());
+}
+
 // ===== API ENDPOINTS =====
 
 /**
@@ -218,8 +250,10 @@ router.post("/qr", async (req, res) => {
 });
 
 /**
- * GET /api/momo/status/:orderId
+ * GET /api/momo/status/:orderId?wait=<giây>
  * Kiểm tra trạng thái thanh toán
+ * Có wait: nếu order đang pending thì giữ request tối đa wait giây (long-poll),
+ * trả lời ngay khi trạng thái thay đổi; response có longPoll: true
  */
 router.get("/status/:orderId", (req, res) => {
   try {
@@ -243,20 +277,31 @@ router.get("/status/:orderId", (req, res) => {
       });
     }
 
-    const statusMessages = {
-      success: "Thanh toán thành công",
-      pending: "Đang chờ thanh toán",
-      failed: "Thanh toán thất bại",
-    };
+    const wait = Math.min(parseInt(req.query.wait) || 0, MAX_STATUS_WAIT_SECONDS);
+    if (payment.status !== "pending" || wait <= 0) {
+      return res.json(statusBody(payment));
+    }
 
-    res.json({
-      orderId: payment.orderId,
-      status: payment.status,
-      amount: payment.amount,
-      description: payment.description,
-      transId: payment.transId,
-      completedAt: payment.completedAt,
-      message: statusMessages[payment.status] || null,
+    let timer = null;
+    const waiters = statusWaiters.get(orderId) || new Set();
+    const respond = () => {
+      clearTimeout(timer);
+      waiters.delete(respond);
+      if (!res.headersSent) {
+        res.json({ ...statusBody(paymentStorage.get(orderId) || payment), longPoll: true });
+      }
+    };
+    waiters.add(respond);
+    statusWaiters.set(orderId, waiters);
+    timer = setTimeout(respond, wait * 1000);
+
+    // Client đóng kết nối (đổi màn hình, hết hạn) thì bỏ waiter
+    req.on("close", () => {
+      clearTimeout(timer);
+      waiters.delete(respond);
+      if (waiters.size === 0 && statusWaiters.get(orderId) === waiters) {
+        statusWaiters.delete(orderId);
+      }
     });
   } catch (error) {
     console.error("Error checking status:", error.message);
@@ -359,6 +404,7 @@ router.post("/ipn", async (req, res) => {
           );
         }
         paymentStorage.set(orderId, payment);
+        notifyStatus(orderId);
       } else {
         console.log(`✗ Payment not found in storage: ${orderId}`);
       }
@@ -395,6 +441,7 @@ router.post("/confirm/:orderId", (req, res) => {
     payment.transId = `MANUAL_${Date.now()}`;
     payment.completedAt = Date.now().toString();
     paymentStorage.set(orderId, payment);
+    notifyStatus(orderId);
 
     res.json({
       message: "Đã xác nhận thanh toán thành công",
@@ -1,4 +1,5 @@
 const express = require('express');
+const mongoose = require('mongoose');
 const router = express.Router();
 const Transaction = require('../models/Transaction');
 
@@ -241,4 +242,96 @@ router.get('/summary', async (req, res) => {
   }
 });
 
+// Đồng bộ giao dịch cho bộ thống kê cục bộ của desktop app
+const SYNC_MAX_PAGE_SIZE = 10000;
+
+// Cursor = updatedAt + _id của giao dịch cuối trang trước, mã hóa base64url
+const encodeSyncCursor = (tx) =>
+  Buffer.from((tx.updatedAt ? new Date(tx.updatedAt).getTime() : 0) + ':' + tx._id).toString('base64url');
+
+const decodeSyncCursor = (value) => {
+  const [time, id] = Buffer.from(String(value), 'base64url').toString().split(':');
+  if (!/^\d+$/.test(time || '') || !mongoose.Types.ObjectId.isValid(id || '')) {
+    return null;
+  }
+  return { time: Number(time), id: new mongoose.Types.ObjectId(id) };
+};
+
+// Giao dịch có vị trí (updatedAt, _id) không sau cursor; giao dịch không có updatedAt đứng trước
+const upToSyncCursorQuery = (cursor) => {
+  if (cursor.time === 0) {
+    return { updatedAt: null, _id: { $lte: cursor.id } };
+  }
+  const time = new Date(cursor.time);
+  return {
+    $or: [
+      { updatedAt: null },
+      { updatedAt: { $lt: time } },
+      { updatedAt: time, _id: { $lte: cursor.id } }
+    ]
+  };
+};
+
+// GET giao dịch đã tạo hoặc sửa sau cursor, theo thứ tự updatedAt
+// Mỗi giao dịch là một mảng [id, time_stamp (ms), payment, user_age, game_id, combo_id]
+// Trang cuối có total = số giao dịch tính đến next_cursor (không tính giao dịch thêm sau đó),
+// desktop app so với số đã đồng bộ để phát hiện giao dịch bị xóa
+router.get('/transactions', async (req, res) => {
+  try {
+    const limit = Math.min(Math.max(parseInt(req.query.limit, 10) || 1000, 1), SYNC_MAX_PAGE_SIZE);
+    const query = {};
+    if (req.query.cursor) {
+      const cursor = decodeSyncCursor(req.query.cursor);
+      if (!cursor) {
+        return res.status(400).json({ success: false, message: 'Cursor không hợp lệ' });
+      }
+      if (cursor.time === 0) {
+        // Giao dịch cũ không có updatedAt được sắp xếp trước tất cả
+        query.$or = [
+          { updatedAt: null, _id: { $gt: cursor.id } },
+          { updatedAt: { $ne: null } }
+        ];
+      } else {
+        const time = new Date(cursor.time);
+        query.$or = [
+          { updatedAt: { $gt: time } },
+          { updatedAt: time, _id: { $gt: cursor.id } }
+        ];
+      }
+    }
+
+    // Lấy thêm 1 bản ghi để biết còn trang sau hay không
+    const rows = await Transaction.find(query, 'time_stamp payment user_age game_id combo_id updatedAt')
+      .sort({ updatedAt: 1, _id: 1 })
+      .limit(limit + 1)
+      .lean();
+    const hasMore = rows.length > limit;
+    const page = hasMore ? rows.slice(0, limit) : rows;
+    const nextCursor = page.length > 0 ? encodeSyncCursor(page[page.length - 1]) : (req.query.cursor || null);
+
+    // Đếm theo cùng vị trí với cursor, giao dịch thêm trong lúc đồng bộ không làm lệch số
+    let total;
+    if (!hasMore) {
+      total = nextCursor ? await Transaction.countDocuments(upToSyncCursorQuery(decodeSyncCursor(nextCursor))) : 0;
+    }
+
+    res.json({
+      success: true,
+      data: page.map(tx => [
+        String(tx._id),
+        tx.time_stamp ? new Date(tx.time_stamp).getTime() : 0,
+        tx.payment,
+        tx.user_age,
+        tx.game_id ?? null,
+        tx.combo_id != null ? String(tx.combo_id) : null
+      ]),
+      next_cursor: nextCursor,
+      has_more: hasMore,
+      total
+    });
+  } catch (error) {
+    res.status(500).json({ success: false, message: error.message });
+  }
+});
+
 module.exports = router;
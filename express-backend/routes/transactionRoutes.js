@@ -1,4 +1,5 @@
 const express = require('express');
+const mongoose = require('mongoose');
 const router = express.Router();
 const Transaction = require('../models/Transaction');
 
@@ -14,18 +15,93 @@ router.get('/', async (req, res) => {
   }
 });
 
+// Phân trang lịch sử giao dịch theo thẻ
+const MAX_PAGE_SIZE = 200;
+
+// Cursor = vị trí của giao dịch cuối trang trước (time_stamp + _id), mã hóa base64url
+const encodeCursor = (tx) =>
+  Buffer.from(new Date(tx.time_stamp).getTime() + ':' + tx._id).toString('base64url');
+
+const decodeCursor = (value) => {
+  const [time, id] = Buffer.from(String(value), 'base64url').toString().split(':');
+  if (!/^\d+$/.test(time || '') || !mongoose.Types.ObjectId.isValid(id || '')) {
+    return null;
+  }
+  return { time: new Date(Number(time)), id: new mongoose.Types.ObjectId(id) };
+};
+
 // GET transactions by card ID (phải đặt trước /:id để tránh conflict)
+// Không có ?limit: trả về toàn bộ như trước. Có ?limit=N: trang N giao dịch mới nhất trước,
+// trang tiếp theo lấy bằng ?cursor=<next_cursor>; trang đầu kèm summary cho cả thẻ
 router.get('/card/:cardId', async (req, res) => {
   try {
-    // Tìm kiếm case-insensitive để match với cả lowercase và uppercase
-    const cardId = req.params.cardId;
-    const transactions = await Transaction.find({ 
-      card_id: { $regex: new RegExp('^' + cardId + '$', 'i') }
-    })
+    // card_id được lưu chữ thường, so sánh bằng dùng index { card_id, time_stamp, _id }
+    const filter = { card_id: String(req.params.cardId).toLowerCase() };
+
+    if (req.query.limit === undefined) {
+      const transactions = await Transaction.find(filter)
+        .populate('game_id')
+        .populate('combo_id')
+        .sort({ time_stamp: -1 }); // Sắp xếp mới nhất trước
+      return res.json({ success: true, data: transactions });
+    }
+
+    const limit = Math.min(Math.max(parseInt(req.query.limit, 10) || 1, 1), MAX_PAGE_SIZE);
+    const query = { ...filter };
+    if (req.query.cursor) {
+      const cursor = decodeCursor(req.query.cursor);
+      if (!cursor) {
+        return res.status(400).json({ success: false, message: 'Cursor không hợp lệ' });
+      }
+      query.$or = [
+        { time_stamp: { $lt: cursor.time } },
+        { time_stamp: cursor.time, _id: { $lt: cursor.id } }
+      ];
+    }
+
+    // Lấy thêm 1 bản ghi để biết còn trang sau hay không
+    const rows = await Transaction.find(query)
+      .sort({ time_stamp: -1, _id: -1 })
+      .limit(limit + 1)
       .populate('game_id')
       .populate('combo_id')
-      .sort({ time_stamp: -1 }); // Sắp xếp mới nhất trước
-    res.json({ success: true, data: transactions });
+      .lean();
+    const hasMore = rows.length > limit;
+    const data = hasMore ? rows.slice(0, limit) : rows;
+
+    const response = {
+      success: true,
+      data,
+      next_cursor: hasMore ? encodeCursor(data[data.length - 1]) : null
+    };
+
+    if (!req.query.cursor) {
+      // payment < 1000 là số coins (1 coin = 10.000 VNĐ), giống cách desktop app hiển thị
+      const [summary] = await Transaction.aggregate([
+        { $match: filter },
+        {
+          $group: {
+            _id: null,
+            count: { $sum: 1 },
+            total_vnd: {
+              $sum: {
+                $cond: [
+                  { $and: [{ $gt: ['$payment', 0] }, { $lt: ['$payment', 1000] }] },
+                  { $multiply: ['$payment', 10000] },
+                  '$payment'
+                ]
+              }
+            }
+          }
+        }
+      ]);
+      response.summary = {
+        count: summary ? summary.count : 0,
+        total_vnd: summary ? summary.total_vnd : 0
+      };
+    }
+
+    res.json(response);
   } catch (error) {
     res.status(500).json({ success: false, message: error.message });
   }
@@ -59,6 +135,54 @@ router.post('/', async (req, res) => {
   }
 });
 
+// POST create transactions in bulk (bỏ qua giao dịch đã lưu: trùng idempotency_key hoặc card_id + card_seq)
+router.post('/batch', async (req, res) => {
+  try {
+    const items = Array.isArray(req.body.transactions) ? req.body.transactions : [];
+    if (items.length === 0) {
+      return res.status(400).json({ success: false, message: 'transactions must be a non-empty array' });
+    }
+
+    // Giao dịch sai dữ liệu được báo riêng theo idempotency_key, không làm hỏng cả lô
+    const failed = [];
+    const valid = [];
+    for (const item of items) {
+      const error = new Transaction(item).validateSync();
+      if (error) {
+        failed.push({ idempotency_key: item.idempotency_key, message: error.message });
+      } else {
+        valid.push(item);
+      }
+    }
+
+    let inserted = 0;
+    let duplicates = 0;
+    if (valid.length > 0) {
+      try {
+        const docs = await Transaction.insertMany(valid, { ordered: false, throwOnValidationError: true });
+        inserted = docs.length;
+      } catch (error) {
+        // Duplicate key (11000) = entry đã được đồng bộ trước đó
+        const writeErrors = error.writeErrors || [];
+        if (writeErrors.length === 0 || writeErrors.some(e => e.code !== 11000)) {
+          throw error;
+        }
+        duplicates = writeErrors.length;
+        inserted = valid.length - duplicates;
+      }
+    }
+
+    res.status(201).json({
+      success: true,
+      data: { inserted, duplicates, failed }
+    });
+  } catch (error) {
+    // 400 = dữ liệu sai (client không gửi lại), 500 = lỗi tạm thời (client thử lại sau)
+    const status = error.name === 'ValidationError' || error.name === 'CastError' ? 400 : 500;
+    res.status(status).json({ success: false, message: error.message });
+  }
+});
+
 // PUT update transaction
 router.put('/:id', async (req, res) => {
   try {